@@ -0,0 +1,162 @@
+package search_engine.common;
+
+/**
+ * This class splits a text into the terms the search engine indexes and
+ * searches <br/>
+ * A token is a run of characters between whitespace, the whitespace being the
+ * same as for the WhitespaceTokenizer of OpenNLP. Every character of a token
+ * that is not an ASCII letter or digit is dropped and the letters are
+ * lowercased, as with {@code token.replaceAll("[^a-zA-Z0-9]", "").toLowerCase()},
+ * then the token is stemmed. <br/>
+ * The text is copied into a reusable buffer and scanned once: a token is
+ * cleaned into a second reusable buffer while it is split, and handed to the
+ * stemmer as a slice of that buffer, so no String is created for a token
+ * whose stem is cached (see CachingStemmer). <br/>
+ * The position of a token is its index among all the tokens of the text, so a
+ * token left empty, e.g: "-", still takes a position. <br/>
+ * The Indexer and the searcher both analyze their text with this class, so a
+ * query term is always spelled as the indexed term. <br/>
+ * <br/>
+ * <b>Note:</b> Analyzer is not thread-safe: use one per thread <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	Analyzer analyzer = new Analyzer(stemmer);
+ * 	analyzer.reset(document);
+ * 	while (analyzer.next()) {
+ * 		String term = analyzer.term();
+ * 		int position = analyzer.position();
+ * 	}
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class Analyzer {
+	private static final int INITIAL_CAPACITY = 32;
+
+	private final IStemmer _stemmer;
+	private char[] _text = new char[INITIAL_CAPACITY];
+	private int _length = 0;
+	private int _offset = 0;
+	private int _tokenStart = 0;
+	private int _tokenEnd = 0;
+	private char[] _term = new char[INITIAL_CAPACITY];
+	private int _termLength = 0;
+	private int _position = -1;
+
+	/**
+	 * Public Constructor <br/>
+	 *
+	 * @param stemmer
+	 *            the stemmer the terms are stemmed with
+	 */
+	public Analyzer(IStemmer stemmer) {
+		_stemmer = stemmer;
+	}
+
+	/**
+	 * Start analyzing a text <br/>
+	 *
+	 * @param text
+	 */
+	public void reset(String text) {
+		_length = text.length();
+		if (_text.length < _length) {
+			_text = new char[Math.max(_length, _text.length * 2)];
+		}
+		text.getChars(0, _length, _text, 0);
+		_offset = 0;
+		_tokenStart = 0;
+		_tokenEnd = 0;
+		_termLength = 0;
+		_position = -1;
+	}
+
+	/**
+	 * Move to the next token of the text
+	 *
+	 * @return false if the text has no token left
+	 */
+	public boolean next() {
+		char[] text = _text;
+		int offset = _offset;
+		while (offset < _length && isWhitespace(text[offset])) {
+			offset++;
+		}
+		if (offset == _length) {
+			_offset = offset;
+			return false;
+		}
+
+		_tokenStart = offset;
+		int termLength = 0;
+		while (offset < _length) {
+			char c = text[offset];
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			} else if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9')) {
+				if (isWhitespace(c)) {
+					break;
+				}
+				offset++;
+				continue;
+			}
+			if (termLength == _term.length) {
+				char[] grown = new char[_term.length * 2];
+				System.arraycopy(_term, 0, grown, 0, termLength);
+				_term = grown;
+			}
+			_term[termLength++] = c;
+			offset++;
+		}
+
+		_tokenEnd = offset;
+		_offset = offset;
+		_termLength = termLength;
+		_position++;
+		return true;
+	}
+
+	/**
+	 * Get the term of the current token: the token cleaned and stemmed
+	 *
+	 * @return the term, empty if the token has no letter nor digit
+	 */
+	public String term() {
+		return _stemmer.stem(_term, 0, _termLength);
+	}
+
+	/**
+	 * Get the current token as it is in the text, e.g: to read the operators
+	 * of a query
+	 *
+	 * @return the token
+	 */
+	public String token() {
+		return new String(_text, _tokenStart, _tokenEnd - _tokenStart);
+	}
+
+	/**
+	 * Get the position of the current token
+	 *
+	 * @return the index of the token among the tokens of the text
+	 */
+	public int position() {
+		return _position;
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Check whether a character separates tokens, as in OpenNLP
+	 *
+	 * @param c
+	 * @return true if c is whitespace
+	 */
+	public static boolean isWhitespace(char c) {
+		return Character.isWhitespace(c) || Character.getType(c) == Character.SPACE_SEPARATOR;
+	}
+}
@@ -0,0 +1,65 @@
+package search_engine.common;
+
+/**
+ * This class stems words through a StemCache <br/>
+ * A word found in the cache is not stemmed again: a slice of a char[] (see
+ * Analyzer) is looked up without creating a String, and the cached stem is
+ * returned, so the frequent words are stemmed without creating any object. A
+ * word missing from the cache is stemmed by a Stemmer and added to it. <br/>
+ * By default the cache is the one of the process (see StemCache.shared()), so
+ * the Indexer and the searcher share the stems of each other. <br/>
+ * <br/>
+ * <b>Note:</b> CachingStemmer is not thread-safe, as Stemmer: use one per
+ * thread. The cache itself is thread-safe <br/>
+ * 
+ * @author ngtrhieu0011
+ */
+public class CachingStemmer implements IStemmer {
+	private final Stemmer _stemmer = new Stemmer();
+	private final StemCache _cache;
+
+	/**
+	 * Public Constructor <br/>
+	 * Stem through the shared cache
+	 */
+	public CachingStemmer() {
+		this(StemCache.shared());
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * 
+	 * @param cache
+	 *            the cache the stems are kept in
+	 */
+	public CachingStemmer(StemCache cache) {
+		_cache = cache;
+	}
+
+	@Override
+	public String stem(String word) {
+		String stem = _cache.get(word);
+		if (stem == null) {
+			stem = _stemmer.stem(word);
+			_cache.put(word, stem);
+		}
+		return stem;
+	}
+
+	@Override
+	public String stem(char[] word, int offset, int length) {
+		String stem = _cache.get(word, offset, length);
+		if (stem == null) {
+			stem = _stemmer.stem(word, offset, length);
+			_cache.put(new String(word, offset, length), stem);
+		}
+		return stem;
+	}
+
+	@Override
+	public int stem(char[] word, int offset, int length, char[] stem) {
+		String cached = stem(word, offset, length);
+		cached.getChars(0, cached.length(), stem, 0);
+		return cached.length();
+	}
+}
@@ -0,0 +1,124 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads the binary document table written by DocumentTableWriter
+ * <br/>
+ * The file is memory-mapped: nothing but the header is read when the
+ * DocumentTable is opened, and getting the name of a document reads its two
+ * offsets and its bytes in place. Resolving the top documents of a query thus
+ * touches a few pages instead of reading the whole document list. <br/>
+ * The documents added since the table was written, e.g: by the generations
+ * after a checkpoint (see IndexDelta), are appended in memory. <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	DocumentTable documents = new DocumentTable(file);
+ * 	String docName = documents.getDocName(docId);
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class DocumentTable {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final MappedByteBuffer _buffer;
+	private final int _noDocuments;
+	private final List<String> _appendedDocNames;
+
+	/**
+	 * Public Constructor <br/>
+	 * Map the binary document table and check its header <br/>
+	 *
+	 * @param file
+	 *            the binary document table
+	 * @throws IOException
+	 *             when the file cannot be opened or is not a document table
+	 */
+	public DocumentTable(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+
+		if (_buffer.limit() < DocumentTableWriter.HEADER_SIZE || _buffer.getInt(0) != DocumentTableWriter.MAGIC
+				|| _buffer.get(4) != DocumentTableWriter.VERSION) {
+			throw new IOException("Not a document table (version " + DocumentTableWriter.VERSION + "): " + file);
+		}
+		_noDocuments = _buffer.getInt(5);
+		_appendedDocNames = new ArrayList<String>();
+	}
+
+	/**
+	 * Private Constructor <br/>
+	 * Share the mapped table of another DocumentTable <br/>
+	 */
+	private DocumentTable(DocumentTable table, List<String> appendedDocNames) {
+		_buffer = table._buffer;
+		_noDocuments = table._noDocuments;
+		_appendedDocNames = appendedDocNames;
+	}
+
+	/**
+	 * Get the table with more documents after the documents of this one <br/>
+	 *
+	 * @param docNames
+	 *            the names of the documents, which get the next docIds in
+	 *            order
+	 * @return the DocumentTable with the documents appended
+	 */
+	public DocumentTable append(List<String> docNames) {
+		if (docNames.isEmpty()) {
+			return this;
+		}
+		ArrayList<String> appendedDocNames = new ArrayList<String>(_appendedDocNames);
+		appendedDocNames.addAll(docNames);
+		return new DocumentTable(this, appendedDocNames);
+	}
+
+	/**
+	 * Number of documents in the table, deleted documents included
+	 *
+	 * @return number of documents
+	 */
+	public int size() {
+		return _noDocuments + _appendedDocNames.size();
+	}
+
+	/**
+	 * Get the name of a document <br/>
+	 *
+	 * @param docId
+	 * @return docName of the document, null if the docId is not in the table
+	 */
+	public String getDocName(int docId) {
+		if (docId >= _noDocuments && docId < size()) {
+			return _appendedDocNames.get(docId - _noDocuments);
+		}
+		if (docId < 0 || docId >= _noDocuments) {
+			return null;
+		}
+		int offset = _buffer.getInt(DocumentTableWriter.HEADER_SIZE + docId * 4);
+		int end = _buffer.getInt(DocumentTableWriter.HEADER_SIZE + (docId + 1) * 4);
+		byte[] name = new byte[end - offset];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = _buffer.get(offset + i);
+		}
+		return new String(name, UTF8);
+	}
+}
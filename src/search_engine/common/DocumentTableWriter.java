@@ -0,0 +1,133 @@
+package search_engine.common;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class writes the binary document table read by DocumentTable <br/>
+ * <br/>
+ * The file starts with a header: <br/>
+ *
+ * <pre>
+ * int MAGIC, byte VERSION, int noDocuments
+ * </pre>
+ *
+ * followed by noDocuments + 1 int offsets, then by the UTF-8 bytes of the
+ * document names, one after the other in docId order. The name of document
+ * docId runs from offset docId to offset docId + 1 of the file. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class DocumentTableWriter {
+	public static final int MAGIC = 0x444F4354; // "DOCT"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 9;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Static Service <br/>
+	 * Make sure an index has a binary document table <br/>
+	 * If the binary table does not exist but the text document list does, the
+	 * binary table is built from it. It is written to a temporary file and
+	 * then moved over the binary table, so it is never read half-written <br/>
+	 *
+	 * @param textFile
+	 *            the text document list, one document name per line, the line
+	 *            number being the docId
+	 * @param binaryFile
+	 *            the binary document table
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void upgrade(File textFile, File binaryFile) throws IOException {
+		if (!binaryFile.exists() && textFile.exists()) {
+			File temporary = Segments.temporaryFile(binaryFile);
+			try {
+				fromText(textFile, temporary);
+				Segments.install(temporary, binaryFile);
+			} finally {
+				temporary.delete();
+			}
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Build the binary document table from a text document list
+	 *
+	 * @param textFile
+	 * @param binaryFile
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void fromText(File textFile, File binaryFile) throws IOException {
+		// Initialise the Stream readers
+		FileInputStream fis = new FileInputStream(textFile);
+		InputStreamReader isr = new InputStreamReader(fis);
+		BufferedReader br = new BufferedReader(isr);
+
+		ArrayList<String> documents = new ArrayList<String>();
+		String nextLine = null;
+		while ((nextLine = br.readLine()) != null) {
+			documents.add(nextLine);
+		}
+
+		// Close stream readers
+		br.close();
+		isr.close();
+		fis.close();
+
+		write(binaryFile, documents);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Write a binary document table, and force it to disk <br/>
+	 *
+	 * @param file
+	 *            the binary document table
+	 * @param documents
+	 *            the document names, the docId of a document being its index
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public static void write(File file, List<String> documents) throws IOException {
+		final int noDocuments = documents.size();
+		byte[][] names = new byte[noDocuments][];
+		for (int i = 0; i < noDocuments; i++) {
+			names[i] = documents.get(i).getBytes(UTF8);
+		}
+
+		FileOutputStream fos = new FileOutputStream(file, false);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(noDocuments);
+
+			int offset = HEADER_SIZE + (noDocuments + 1) * 4;
+			out.writeInt(offset);
+			for (byte[] name : names) {
+				offset += name.length;
+				out.writeInt(offset);
+			}
+			for (byte[] name : names) {
+				out.write(name);
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+}
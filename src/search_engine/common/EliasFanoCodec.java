@@ -0,0 +1,106 @@
+package search_engine.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Elias-Fano postings codec <br/>
+ * The docIds of the block, counted from the docId before the block, are
+ * increasing numbers up to the last one, u. With n postings, each docId is
+ * split into its low l = floor(log2(u / n)) bits, packed one after the other,
+ * and its high bits h, written in unary: the bit h + i of a bit vector of n +
+ * (u >> l) + 1 bits is set for the i-th docId. A docId thus takes at most 2 +
+ * log2(u / n) bits, whatever the gaps between the docIds. The tfs are encoded
+ * as with PFor: <br/>
+ *
+ * <pre>
+ * VByte(u) [packed low bits] x n [high bits vector] [PFor tfs]
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+class EliasFanoCodec extends PostingsCodec {
+	@Override
+	public int id() {
+		return ELIAS_FANO_ID;
+	}
+
+	@Override
+	public String name() {
+		return "EliasFano";
+	}
+
+	@Override
+	public int encode(int[] gaps, int[] tfs, int count, byte[] out, int offset) {
+		int last = 0;
+		for (int i = 0; i < count; i++) {
+			last += gaps[i];
+		}
+		int lowBits = lowBits(last, count);
+		offset = VByte.write(out, offset, last);
+
+		// Low bits, least significant bit first
+		long mask = (1L << lowBits) - 1;
+		long buffer = 0;
+		int noBits = 0;
+		int docId = 0;
+		for (int i = 0; i < count; i++) {
+			docId += gaps[i];
+			buffer |= (docId & mask) << noBits;
+			noBits += lowBits;
+			while (noBits >= 8) {
+				out[offset++] = (byte) buffer;
+				buffer >>>= 8;
+				noBits -= 8;
+			}
+		}
+		if (noBits > 0) {
+			out[offset++] = (byte) buffer;
+		}
+
+		// High bits in unary
+		int noHighBytes = noHighBytes(last, count, lowBits);
+		for (int i = 0; i < noHighBytes; i++) {
+			out[offset + i] = 0;
+		}
+		docId = 0;
+		for (int i = 0; i < count; i++) {
+			docId += gaps[i];
+			int bit = (docId >>> lowBits) + i;
+			out[offset + (bit >>> 3)] |= 1 << (bit & 7);
+		}
+		offset += noHighBytes;
+
+		return PForCodec.encode(tfs, count, out, offset);
+	}
+
+	@Override
+	public void decode(ByteBuffer in, int count, int[] gaps, int[] tfs) {
+		int last = VByte.read(in);
+		int lowBits = lowBits(last, count);
+		unpack(in, count, lowBits, gaps);
+
+		int noHighBytes = noHighBytes(last, count, lowBits);
+		int i = 0;
+		int previous = 0;
+		for (int b = 0; b < noHighBytes; b++) {
+			int bits = in.get() & 0xFF;
+			while (bits != 0 && i < count) {
+				int bit = (b << 3) + Integer.numberOfTrailingZeros(bits);
+				int docId = ((bit - i) << lowBits) | gaps[i];
+				gaps[i++] = docId - previous;
+				previous = docId;
+				bits &= bits - 1;
+			}
+		}
+
+		PForCodec.decode(in, count, tfs);
+	}
+
+	private static int lowBits(int last, int count) {
+		return count > 0 && last / count > 0 ? 31 - Integer.numberOfLeadingZeros(last / count) : 0;
+	}
+
+	private static int noHighBytes(int last, int count, int lowBits) {
+		return (count + (last >>> lowBits) + 1 + 7) / 8;
+	}
+}
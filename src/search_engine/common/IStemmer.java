@@ -3,10 +3,41 @@ package search_engine.common;
 /**
  * Interface for Stemmer <br/>
  * Provides stem () service <br/>
+ * A word can be given as a String or as a slice of a char[], so a caller
+ * that splits a text into a buffer (see Analyzer) hands the slice over
+ * without creating a String for it. The stem of a word is never longer
+ * than the word <br/>
  * 
  * @author ngtrhieu0011
  * 
  */
 public interface IStemmer {
 	public String stem(String word);
+
+	/**
+	 * Stem a slice of characters
+	 * 
+	 * @param word
+	 * @param offset
+	 *            of the first character of the word in word
+	 * @param length
+	 *            of the word
+	 * @return the stem
+	 */
+	public String stem(char[] word, int offset, int length);
+
+	/**
+	 * Stem a slice of characters into a buffer
+	 * 
+	 * @param word
+	 * @param offset
+	 *            of the first character of the word in word
+	 * @param length
+	 *            of the word
+	 * @param stem
+	 *            buffer of at least length characters, the stem is written
+	 *            at its start
+	 * @return the length of the stem
+	 */
+	public int stem(char[] word, int offset, int length, char[] stem);
 }
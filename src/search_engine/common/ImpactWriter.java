@@ -0,0 +1,297 @@
+package search_engine.common;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class writes an impact-ordered postings file <br/>
+ * Where the postings file of PostingsWriter sorts the postings of a term by
+ * docId, the impact-ordered file sorts them by their contribution to the
+ * score of the document, so a searcher can read the highest contributions of
+ * every query term first and stop as soon as the best documents are known.
+ * <br/>
+ * The contribution of a term to a document is its tf-idf weight in the
+ * normalised document vector: <br/>
+ *
+ * <pre>
+ * score = idf * weight(tf) / norm
+ * </pre>
+ *
+ * (see NormsWriter and TermDictionaryWriter). It is quantized on a
+ * logarithmic scale between the lowest and the highest score of the index to
+ * an impact from 1 to MAX_IMPACT, so it fits in one byte and every posting of
+ * a term falls into one of few impact segments. <br/>
+ * <br/>
+ * The file starts with a header: <br/>
+ *
+ * <pre>
+ * int MAGIC, byte VERSION, int noDocuments, long sourceLength, float minScore, float maxScore
+ * </pre>
+ *
+ * where noDocuments and sourceLength are the number of documents of the index
+ * and the length of the postings file the impacts were computed from, which
+ * tell whether the index has changed since. It is followed by one record per
+ * term, made of its impact segments by decreasing impact: <br/>
+ *
+ * <pre>
+ * VByte(noSegments) [VByte(impact) VByte(count) [VByte(docId gap)] x count] x noSegments
+ * </pre>
+ *
+ * The docIds of a segment are increasing, and the gap of the first one is
+ * counted from 0. <br/>
+ * <br/>
+ * A term table is written alongside. It starts with the TABLE_MAGIC number
+ * and the VERSION, followed by one fixed-size entry per vocabularyId: <br/>
+ *
+ * <pre>
+ * long offset, int length, int df
+ * </pre>
+ *
+ * A vocabularyId without postings has offset -1. <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	ImpactWriter writer = new ImpactWriter(file, termTableFile, noDocuments, sourceLength, minScore, maxScore);
+ * 	writer.addTerm(vocabularyId, docIds, impacts, df); // in increasing vocabularyId order
+ * 	writer.close();
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class ImpactWriter {
+	public static final int MAGIC = 0x494D5042; // "IMPB"
+	public static final int TABLE_MAGIC = 0x494D5049; // "IMPI"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 25;
+	public static final int TABLE_HEADER_SIZE = 5;
+	public static final int TABLE_ENTRY_SIZE = 16;
+	public static final int MAX_IMPACT = 255;
+
+	private final File _file;
+	private final File _termTableFile;
+	private DataOutputStream _out;
+	private DataOutputStream _table;
+	private long _offset = 0;
+	private int _lastVocabularyId = -1;
+	private final int[] _counts = new int[MAX_IMPACT + 1];
+	private final int[] _starts = new int[MAX_IMPACT + 1];
+	private int[] _sorted = new int[0];
+
+	/**
+	 * Public Constructor <br/>
+	 * Create (or truncate) the impact-ordered postings file and its term
+	 * table, and write their headers <br/>
+	 *
+	 * @param file
+	 *            the impact-ordered postings file
+	 * @param termTableFile
+	 *            its term table
+	 * @param noDocuments
+	 *            number of documents of the index
+	 * @param sourceLength
+	 *            length of the postings file the impacts are computed from
+	 * @param minScore
+	 *            the lowest score quantized
+	 * @param maxScore
+	 *            the highest score quantized
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public ImpactWriter(File file, File termTableFile, int noDocuments, long sourceLength, float minScore,
+			float maxScore) throws IOException {
+		_file = file;
+		_termTableFile = termTableFile;
+
+		_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+		_out.writeInt(MAGIC);
+		_out.writeByte(VERSION);
+		_out.writeInt(noDocuments);
+		_out.writeLong(sourceLength);
+		_out.writeFloat(minScore);
+		_out.writeFloat(maxScore);
+		_offset = HEADER_SIZE;
+
+		_table = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(termTableFile, false)));
+		_table.writeInt(TABLE_MAGIC);
+		_table.writeByte(VERSION);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Quantize a score to an impact <br/>
+	 * The range from minScore to maxScore is cut into MAX_IMPACT buckets of
+	 * the same ratio, so every score is rounded with the same relative error
+	 * <br/>
+	 *
+	 * @param score
+	 * @param minScore
+	 *            the lowest score of the index
+	 * @param maxScore
+	 *            the highest score of the index
+	 * @return the impact, from 1 to MAX_IMPACT
+	 */
+	public static int quantize(double score, double minScore, double maxScore) {
+		if (!(maxScore > minScore) || !(score > minScore)) {
+			return 1;
+		}
+		int impact = 1 + (int) (MAX_IMPACT * Math.log(score / minScore) / Math.log(maxScore / minScore));
+		return Math.min(impact, MAX_IMPACT);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the score an impact stands for: the geometric middle of its bucket
+	 *
+	 * @param impact
+	 *            from 1 to MAX_IMPACT
+	 * @param minScore
+	 *            the lowest score of the index
+	 * @param maxScore
+	 *            the highest score of the index
+	 * @return the score
+	 */
+	public static double dequantize(int impact, double minScore, double maxScore) {
+		if (!(maxScore > minScore)) {
+			return maxScore;
+		}
+		return minScore * Math.pow(maxScore / minScore, (impact - 0.5) / MAX_IMPACT);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the lowest score quantized to an impact: the bottom of its bucket.
+	 * Impact 1 also holds the postings with a score of 0 <br/>
+	 *
+	 * @param impact
+	 *            from 1 to MAX_IMPACT
+	 * @param minScore
+	 *            the lowest score of the index
+	 * @param maxScore
+	 *            the highest score of the index
+	 * @return the score
+	 */
+	public static double lowerBound(int impact, double minScore, double maxScore) {
+		if (impact <= 1 || !(maxScore > minScore)) {
+			return 0;
+		}
+		return minScore * Math.pow(maxScore / minScore, (double) (impact - 1) / MAX_IMPACT);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the highest score quantized to an impact: the top of its bucket <br/>
+	 *
+	 * @param impact
+	 *            from 1 to MAX_IMPACT
+	 * @param minScore
+	 *            the lowest score of the index
+	 * @param maxScore
+	 *            the highest score of the index
+	 * @return the score
+	 */
+	public static double upperBound(int impact, double minScore, double maxScore) {
+		if (!(maxScore > minScore)) {
+			return maxScore;
+		}
+		return minScore * Math.pow(maxScore / minScore, (double) impact / MAX_IMPACT);
+	}
+
+	/**
+	 * Write the postings of a term, sorted into impact segments <br/>
+	 * Terms must be added in increasing vocabularyId order <br/>
+	 *
+	 * @param vocabularyId
+	 * @param docIds
+	 *            the docIds of the postings, in increasing order
+	 * @param impacts
+	 *            the impact of each posting
+	 * @param df
+	 *            number of postings of the term
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void addTerm(int vocabularyId, int[] docIds, int[] impacts, int df) throws IOException {
+		assert vocabularyId > _lastVocabularyId;
+
+		// Leave the vocabularyIds without postings empty in the term table
+		for (int i = _lastVocabularyId + 1; i < vocabularyId; i++) {
+			writeTableEntry(-1, 0, 0);
+		}
+		_lastVocabularyId = vocabularyId;
+
+		// Counting sort by decreasing impact, which keeps the docIds of an
+		// impact in increasing order
+		Arrays.fill(_counts, 0);
+		for (int i = 0; i < df; i++) {
+			_counts[impacts[i]]++;
+		}
+		int noSegments = 0;
+		int start = 0;
+		for (int impact = MAX_IMPACT; impact >= 1; impact--) {
+			_starts[impact] = start;
+			start += _counts[impact];
+			if (_counts[impact] > 0) {
+				noSegments++;
+			}
+		}
+		if (_sorted.length < df) {
+			_sorted = new int[Math.max(df, _sorted.length * 2)];
+		}
+		for (int i = 0; i < df; i++) {
+			_sorted[_starts[impacts[i]]++] = docIds[i];
+		}
+
+		long termOffset = _offset;
+		_offset += VByte.write(_out, noSegments);
+		for (int impact = MAX_IMPACT; impact >= 1; impact--) {
+			if (_counts[impact] == 0) {
+				continue;
+			}
+			_offset += VByte.write(_out, impact);
+			_offset += VByte.write(_out, _counts[impact]);
+			// the start of the segment has been moved to its end
+			int lastDocId = 0;
+			for (int i = _starts[impact] - _counts[impact]; i < _starts[impact]; i++) {
+				_offset += VByte.write(_out, _sorted[i] - lastDocId);
+				lastDocId = _sorted[i];
+			}
+		}
+		writeTableEntry(termOffset, (int) (_offset - termOffset), df);
+	}
+
+	/**
+	 * Flush and close the files, and force them to disk
+	 *
+	 * @throws IOException
+	 *             when the files cannot be written
+	 */
+	public void close() throws IOException {
+		_out.close();
+		_table.close();
+		Segments.sync(_file);
+		Segments.sync(_termTableFile);
+	}
+
+	/**
+	 * Write one entry of the term table
+	 *
+	 * @param offset
+	 * @param length
+	 * @param df
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	private void writeTableEntry(long offset, int length, int df) throws IOException {
+		_table.writeLong(offset);
+		_table.writeInt(length);
+		_table.writeInt(df);
+	}
+}
@@ -0,0 +1,377 @@
+package search_engine.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds a commit point of an index: the generation of its
+ * dictionary, document and tombstones files, its live segments and its
+ * shards <br/>
+ * Every commit of a SegmentedIndex that changes the documents writes a new
+ * generation: the files of generation 7 are named {@code gen_7.dictionary.bin}
+ * , {@code gen_7.documents.bin}, {@code gen_7.deleted.bin}... and are never
+ * modified afterwards. The commit point is the manifest, which is replaced
+ * atomically, so a reader that reads the manifest once and opens the files it
+ * names sees one consistent version of the index, however the index is
+ * changed meanwhile. <br/>
+ * Generation 0 is the index written by the Indexer, whose files have no
+ * prefix. A manifest written before generations were introduced is read as
+ * generation 0. <br/>
+ * The whole dictionary and document files are only written by the
+ * checkpoint generations. The generations after the checkpoint only have the
+ * changes of their flush (see IndexDelta), so a flush does not write files as
+ * large as the index. The files of the checkpoint and of every generation
+ * after it are kept. A manifest without checkpoint is its own checkpoint.
+ * <br/>
+ * <br/>
+ * The manifest is written as: <br/>
+ *
+ * <pre>
+ * generation 7
+ * checkpoint 5
+ * base true
+ * seg_12
+ * seg_15
+ * </pre>
+ *
+ * where base tells whether the postings file of the Indexer is part of the
+ * index, followed by the live segments, oldest first. An index split into
+ * shards (see Shards) also lists its shards, with the first docId of each:
+ * <br/>
+ *
+ * <pre>
+ * split 2
+ * shard shard_2_0 0
+ * shard shard_2_1 1000
+ * </pre>
+ *
+ * where split is the number of the last split. The shards are only kept by
+ * the commit they were split from: a commit written by a SegmentedIndex has
+ * none. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class IndexCommit {
+	private static final String GENERATION_KEY = "generation ";
+	private static final String CHECKPOINT_KEY = "checkpoint ";
+	private static final String BASE_KEY = "base ";
+	private static final String SPLIT_KEY = "split ";
+	private static final String SHARD_KEY = "shard ";
+	private static final String GENERATION_PREFIX = "gen_";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	private final int _generation;
+	private final int _checkpoint;
+	private final boolean _hasBase;
+	private final List<String> _segments;
+	private final Shards _shards;
+
+	/**
+	 * Public Constructor <br/>
+	 *
+	 * @param generation
+	 *            of the dictionary, document and tombstones files
+	 * @param hasBase
+	 *            true if the postings file of the Indexer is part of the index
+	 * @param segments
+	 *            the names of the live segments, oldest first
+	 */
+	public IndexCommit(int generation, boolean hasBase, List<String> segments) {
+		this(generation, generation, hasBase, segments);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 *
+	 * @param generation
+	 *            of the dictionary, document and tombstones files
+	 * @param checkpoint
+	 *            the last generation with the whole dictionary, document and
+	 *            tombstones files, at most generation
+	 * @param hasBase
+	 *            true if the postings file of the Indexer is part of the index
+	 * @param segments
+	 *            the names of the live segments, oldest first
+	 */
+	public IndexCommit(int generation, int checkpoint, boolean hasBase, List<String> segments) {
+		this(generation, checkpoint, hasBase, segments, Shards.none());
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 *
+	 * @param generation
+	 *            of the dictionary, document and tombstones files
+	 * @param checkpoint
+	 *            the last generation with the whole dictionary, document and
+	 *            tombstones files, at most generation
+	 * @param hasBase
+	 *            true if the postings file of the Indexer is part of the index
+	 * @param segments
+	 *            the names of the live segments, oldest first
+	 * @param shards
+	 *            the shards the index is split into, none if it is not
+	 */
+	public IndexCommit(int generation, int checkpoint, boolean hasBase, List<String> segments, Shards shards) {
+		_generation = generation;
+		_checkpoint = checkpoint;
+		_hasBase = hasBase;
+		_segments = Collections.unmodifiableList(new ArrayList<String>(segments));
+		_shards = shards;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Read the last commit point of the index in the working directory <br/>
+	 *
+	 * @return the commit point. Generation 0 with the postings file of the
+	 *         Indexer and no segment if the index has no manifest
+	 * @throws IOException
+	 *             when the manifest cannot be read
+	 */
+	public static IndexCommit read() throws IOException {
+		int generation = 0;
+		int checkpoint = -1;
+		boolean hasBase = true;
+		ArrayList<String> segments = new ArrayList<String>();
+		int split = -1;
+		ArrayList<String> shards = new ArrayList<String>();
+		int[] firstDocIds = new int[0];
+		File manifest = new File(Segments.MANIFEST_FILE);
+		if (!manifest.exists()) {
+			return new IndexCommit(generation, hasBase, segments);
+		}
+
+		// Initialise the Stream readers
+		FileInputStream fis = new FileInputStream(manifest);
+		InputStreamReader isr = new InputStreamReader(fis);
+		BufferedReader br = new BufferedReader(isr);
+
+		try {
+			String nextLine = null;
+			while ((nextLine = br.readLine()) != null) {
+				if (nextLine.startsWith(GENERATION_KEY)) {
+					generation = Integer.parseInt(nextLine.substring(GENERATION_KEY.length()));
+				} else if (nextLine.startsWith(CHECKPOINT_KEY)) {
+					checkpoint = Integer.parseInt(nextLine.substring(CHECKPOINT_KEY.length()));
+				} else if (nextLine.startsWith(BASE_KEY)) {
+					hasBase = Boolean.parseBoolean(nextLine.substring(BASE_KEY.length()));
+				} else if (nextLine.startsWith(SPLIT_KEY)) {
+					split = Integer.parseInt(nextLine.substring(SPLIT_KEY.length()));
+				} else if (nextLine.startsWith(SHARD_KEY)) {
+					String[] tokens = nextLine.substring(SHARD_KEY.length()).split(" ");
+					firstDocIds = Arrays.copyOf(firstDocIds, shards.size() + 1);
+					firstDocIds[shards.size()] = Integer.parseInt(tokens[1]);
+					shards.add(tokens[0]);
+				} else if (!nextLine.isEmpty()) {
+					segments.add(nextLine);
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Not a manifest: " + manifest, e);
+		} finally {
+			// Close stream readers
+			br.close();
+			isr.close();
+			fis.close();
+		}
+
+		return new IndexCommit(generation, checkpoint < 0 ? generation : checkpoint, hasBase, segments, new Shards(
+				split, shards, firstDocIds));
+	}
+
+	/**
+	 * Make this commit point the last one <br/>
+	 * The manifest is written to a temporary file, forced to disk and moved
+	 * over the manifest, so a reader sees either the previous commit point or
+	 * this one <br/>
+	 *
+	 * @throws IOException
+	 *             when the manifest cannot be written
+	 */
+	public void write() throws IOException {
+		File manifest = new File(Segments.MANIFEST_FILE);
+		File temporary = new File(Segments.MANIFEST_FILE + TEMPORARY_SUFFIX);
+
+		// Initialise the Stream writers
+		FileOutputStream fos = new FileOutputStream(temporary, false);
+		OutputStreamWriter osw = new OutputStreamWriter(fos);
+		BufferedWriter bw = new BufferedWriter(osw);
+
+		bw.write(GENERATION_KEY + _generation + "\n");
+		bw.write(CHECKPOINT_KEY + _checkpoint + "\n");
+		bw.write(BASE_KEY + _hasBase + "\n");
+		for (String segment : _segments) {
+			bw.write(segment + "\n");
+		}
+		if (_shards.getSplit() >= 0) {
+			bw.write(SPLIT_KEY + _shards.getSplit() + "\n");
+		}
+		for (int shard = 0; shard < _shards.size(); shard++) {
+			bw.write(SHARD_KEY + _shards.getName(shard) + " " + _shards.getFirstDocId(shard) + "\n");
+		}
+
+		// Close stream writers
+		bw.flush();
+		fos.getFD().sync();
+		bw.close();
+		osw.close();
+		fos.close();
+
+		Segments.install(temporary, manifest);
+	}
+
+	/**
+	 * Getter for the generation of the dictionary, document and tombstones
+	 * files
+	 *
+	 * @return generation
+	 */
+	public int getGeneration() {
+		return _generation;
+	}
+
+	/**
+	 * Getter for the last generation with the whole dictionary, document and
+	 * tombstones files
+	 *
+	 * @return checkpoint generation
+	 */
+	public int getCheckpoint() {
+		return _checkpoint;
+	}
+
+	/**
+	 * Check whether the postings file of the Indexer is part of the index
+	 *
+	 * @return true if the postings file, if any, is to be read
+	 */
+	public boolean hasBase() {
+		return _hasBase;
+	}
+
+	/**
+	 * Getter for the live segments
+	 *
+	 * @return the names of the live segments, oldest first
+	 */
+	public List<String> getSegments() {
+		return _segments;
+	}
+
+	/**
+	 * Getter for the shards
+	 *
+	 * @return the shards the index is split into, none if it is not
+	 */
+	public Shards getShards() {
+		return _shards;
+	}
+
+	/**
+	 * Two commit points are equal when they name the same files <br/>
+	 */
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof IndexCommit)) {
+			return false;
+		}
+		IndexCommit commit = (IndexCommit) object;
+		return _generation == commit._generation && _checkpoint == commit._checkpoint
+				&& _hasBase == commit._hasBase && _segments.equals(commit._segments)
+				&& _shards.equals(commit._shards);
+	}
+
+	@Override
+	public int hashCode() {
+		return ((_generation * 31 + _checkpoint) * 31 + _segments.hashCode()) * 31 + _shards.hashCode();
+	}
+
+	/**
+	 * Get the prefix of the files of the checkpoint of this generation
+	 *
+	 * @return the prefix, empty for generation 0
+	 */
+	public String getPrefix() {
+		return prefix(_checkpoint);
+	}
+
+	/**
+	 * Get a file of the checkpoint of this generation, which the changes of
+	 * the following generations are applied to (see IndexDelta)
+	 *
+	 * @param fileName
+	 *            the name of the file in generation 0, e.g: dictionary.bin
+	 * @return the file
+	 */
+	public File file(String fileName) {
+		return new File(getPrefix() + fileName);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the prefix of the files of a generation
+	 *
+	 * @param generation
+	 * @return the prefix, empty for generation 0
+	 */
+	public static String prefix(int generation) {
+		return generation == 0 ? "" : GENERATION_PREFIX + generation + ".";
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Delete the files of every generation but one <br/>
+	 * A reader that has opened the files of an older generation keeps reading
+	 * them. A reader that has not opened them yet fails, and reads the
+	 * manifest again <br/>
+	 *
+	 * @param generation
+	 *            the generation to keep
+	 */
+	public static void deleteOtherGenerations(int generation) {
+		deleteOtherGenerations(generation, generation);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Delete the files of every generation out of a range: the generations a
+	 * commit needs, from its checkpoint to its generation <br/>
+	 *
+	 * @param checkpoint
+	 *            the first generation to keep
+	 * @param generation
+	 *            the last generation to keep
+	 */
+	public static void deleteOtherGenerations(int checkpoint, int generation) {
+		File[] files = new File(".").listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String fileName = file.getName();
+			int dot = fileName.indexOf('.');
+			if (dot < 0 || !fileName.startsWith(GENERATION_PREFIX)) {
+				continue;
+			}
+			try {
+				int fileGeneration = Integer.parseInt(fileName.substring(GENERATION_PREFIX.length(), dot));
+				if (fileGeneration < checkpoint || fileGeneration > generation) {
+					file.delete();
+				}
+			} catch (NumberFormatException e) {
+				// Not a file of a generation
+			}
+		}
+	}
+}
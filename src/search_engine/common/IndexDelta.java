@@ -0,0 +1,296 @@
+package search_engine.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class holds the changes a generation of a SegmentedIndex made to the
+ * dictionary and the document list <br/>
+ * A flush only writes what its documents changed: the words of the flushed
+ * documents with their new df, the documents added and the documents
+ * deleted. The whole dictionary and document list are only written at a
+ * checkpoint (see IndexCommit), and a reader applies the deltas of the
+ * generations after the checkpoint, in order, to the files of the checkpoint.
+ * <br/>
+ * <br/>
+ * Generation 7 has the files {@code gen_7.dictionary.delta}, one word per
+ * line in increasing vocabularyId order: <br/>
+ *
+ * <pre>
+ * vocabularyId word df
+ * </pre>
+ *
+ * where a vocabularyId past the end of the dictionary is a new word, and
+ * {@code gen_7.documents.delta}, one change per line: <br/>
+ *
+ * <pre>
+ * + docName
+ * - docId
+ * </pre>
+ *
+ * where the names added get the next docIds, in order. Both files are written
+ * for every generation which is not a checkpoint, even if empty, so a reader
+ * can tell an empty delta from a delta deleted with its generation. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class IndexDelta {
+	private static final String DICTIONARY_FILE = "dictionary.delta";
+	private static final String DOCUMENT_FILE = "documents.delta";
+	private static final String DELIMITOR = " ";
+	private static final String ADDED = "+ ";
+	private static final String DELETED = "- ";
+
+	// The words in the order they were first changed, so new words keep
+	// increasing vocabularyIds
+	private final LinkedHashMap<String, Integer> _vocabularyIds = new LinkedHashMap<String, Integer>();
+	private final HashMap<String, Integer> _dfs = new HashMap<String, Integer>();
+	private final ArrayList<String> _docNames = new ArrayList<String>();
+	private final ArrayList<Integer> _deletedDocIds = new ArrayList<Integer>();
+
+	/**
+	 * Default Constructor <br/>
+	 * An empty delta <br/>
+	 */
+	public IndexDelta() {
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Read the deltas of every generation of a commit after its checkpoint,
+	 * combined in order <br/>
+	 *
+	 * @param commit
+	 *            the commit point
+	 * @return the changes since the checkpoint, empty if the commit is a
+	 *         checkpoint
+	 * @throws IOException
+	 *             when a delta cannot be read, e.g: FileNotFoundException if
+	 *             it has been deleted with its generation
+	 */
+	public static IndexDelta read(IndexCommit commit) throws IOException {
+		IndexDelta delta = new IndexDelta();
+		for (int generation = commit.getCheckpoint() + 1; generation <= commit.getGeneration(); generation++) {
+			delta.readFrom(IndexCommit.prefix(generation));
+		}
+		return delta;
+	}
+
+	/**
+	 * Change the df of a word, or add a new word <br/>
+	 *
+	 * @param vocabularyId
+	 *            of the word
+	 * @param word
+	 * @param df
+	 *            the df of the word after the change
+	 */
+	public void setTerm(int vocabularyId, String word, int df) {
+		if (!_vocabularyIds.containsKey(word)) {
+			_vocabularyIds.put(word, vocabularyId);
+		}
+		_dfs.put(word, df);
+	}
+
+	/**
+	 * Add a document <br/>
+	 *
+	 * @param docName
+	 *            the name of the document, which gets the next docId
+	 */
+	public void addDocument(String docName) {
+		_docNames.add(docName);
+	}
+
+	/**
+	 * Delete a document <br/>
+	 *
+	 * @param docId
+	 */
+	public void deleteDocument(int docId) {
+		_deletedDocIds.add(docId);
+	}
+
+	/**
+	 * Get the words changed, in the order they were first changed <br/>
+	 *
+	 * @return the words
+	 */
+	public Set<String> getWords() {
+		return Collections.unmodifiableSet(_vocabularyIds.keySet());
+	}
+
+	/**
+	 * Get the vocabularyId of a word changed <br/>
+	 *
+	 * @param word
+	 * @return the vocabularyId, -1 if the word has not been changed
+	 */
+	public int getVocabularyId(String word) {
+		Integer vocabularyId = _vocabularyIds.get(word);
+		return vocabularyId == null ? -1 : vocabularyId;
+	}
+
+	/**
+	 * Get the df of a word changed <br/>
+	 *
+	 * @param word
+	 * @return the last df of the word, -1 if the word has not been changed
+	 */
+	public int getDf(String word) {
+		Integer df = _dfs.get(word);
+		return df == null ? -1 : df;
+	}
+
+	/**
+	 * Getter for the documents added <br/>
+	 *
+	 * @return the names of the documents added, in docId order
+	 */
+	public List<String> getDocNames() {
+		return Collections.unmodifiableList(_docNames);
+	}
+
+	/**
+	 * Getter for the documents deleted <br/>
+	 *
+	 * @return the docIds of the documents deleted
+	 */
+	public List<Integer> getDeletedDocIds() {
+		return Collections.unmodifiableList(_deletedDocIds);
+	}
+
+	/**
+	 * Number of changes <br/>
+	 *
+	 * @return number of lines of the delta files
+	 */
+	public int size() {
+		return _vocabularyIds.size() + _docNames.size() + _deletedDocIds.size();
+	}
+
+	/**
+	 * Check whether there is no change <br/>
+	 *
+	 * @return true if the delta is empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Write the delta files of a generation, and force them to disk <br/>
+	 *
+	 * @param prefix
+	 *            of the files of the generation (see IndexCommit)
+	 * @throws IOException
+	 *             when the files cannot be written
+	 */
+	public void write(String prefix) throws IOException {
+		// The words are written in increasing vocabularyId order
+		ArrayList<String> words = new ArrayList<String>(_vocabularyIds.keySet());
+		Collections.sort(words, new Comparator<String>() {
+			@Override
+			public int compare(String word1, String word2) {
+				return Integer.compare(_vocabularyIds.get(word1), _vocabularyIds.get(word2));
+			}
+		});
+		ArrayList<String> lines = new ArrayList<String>(words.size());
+		for (String word : words) {
+			lines.add(_vocabularyIds.get(word) + DELIMITOR + word + DELIMITOR + _dfs.get(word));
+		}
+		writeLines(new File(prefix + DICTIONARY_FILE), lines);
+
+		lines = new ArrayList<String>(_docNames.size() + _deletedDocIds.size());
+		for (String docName : _docNames) {
+			lines.add(ADDED + docName);
+		}
+		for (int docId : _deletedDocIds) {
+			lines.add(DELETED + docId);
+		}
+		writeLines(new File(prefix + DOCUMENT_FILE), lines);
+	}
+
+	/**
+	 * Add the changes of the delta files of a generation
+	 */
+	private void readFrom(String prefix) throws IOException {
+		File dictionaryFile = new File(prefix + DICTIONARY_FILE);
+		try {
+			for (String line : readLines(dictionaryFile)) {
+				String[] tokens = line.split(DELIMITOR);
+				setTerm(Integer.parseInt(tokens[0]), tokens[1], Integer.parseInt(tokens[2]));
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Not a dictionary delta: " + dictionaryFile, e);
+		}
+
+		File documentFile = new File(prefix + DOCUMENT_FILE);
+		try {
+			for (String line : readLines(documentFile)) {
+				if (line.startsWith(ADDED)) {
+					addDocument(line.substring(ADDED.length()));
+				} else {
+					deleteDocument(Integer.parseInt(line.substring(DELETED.length())));
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Not a document delta: " + documentFile, e);
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+
+		// Initialise the Stream readers
+		FileInputStream fis = new FileInputStream(file);
+		InputStreamReader isr = new InputStreamReader(fis);
+		BufferedReader br = new BufferedReader(isr);
+
+		try {
+			String nextLine = null;
+			while ((nextLine = br.readLine()) != null) {
+				if (!nextLine.isEmpty()) {
+					lines.add(nextLine);
+				}
+			}
+		} finally {
+			// Close stream readers
+			br.close();
+			isr.close();
+			fis.close();
+		}
+		return lines;
+	}
+
+	private static void writeLines(File file, List<String> lines) throws IOException {
+		// Initialise the Stream writers
+		FileOutputStream fos = new FileOutputStream(file, false);
+		OutputStreamWriter osw = new OutputStreamWriter(fos);
+		BufferedWriter bw = new BufferedWriter(osw);
+
+		for (String line : lines) {
+			bw.write(line + "\n");
+		}
+
+		// Close stream writers
+		bw.flush();
+		fos.getFD().sync();
+		bw.close();
+		osw.close();
+		fos.close();
+	}
+}
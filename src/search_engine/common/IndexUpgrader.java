@@ -0,0 +1,96 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class upgrades the index written by the Indexer in the working
+ * directory to the current binary format <br/>
+ * An index written before the binary files were introduced only has the text
+ * dictionary, document list and postings files. The binary document table,
+ * term dictionary, postings file and term table are built from them, and a
+ * term table of an older version is rewritten. The searcher never writes the
+ * index: it only reads the binary files, so an old index is to be upgraded
+ * once, by this migration or by the first SegmentedIndex or ShardWriter run
+ * on it, before it is searched. <br/>
+ * Each file is written to a temporary file and moved over the file of the
+ * index, so an upgrade interrupted by a crash can be done again <br/>
+ * <br/>
+ * Syntax: (no argument) <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class IndexUpgrader {
+	private static final String DICTIONARY_FILE = "dictionary.bin";
+	private static final String TEXT_DICTIONARY_FILE = "dictionary.txt";
+	private static final String DOCUMENT_FILE = "documents.bin";
+	private static final String TEXT_DOCUMENT_FILE = "documents.txt";
+	private static final String POSTING_FILE = "postings.bin";
+	private static final String TEXT_POSTING_FILE = "postings.txt";
+	private static final String TERM_TABLE_FILE = "postings.idx";
+	private static final String POSITIONS_FILE = "positions.bin";
+
+	/**
+	 * Static Service <br/>
+	 * Make sure the index in the working directory has every binary file <br/>
+	 * Nothing is written if the index is already in the current format <br/>
+	 *
+	 * @return true if a file has been written
+	 * @throws IOException
+	 *             when the files cannot be read or written
+	 */
+	public static boolean upgrade() throws IOException {
+		boolean isUpgraded = needsUpgrade();
+
+		DocumentTableWriter.upgrade(new File(TEXT_DOCUMENT_FILE), new File(DOCUMENT_FILE));
+		File documentFile = new File(DOCUMENT_FILE);
+		if (documentFile.exists()) {
+			// The idf of the dictionary is computed from the number of documents
+			int noDocuments = new DocumentTable(documentFile).size();
+			TermDictionaryWriter.upgrade(new File(TEXT_DICTIONARY_FILE), new File(DICTIONARY_FILE), noDocuments);
+		}
+		PostingsConverter.upgrade(new File(TEXT_POSTING_FILE), new File(POSTING_FILE), new File(TERM_TABLE_FILE),
+				new File(POSITIONS_FILE));
+		return isUpgraded;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Check whether the index in the working directory is to be upgraded
+	 *
+	 * @return true if a binary file is missing or out of date
+	 * @throws IOException
+	 *             when the term table cannot be read
+	 */
+	public static boolean needsUpgrade() throws IOException {
+		File postingFile = new File(POSTING_FILE);
+		return isMissing(DOCUMENT_FILE, TEXT_DOCUMENT_FILE) || isMissing(DICTIONARY_FILE, TEXT_DICTIONARY_FILE)
+				|| isMissing(POSTING_FILE, TEXT_POSTING_FILE)
+				|| (postingFile.exists() && !PostingsConverter.isCurrentTermTable(new File(TERM_TABLE_FILE)));
+	}
+
+	/**
+	 * Check whether a binary file is to be built from its text file
+	 */
+	private static boolean isMissing(String binaryFile, String textFile) {
+		return !new File(binaryFile).exists() && new File(textFile).exists();
+	}
+
+	/**
+	 * Upgrade the index in the working directory <br/>
+	 * Syntax: (no argument) <br/>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		try {
+			if (upgrade()) {
+				System.out.println("The index has been upgraded");
+			} else {
+				System.out.println("The index is up to date");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads the document norms written by NormsWriter <br/>
+ * The file is memory-mapped, and the norm of a document is read in place, so
+ * only the norms of the documents scored are touched. <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	Norms norms = new Norms(file);
+ * 	double cosine = dotProduct / norms.get(docId);
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class Norms {
+	private final ByteBuffer _buffer;
+	private final int _firstDocId;
+	private final int _noDocuments;
+
+	/**
+	 * Public Constructor <br/>
+	 * Map the norms file and check its header <br/>
+	 *
+	 * @param file
+	 *            the norms file
+	 * @throws IOException
+	 *             when the file cannot be opened or is not a norms file
+	 */
+	public Norms(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+
+		if (_buffer.limit() < NormsWriter.HEADER_SIZE || _buffer.getInt(0) != NormsWriter.MAGIC
+				|| _buffer.get(4) != NormsWriter.VERSION) {
+			throw new IOException("Not a norms file (version " + NormsWriter.VERSION + "): " + file);
+		}
+		_firstDocId = _buffer.getInt(5);
+		_noDocuments = Math.min(_buffer.getInt(9), (_buffer.limit() - NormsWriter.HEADER_SIZE) / 4);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Hold norms computed in memory, for a postings file written without its
+	 * norms file <br/>
+	 *
+	 * @param norms
+	 *            the norm of every docId, from 0
+	 */
+	public Norms(float[] norms) {
+		_buffer = ByteBuffer.allocate(NormsWriter.HEADER_SIZE + norms.length * 4);
+		_buffer.position(NormsWriter.HEADER_SIZE);
+		_buffer.asFloatBuffer().put(norms);
+		_firstDocId = 0;
+		_noDocuments = norms.length;
+	}
+
+	/**
+	 * Get the norm of a document
+	 *
+	 * @param docId
+	 * @return the norm, 0 if the document has no postings in the file
+	 */
+	public float get(int docId) {
+		int index = docId - _firstDocId;
+		if (index < 0 || index >= _noDocuments) {
+			return 0;
+		}
+		return _buffer.getFloat(NormsWriter.HEADER_SIZE + index * 4);
+	}
+}
@@ -0,0 +1,112 @@
+package search_engine.common;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class writes the document norms read by Norms <br/>
+ * The norm of a document is the length of its vector of term weights, the
+ * weight of a term being {@code 1 + log10(tf)}: <br/>
+ *
+ * <pre>
+ * norm = sqrt(sum over the terms of the document of weight(tf) ^ 2)
+ * </pre>
+ *
+ * It only depends on the document itself, so it never changes once the
+ * document is indexed, and the searcher divides by it to score the document
+ * by the cosine of the angle with the query. <br/>
+ * The norms are accumulated from the postings as they are written (see
+ * PostingsWriter), so every postings file has the norms of its documents.
+ * <br/>
+ * <br/>
+ * The file starts with a header: <br/>
+ *
+ * <pre>
+ * int MAGIC, byte VERSION, int firstDocId, int noDocuments
+ * </pre>
+ *
+ * followed by the float norm of every docId from firstDocId to firstDocId +
+ * noDocuments - 1, 0 for a docId without postings in the file. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class NormsWriter {
+	public static final int MAGIC = 0x4E524D53; // "NRMS"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 13;
+
+	private final File _file;
+	private double[] _squares = new double[1024];
+	private int _firstDocId = Integer.MAX_VALUE;
+	private int _lastDocId = -1;
+
+	/**
+	 * Public Constructor <br/>
+	 * Nothing is written until close() <br/>
+	 *
+	 * @param file
+	 *            the norms file
+	 */
+	public NormsWriter(File file) {
+		_file = file;
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the weight of a term in a document
+	 *
+	 * @param tf
+	 *            the frequency of the term in the document, at least 1
+	 * @return the weight
+	 */
+	public static double weight(int tf) {
+		return 1 + Math.log10(tf);
+	}
+
+	/**
+	 * Add a posting to the norm of its document
+	 *
+	 * @param docId
+	 * @param tf
+	 */
+	public void add(int docId, int tf) {
+		if (docId >= _squares.length) {
+			_squares = Arrays.copyOf(_squares, Math.max(docId + 1, _squares.length * 2));
+		}
+		double weight = weight(tf);
+		_squares[docId] += weight * weight;
+		_firstDocId = Math.min(_firstDocId, docId);
+		_lastDocId = Math.max(_lastDocId, docId);
+	}
+
+	/**
+	 * Write the norms of every document added, and force the file to disk
+	 *
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void close() throws IOException {
+		int firstDocId = _lastDocId < 0 ? 0 : _firstDocId;
+		int noDocuments = _lastDocId - firstDocId + 1;
+
+		FileOutputStream fos = new FileOutputStream(_file, false);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(firstDocId);
+			out.writeInt(noDocuments);
+			for (int docId = firstDocId; docId <= _lastDocId; docId++) {
+				out.writeFloat((float) Math.sqrt(_squares[docId]));
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package search_engine.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The PForDelta postings codec <br/>
+ * The gaps of the block, then its tfs, are each packed with a single bit
+ * width: the one that makes them the smallest. The numbers too large for it,
+ * the exceptions, keep their low bits in the packed numbers and their high
+ * bits are patched in afterwards. A few large gaps thus cost a few bytes each,
+ * instead of widening every number of the block: <br/>
+ *
+ * <pre>
+ * byte(bits) VByte(noExceptions) [packed low bits] x count [VByte(index) VByte(high bits)] x noExceptions
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+class PForCodec extends PostingsCodec {
+	@Override
+	public int id() {
+		return PFOR_ID;
+	}
+
+	@Override
+	public String name() {
+		return "PFor";
+	}
+
+	@Override
+	public int encode(int[] gaps, int[] tfs, int count, byte[] out, int offset) {
+		offset = encode(gaps, count, out, offset);
+		return encode(tfs, count, out, offset);
+	}
+
+	@Override
+	public void decode(ByteBuffer in, int count, int[] gaps, int[] tfs) {
+		decode(in, count, gaps);
+		decode(in, count, tfs);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Encode numbers with the bit width that makes them the smallest
+	 *
+	 * @param values
+	 *            non-negative numbers
+	 * @param count
+	 *            number of values
+	 * @param out
+	 *            the buffer
+	 * @param offset
+	 *            where to start writing
+	 * @return the offset after the last byte written
+	 */
+	static int encode(int[] values, int count, byte[] out, int offset) {
+		int maxBits = 0;
+		for (int i = 0; i < count; i++) {
+			maxBits = Math.max(maxBits, bitWidth(values[i]));
+		}
+		int bits = maxBits;
+		int bestSize = size(values, count, maxBits);
+		for (int b = maxBits - 1; b >= 0; b--) {
+			int size = size(values, count, b);
+			if (size < bestSize) {
+				bits = b;
+				bestSize = size;
+			}
+		}
+
+		int noExceptions = 0;
+		for (int i = 0; i < count; i++) {
+			if (bitWidth(values[i]) > bits) {
+				noExceptions++;
+			}
+		}
+		out[offset++] = (byte) bits;
+		offset = VByte.write(out, offset, noExceptions);
+		offset = pack(values, count, bits, out, offset);
+		for (int i = 0; i < count; i++) {
+			if (bitWidth(values[i]) > bits) {
+				offset = VByte.write(out, offset, i);
+				offset = VByte.write(out, offset, values[i] >>> bits);
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Decode numbers encoded by encode() at the position of a buffer
+	 *
+	 * @param in
+	 *            the buffer
+	 * @param count
+	 *            number of values
+	 * @param values
+	 *            filled with the values
+	 */
+	static void decode(ByteBuffer in, int count, int[] values) {
+		int bits = in.get();
+		int noExceptions = VByte.read(in);
+		unpack(in, count, bits, values);
+		for (int i = 0; i < noExceptions; i++) {
+			int index = VByte.read(in);
+			values[index] |= VByte.read(in) << bits;
+		}
+	}
+
+	/**
+	 * Number of bytes of the numbers packed with a bit width, exceptions
+	 * included
+	 */
+	private static int size(int[] values, int count, int bits) {
+		int size = (count * bits + 7) / 8;
+		for (int i = 0; i < count; i++) {
+			if (bitWidth(values[i]) > bits) {
+				size += VByte.size(i) + VByte.size(values[i] >>> bits);
+			}
+		}
+		return size;
+	}
+}
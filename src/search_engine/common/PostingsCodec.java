@@ -0,0 +1,276 @@
+package search_engine.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class encodes the postings of a block into bytes <br/>
+ * A PostingsWriter cuts the postings of a term into blocks of SKIP_INTERVAL
+ * postings, and the codec of the postings file encodes each block as a whole:
+ * the gaps between the docIds of the block, the first one counted from the
+ * docId before the block, and the tf of each posting. A block is decoded as a
+ * whole too, so a codec can pack the numbers of a block together instead of
+ * spending at least a byte on each of them. <br/>
+ * The codecs trade the size of the postings for the speed of decoding them:
+ * <br/>
+ * 1. VBYTE: VByte gap and tf of every posting, the format of version 3
+ * postings files <br/>
+ * 2. SIMPLE8B: the gaps then the tfs packed into 64-bit words, each word
+ * holding as many numbers of the same bit width as fit (Simple-8b) <br/>
+ * 3. PFOR: the gaps then the tfs packed with the bit width that makes the
+ * block the smallest, the few numbers too large for it being patched
+ * afterwards (PForDelta) <br/>
+ * 4. ELIAS_FANO: the docIds of the block split into low bits, packed, and
+ * high bits, written in unary in a bit vector (Elias-Fano), and the tfs as
+ * with PFOR <br/>
+ * The packed codecs only pay off on long postings: a short block has headers
+ * and padding of its own, and on the 976 documents of the crawl every other
+ * codec is larger than VByte (see PostingsCodecBenchmark), which stays the
+ * default. <br/>
+ * The codec of an index is chosen when it is written (see IndexBuilder,
+ * ParallelIndexBuilder, Indexer and SegmentedIndex), and recorded in the
+ * header of its postings files, so merges keep it. The terms held in a
+ * RoaringBitmap have their tfs encoded with encodeTfs() whatever the codec.
+ * PostingsCodecBenchmark
+ * compares the codecs on a postings file. <br/>
+ * <br/>
+ * <b>Note:</b> a codec keeps no state, so one instance is shared by every
+ * thread <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	byte[] bytes = new byte[PostingsCodec.maxEncodedSize(count)];
+ * 	int length = codec.encode(gaps, tfs, count, bytes, 0);
+ * 	codec.decode(ByteBuffer.wrap(bytes, 0, length), count, gaps, tfs);
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public abstract class PostingsCodec {
+	public static final int VBYTE_ID = 0;
+	public static final int SIMPLE8B_ID = 1;
+	public static final int PFOR_ID = 2;
+	public static final int ELIAS_FANO_ID = 3;
+
+	public static final PostingsCodec VBYTE = new VByteCodec();
+	public static final PostingsCodec SIMPLE8B = new Simple8bCodec();
+	public static final PostingsCodec PFOR = new PForCodec();
+	public static final PostingsCodec ELIAS_FANO = new EliasFanoCodec();
+
+	private static final PostingsCodec[] CODECS = { VBYTE, SIMPLE8B, PFOR, ELIAS_FANO };
+
+	/**
+	 * Static Getter <br/>
+	 * Find the codec recorded in a postings file
+	 *
+	 * @param id
+	 *            of the codec
+	 * @return the codec, null if no codec has this id
+	 */
+	public static PostingsCodec forId(int id) {
+		return id >= 0 && id < CODECS.length ? CODECS[id] : null;
+	}
+
+	/**
+	 * Static Getter <br/>
+	 * Find a codec by name, e.g: to choose it on the command line
+	 *
+	 * @param name
+	 *            of the codec, in any case
+	 * @return the codec, null if no codec has this name
+	 */
+	public static PostingsCodec forName(String name) {
+		for (PostingsCodec codec : CODECS) {
+			if (codec.name().equalsIgnoreCase(name)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Static Getter <br/>
+	 * Get every codec
+	 *
+	 * @return the codecs, by id
+	 */
+	public static PostingsCodec[] codecs() {
+		return CODECS.clone();
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Bound the size of an encoded block, so a buffer for it can be allocated
+	 * once
+	 *
+	 * @param count
+	 *            number of postings of the block
+	 * @return the largest number of bytes any codec writes for the block
+	 */
+	public static int maxEncodedSize(int count) {
+		return 16 * count + 16;
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Encode the tfs of a block of a term whose docIds are held in a
+	 * RoaringBitmap (see PostingsWriter). They are packed as with PFOR,
+	 * whatever the codec of the file
+	 *
+	 * @param tfs
+	 * @param count
+	 *            number of postings of the block
+	 * @param out
+	 *            large enough for maxEncodedSize(count) bytes
+	 * @param offset
+	 *            where to write
+	 * @return the offset after the block
+	 */
+	public static int encodeTfs(int[] tfs, int count, byte[] out, int offset) {
+		return PForCodec.encode(tfs, count, out, offset);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Decode the tfs written by encodeTfs()
+	 *
+	 * @param in
+	 *            positioned on the block, and left after it
+	 * @param count
+	 *            number of postings of the block
+	 * @param tfs
+	 *            filled with the tfs
+	 */
+	public static void decodeTfs(ByteBuffer in, int count, int[] tfs) {
+		PForCodec.decode(in, count, tfs);
+	}
+
+	/**
+	 * Getter <br/>
+	 *
+	 * @return the id recorded in the postings files
+	 */
+	public abstract int id();
+
+	/**
+	 * Getter <br/>
+	 *
+	 * @return the name of the codec
+	 */
+	public abstract String name();
+
+	/**
+	 * Encode a block of postings
+	 *
+	 * @param gaps
+	 *            the docId gaps of the postings, non-negative
+	 * @param tfs
+	 *            the tf of each posting, non-negative
+	 * @param count
+	 *            number of postings
+	 * @param out
+	 *            the buffer, with room for maxEncodedSize(count) bytes
+	 * @param offset
+	 *            where to start writing
+	 * @return the offset after the last byte written
+	 */
+	public abstract int encode(int[] gaps, int[] tfs, int count, byte[] out, int offset);
+
+	/**
+	 * Decode a block of postings at the position of a buffer, and move the
+	 * position past it
+	 *
+	 * @param in
+	 *            the buffer
+	 * @param count
+	 *            number of postings of the block
+	 * @param gaps
+	 *            filled with the docId gaps
+	 * @param tfs
+	 *            filled with the tfs
+	 */
+	public abstract void decode(ByteBuffer in, int count, int[] gaps, int[] tfs);
+
+	@Override
+	public String toString() {
+		return name();
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Number of bits needed to write a number
+	 *
+	 * @param value
+	 *            non-negative number
+	 * @return the bit width, 0 for 0
+	 */
+	static int bitWidth(int value) {
+		return 32 - Integer.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Pack the low bits of numbers one after the other, least significant bit
+	 * first
+	 *
+	 * @param values
+	 * @param count
+	 *            number of values
+	 * @param bits
+	 *            bit width of each value, from 0 to 32
+	 * @param out
+	 *            the buffer
+	 * @param offset
+	 *            where to start writing
+	 * @return the offset after the last byte written
+	 */
+	static int pack(int[] values, int count, int bits, byte[] out, int offset) {
+		long mask = (1L << bits) - 1;
+		long buffer = 0;
+		int noBits = 0;
+		for (int i = 0; i < count; i++) {
+			buffer |= (values[i] & mask) << noBits;
+			noBits += bits;
+			while (noBits >= 8) {
+				out[offset++] = (byte) buffer;
+				buffer >>>= 8;
+				noBits -= 8;
+			}
+		}
+		if (noBits > 0) {
+			out[offset++] = (byte) buffer;
+		}
+		return offset;
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Unpack numbers packed by pack() at the position of a buffer
+	 *
+	 * @param in
+	 *            the buffer
+	 * @param count
+	 *            number of values
+	 * @param bits
+	 *            bit width of each value, from 0 to 32
+	 * @param values
+	 *            filled with the values
+	 */
+	static void unpack(ByteBuffer in, int count, int bits, int[] values) {
+		long mask = (1L << bits) - 1;
+		long buffer = 0;
+		int noBits = 0;
+		for (int i = 0; i < count; i++) {
+			while (noBits < bits) {
+				buffer |= (in.get() & 0xFFL) << noBits;
+				noBits += 8;
+			}
+			values[i] = (int) (buffer & mask);
+			buffer >>>= bits;
+			noBits -= bits;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * This class compares the postings codecs on a real postings file <br/>
+ * The postings of every term are cut into the blocks of SKIP_INTERVAL
+ * postings PostingsWriter encodes, and every block is encoded and decoded
+ * with each codec. The size of the encoded blocks and the encoding and
+ * decoding speeds are printed, in millions of postings per second. Every
+ * block is checked to decode to the postings it was encoded from. <br/>
+ * The blocks alone do not tell the size of the index: in a postings file, a
+ * block of a codec other than VByte is preceded by its length, and a dense
+ * term is written as a bitmap whenever it is smaller than the blocks of the
+ * codec. The postings are thus also written to a postings file with each
+ * codec, whose size is printed, also relative to VByte, followed by the
+ * smallest codec. <br/>
+ * On the 976 documents of the crawl, PFor and Elias-Fano blocks are 10% and
+ * 7% smaller than VByte blocks, but the postings file of the index built
+ * with any other codec is larger than with VByte: VByte 499,992 bytes, PFor
+ * 573,683, Elias-Fano 591,122 and Simple-8b 628,672, as most terms have a
+ * single short block. Run the
+ * benchmark on the index to choose its codec. <br/>
+ * A text postings file is converted to the binary format first, in a
+ * temporary file. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class PostingsCodecBenchmark {
+	private static final int WARM_UP_ROUNDS = 20;
+	private static final int ROUNDS = 20;
+
+	private final ArrayList<int[]> _gaps = new ArrayList<int[]>();
+	private final ArrayList<int[]> _tfs = new ArrayList<int[]>();
+	private long _noPostings = 0;
+	// sum of the postings decoded, so the decoding is not optimised away
+	private long _checksum = 0;
+
+	/**
+	 * Public Constructor <br/>
+	 * Read the postings of a binary postings file into blocks <br/>
+	 *
+	 * @param binaryFile
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public PostingsCodecBenchmark(File binaryFile) throws IOException {
+		PostingsReader reader = new PostingsReader(binaryFile);
+		try {
+			int[] gaps = new int[PostingsWriter.SKIP_INTERVAL];
+			int[] tfs = new int[PostingsWriter.SKIP_INTERVAL];
+			while (reader.nextTerm()) {
+				int count = 0;
+				int lastDocId = 0;
+				while (reader.nextPosting()) {
+					gaps[count] = reader.docId() - lastDocId;
+					tfs[count] = reader.tf();
+					lastDocId = reader.docId();
+					count++;
+					if (count == PostingsWriter.SKIP_INTERVAL) {
+						addBlock(gaps, tfs, count);
+						count = 0;
+					}
+				}
+				if (count > 0) {
+					addBlock(gaps, tfs, count);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void addBlock(int[] gaps, int[] tfs, int count) {
+		int[] blockGaps = new int[count];
+		int[] blockTfs = new int[count];
+		System.arraycopy(gaps, 0, blockGaps, 0, count);
+		System.arraycopy(tfs, 0, blockTfs, 0, count);
+		_gaps.add(blockGaps);
+		_tfs.add(blockTfs);
+		_noPostings += count;
+	}
+
+	/**
+	 * Encode every block with a codec
+	 *
+	 * @param codec
+	 * @param out
+	 *            large enough for every block
+	 * @return the number of bytes written
+	 */
+	private int encode(PostingsCodec codec, byte[] out) {
+		int offset = 0;
+		for (int i = 0; i < _gaps.size(); i++) {
+			int[] gaps = _gaps.get(i);
+			offset = codec.encode(gaps, _tfs.get(i), gaps.length, out, offset);
+		}
+		return offset;
+	}
+
+	/**
+	 * Decode every block with a codec
+	 *
+	 * @param codec
+	 * @param in
+	 *            the encoded blocks
+	 * @param isChecked
+	 *            whether to compare the postings decoded to the original ones
+	 */
+	private void decode(PostingsCodec codec, ByteBuffer in, boolean isChecked) {
+		int[] gaps = new int[PostingsWriter.SKIP_INTERVAL];
+		int[] tfs = new int[PostingsWriter.SKIP_INTERVAL];
+		in.position(0);
+		for (int i = 0; i < _gaps.size(); i++) {
+			int[] expectedGaps = _gaps.get(i);
+			int count = expectedGaps.length;
+			codec.decode(in, count, gaps, tfs);
+			_checksum += gaps[count - 1] + tfs[count - 1];
+			if (isChecked) {
+				int[] expectedTfs = _tfs.get(i);
+				for (int j = 0; j < count; j++) {
+					if (gaps[j] != expectedGaps[j] || tfs[j] != expectedTfs[j]) {
+						throw new IllegalStateException(codec + " decodes block " + i + " wrong at posting " + j);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Write a postings file again with a codec, without positions, and get
+	 * its size <br/>
+	 *
+	 * @param binaryFile
+	 * @param codec
+	 * @return the number of bytes of the postings file written
+	 * @throws IOException
+	 *             when the files cannot be read or written
+	 */
+	public static long fileSize(File binaryFile, PostingsCodec codec) throws IOException {
+		File copyFile = File.createTempFile("postings", ".bin");
+		try {
+			PostingsReader reader = new PostingsReader(binaryFile);
+			PostingsWriter writer = new PostingsWriter(copyFile, null, null, null, codec);
+			try {
+				while (reader.nextTerm()) {
+					writer.startTerm(reader.vocabularyId(), reader.df());
+					while (reader.nextPosting()) {
+						writer.addPosting(reader.docId(), reader.tf());
+					}
+				}
+			} finally {
+				writer.close();
+				reader.close();
+			}
+			return copyFile.length();
+		} finally {
+			copyFile.delete();
+		}
+	}
+
+	/**
+	 * Measure a codec and print one line of the results
+	 *
+	 * @param codec
+	 * @param fileBytes
+	 *            the size of the postings file written with the codec
+	 * @param vbyteFileBytes
+	 *            the size of the postings file written with VByte, which the
+	 *            size is compared to
+	 */
+	public void run(PostingsCodec codec, long fileBytes, long vbyteFileBytes) {
+		byte[] out = new byte[PostingsCodec.maxEncodedSize(PostingsWriter.SKIP_INTERVAL) * _gaps.size()];
+		int noBytes = encode(codec, out);
+		ByteBuffer in = ByteBuffer.wrap(out, 0, noBytes);
+		decode(codec, in, true);
+
+		for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+			encode(codec, out);
+			decode(codec, in, false);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			encode(codec, out);
+		}
+		long encodeTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			decode(codec, in, false);
+		}
+		long decodeTime = System.nanoTime() - start;
+
+		double postings = (double) _noPostings * ROUNDS;
+		System.out.println(String.format("%-12s %12d %10.2f %12d %+9.1f%% %12.1f %12.1f", codec.name(), noBytes,
+				8.0 * noBytes / _noPostings, fileBytes, 100.0 * (fileBytes - vbyteFileBytes) / vbyteFileBytes,
+				postings * 1000 / encodeTime, postings * 1000 / decodeTime));
+	}
+
+	/**
+	 * Entry point of the benchmark <br/>
+	 *
+	 * Syntax: [postings_file] <br/>
+	 * The postings file defaults to postings.txt <br/>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length > 1) {
+			System.out.println("Syntax: [postings_file]");
+			return;
+		}
+
+		File file = new File(args.length == 1 ? args[0] : "postings.txt");
+		File binaryFile = null;
+		try {
+			if (file.getName().endsWith(".txt")) {
+				binaryFile = File.createTempFile("postings", ".bin");
+				PostingsConverter.toBinary(file, binaryFile);
+				file = binaryFile;
+			}
+			PostingsCodecBenchmark benchmark = new PostingsCodecBenchmark(file);
+			System.out.println(benchmark._noPostings + " postings in " + benchmark._gaps.size() + " blocks");
+			System.out.println(String.format("%-12s %12s %10s %12s %10s %12s %12s", "codec", "block bytes",
+					"bits/post", "file bytes", "vs VByte", "encode M/s", "decode M/s"));
+			long vbyteFileBytes = fileSize(file, PostingsCodec.VBYTE);
+			PostingsCodec smallest = null;
+			long smallestFileBytes = Long.MAX_VALUE;
+			for (PostingsCodec codec : PostingsCodec.codecs()) {
+				long fileBytes = fileSize(file, codec);
+				benchmark.run(codec, fileBytes, vbyteFileBytes);
+				if (fileBytes < smallestFileBytes) {
+					smallest = codec;
+					smallestFileBytes = fileBytes;
+				}
+			}
+			System.out.println("smallest postings file: " + smallest.name());
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (binaryFile != null) {
+				binaryFile.delete();
+			}
+		}
+	}
+}
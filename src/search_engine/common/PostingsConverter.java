@@ -0,0 +1,359 @@
+package search_engine.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+/**
+ * This class converts a postings file between the legacy text format and the
+ * binary format of PostingsWriter <br/>
+ * In the text format, line i holds the postings of vocabularyId i as
+ * {@code docId,tf} pairs, each followed by a space. <br/>
+ * <br/>
+ * Syntax: toBinary|toText input_file output_file [term_table_file] <br/>
+ * i.e: toBinary official_results/final/postings.txt postings.bin postings.idx
+ * <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class PostingsConverter {
+	private static final String TUPLE_DELIMITOR = " ";
+	private static final String FIELD_DELIMITOR = ",";
+
+	/**
+	 * Static Service <br/>
+	 * Make sure an index has a binary postings file and its term table <br/>
+	 * If the binary file does not exist but the legacy text file does, the
+	 * text file is converted once, so indexes built before the binary format
+	 * still load. If only the term table is missing, it is rebuilt from the
+	 * binary file <br/>
+	 *
+	 * @param textFile
+	 *            the legacy text postings file
+	 * @param binaryFile
+	 *            the binary postings file
+	 * @param termTableFile
+	 *            the term table of the binary postings file
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void upgrade(File textFile, File binaryFile, File termTableFile) throws IOException {
+		upgrade(textFile, binaryFile, termTableFile, null);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Make sure an index has a binary postings file and an up-to-date term
+	 * table <br/>
+	 * If the binary file does not exist but the legacy text file does, the
+	 * text file is converted once. The text format has no positions, so the
+	 * converted index has none either. If the term table is missing or has an
+	 * older version, it is rebuilt from the binary file and, if it exists, the
+	 * positions file <br/>
+	 * The files are written to temporary files and then moved over the files
+	 * of the index, so none is ever read half-written. The files are moved one
+	 * at a time, so the index is to be upgraded before it is searched (see
+	 * IndexUpgrader) <br/>
+	 *
+	 * @param textFile
+	 *            the legacy text postings file
+	 * @param binaryFile
+	 *            the binary postings file
+	 * @param termTableFile
+	 *            the term table of the binary postings file
+	 * @param positionsFile
+	 *            the positions file of the binary postings file, null if the
+	 *            index has no positions
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void upgrade(File textFile, File binaryFile, File termTableFile, File positionsFile)
+			throws IOException {
+		if (!binaryFile.exists()) {
+			if (textFile.exists()) {
+				File convertedFile = Segments.temporaryFile(binaryFile);
+				File convertedTermTableFile = Segments.temporaryFile(termTableFile);
+				try {
+					toBinary(textFile, convertedFile, convertedTermTableFile);
+					Segments.sync(convertedFile);
+					Segments.sync(convertedTermTableFile);
+					// Positions left over from another index would not match
+					if (positionsFile != null) {
+						positionsFile.delete();
+					}
+					// The postings file is moved last, as it tells the index
+					// has been converted
+					Segments.install(convertedTermTableFile, termTableFile);
+					Segments.install(convertedFile, binaryFile);
+				} finally {
+					convertedFile.delete();
+					convertedTermTableFile.delete();
+				}
+			}
+		} else if (!isCurrentTermTable(termTableFile)) {
+			if (positionsFile != null && !positionsFile.exists()) {
+				positionsFile = null;
+			}
+			File rewrittenFile = Segments.temporaryFile(binaryFile);
+			File rewrittenPositionsFile = positionsFile == null ? null : Segments.temporaryFile(positionsFile);
+			File rewrittenTermTableFile = Segments.temporaryFile(termTableFile);
+			try {
+				copy(binaryFile, positionsFile, rewrittenFile, rewrittenPositionsFile, rewrittenTermTableFile);
+				Segments.sync(rewrittenFile);
+				Segments.sync(rewrittenTermTableFile);
+				if (rewrittenPositionsFile != null) {
+					Segments.sync(rewrittenPositionsFile);
+				}
+				Segments.install(rewrittenFile, binaryFile);
+				if (positionsFile != null) {
+					Segments.install(rewrittenPositionsFile, positionsFile);
+				}
+				// The term table is moved last, as it tells the index has been
+				// upgraded
+				Segments.install(rewrittenTermTableFile, termTableFile);
+			} finally {
+				rewrittenFile.delete();
+				rewrittenTermTableFile.delete();
+				if (rewrittenPositionsFile != null) {
+					rewrittenPositionsFile.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Check whether a term table exists and has the current TABLE_VERSION
+	 *
+	 * @param termTableFile
+	 * @return true if the term table can be used as is
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public static boolean isCurrentTermTable(File termTableFile) throws IOException {
+		if (!termTableFile.exists() || termTableFile.length() < PostingsWriter.TABLE_HEADER_SIZE) {
+			return false;
+		}
+
+		DataInputStream in = new DataInputStream(new FileInputStream(termTableFile));
+		try {
+			return in.readInt() == PostingsWriter.TABLE_MAGIC && in.readByte() == PostingsWriter.TABLE_VERSION;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Convert a text postings file into a binary postings file, without term
+	 * table
+	 *
+	 * @param textFile
+	 * @param binaryFile
+	 * @throws IOException
+	 *             when the files cannot be opened, or the text file is not
+	 *             syntactically correct
+	 */
+	public static void toBinary(File textFile, File binaryFile) throws IOException {
+		toBinary(textFile, binaryFile, null);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Convert a text postings file into a binary postings file
+	 *
+	 * @param textFile
+	 * @param binaryFile
+	 * @param termTableFile
+	 *            the term table to write, null for no term table
+	 * @throws IOException
+	 *             when the files cannot be opened, or the text file is not
+	 *             syntactically correct
+	 */
+	public static void toBinary(File textFile, File binaryFile, File termTableFile) throws IOException {
+		// Initialise the Stream readers
+		FileInputStream fis = new FileInputStream(textFile);
+		InputStreamReader isr = new InputStreamReader(fis);
+		BufferedReader br = new BufferedReader(isr);
+
+		PostingsWriter writer = new PostingsWriter(binaryFile, termTableFile);
+
+		String nextLine = null;
+		int vocabularyId = 0;
+		int[] docIds = new int[16];
+		int[] tfs = new int[16];
+		try {
+			while ((nextLine = br.readLine()) != null) {
+				String[] tokens = nextLine.trim().split(TUPLE_DELIMITOR);
+				int df = 0;
+				for (String token : tokens) {
+					if (token.isEmpty()) {
+						continue;
+					}
+					if (df == docIds.length) {
+						docIds = grow(docIds);
+						tfs = grow(tfs);
+					}
+					String[] fields = token.split(FIELD_DELIMITOR);
+					docIds[df] = Integer.parseInt(fields[0]);
+					tfs[df] = Integer.parseInt(fields[1]);
+					df++;
+				}
+
+				if (df > 0) {
+					writer.startTerm(vocabularyId, df);
+					for (int i = 0; i < df; i++) {
+						writer.addPosting(docIds[i], tfs[i]);
+					}
+				}
+				vocabularyId++;
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Bad postings at line " + (vocabularyId + 1) + " of " + textFile, e);
+		} finally {
+			writer.close();
+			br.close();
+			isr.close();
+			fis.close();
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Copy a binary postings file term by term, writing a new term table
+	 *
+	 * @param binaryFile
+	 * @param copyFile
+	 * @param termTableFile
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void copy(File binaryFile, File copyFile, File termTableFile) throws IOException {
+		copy(binaryFile, null, copyFile, null, termTableFile);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Copy a binary postings file and its positions term by term, writing a
+	 * new term table
+	 *
+	 * @param binaryFile
+	 * @param positionsFile
+	 *            null for no positions
+	 * @param copyFile
+	 * @param copyPositionsFile
+	 *            null for no positions
+	 * @param termTableFile
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void copy(File binaryFile, File positionsFile, File copyFile, File copyPositionsFile,
+			File termTableFile) throws IOException {
+		PostingsReader reader = new PostingsReader(binaryFile, positionsFile);
+		PostingsWriter writer = new PostingsWriter(copyFile, termTableFile, positionsFile == null ? null
+				: copyPositionsFile);
+		try {
+			while (reader.nextTerm()) {
+				writer.startTerm(reader.vocabularyId(), reader.df());
+				while (reader.nextPosting()) {
+					writer.addPosting(reader.docId(), reader.tf());
+					if (reader.hasPositions()) {
+						for (int i = 0; i < reader.tf(); i++) {
+							writer.addPosition(reader.nextPosition());
+						}
+					}
+				}
+			}
+		} finally {
+			writer.close();
+			reader.close();
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Convert a binary postings file into a text postings file
+	 *
+	 * @param binaryFile
+	 * @param textFile
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void toText(File binaryFile, File textFile) throws IOException {
+		PostingsReader reader = new PostingsReader(binaryFile);
+
+		// Initialise the Stream writers
+		FileOutputStream fos = new FileOutputStream(textFile, false);
+		OutputStreamWriter osw = new OutputStreamWriter(fos);
+		BufferedWriter bw = new BufferedWriter(osw);
+
+		int nextVocabularyId = 0;
+		StringBuilder line = new StringBuilder();
+		try {
+			while (reader.nextTerm()) {
+				// Keep the line number equal to the vocabularyId
+				for (; nextVocabularyId < reader.vocabularyId(); nextVocabularyId++) {
+					bw.write("\n");
+				}
+
+				line.setLength(0);
+				while (reader.nextPosting()) {
+					line.append(reader.docId()).append(FIELD_DELIMITOR).append(reader.tf()).append(TUPLE_DELIMITOR);
+				}
+				bw.write(line.append("\n").toString());
+				nextVocabularyId++;
+			}
+		} finally {
+			reader.close();
+			bw.close();
+			osw.close();
+			fos.close();
+		}
+	}
+
+	/**
+	 * Double the size of an array
+	 *
+	 * @param array
+	 * @return the larger copy
+	 */
+	private static int[] grow(int[] array) {
+		int[] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	/**
+	 * Entry point of the converter <br/>
+	 *
+	 * Syntax: toBinary|toText input_file output_file [term_table_file] <br/>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3 && args.length != 4) {
+			System.out.println("Syntax: toBinary|toText input_file output_file [term_table_file]");
+			return;
+		}
+
+		try {
+			File input = new File(args[1]);
+			File output = new File(args[2]);
+			if (args[0].equals("toBinary")) {
+				toBinary(input, output, args.length == 4 ? new File(args[3]) : null);
+			} else if (args[0].equals("toText")) {
+				toText(input, output);
+			} else {
+				System.out.println("Unknown conversion: " + args[0]);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
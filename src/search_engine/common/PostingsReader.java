@@ -0,0 +1,459 @@
+package search_engine.common;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class reads a binary postings file written by PostingsWriter <br/>
+ * The file is read sequentially, term by term, and the postings of each term
+ * are decoded one at a time into the reader itself: no object is created per
+ * term or per posting. <br/>
+ * An empty file is read as an index without any term. The skip data of the
+ * terms is not needed to read the postings in order, and is passed over.
+ * <br/>
+ * The postings of a file encoded with another PostingsCodec than VByte are
+ * decoded a block at a time into two reusable arrays. The docIds of a bitmap
+ * term are read from its RoaringBitmap, and its tfs a block at a time. <br/>
+ * When a positions file is given, the positions of the current posting are
+ * read with nextPosition(). <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	PostingsReader reader = new PostingsReader(file);
+ * 	while (reader.nextTerm()) {
+ * 		while (reader.nextPosting()) {
+ * 			use(reader.vocabularyId(), reader.docId(), reader.tf());
+ * 			for (int i = 0; i &lt; reader.tf(); i++) {
+ * 				use(reader.nextPosition()); // if positional
+ * 			}
+ * 		}
+ * 	}
+ * 	reader.close();
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class PostingsReader {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private FileInputStream _in;
+	private final byte[] _buffer = new byte[BUFFER_SIZE];
+	private int _position = 0;
+	private int _limit = 0;
+
+	private int _vocabularyId = -1;
+	private int _df = 0;
+	private int _noPostingsLeft = 0;
+	private int _docId = 0;
+	private int _tf = 0;
+	private int _version = 0;
+
+	// The postings of the current block, if the codec is not VByte or the
+	// term is a bitmap term
+	private PostingsCodec _codec;
+	private final ByteBuffer _blockBuffer = ByteBuffer.wrap(_buffer);
+	private int[] _blockGaps;
+	private final int[] _blockTfs = new int[PostingsWriter.SKIP_INTERVAL];
+	private int _blockIndex = 0;
+	private int _blockSize = 0;
+	private RoaringBitmap _bitmap;
+
+	private InputStream _positions;
+	private int _lastPosition = 0;
+	private int _noPositionsLeft = 0;
+
+	/**
+	 * Public Constructor <br/>
+	 * Open the postings file and check its header <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @throws IOException
+	 *             when the file cannot be opened or is not a postings file
+	 */
+	public PostingsReader(File file) throws IOException {
+		this(file, null);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Open the postings file and its positions file, and check their headers
+	 * <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @param positionsFile
+	 *            the positions file, null for no positions
+	 * @throws IOException
+	 *             when the files cannot be opened or are not postings and
+	 *             positions files
+	 */
+	public PostingsReader(File file, File positionsFile) throws IOException {
+		_in = new FileInputStream(file);
+		if (fill()) {
+			int magic = 0;
+			for (int i = 0; i < 4; i++) {
+				magic = (magic << 8) | readByte();
+			}
+			int version = readByte();
+			if (magic != PostingsWriter.MAGIC || version < 1 || version > PostingsWriter.VERSION) {
+				close();
+				throw new IOException("Not a postings file (version " + PostingsWriter.VERSION + "): " + file);
+			}
+			_version = version;
+			if (version >= 4) {
+				_codec = PostingsCodec.forId(readByte());
+				if (_codec == null) {
+					close();
+					throw new IOException("Unknown postings codec: " + file);
+				}
+				if (_codec != PostingsCodec.VBYTE) {
+					_blockGaps = new int[PostingsWriter.SKIP_INTERVAL];
+				}
+			}
+		}
+
+		if (positionsFile != null) {
+			_positions = new BufferedInputStream(new FileInputStream(positionsFile), BUFFER_SIZE);
+			int magic = 0;
+			for (int i = 0; i < 4; i++) {
+				magic = (magic << 8) | readPositionByte();
+			}
+			int version = readPositionByte();
+			if (magic != PostingsWriter.POSITIONS_MAGIC || version < 1 || version > PostingsWriter.VERSION) {
+				close();
+				throw new IOException("Not a positions file (version " + PostingsWriter.VERSION + "): "
+						+ positionsFile);
+			}
+		}
+	}
+
+	/**
+	 * Check whether positions are read
+	 *
+	 * @return true if the reader has a positions file
+	 */
+	public boolean hasPositions() {
+		return _positions != null;
+	}
+
+	/**
+	 * Move to the next term <br/>
+	 * The postings and positions of the current term that have not been read
+	 * are skipped <br/>
+	 *
+	 * @return true if there is a next term, false at the end of the file
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public boolean nextTerm() throws IOException {
+		while (_noPostingsLeft > 0) {
+			nextPosting();
+		}
+		while (_noPositionsLeft > 0) {
+			nextPosition();
+		}
+		if (_version >= 2 && _df > PostingsWriter.SKIP_INTERVAL) {
+			int noSkips = (_df - 1) / PostingsWriter.SKIP_INTERVAL;
+			for (int i = _version == 2 ? 3 * noSkips : 1 + 4 * noSkips; i > 0; i--) {
+				readVByte();
+			}
+		}
+		_df = 0;
+
+		if (_position == _limit && !fill()) {
+			return false;
+		}
+
+		_vocabularyId += readVByte();
+		_df = readVByte();
+		_bitmap = null;
+		if (_version >= 5) {
+			// the df of a version 5 file is doubled, plus one for a bitmap term
+			boolean isBitmap = (_df & 1) != 0;
+			_df >>>= 1;
+			if (isBitmap) {
+				_bitmap = RoaringBitmap.read(gather(readVByte()));
+			}
+		}
+		_noPostingsLeft = _df;
+		_docId = 0;
+		_tf = 0;
+		_blockIndex = 0;
+		_blockSize = 0;
+		return true;
+	}
+
+	/**
+	 * Move to the next posting of the current term
+	 *
+	 * @return true if there is a next posting, false if every posting of the
+	 *         term has been read
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public boolean nextPosting() throws IOException {
+		if (_noPostingsLeft == 0) {
+			return false;
+		}
+		// Skip the positions of the previous posting that have not been read
+		while (_noPositionsLeft > 0) {
+			nextPosition();
+		}
+
+		if (_bitmap != null) {
+			if (_blockIndex == _blockSize) {
+				readTfBlock();
+			}
+			_docId = _bitmap.nextValue(_noPostingsLeft == _df ? 0 : _docId + 1);
+			_tf = _blockTfs[_blockIndex];
+			_blockIndex++;
+		} else if (_blockGaps == null) {
+			_docId += readVByte();
+			_tf = readVByte();
+		} else {
+			if (_blockIndex == _blockSize) {
+				readBlock();
+			}
+			_docId += _blockGaps[_blockIndex];
+			_tf = _blockTfs[_blockIndex];
+			_blockIndex++;
+		}
+		_noPostingsLeft--;
+		_lastPosition = 0;
+		_noPositionsLeft = _positions != null ? _tf : 0;
+		return true;
+	}
+
+	/**
+	 * Read the next position of the current posting <br/>
+	 * A posting has tf positions, in increasing order <br/>
+	 *
+	 * @return the position, -1 if every position of the posting has been read
+	 *         or the reader has no positions file
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public int nextPosition() throws IOException {
+		if (_noPositionsLeft == 0) {
+			return -1;
+		}
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readPositionByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		_lastPosition += value;
+		_noPositionsLeft--;
+		return _lastPosition;
+	}
+
+	/**
+	 * Getter <br/>
+	 *
+	 * @return the codec the postings are encoded with
+	 */
+	public PostingsCodec codec() {
+		return _codec != null ? _codec : PostingsCodec.VBYTE;
+	}
+
+	/**
+	 * Getter for the vocabularyId of the current term
+	 *
+	 * @return vocabularyId
+	 */
+	public int vocabularyId() {
+		return _vocabularyId;
+	}
+
+	/**
+	 * Getter for the document frequency (df) of the current term
+	 *
+	 * @return df
+	 */
+	public int df() {
+		return _df;
+	}
+
+	/**
+	 * Getter for the docId of the current posting
+	 *
+	 * @return docId
+	 */
+	public int docId() {
+		return _docId;
+	}
+
+	/**
+	 * Getter for the term frequency (tf) of the current posting
+	 *
+	 * @return tf
+	 */
+	public int tf() {
+		return _tf;
+	}
+
+	/**
+	 * Close the file
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (_in != null) {
+			_in.close();
+			_in = null;
+		}
+		if (_positions != null) {
+			_positions.close();
+			_positions = null;
+		}
+	}
+
+	/**
+	 * Decode a VByte number from the buffer
+	 *
+	 * @return the number
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	private int readVByte() throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Decode the next block of postings of the current term
+	 *
+	 * @throws IOException
+	 *             when the file cannot be read or ends too early
+	 */
+	private void readBlock() throws IOException {
+		ByteBuffer block = gather(readVByte());
+		_blockSize = Math.min(_noPostingsLeft, PostingsWriter.SKIP_INTERVAL);
+		_codec.decode(block, _blockSize, _blockGaps, _blockTfs);
+		_blockIndex = 0;
+	}
+
+	/**
+	 * Decode the next block of tfs of the current bitmap term
+	 *
+	 * @throws IOException
+	 *             when the file cannot be read or ends too early
+	 */
+	private void readTfBlock() throws IOException {
+		ByteBuffer block = gather(readVByte());
+		_blockSize = Math.min(_noPostingsLeft, PostingsWriter.SKIP_INTERVAL);
+		PostingsCodec.decodeTfs(block, _blockSize, _blockTfs);
+		_blockIndex = 0;
+	}
+
+	/**
+	 * Gather the next bytes of the file in the buffer, or in an array of
+	 * their own if they do not fit in it, and pass over them
+	 *
+	 * @param length
+	 *            number of bytes
+	 * @return a buffer over the bytes
+	 * @throws IOException
+	 *             when the file cannot be read or ends too early
+	 */
+	private ByteBuffer gather(int length) throws IOException {
+		if (length > BUFFER_SIZE) {
+			byte[] bytes = new byte[length];
+			int noBytes = _limit - _position;
+			System.arraycopy(_buffer, _position, bytes, 0, noBytes);
+			_position = _limit;
+			while (noBytes < length) {
+				int noRead = _in.read(bytes, noBytes, length - noBytes);
+				if (noRead <= 0) {
+					throw new IOException("Unexpected end of postings file");
+				}
+				noBytes += noRead;
+			}
+			return ByteBuffer.wrap(bytes);
+		}
+		if (_limit - _position < length) {
+			System.arraycopy(_buffer, _position, _buffer, 0, _limit - _position);
+			_limit -= _position;
+			_position = 0;
+			while (_limit < length) {
+				int noBytes = _in.read(_buffer, _limit, BUFFER_SIZE - _limit);
+				if (noBytes <= 0) {
+					throw new IOException("Unexpected end of postings file");
+				}
+				_limit += noBytes;
+			}
+		}
+		_blockBuffer.limit(_position + length);
+		_blockBuffer.position(_position);
+		_position += length;
+		return _blockBuffer;
+	}
+
+	/**
+	 * Read the next byte, refilling the buffer if needed
+	 *
+	 * @return the byte as an unsigned number
+	 * @throws IOException
+	 *             when the file cannot be read or ends too early
+	 */
+	private int readByte() throws IOException {
+		if (_position == _limit && !fill()) {
+			throw new IOException("Unexpected end of postings file");
+		}
+		return _buffer[_position++] & 0xFF;
+	}
+
+	/**
+	 * Read the next byte of the positions file
+	 *
+	 * @return the byte as an unsigned number
+	 * @throws IOException
+	 *             when the file cannot be read or ends too early
+	 */
+	private int readPositionByte() throws IOException {
+		int b = _positions.read();
+		if (b < 0) {
+			throw new IOException("Unexpected end of positions file");
+		}
+		return b;
+	}
+
+	/**
+	 * Refill the buffer from the file
+	 *
+	 * @return false if the end of the file is reached
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	private boolean fill() throws IOException {
+		int noBytes = _in.read(_buffer, 0, BUFFER_SIZE);
+		if (noBytes <= 0) {
+			_position = 0;
+			_limit = 0;
+			return false;
+		}
+		_position = 0;
+		_limit = noBytes;
+		return true;
+	}
+}
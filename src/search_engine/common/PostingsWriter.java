@@ -0,0 +1,608 @@
+package search_engine.common;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class writes a binary postings file <br/>
+ * <br/>
+ * The file starts with a header: the MAGIC number and the VERSION of the
+ * format. It is followed by one record per term, in increasing vocabularyId
+ * order: <br/>
+ *
+ * <pre>
+ * VByte(vocabularyId gap) VByte(df) [VByte(docId gap) VByte(tf)] x df [skip data]
+ * </pre>
+ *
+ * The gap of the first vocabularyId is counted from -1, and the gap of the
+ * first docId of a term from 0, so every gap is a small non-negative number.
+ * <br/>
+ * The postings can be encoded with another PostingsCodec than VByte. Since
+ * version 4, the header has the id of the codec after the VERSION, and every
+ * block of SKIP_INTERVAL postings of a term is encoded as a whole: <br/>
+ *
+ * <pre>
+ * VByte(vocabularyId gap) VByte(df) [VByte(length) block] x noBlocks [skip data]
+ * </pre>
+ *
+ * where length is the number of bytes of the encoded block, and the gap of
+ * the first docId of a block is counted from the last docId before it. VByte
+ * blocks have no length. <br/>
+ * Since version 5, a term whose docIds are dense may hold them in a
+ * RoaringBitmap instead, with only the tfs in the blocks: <br/>
+ *
+ * <pre>
+ * VByte(vocabularyId gap) VByte(2 * df + 1) VByte(length) bitmap [VByte(length) tfs] x noBlocks [skip data]
+ * </pre>
+ *
+ * where the tfs of a block are encoded with PostingsCodec.encodeTfs(). The df
+ * of every term of a version 5 file is doubled, plus one for a bitmap term.
+ * The writer picks the bitmap when it makes the term smaller, which is when
+ * the term is in a large part of the documents of its range, and lets the
+ * searcher intersect dense terms a word of 64 docIds at a time. <br/>
+ * The postings of a term are cut into blocks of SKIP_INTERVAL postings. A
+ * term of more than one block is followed by its skip data: the largest tf of
+ * the first block, then one entry per following block, which lets a reader
+ * jump over the postings before a docId without decoding them, and bound the
+ * score of the documents of a block without decoding them: <br/>
+ *
+ * <pre>
+ * VByte(maxTf) [VByte(docId gap) VByte(offset gap) VByte(positionsOffset gap) VByte(maxTf)] x ((df - 1) / SKIP_INTERVAL)
+ * </pre>
+ *
+ * where docId is the docId of the last posting before the block, offset and
+ * positionsOffset the offsets of the first posting of the block from the
+ * first posting of the term in the postings file and in the positions file,
+ * and maxTf the largest tf of the block. The gaps are counted from the
+ * previous entry of the term. Version 1 files have no skip data, and the skip
+ * entries of version 2 files have no maxTf. <br/>
+ * <br/>
+ * Optionally, a positions file is written alongside the postings. It starts
+ * with the POSITIONS_MAGIC number and the VERSION, followed by the positions
+ * of every posting, in the order of the postings file: <br/>
+ *
+ * <pre>
+ * [VByte(position gap)] x tf
+ * </pre>
+ *
+ * The gap of the first position of a posting is counted from 0. A position is
+ * the index of the token in its document. <br/>
+ * <br/>
+ * Optionally, the norms of the documents are computed from the postings and
+ * written alongside them when the writer is closed (see NormsWriter). <br/>
+ * <br/>
+ * Optionally, a term table is written alongside the postings. The table starts
+ * with the TABLE_MAGIC number and the TABLE_VERSION, followed by one
+ * fixed-size entry per vocabularyId: <br/>
+ *
+ * <pre>
+ * long offset, int length, int df, long positionsOffset
+ * </pre>
+ *
+ * where offset and length locate the {@code [docId gap, tf]} pairs of the term
+ * in the postings file, the skip data following them, and positionsOffset the positions of its first
+ * posting in the positions file (-1 without positions file). Since
+ * TABLE_VERSION 3, the entry ends with a byte, 1 if the term is a bitmap term
+ * and 0 otherwise. A vocabularyId
+ * without postings has offset -1. The entry of a vocabularyId is found at
+ * TABLE_HEADER_SIZE + vocabularyId * TABLE_ENTRY_SIZE, so a reader can jump
+ * straight to the postings of a term. <br/>
+ * A sparse term table, of SPARSE_TABLE_VERSION, only has an entry for each
+ * term with postings, in increasing vocabularyId order, and each entry starts
+ * with the vocabularyId of its term: <br/>
+ *
+ * <pre>
+ * int vocabularyId, long offset, int length, int df, long positionsOffset, byte isBitmap
+ * </pre>
+ *
+ * A reader binary searches the entries for a vocabularyId. The segments of a
+ * SegmentedIndex are written with sparse term tables, so a segment of a few
+ * documents does not have an entry for every term of the vocabulary. <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	PostingsWriter writer = new PostingsWriter(file);
+ * 	writer.startTerm(vocabularyId, df);
+ * 	writer.addPosting(docId, tf); // df times, in increasing docId order
+ * 	writer.addPosition(position); // tf times after each posting, if positional
+ * 	writer.close();
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class PostingsWriter {
+	public static final int MAGIC = 0x50535442; // "PSTB"
+	public static final int TABLE_MAGIC = 0x50535449; // "PSTI"
+	public static final int POSITIONS_MAGIC = 0x50535450; // "PSTP"
+	public static final int VERSION = 5;
+	public static final int TABLE_VERSION = 3;
+	public static final int SPARSE_TABLE_VERSION = 4;
+	public static final int HEADER_SIZE = 5;
+	public static final int CODEC_HEADER_SIZE = 6;
+	public static final int TABLE_HEADER_SIZE = 5;
+	public static final int TABLE_ENTRY_SIZE = 25;
+	public static final int SPARSE_TABLE_ENTRY_SIZE = 29;
+	public static final int SKIP_INTERVAL = 128;
+	// a term is only tried as a bitmap if it is in one document in BITMAP_DENSITY of its range
+	private static final int BITMAP_DENSITY = 16;
+
+	private DataOutputStream _out;
+	private DataOutputStream _table;
+	private final boolean _isSparseTable;
+	private DataOutputStream _positions;
+	private long _offset = 0;
+	private long _positionsOffset = 0;
+	private boolean _hasTerm = false;
+	private long _termPositionsOffset = -1;
+	private int _termDf = 0;
+	private int _vocabularyIdGap = 0;
+	private int _lastVocabularyId = -1;
+	private int _lastDocId = 0;
+	private int _noPostingsLeft = 0;
+	private int _lastPosition = 0;
+	private int _noPositionsLeft = 0;
+	private int[] _skips = new int[0];
+	private int _noSkips = 0;
+	private int[] _blockMaxTfs = new int[1];
+	private NormsWriter _norms;
+
+	private final PostingsCodec _codec;
+	// the postings of the current term, encoded once the term is finished
+	private int[] _docIds = new int[SKIP_INTERVAL];
+	private int[] _tfs = new int[SKIP_INTERVAL];
+	private final int[] _blockGaps = new int[SKIP_INTERVAL];
+	private final int[] _blockTfs = new int[SKIP_INTERVAL];
+	private byte[] _bytes = new byte[PostingsCodec.maxEncodedSize(SKIP_INTERVAL)];
+	private byte[] _bitmapBytes = new byte[0];
+	private int[] _blockOffsets = new int[1];
+	private int[] _bitmapBlockOffsets = new int[1];
+
+	/**
+	 * Public Constructor <br/>
+	 * Create (or truncate) the postings file and write its header <br/>
+	 * No term table is written <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public PostingsWriter(File file) throws IOException {
+		this(file, null, null);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Create (or truncate) the postings file and its term table, and write
+	 * their headers <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @param termTableFile
+	 *            the term table file, null for no term table
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public PostingsWriter(File file, File termTableFile) throws IOException {
+		this(file, termTableFile, null);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Create (or truncate) the postings file, its term table and its positions
+	 * file, and write their headers <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @param termTableFile
+	 *            the term table file, null for no term table
+	 * @param positionsFile
+	 *            the positions file, null for no positions
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public PostingsWriter(File file, File termTableFile, File positionsFile) throws IOException {
+		this(file, termTableFile, positionsFile, null);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Create (or truncate) the postings file, its term table and its positions
+	 * file, and write their headers. The norms file is written on close() <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @param termTableFile
+	 *            the term table file, null for no term table
+	 * @param positionsFile
+	 *            the positions file, null for no positions
+	 * @param normsFile
+	 *            the norms file, null for no norms
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public PostingsWriter(File file, File termTableFile, File positionsFile, File normsFile) throws IOException {
+		this(file, termTableFile, positionsFile, normsFile, PostingsCodec.VBYTE);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Create (or truncate) the postings file, its term table and its positions
+	 * file, and write their headers. The norms file is written on close() <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @param termTableFile
+	 *            the term table file, null for no term table
+	 * @param positionsFile
+	 *            the positions file, null for no positions
+	 * @param normsFile
+	 *            the norms file, null for no norms
+	 * @param codec
+	 *            the codec the postings are encoded with
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public PostingsWriter(File file, File termTableFile, File positionsFile, File normsFile, PostingsCodec codec)
+			throws IOException {
+		this(file, termTableFile, positionsFile, normsFile, codec, false);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Create (or truncate) the postings file, its term table and its positions
+	 * file, and write their headers. The norms file is written on close() <br/>
+	 *
+	 * @param file
+	 *            the postings file
+	 * @param termTableFile
+	 *            the term table file, null for no term table
+	 * @param positionsFile
+	 *            the positions file, null for no positions
+	 * @param normsFile
+	 *            the norms file, null for no norms
+	 * @param codec
+	 *            the codec the postings are encoded with
+	 * @param isSparseTable
+	 *            true to write a sparse term table, with the terms that have
+	 *            postings only
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public PostingsWriter(File file, File termTableFile, File positionsFile, File normsFile, PostingsCodec codec,
+			boolean isSparseTable) throws IOException {
+		_codec = codec;
+		_isSparseTable = isSparseTable;
+		_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+		_out.writeInt(MAGIC);
+		_out.writeByte(VERSION);
+		_out.writeByte(codec.id());
+		_offset = CODEC_HEADER_SIZE;
+
+		if (termTableFile != null) {
+			_table = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(termTableFile, false)));
+			_table.writeInt(TABLE_MAGIC);
+			_table.writeByte(isSparseTable ? SPARSE_TABLE_VERSION : TABLE_VERSION);
+		}
+
+		if (positionsFile != null) {
+			_positions = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(positionsFile, false)));
+			_positions.writeInt(POSITIONS_MAGIC);
+			_positions.writeByte(VERSION);
+			_positionsOffset = HEADER_SIZE;
+		}
+
+		if (normsFile != null) {
+			_norms = new NormsWriter(normsFile);
+		}
+	}
+
+	/**
+	 * Check whether positions are written
+	 *
+	 * @return true if the writer has a positions file
+	 */
+	public boolean hasPositions() {
+		return _positions != null;
+	}
+
+	/**
+	 * Start the postings of a term <br/>
+	 * Terms must be started in increasing vocabularyId order, and the
+	 * previous term must have received all of its postings <br/>
+	 *
+	 * @param vocabularyId
+	 * @param df
+	 *            the number of postings that will be added to the term
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void startTerm(int vocabularyId, int df) throws IOException {
+		assert vocabularyId > _lastVocabularyId && _noPostingsLeft == 0 && _noPositionsLeft == 0;
+		finishTerm();
+
+		// Leave the vocabularyIds without postings empty in the term table
+		if (_table != null && !_isSparseTable) {
+			for (int i = _lastVocabularyId + 1; i < vocabularyId; i++) {
+				writeTableEntry(-1, 0, 0, -1, false);
+			}
+		}
+
+		_hasTerm = true;
+		_termPositionsOffset = _positions != null ? _positionsOffset : -1;
+		_termDf = df;
+		_vocabularyIdGap = vocabularyId - _lastVocabularyId;
+		_lastVocabularyId = vocabularyId;
+		if (_docIds.length < df) {
+			_docIds = new int[Math.max(df, _docIds.length * 2)];
+			_tfs = new int[_docIds.length];
+		}
+		_lastDocId = 0;
+		_noPostingsLeft = df;
+		_noSkips = 0;
+		_blockMaxTfs[0] = 0;
+	}
+
+	/**
+	 * Add a posting to the current term <br/>
+	 * Postings must be added in increasing docId order. With a positions file,
+	 * the tf positions of the posting must be added right after it <br/>
+	 *
+	 * @param docId
+	 * @param tf
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void addPosting(int docId, int tf) throws IOException {
+		assert docId >= _lastDocId && _noPostingsLeft > 0 && _noPositionsLeft == 0;
+
+		int index = _termDf - _noPostingsLeft;
+		if (index > 0 && index % SKIP_INTERVAL == 0) {
+			addSkip(_lastDocId, _positions != null ? (int) (_positionsOffset - _termPositionsOffset) : 0);
+		}
+		_blockMaxTfs[_noSkips] = Math.max(_blockMaxTfs[_noSkips], tf);
+		if (_norms != null) {
+			_norms.add(docId, tf);
+		}
+
+		_docIds[index] = docId;
+		_tfs[index] = tf;
+
+		_lastDocId = docId;
+		_noPostingsLeft--;
+		_lastPosition = 0;
+		_noPositionsLeft = _positions != null ? tf : 0;
+	}
+
+	/**
+	 * Add a position to the current posting <br/>
+	 * Positions must be added in increasing order. They are ignored if the
+	 * writer has no positions file <br/>
+	 *
+	 * @param position
+	 *            index of the token in the document
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void addPosition(int position) throws IOException {
+		if (_positions == null) {
+			return;
+		}
+		assert position >= _lastPosition && _noPositionsLeft > 0;
+
+		_positionsOffset += VByte.write(_positions, position - _lastPosition);
+
+		_lastPosition = position;
+		_noPositionsLeft--;
+	}
+
+	/**
+	 * Flush and close the file
+	 *
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void close() throws IOException {
+		finishTerm();
+		_out.close();
+		if (_table != null) {
+			_table.close();
+		}
+		if (_positions != null) {
+			_positions.close();
+		}
+		if (_norms != null) {
+			_norms.close();
+		}
+	}
+
+	/**
+	 * Write the postings, the skip data and the term table entry of the
+	 * current term, if any. The postings are encoded as blocks of the codec,
+	 * and as a bitmap if the term is dense; the smaller is written
+	 *
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	private void finishTerm() throws IOException {
+		if (_hasTerm) {
+			int noBlocks = (_termDf + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+			if (_blockOffsets.length < noBlocks) {
+				_blockOffsets = new int[Math.max(noBlocks, _blockOffsets.length * 2)];
+				_bitmapBlockOffsets = new int[_blockOffsets.length];
+			}
+			int length = encodeBlocks();
+			int bitmapLength = _termDf > 0 && isDense() ? encodeBitmap() : -1;
+			boolean isBitmap = bitmapLength >= 0 && bitmapLength < length;
+			int[] blockOffsets = _blockOffsets;
+			if (isBitmap) {
+				length = bitmapLength;
+				blockOffsets = _bitmapBlockOffsets;
+			}
+
+			_offset += VByte.write(_out, _vocabularyIdGap);
+			_offset += VByte.write(_out, 2 * _termDf + (isBitmap ? 1 : 0));
+			long termOffset = _offset;
+			_out.write(isBitmap ? _bitmapBytes : _bytes, 0, length);
+			_offset += length;
+
+			int lastDocId = 0;
+			int lastOffset = 0;
+			int lastPositionsOffset = 0;
+			if (_noSkips > 0) {
+				_offset += VByte.write(_out, _blockMaxTfs[0]);
+			}
+			for (int i = 0; i < _noSkips; i++) {
+				_offset += VByte.write(_out, _skips[2 * i] - lastDocId);
+				_offset += VByte.write(_out, blockOffsets[i + 1] - lastOffset);
+				_offset += VByte.write(_out, _skips[2 * i + 1] - lastPositionsOffset);
+				_offset += VByte.write(_out, _blockMaxTfs[i + 1]);
+				lastDocId = _skips[2 * i];
+				lastOffset = blockOffsets[i + 1];
+				lastPositionsOffset = _skips[2 * i + 1];
+			}
+			if (_table != null) {
+				writeTableEntry(termOffset, length, _termDf, _termPositionsOffset, isBitmap);
+			}
+		}
+		_hasTerm = false;
+		_noSkips = 0;
+	}
+
+	/**
+	 * Check whether the current term may be smaller as a bitmap: a bitset
+	 * costs a bit per document of the range of the term
+	 */
+	private boolean isDense() {
+		return (long) _docIds[_termDf - 1] - _docIds[0] < (long) BITMAP_DENSITY * _termDf;
+	}
+
+	/**
+	 * Encode the postings of the current term as blocks of the codec. A block
+	 * of a codec other than VByte is preceded by its length
+	 *
+	 * @return the number of bytes of the postings
+	 */
+	private int encodeBlocks() {
+		int length = 0;
+		int lastDocId = 0;
+		for (int block = 0; block * SKIP_INTERVAL < _termDf; block++) {
+			int start = block * SKIP_INTERVAL;
+			int count = Math.min(SKIP_INTERVAL, _termDf - start);
+			for (int i = 0; i < count; i++) {
+				_blockGaps[i] = _docIds[start + i] - lastDocId;
+				_blockTfs[i] = _tfs[start + i];
+				lastDocId = _docIds[start + i];
+			}
+			_blockOffsets[block] = length;
+			_bytes = ensureCapacity(_bytes, length + 5 + PostingsCodec.maxEncodedSize(count));
+			if (_codec == PostingsCodec.VBYTE) {
+				length = _codec.encode(_blockGaps, _blockTfs, count, _bytes, length);
+			} else {
+				length = writeWithLength(_bytes, length, _codec.encode(_blockGaps, _blockTfs, count, _bytes,
+						length + 5) - length - 5);
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Encode the postings of the current term as a RoaringBitmap of its
+	 * docIds, and blocks of its tfs
+	 *
+	 * @return the number of bytes of the postings
+	 */
+	private int encodeBitmap() {
+		RoaringBitmap bitmap = RoaringBitmap.of(_docIds, _termDf);
+		_bitmapBytes = ensureCapacity(_bitmapBytes, 5 + bitmap.size());
+		int length = writeWithLength(_bitmapBytes, 0, bitmap.write(_bitmapBytes, 5) - 5);
+		for (int block = 0; block * SKIP_INTERVAL < _termDf; block++) {
+			int start = block * SKIP_INTERVAL;
+			int count = Math.min(SKIP_INTERVAL, _termDf - start);
+			System.arraycopy(_tfs, start, _blockTfs, 0, count);
+			_bitmapBlockOffsets[block] = length;
+			_bitmapBytes = ensureCapacity(_bitmapBytes, length + 5 + PostingsCodec.maxEncodedSize(count));
+			length = writeWithLength(_bitmapBytes, length,
+					PostingsCodec.encodeTfs(_blockTfs, count, _bitmapBytes, length + 5) - length - 5);
+		}
+		return length;
+	}
+
+	/**
+	 * Move bytes written 5 bytes after an offset right after the VByte of
+	 * their length, written at the offset
+	 *
+	 * @return the offset after the bytes
+	 */
+	private static int writeWithLength(byte[] bytes, int offset, int length) {
+		int start = VByte.write(bytes, offset, length);
+		System.arraycopy(bytes, offset + 5, bytes, start, length);
+		return start + length;
+	}
+
+	private static byte[] ensureCapacity(byte[] bytes, int capacity) {
+		return bytes.length >= capacity ? bytes : Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+	}
+
+	/**
+	 * Getter <br/>
+	 *
+	 * @return the codec the postings are encoded with
+	 */
+	public PostingsCodec codec() {
+		return _codec;
+	}
+
+	/**
+	 * Keep a skip entry of the current term, written once the term is
+	 * finished with the offset of its block, and start a new block
+	 *
+	 * @param docId
+	 *            of the posting before the entry
+	 * @param positionsOffset
+	 *            of the positions of the posting after the entry, from the
+	 *            positions of the first posting
+	 */
+	private void addSkip(int docId, int positionsOffset) {
+		if (2 * _noSkips == _skips.length) {
+			_skips = Arrays.copyOf(_skips, Math.max(2 * 16, _skips.length * 2));
+			_blockMaxTfs = Arrays.copyOf(_blockMaxTfs, _skips.length / 2 + 1);
+		}
+		_skips[2 * _noSkips] = docId;
+		_skips[2 * _noSkips + 1] = positionsOffset;
+		_noSkips++;
+		_blockMaxTfs[_noSkips] = 0;
+	}
+
+	/**
+	 * Write one entry of the term table
+	 *
+	 * @param offset
+	 * @param length
+	 * @param df
+	 * @param positionsOffset
+	 * @param isBitmap
+	 *            whether the docIds of the term are held in a bitmap
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	private void writeTableEntry(long offset, int length, int df, long positionsOffset, boolean isBitmap)
+			throws IOException {
+		if (_isSparseTable) {
+			_table.writeInt(_lastVocabularyId);
+		}
+		_table.writeLong(offset);
+		_table.writeInt(length);
+		_table.writeInt(df);
+		_table.writeLong(positionsOffset);
+		_table.writeByte(isBitmap ? 1 : 0);
+	}
+}
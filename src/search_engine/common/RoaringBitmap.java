@@ -0,0 +1,524 @@
+package search_engine.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is a compressed set of docIds, made of Roaring containers <br/>
+ * The docIds are cut into chunks of 65536 by their high 16 bits, the key of
+ * the chunk, and the low 16 bits of the docIds of a chunk are held in one
+ * container: either a sorted array of the low bits, or a bitset of 64-bit
+ * words. A container takes whichever is smaller: the array costs 2 bytes per
+ * docId, the bitset 8 bytes per word up to its last docId, so a chunk holding
+ * more than one docId in 32 is a bitset. <br/>
+ * The intersection and the union of two sets are computed container by
+ * container, with one bit operation per word of two bitsets. A set is not
+ * changed once built: and(), or() and andNot() return a new set, which may
+ * share containers with its operands. <br/>
+ * <br/>
+ * A set is written as: <br/>
+ *
+ * <pre>
+ * VByte(noContainers) [VByte(key) VByte(noWords) container] x noContainers
+ * </pre>
+ *
+ * where a container of 0 words is an array, written as VByte(cardinality)
+ * and the low bits of its docIds as big-endian chars, and any other is a
+ * bitset, written as noWords big-endian longs. Bit (docId % 64) of word
+ * ((docId % 65536) / 64) is set for a docId of the bitset. <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	RoaringBitmap both = RoaringBitmap.of(docIds1, df1).and(RoaringBitmap.of(docIds2, df2));
+ * 	for (int docId = both.nextValue(0); docId &gt;= 0; docId = both.nextValue(docId + 1)) {
+ * 		use(docId);
+ * 	}
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class RoaringBitmap {
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final int CHUNK_WORDS = CHUNK_SIZE / 64;
+
+	private int _noContainers = 0;
+	private char[] _keys = new char[4];
+	// the container i is either _arrays[i] or _words[i], the other is null
+	private char[][] _arrays = new char[4][];
+	private long[][] _words = new long[4][];
+	private int[] _cardinalities = new int[4];
+	private int _cardinality = 0;
+
+	/**
+	 * Public Constructor <br/>
+	 * Create an empty set <br/>
+	 */
+	public RoaringBitmap() {
+	}
+
+	/**
+	 * Static Factory <br/>
+	 * Build the set of some docIds <br/>
+	 *
+	 * @param docIds
+	 *            in increasing order, without duplicates
+	 * @param count
+	 *            number of docIds
+	 * @return the set
+	 */
+	public static RoaringBitmap of(int[] docIds, int count) {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		char[] chunk = new char[Math.min(count, CHUNK_SIZE)];
+		int start = 0;
+		while (start < count) {
+			int key = docIds[start] >>> 16;
+			int end = start;
+			while (end < count && docIds[end] >>> 16 == key) {
+				chunk[end - start] = (char) docIds[end];
+				end++;
+			}
+			bitmap.appendArray(key, chunk, end - start);
+			start = end;
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Read a set written by write() from a buffer <br/>
+	 *
+	 * @param in
+	 *            positioned on the set, and left after it
+	 * @return the set
+	 */
+	public static RoaringBitmap read(ByteBuffer in) {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		int noContainers = VByte.read(in);
+		for (int i = 0; i < noContainers; i++) {
+			int key = VByte.read(in);
+			int noWords = VByte.read(in);
+			if (noWords == 0) {
+				int cardinality = VByte.read(in);
+				char[] array = new char[cardinality];
+				for (int j = 0; j < cardinality; j++) {
+					array[j] = in.getChar();
+				}
+				bitmap.appendContainer(key, array, null, cardinality);
+			} else {
+				long[] words = new long[noWords];
+				int cardinality = 0;
+				for (int j = 0; j < noWords; j++) {
+					words[j] = in.getLong();
+					cardinality += Long.bitCount(words[j]);
+				}
+				bitmap.appendContainer(key, null, words, cardinality);
+			}
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Number of bytes write() takes
+	 *
+	 * @return the size of the set once written
+	 */
+	public int size() {
+		int size = VByte.size(_noContainers);
+		for (int i = 0; i < _noContainers; i++) {
+			size += VByte.size(_keys[i]);
+			if (_words[i] == null) {
+				size += VByte.size(0) + VByte.size(_cardinalities[i]) + 2 * _cardinalities[i];
+			} else {
+				size += VByte.size(_words[i].length) + 8 * _words[i].length;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Write the set to a buffer
+	 *
+	 * @param out
+	 *            large enough for size() bytes
+	 * @param offset
+	 *            where to write
+	 * @return the offset after the set
+	 */
+	public int write(byte[] out, int offset) {
+		offset = VByte.write(out, offset, _noContainers);
+		for (int i = 0; i < _noContainers; i++) {
+			offset = VByte.write(out, offset, _keys[i]);
+			if (_words[i] == null) {
+				offset = VByte.write(out, offset, 0);
+				offset = VByte.write(out, offset, _cardinalities[i]);
+				char[] array = _arrays[i];
+				for (int j = 0; j < _cardinalities[i]; j++) {
+					out[offset++] = (byte) (array[j] >>> 8);
+					out[offset++] = (byte) array[j];
+				}
+			} else {
+				long[] words = _words[i];
+				offset = VByte.write(out, offset, words.length);
+				for (long word : words) {
+					for (int shift = 56; shift >= 0; shift -= 8) {
+						out[offset++] = (byte) (word >>> shift);
+					}
+				}
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Getter for the number of docIds of the set
+	 *
+	 * @return cardinality
+	 */
+	public int cardinality() {
+		return _cardinality;
+	}
+
+	/**
+	 * Check whether a docId is in the set
+	 *
+	 * @param docId
+	 * @return true if it is
+	 */
+	public boolean contains(int docId) {
+		int i = indexOf(docId >>> 16);
+		if (i >= _noContainers || _keys[i] != docId >>> 16) {
+			return false;
+		}
+		return containsLow(i, (char) docId);
+	}
+
+	/**
+	 * Find the first docId of the set at or after a docId
+	 *
+	 * @param docId
+	 * @return the docId found, -1 if there is none
+	 */
+	public int nextValue(int docId) {
+		docId = Math.max(docId, 0);
+		int key = docId >>> 16;
+		for (int i = indexOf(key); i < _noContainers; i++) {
+			int low = nextLow(i, _keys[i] == key ? docId & 0xFFFF : 0);
+			if (low >= 0) {
+				return (_keys[i] << 16) | low;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Intersect two sets
+	 *
+	 * @param other
+	 * @return the docIds in both sets
+	 */
+	public RoaringBitmap and(RoaringBitmap other) {
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < _noContainers && j < other._noContainers) {
+			if (_keys[i] < other._keys[j]) {
+				i++;
+			} else if (_keys[i] > other._keys[j]) {
+				j++;
+			} else {
+				result.appendAnd(this, i++, other, j++);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Unite two sets
+	 *
+	 * @param other
+	 * @return the docIds in either set
+	 */
+	public RoaringBitmap or(RoaringBitmap other) {
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < _noContainers || j < other._noContainers) {
+			if (j == other._noContainers || (i < _noContainers && _keys[i] < other._keys[j])) {
+				result.appendContainer(_keys[i], _arrays[i], _words[i], _cardinalities[i]);
+				i++;
+			} else if (i == _noContainers || _keys[i] > other._keys[j]) {
+				result.appendContainer(other._keys[j], other._arrays[j], other._words[j], other._cardinalities[j]);
+				j++;
+			} else {
+				result.appendOr(this, i++, other, j++);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Remove the deleted documents from the set
+	 *
+	 * @param deleted
+	 * @return the docIds of the set that are not deleted
+	 */
+	public RoaringBitmap andNot(Tombstones deleted) {
+		if (deleted.size() == 0) {
+			return this;
+		}
+		RoaringBitmap result = new RoaringBitmap();
+		for (int i = 0; i < _noContainers; i++) {
+			int key = _keys[i];
+			if (_words[i] == null) {
+				char[] array = new char[_cardinalities[i]];
+				int count = 0;
+				for (int j = 0; j < _cardinalities[i]; j++) {
+					if (!deleted.isDeleted((key << 16) | _arrays[i][j])) {
+						array[count++] = _arrays[i][j];
+					}
+				}
+				result.appendArray(key, array, count);
+			} else {
+				long[] words = new long[_words[i].length];
+				for (int j = 0; j < words.length; j++) {
+					words[j] = _words[i][j] & ~deleted.word(key * CHUNK_WORDS + j);
+				}
+				result.appendWords(key, words);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the first container whose key is at least a key
+	 */
+	private int indexOf(int key) {
+		int low = 0;
+		int high = _noContainers;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (_keys[middle] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private boolean containsLow(int i, char low) {
+		if (_words[i] == null) {
+			return Arrays.binarySearch(_arrays[i], 0, _cardinalities[i], low) >= 0;
+		}
+		long[] words = _words[i];
+		return (low >>> 6) < words.length && (words[low >>> 6] & (1L << low)) != 0;
+	}
+
+	/**
+	 * Find the first low bits of a container at or after some low bits
+	 *
+	 * @return the low bits found, -1 if there are none
+	 */
+	private int nextLow(int i, int low) {
+		if (_words[i] == null) {
+			int index = Arrays.binarySearch(_arrays[i], 0, _cardinalities[i], (char) low);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			return index < _cardinalities[i] ? _arrays[i][index] : -1;
+		}
+		long[] words = _words[i];
+		int w = low >>> 6;
+		if (w >= words.length) {
+			return -1;
+		}
+		long word = words[w] & (-1L << low);
+		while (word == 0) {
+			if (++w == words.length) {
+				return -1;
+			}
+			word = words[w];
+		}
+		return w * 64 + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Add the intersection of a container of each set
+	 */
+	private void appendAnd(RoaringBitmap a, int i, RoaringBitmap b, int j) {
+		int key = a._keys[i];
+		if (a._words[i] != null && b._words[j] != null) {
+			long[] words = new long[Math.min(a._words[i].length, b._words[j].length)];
+			for (int k = 0; k < words.length; k++) {
+				words[k] = a._words[i][k] & b._words[j][k];
+			}
+			appendWords(key, words);
+		} else if (a._words[i] == null && b._words[j] == null) {
+			char[] array = new char[Math.min(a._cardinalities[i], b._cardinalities[j])];
+			int count = 0;
+			int k = 0;
+			int l = 0;
+			while (k < a._cardinalities[i] && l < b._cardinalities[j]) {
+				char x = a._arrays[i][k];
+				char y = b._arrays[j][l];
+				if (x < y) {
+					k++;
+				} else if (x > y) {
+					l++;
+				} else {
+					array[count++] = x;
+					k++;
+					l++;
+				}
+			}
+			appendArray(key, array, count);
+		} else {
+			// probe the bitset with every docId of the array
+			if (a._words[i] != null) {
+				RoaringBitmap swapped = a;
+				a = b;
+				b = swapped;
+				int swappedIndex = i;
+				i = j;
+				j = swappedIndex;
+			}
+			char[] array = new char[a._cardinalities[i]];
+			int count = 0;
+			for (int k = 0; k < a._cardinalities[i]; k++) {
+				if (b.containsLow(j, a._arrays[i][k])) {
+					array[count++] = a._arrays[i][k];
+				}
+			}
+			appendArray(key, array, count);
+		}
+	}
+
+	/**
+	 * Add the union of a container of each set
+	 */
+	private void appendOr(RoaringBitmap a, int i, RoaringBitmap b, int j) {
+		int key = a._keys[i];
+		if (a._words[i] == null && b._words[j] == null) {
+			char[] array = new char[a._cardinalities[i] + b._cardinalities[j]];
+			int count = 0;
+			int k = 0;
+			int l = 0;
+			while (k < a._cardinalities[i] || l < b._cardinalities[j]) {
+				if (l == b._cardinalities[j] || (k < a._cardinalities[i] && a._arrays[i][k] < b._arrays[j][l])) {
+					array[count++] = a._arrays[i][k++];
+				} else if (k == a._cardinalities[i] || a._arrays[i][k] > b._arrays[j][l]) {
+					array[count++] = b._arrays[j][l++];
+				} else {
+					array[count++] = a._arrays[i][k++];
+					l++;
+				}
+			}
+			appendArray(key, array, count);
+		} else {
+			long[] words = new long[Math.max(a.noWords(i), b.noWords(j))];
+			a.orInto(i, words);
+			b.orInto(j, words);
+			appendWords(key, words);
+		}
+	}
+
+	/**
+	 * Number of words of the bitset of a container, if it was one
+	 */
+	private int noWords(int i) {
+		return _words[i] != null ? _words[i].length : _arrays[i][_cardinalities[i] - 1] / 64 + 1;
+	}
+
+	/**
+	 * Set the bits of the docIds of a container in a bitset
+	 */
+	private void orInto(int i, long[] words) {
+		if (_words[i] != null) {
+			for (int k = 0; k < _words[i].length; k++) {
+				words[k] |= _words[i][k];
+			}
+		} else {
+			for (int k = 0; k < _cardinalities[i]; k++) {
+				char low = _arrays[i][k];
+				words[low >>> 6] |= 1L << low;
+			}
+		}
+	}
+
+	/**
+	 * Add a container from the sorted low bits of its docIds, as an array or
+	 * a bitset, whichever is smaller. An empty container is not added
+	 */
+	private void appendArray(int key, char[] array, int cardinality) {
+		if (cardinality == 0) {
+			return;
+		}
+		int noWords = array[cardinality - 1] / 64 + 1;
+		if (8 * noWords < 2 * cardinality) {
+			long[] words = new long[noWords];
+			for (int k = 0; k < cardinality; k++) {
+				words[array[k] >>> 6] |= 1L << array[k];
+			}
+			appendContainer(key, null, words, cardinality);
+		} else {
+			appendContainer(key, Arrays.copyOf(array, cardinality), null, cardinality);
+		}
+	}
+
+	/**
+	 * Add a container from a bitset, without its trailing empty words, as an
+	 * array or a bitset, whichever is smaller. An empty container is not added
+	 */
+	private void appendWords(int key, long[] words) {
+		int noWords = words.length;
+		while (noWords > 0 && words[noWords - 1] == 0) {
+			noWords--;
+		}
+		int cardinality = 0;
+		for (int k = 0; k < noWords; k++) {
+			cardinality += Long.bitCount(words[k]);
+		}
+		if (cardinality == 0) {
+			return;
+		}
+		if (8 * noWords < 2 * cardinality) {
+			appendContainer(key, null, noWords == words.length ? words : Arrays.copyOf(words, noWords),
+					cardinality);
+			return;
+		}
+		char[] array = new char[cardinality];
+		int count = 0;
+		for (int k = 0; k < noWords; k++) {
+			long word = words[k];
+			while (word != 0) {
+				array[count++] = (char) (k * 64 + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		appendContainer(key, array, null, cardinality);
+	}
+
+	/**
+	 * Add a container after the last one
+	 */
+	private void appendContainer(int key, char[] array, long[] words, int cardinality) {
+		assert _noContainers == 0 || key > _keys[_noContainers - 1];
+		if (_noContainers == _keys.length) {
+			int capacity = _keys.length * 2;
+			_keys = Arrays.copyOf(_keys, capacity);
+			_arrays = Arrays.copyOf(_arrays, capacity);
+			_words = Arrays.copyOf(_words, capacity);
+			_cardinalities = Arrays.copyOf(_cardinalities, capacity);
+		}
+		_keys[_noContainers] = (char) key;
+		_arrays[_noContainers] = array;
+		_words[_noContainers] = words;
+		_cardinalities[_noContainers] = cardinality;
+		_noContainers++;
+		_cardinality += cardinality;
+	}
+}
@@ -0,0 +1,246 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * This class provides the services related to the segments of an index <br/>
+ * A segment is an immutable piece of the index: a binary postings file with
+ * its term table, positions file and norms file, holding the postings of the documents
+ * added since the previous segment was written. Segments are only ever
+ * created, by flushing new documents or by merging smaller segments, and
+ * deleted once merged. <br/>
+ * The live segments are listed in the manifest, oldest first, with the rest
+ * of the commit point of the index (see IndexCommit). The manifest is
+ * replaced atomically, so a reader always sees a consistent set of segments.
+ * <br/>
+ * Segment {@code seg_7} is made of the files {@code seg_7.bin},
+ * {@code seg_7.idx}, {@code seg_7.pos} and {@code seg_7.nrm}. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class Segments {
+	public static final String MANIFEST_FILE = "segments.txt";
+
+	private static final String SEGMENT_PREFIX = "seg_";
+	private static final String POSTINGS_SUFFIX = ".bin";
+	private static final String TERM_TABLE_SUFFIX = ".idx";
+	private static final String POSITIONS_SUFFIX = ".pos";
+	private static final String NORMS_SUFFIX = ".nrm";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	/**
+	 * Static Service <br/>
+	 * Read the live segments from the manifest <br/>
+	 *
+	 * @return the names of the live segments, oldest first. Empty if the index
+	 *         has no manifest
+	 * @throws IOException
+	 *             when the manifest cannot be read
+	 */
+	public static List<String> read() throws IOException {
+		return IndexCommit.read().getSegments();
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Force the files of a segment to disk, before the segment is added to the
+	 * manifest <br/>
+	 *
+	 * @param segment
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void sync(String segment) throws IOException {
+		sync(postingsFile(segment));
+		sync(termTableFile(segment));
+		sync(positionsFile(segment));
+		sync(normsFile(segment));
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Force a file to disk, if it exists <br/>
+	 *
+	 * @param file
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public static void sync(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.getChannel().force(true);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Create an empty file with a unique name beside a file, to write the file
+	 * before it is moved over it with install() <br/>
+	 * Two processes writing the same file never write the same temporary file
+	 * <br/>
+	 *
+	 * @param target
+	 *            the file to be replaced
+	 * @return the temporary file, to be deleted if it is not installed
+	 * @throws IOException
+	 *             when the file cannot be created
+	 */
+	public static File temporaryFile(File target) throws IOException {
+		return File.createTempFile(target.getName() + ".", TEMPORARY_SUFFIX, target.getAbsoluteFile()
+				.getParentFile());
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Atomically replace a file with a file written beside it, if that file
+	 * exists <br/>
+	 *
+	 * @param file
+	 *            the file written
+	 * @param target
+	 *            the file to be replaced
+	 * @throws IOException
+	 *             when the file cannot be moved
+	 */
+	public static void install(File file, File target) throws IOException {
+		if (file.exists()) {
+			Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the name of a segment from its number
+	 *
+	 * @param number
+	 * @return the segment name
+	 */
+	public static String name(int number) {
+		return SEGMENT_PREFIX + number;
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the number of a segment from its name
+	 *
+	 * @param segment
+	 *            the segment name
+	 * @return the segment number, -1 if the name is not a segment name
+	 */
+	public static int number(String segment) {
+		if (!segment.startsWith(SEGMENT_PREFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(segment.substring(SEGMENT_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the postings file of a segment
+	 *
+	 * @param segment
+	 * @return the postings file
+	 */
+	public static File postingsFile(String segment) {
+		return new File(segment + POSTINGS_SUFFIX);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the term table of a segment
+	 *
+	 * @param segment
+	 * @return the term table
+	 */
+	public static File termTableFile(String segment) {
+		return new File(segment + TERM_TABLE_SUFFIX);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the positions file of a segment
+	 *
+	 * @param segment
+	 * @return the positions file
+	 */
+	public static File positionsFile(String segment) {
+		return new File(segment + POSITIONS_SUFFIX);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the norms file of a segment
+	 *
+	 * @param segment
+	 * @return the norms file
+	 */
+	public static File normsFile(String segment) {
+		return new File(segment + NORMS_SUFFIX);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the size of a segment on disk
+	 *
+	 * @param segment
+	 * @return the number of bytes of the segment files
+	 */
+	public static long size(String segment) {
+		return postingsFile(segment).length() + termTableFile(segment).length() + positionsFile(segment).length()
+				+ normsFile(segment).length();
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Delete the files of a segment
+	 *
+	 * @param segment
+	 */
+	public static void delete(String segment) {
+		postingsFile(segment).delete();
+		termTableFile(segment).delete();
+		positionsFile(segment).delete();
+		normsFile(segment).delete();
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Delete the files of the segments that are not live, which are left over
+	 * by a flush or a merge that did not complete <br/>
+	 *
+	 * @param segments
+	 *            the live segments
+	 */
+	public static void deleteUnreferenced(List<String> segments) {
+		File[] files = new File(".").listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String fileName = file.getName();
+			int dot = fileName.indexOf('.');
+			if (dot < 0) {
+				continue;
+			}
+			String segment = fileName.substring(0, dot);
+			if (number(segment) >= 0 && !segments.contains(segment)) {
+				file.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class splits the index written by the Indexer into shards <br/>
+ * The docIds of the index are cut into ranges of about the same number of
+ * documents, and each range is written as a complete index of its own (see
+ * Shards), so the shards can be searched in parallel. The postings of a term
+ * are read once from the postings file and handed to the shards by docId,
+ * with the same codec, positions and norms. <br/>
+ * The dictionary of every shard has the whole vocabulary, with the df of the
+ * terms in the shard and the idf computed from the documents of the shard:
+ * a searcher sums the dfs and the numbers of documents of the shards to
+ * score the documents as in the whole index. <br/>
+ * <br/>
+ * <b>Note:</b> <br/>
+ * 1. Only the postings file of the Indexer is split: an index with segments
+ * or deleted documents is to be compacted first <br/>
+ * 2. The shards are written to new files, and replace the shards of the
+ * previous split in the manifest (see IndexCommit), so the index can be
+ * searched while it is split. The shards are dropped by the next write of
+ * the index, which is then to be split again (see Shards) <br/>
+ * 3. The index is not to be written while it is split: the split fails if
+ * it is <br/>
+ * <br/>
+ * Syntax: no_shards <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class ShardWriter {
+	private static final String DICTIONARY_FILE = "dictionary.bin";
+	private static final String DOCUMENT_FILE = "documents.bin";
+	private static final String DELETED_FILE = "deleted.bin";
+	private static final String POSTING_FILE = "postings.bin";
+	private static final String POSITIONS_FILE = "positions.bin";
+
+	private int[] _docIds = new int[1024];
+	private int[] _tfs = new int[1024];
+	private int[] _positions = new int[1024];
+
+	/**
+	 * Static Service <br/>
+	 * Split the index in the working directory into shards and make them the
+	 * shards of the index <br/>
+	 *
+	 * @param noShards
+	 *            number of shards wanted, at most one per document
+	 * @return the shards written
+	 * @throws IOException
+	 *             when the index cannot be read or the shards written
+	 */
+	public static Shards split(int noShards) throws IOException {
+		IndexCommit commit = IndexCommit.read();
+		if (commit.getGeneration() != 0 || !commit.hasBase() || !commit.getSegments().isEmpty()
+				|| Tombstones.read(new File(DELETED_FILE)).size() > 0) {
+			throw new IOException("Only the index written by the Indexer can be split into shards");
+		}
+		return new ShardWriter().write(commit, noShards);
+	}
+
+	/**
+	 * Write the shards and their manifest
+	 */
+	private Shards write(IndexCommit commit, int noShards) throws IOException {
+		// An index written by the Indexer may only have the text files
+		IndexUpgrader.upgrade();
+		long postingsModified = new File(POSTING_FILE).lastModified();
+		long documentsModified = new File(DOCUMENT_FILE).lastModified();
+		DocumentTable documents = new DocumentTable(new File(DOCUMENT_FILE));
+		int noDocuments = documents.size();
+		File positionsFile = new File(POSITIONS_FILE);
+
+		noShards = Math.max(1, Math.min(noShards, noDocuments));
+		int split = commit.getShards().nextSplit();
+		ArrayList<String> names = new ArrayList<String>(noShards);
+		int[] firstDocIds = new int[noShards + 1];
+		for (int shard = 0; shard <= noShards; shard++) {
+			firstDocIds[shard] = (int) ((long) shard * noDocuments / noShards);
+			if (shard < noShards) {
+				names.add(Shards.name(split, shard));
+			}
+		}
+
+		// The vocabulary of every shard is the vocabulary of the index
+		TermDictionary dictionary = new TermDictionary(new File(DICTIONARY_FILE));
+		int noTerms = dictionary.size();
+		String[] words = new String[noTerms];
+		TermIterator term = dictionary.iterator();
+		while (term.next()) {
+			words[term.vocabularyId()] = term.term();
+		}
+		int[][] dfs = new int[noShards][noTerms];
+
+		writePostings(names, firstDocIds, dfs, positionsFile.exists() ? positionsFile : null);
+
+		List<String> vocabulary = Arrays.asList(words);
+		for (int shard = 0; shard < noShards; shard++) {
+			String name = names.get(shard);
+			int noShardDocuments = firstDocIds[shard + 1] - firstDocIds[shard];
+			ArrayList<String> docNames = new ArrayList<String>(noShardDocuments);
+			for (int docId = firstDocIds[shard]; docId < firstDocIds[shard + 1]; docId++) {
+				docNames.add(documents.getDocName(docId));
+			}
+			DocumentTableWriter.write(Shards.documentFile(name), docNames);
+			TermDictionaryWriter.write(Shards.dictionaryFile(name), vocabulary, dfs[shard], noShardDocuments,
+					TermDictionaryWriter.DEFAULT_BLOCK_SIZE);
+
+			Segments.sync(Shards.dictionaryFile(name));
+			Segments.sync(Shards.postingsFile(name));
+			Segments.sync(Shards.termTableFile(name));
+			Segments.sync(Shards.positionsFile(name));
+			Segments.sync(Shards.normsFile(name));
+		}
+
+		// The shards would miss the documents written meanwhile
+		Shards shards = new Shards(split, names, Arrays.copyOf(firstDocIds, noShards));
+		if (!IndexCommit.read().equals(commit) || new File(POSTING_FILE).lastModified() != postingsModified
+				|| new File(DOCUMENT_FILE).lastModified() != documentsModified) {
+			for (String name : names) {
+				Shards.delete(name);
+			}
+			throw new IOException("The index has been written while it was split into shards");
+		}
+
+		// The shards of the previous split are deleted once they are out of
+		// the manifest
+		new IndexCommit(commit.getGeneration(), commit.getCheckpoint(), commit.hasBase(), commit.getSegments(),
+				shards).write();
+		Shards.deleteUnreferenced(shards);
+		return shards;
+	}
+
+	/**
+	 * Hand the postings of every term of the index to the shards of their
+	 * docIds, counting the df of the terms in each shard
+	 */
+	private void writePostings(List<String> names, int[] firstDocIds, int[][] dfs, File positionsFile)
+			throws IOException {
+		int noShards = names.size();
+		PostingsReader reader = new PostingsReader(new File(POSTING_FILE), positionsFile);
+		PostingsWriter[] writers = new PostingsWriter[noShards];
+		try {
+			for (int shard = 0; shard < noShards; shard++) {
+				String name = names.get(shard);
+				writers[shard] = new PostingsWriter(Shards.postingsFile(name), Shards.termTableFile(name),
+						positionsFile != null ? Shards.positionsFile(name) : null, Shards.normsFile(name),
+						reader.codec());
+			}
+			while (reader.nextTerm()) {
+				int df = readTerm(reader);
+				int vocabularyId = reader.vocabularyId();
+
+				// The postings are in docId order, so each shard has a run of them
+				int start = 0;
+				int positionsStart = 0;
+				for (int shard = 0; shard < noShards && start < df; shard++) {
+					int end = start;
+					while (end < df && _docIds[end] < firstDocIds[shard + 1]) {
+						end++;
+					}
+					if (end == start) {
+						continue;
+					}
+					dfs[shard][vocabularyId] = end - start;
+					positionsStart = writeTerm(writers[shard], vocabularyId, start, end, positionsStart,
+							firstDocIds[shard]);
+					start = end;
+				}
+			}
+		} finally {
+			reader.close();
+			for (PostingsWriter writer : writers) {
+				if (writer != null) {
+					writer.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read the postings of the current term, and their positions if any
+	 *
+	 * @return the df of the term
+	 */
+	private int readTerm(PostingsReader reader) throws IOException {
+		int df = 0;
+		int noPositions = 0;
+		while (reader.nextPosting()) {
+			if (df == _docIds.length) {
+				_docIds = Arrays.copyOf(_docIds, df * 2);
+				_tfs = Arrays.copyOf(_tfs, df * 2);
+			}
+			_docIds[df] = reader.docId();
+			_tfs[df] = reader.tf();
+			df++;
+
+			if (reader.hasPositions()) {
+				int position;
+				while ((position = reader.nextPosition()) != -1) {
+					if (noPositions == _positions.length) {
+						_positions = Arrays.copyOf(_positions, noPositions * 2);
+					}
+					_positions[noPositions++] = position;
+				}
+			}
+		}
+		return df;
+	}
+
+	/**
+	 * Write the postings from start to end of the current term to a shard,
+	 * with docIds counted from the first docId of the shard
+	 *
+	 * @return the index of the first position after the postings written
+	 */
+	private int writeTerm(PostingsWriter writer, int vocabularyId, int start, int end, int positionsStart,
+			int firstDocId) throws IOException {
+		writer.startTerm(vocabularyId, end - start);
+		for (int i = start; i < end; i++) {
+			writer.addPosting(_docIds[i] - firstDocId, _tfs[i]);
+			if (writer.hasPositions()) {
+				for (int j = 0; j < _tfs[i]; j++) {
+					writer.addPosition(_positions[positionsStart++]);
+				}
+			}
+		}
+		return positionsStart;
+	}
+
+	/**
+	 * Entry point of the splitter <br/>
+	 *
+	 * Syntax: no_shards <br/>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.out.println("Syntax: no_shards");
+			return;
+		}
+
+		try {
+			Shards shards = split(Integer.parseInt(args[0]));
+			for (int shard = 0; shard < shards.size(); shard++) {
+				System.out.println(shards.getName(shard) + " from docId " + shards.getFirstDocId(shard));
+			}
+		} catch (NumberFormatException e) {
+			System.out.println("Syntax: no_shards");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the shards of a document-partitioned index <br/>
+ * A shard is a complete index over a range of docIds: it has its own
+ * dictionary, document table, postings file with its term table, positions
+ * file and norms file, written by ShardWriter. The docIds of a shard are
+ * counted from the first docId of its range, so a document of docId 1200 in
+ * the shard starting at docId 1000 is document 200 of the shard. <br/>
+ * Every shard has the whole vocabulary of the index, with the same
+ * vocabularyIds, and the df of the terms in the shard. <br/>
+ * Every split writes shards of new names, made of the number of the split
+ * and the number of the shard: shard {@code shard_4_1}, the second shard of
+ * split 4, is made of the files {@code shard_4_1.dictionary.bin},
+ * {@code shard_4_1.documents.bin}, {@code shard_4_1.postings.bin},
+ * {@code shard_4_1.postings.idx}, {@code shard_4_1.positions.bin} and
+ * {@code shard_4_1.postings.nrm}, which are never modified afterwards. <br/>
+ * <br/>
+ * The shards are listed in the manifest of the index (see IndexCommit), by
+ * increasing docId range, with the first docId of each, so a reader that
+ * reads the manifest once opens the shards of one split, however the index
+ * is split again meanwhile. <br/>
+ * The shards only hold the documents of the index when it was split: every
+ * write of the index drops them from the manifest (see invalidate()), and
+ * the index is searched whole until it is split again. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class Shards {
+	private static final String SHARD_PREFIX = "shard_";
+	private static final String DICTIONARY_FILE = ".dictionary.bin";
+	private static final String DOCUMENT_FILE = ".documents.bin";
+	private static final String POSTINGS_FILE = ".postings.bin";
+	private static final String TERM_TABLE_FILE = ".postings.idx";
+	private static final String POSITIONS_FILE = ".positions.bin";
+	private static final String NORMS_FILE = ".postings.nrm";
+	private static final String DELIMITOR = "_";
+
+	private final int _split;
+	private final List<String> _names;
+	private final int[] _firstDocIds;
+
+	/**
+	 * Public Constructor <br/>
+	 *
+	 * @param split
+	 *            number of the split the shards are written by, -1 if the
+	 *            index has never been split
+	 * @param names
+	 *            the names of the shards, none once they are dropped
+	 * @param firstDocIds
+	 *            the first docId of each shard, increasing
+	 */
+	public Shards(int split, List<String> names, int[] firstDocIds) {
+		_split = split;
+		_names = Collections.unmodifiableList(new ArrayList<String>(names));
+		_firstDocIds = Arrays.copyOf(firstDocIds, firstDocIds.length);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the shards of an index which has never been split
+	 *
+	 * @return no shard
+	 */
+	public static Shards none() {
+		return new Shards(-1, new ArrayList<String>(), new int[0]);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Drop the shards from the manifest of the index in the working
+	 * directory, and delete their files <br/>
+	 * The manifest keeps the number of their split, so the shards of the next
+	 * split are never named as the dropped ones <br/>
+	 * This is to be done before the files of the index are written, since the
+	 * shards would miss the documents written. A reader that has opened the
+	 * shards keeps reading them. A reader that has not opened them yet fails,
+	 * and reads the manifest again <br/>
+	 *
+	 * @throws IOException
+	 *             when the manifest cannot be read or written
+	 */
+	public static void invalidate() throws IOException {
+		IndexCommit commit = IndexCommit.read();
+		Shards shards = commit.getShards();
+		if (shards.size() == 0) {
+			return;
+		}
+		Shards dropped = new Shards(shards._split, new ArrayList<String>(), new int[0]);
+		new IndexCommit(commit.getGeneration(), commit.getCheckpoint(), commit.hasBase(), commit.getSegments(),
+				dropped).write();
+		deleteUnreferenced(dropped);
+	}
+
+	/**
+	 * Getter for the number of the split the shards are written by
+	 *
+	 * @return split number, -1 if the index has never been split
+	 */
+	public int getSplit() {
+		return _split;
+	}
+
+	/**
+	 * Getter for the number of shards
+	 *
+	 * @return number of shards
+	 */
+	public int size() {
+		return _names.size();
+	}
+
+	/**
+	 * Getter for the name of a shard
+	 *
+	 * @param shard
+	 *            index of the shard, from 0
+	 * @return the name of the shard
+	 */
+	public String getName(int shard) {
+		return _names.get(shard);
+	}
+
+	/**
+	 * Getter for the first docId of a shard
+	 *
+	 * @param shard
+	 *            index of the shard, from 0
+	 * @return the docId of the index of the first document of the shard
+	 */
+	public int getFirstDocId(int shard) {
+		return _firstDocIds[shard];
+	}
+
+	/**
+	 * Find the shard holding a docId of the index
+	 *
+	 * @param docId
+	 *            a docId of the index
+	 * @return index of the shard, -1 if the docId is before the first shard
+	 */
+	public int shardOf(int docId) {
+		int shard = Arrays.binarySearch(_firstDocIds, docId);
+		if (shard < 0) {
+			shard = -shard - 2;
+		}
+		// Empty shards have the first docId of the next one
+		while (shard + 1 < _firstDocIds.length && _firstDocIds[shard + 1] == docId) {
+			shard++;
+		}
+		return shard;
+	}
+
+	/**
+	 * Two lists of shards are equal when they name the same files with the
+	 * same docIds <br/>
+	 */
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof Shards)) {
+			return false;
+		}
+		Shards shards = (Shards) object;
+		return _split == shards._split && _names.equals(shards._names)
+				&& Arrays.equals(_firstDocIds, shards._firstDocIds);
+	}
+
+	@Override
+	public int hashCode() {
+		return (_split * 31 + _names.hashCode()) * 31 + Arrays.hashCode(_firstDocIds);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the name of a shard from the number of its split and its number
+	 *
+	 * @param split
+	 *            number of the split, see nextSplit()
+	 * @param number
+	 *            number of the shard in the split, from 0
+	 * @return the shard name
+	 */
+	public static String name(int split, int number) {
+		return SHARD_PREFIX + split + DELIMITOR + number;
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the number of the split of a shard from its name
+	 *
+	 * @param shard
+	 *            the shard name
+	 * @return the split number, -1 if the name is not a shard name
+	 */
+	public static int splitOf(String shard) {
+		int delimitor = shard.indexOf(DELIMITOR, SHARD_PREFIX.length());
+		if (!shard.startsWith(SHARD_PREFIX) || delimitor < 0) {
+			return -1;
+		}
+		try {
+			Integer.parseInt(shard.substring(delimitor + 1));
+			return Integer.parseInt(shard.substring(SHARD_PREFIX.length(), delimitor));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the number of the split after these shards, and after the split of
+	 * every shard file in the working directory
+	 *
+	 * @return the split number
+	 */
+	public int nextSplit() {
+		int split = _split + 1;
+		for (String shard : shardsOfFiles()) {
+			split = Math.max(split, splitOf(shard) + 1);
+		}
+		return split;
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the dictionary of a shard
+	 *
+	 * @param shard
+	 *            the shard name
+	 * @return the dictionary file
+	 */
+	public static File dictionaryFile(String shard) {
+		return new File(shard + DICTIONARY_FILE);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the document table of a shard
+	 *
+	 * @param shard
+	 *            the shard name
+	 * @return the document table file
+	 */
+	public static File documentFile(String shard) {
+		return new File(shard + DOCUMENT_FILE);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the postings file of a shard
+	 *
+	 * @param shard
+	 *            the shard name
+	 * @return the postings file
+	 */
+	public static File postingsFile(String shard) {
+		return new File(shard + POSTINGS_FILE);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the term table of a shard
+	 *
+	 * @param shard
+	 *            the shard name
+	 * @return the term table file
+	 */
+	public static File termTableFile(String shard) {
+		return new File(shard + TERM_TABLE_FILE);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the positions file of a shard
+	 *
+	 * @param shard
+	 *            the shard name
+	 * @return the positions file
+	 */
+	public static File positionsFile(String shard) {
+		return new File(shard + POSITIONS_FILE);
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the norms file of a shard
+	 *
+	 * @param shard
+	 *            the shard name
+	 * @return the norms file
+	 */
+	public static File normsFile(String shard) {
+		return new File(shard + NORMS_FILE);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Delete the files of a shard <br/>
+	 *
+	 * @param shard
+	 *            the shard name
+	 */
+	public static void delete(String shard) {
+		dictionaryFile(shard).delete();
+		documentFile(shard).delete();
+		postingsFile(shard).delete();
+		termTableFile(shard).delete();
+		positionsFile(shard).delete();
+		normsFile(shard).delete();
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Delete the files of every shard but the given ones, i.e. the shards of
+	 * previous splits <br/>
+	 *
+	 * @param shards
+	 *            the shards to keep
+	 */
+	public static void deleteUnreferenced(Shards shards) {
+		for (String shard : shardsOfFiles()) {
+			if (!shards._names.contains(shard)) {
+				delete(shard);
+			}
+		}
+	}
+
+	/**
+	 * Get the shards which have files in the working directory
+	 */
+	private static List<String> shardsOfFiles() {
+		ArrayList<String> shards = new ArrayList<String>();
+		File[] files = new File(".").listFiles();
+		if (files == null) {
+			return shards;
+		}
+		for (File file : files) {
+			String fileName = file.getName();
+			int dot = fileName.indexOf('.');
+			if (dot < 0) {
+				continue;
+			}
+			String shard = fileName.substring(0, dot);
+			if (splitOf(shard) >= 0 && !shards.contains(shard)) {
+				shards.add(shard);
+			}
+		}
+		return shards;
+	}
+}
@@ -0,0 +1,89 @@
+package search_engine.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Simple-8b postings codec <br/>
+ * The gaps of the block, then its tfs, are packed into 64-bit words. The top 4
+ * bits of a word are a selector, which tells how many numbers the 60 other
+ * bits hold and their bit width, from 240 zeros to a single 60-bit number.
+ * Each word takes as many of the following numbers as fit, so a run of small
+ * gaps takes a few bits per gap, and a word is decoded with shifts and masks
+ * only. The last word is padded with zeros. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class Simple8bCodec extends PostingsCodec {
+	private static final int[] NO_VALUES = { 240, 120, 60, 30, 20, 15, 12, 10, 8, 7, 6, 5, 4, 3, 2, 1 };
+	private static final int[] BITS = { 0, 0, 1, 2, 3, 4, 5, 6, 7, 8, 10, 12, 15, 20, 30, 60 };
+
+	@Override
+	public int id() {
+		return SIMPLE8B_ID;
+	}
+
+	@Override
+	public String name() {
+		return "Simple8b";
+	}
+
+	@Override
+	public int encode(int[] gaps, int[] tfs, int count, byte[] out, int offset) {
+		int total = 2 * count;
+		int i = 0;
+		while (i < total) {
+			// The selector with the most numbers that all fit
+			int selector = 0;
+			while (selector < NO_VALUES.length - 1 && !fits(gaps, tfs, count, i, selector)) {
+				selector++;
+			}
+
+			long word = (long) selector << 60;
+			for (int j = 0; j < NO_VALUES[selector] && i < total; j++, i++) {
+				word |= (long) value(gaps, tfs, count, i) << (j * BITS[selector]);
+			}
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				out[offset++] = (byte) (word >>> shift);
+			}
+		}
+		return offset;
+	}
+
+	@Override
+	public void decode(ByteBuffer in, int count, int[] gaps, int[] tfs) {
+		int total = 2 * count;
+		int i = 0;
+		while (i < total) {
+			long word = in.getLong();
+			int selector = (int) (word >>> 60);
+			int bits = BITS[selector];
+			long mask = (1L << bits) - 1;
+			for (int j = 0; j < NO_VALUES[selector] && i < total; j++, i++) {
+				int value = (int) ((word >>> (j * bits)) & mask);
+				if (i < count) {
+					gaps[i] = value;
+				} else {
+					tfs[i - count] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check whether the numbers from i fit in a word with the selector. The
+	 * numbers past the end count as padding zeros
+	 */
+	private static boolean fits(int[] gaps, int[] tfs, int count, int i, int selector) {
+		int end = Math.min(i + NO_VALUES[selector], 2 * count);
+		for (int j = i; j < end; j++) {
+			if (bitWidth(value(gaps, tfs, count, j)) > BITS[selector]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int value(int[] gaps, int[] tfs, int count, int i) {
+		return i < count ? gaps[i] : tfs[i - count];
+	}
+}
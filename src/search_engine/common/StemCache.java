@@ -0,0 +1,259 @@
+package search_engine.common;
+
+/**
+ * This class caches the stems of the words, so a word already seen is not
+ * stemmed again <br/>
+ * The words of a collection follow Zipf's law: few words make most of the
+ * tokens, so a bounded cache of the most frequent words answers most of the
+ * lookups. When the cache is full, a word is evicted with the CLOCK policy: a
+ * hand goes round the entries, and evicts the first one that has not been
+ * looked up since the hand last passed it. <br/>
+ * A word can be looked up as a slice of a char[]: its hash is computed the
+ * same as String.hashCode() and it is compared character by character, so a
+ * lookup that hits creates no object. <br/>
+ * The cache is shared by every thread (see shared()). It is split into
+ * segments by the hash of the words, each one guarded by its own lock, so
+ * threads stemming different words seldom wait for each other. <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ * 
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	String stem = cache.get(word, offset, length);
+ * 	if (stem == null) {
+ * 		stem = stemmer.stem(word, offset, length);
+ * 		cache.put(new String(word, offset, length), stem);
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @author ngtrhieu0011
+ */
+public class StemCache {
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	private static final int NO_SEGMENTS = 16;
+	private static final int SEGMENT_SHIFT = 4;
+
+	private static final StemCache SHARED = new StemCache(DEFAULT_CAPACITY);
+
+	private final Segment[] _segments = new Segment[NO_SEGMENTS];
+
+	/**
+	 * Public Constructor <br/>
+	 * 
+	 * @param capacity
+	 *            largest number of words kept, rounded up to a multiple of
+	 *            the number of segments
+	 */
+	public StemCache(int capacity) {
+		int segmentCapacity = Math.max(1, (capacity + NO_SEGMENTS - 1) / NO_SEGMENTS);
+		for (int i = 0; i < NO_SEGMENTS; i++) {
+			_segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * Static Getter <br/>
+	 * Get the cache of the process, shared by the Indexer and the searcher
+	 * 
+	 * @return the shared cache
+	 */
+	public static StemCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Find the stem of a word
+	 * 
+	 * @param word
+	 * @param offset
+	 *            of the first character of the word in word
+	 * @param length
+	 *            of the word
+	 * @return the stem, null if the word is not in the cache
+	 */
+	public String get(char[] word, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + word[i];
+		}
+		hash = spread(hash);
+		return segmentFor(hash).get(hash >>> SEGMENT_SHIFT, word, offset, length);
+	}
+
+	/**
+	 * Find the stem of a word
+	 * 
+	 * @param word
+	 * @return the stem, null if the word is not in the cache
+	 */
+	public String get(String word) {
+		int hash = spread(word.hashCode());
+		return segmentFor(hash).get(hash >>> SEGMENT_SHIFT, word);
+	}
+
+	/**
+	 * Add the stem of a word, evicting a word if the cache is full <br/>
+	 * 
+	 * @param word
+	 * @param stem
+	 */
+	public void put(String word, String stem) {
+		int hash = spread(word.hashCode());
+		segmentFor(hash).put(hash >>> SEGMENT_SHIFT, word, stem);
+	}
+
+	/**
+	 * Getter <br/>
+	 * 
+	 * @return the number of words in the cache
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : _segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private Segment segmentFor(int hash) {
+		return _segments[hash & (NO_SEGMENTS - 1)];
+	}
+
+	/**
+	 * Mix the high bits of a hash into the low ones, which choose the segment
+	 * and the bucket
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * A part of the cache, with its own lock <br/>
+	 * The entries are kept in fixed arrays, found through an open-addressing
+	 * table of entry numbers with linear probing. An evicted entry is removed
+	 * from the table by moving the following entries of its probe sequence
+	 * back, so a lookup stops at the first empty bucket. <br/>
+	 */
+	private static class Segment {
+		private final String[] _words;
+		private final String[] _stems;
+		private final int[] _hashes;
+		private final boolean[] _referenced;
+		// entry number + 1 of each bucket, 0 for an empty bucket
+		private final int[] _buckets;
+		private final int _mask;
+		private int _size = 0;
+		private int _hand = 0;
+
+		Segment(int capacity) {
+			_words = new String[capacity];
+			_stems = new String[capacity];
+			_hashes = new int[capacity];
+			_referenced = new boolean[capacity];
+			int noBuckets = Integer.highestOneBit(capacity) * 4;
+			_buckets = new int[noBuckets];
+			_mask = noBuckets - 1;
+		}
+
+		synchronized String get(int hash, char[] word, int offset, int length) {
+			for (int bucket = hash & _mask;; bucket = (bucket + 1) & _mask) {
+				int entry = _buckets[bucket] - 1;
+				if (entry < 0) {
+					return null;
+				}
+				if (_hashes[entry] == hash && equals(_words[entry], word, offset, length)) {
+					_referenced[entry] = true;
+					return _stems[entry];
+				}
+			}
+		}
+
+		synchronized String get(int hash, String word) {
+			int entry = find(hash, word);
+			if (entry < 0) {
+				return null;
+			}
+			_referenced[entry] = true;
+			return _stems[entry];
+		}
+
+		synchronized void put(int hash, String word, String stem) {
+			// Another thread may have added the word since it missed
+			if (find(hash, word) >= 0) {
+				return;
+			}
+			int entry = _size < _words.length ? _size++ : evict();
+			_words[entry] = word;
+			_stems[entry] = stem;
+			_hashes[entry] = hash;
+			_referenced[entry] = false;
+
+			int bucket = hash & _mask;
+			while (_buckets[bucket] != 0) {
+				bucket = (bucket + 1) & _mask;
+			}
+			_buckets[bucket] = entry + 1;
+		}
+
+		synchronized int size() {
+			return _size;
+		}
+
+		private int find(int hash, String word) {
+			for (int bucket = hash & _mask;; bucket = (bucket + 1) & _mask) {
+				int entry = _buckets[bucket] - 1;
+				if (entry < 0) {
+					return -1;
+				}
+				if (_hashes[entry] == hash && _words[entry].equals(word)) {
+					return entry;
+				}
+			}
+		}
+
+		/**
+		 * Move the hand to the first entry not looked up since it last passed,
+		 * and remove that entry from the table
+		 * 
+		 * @return the evicted entry
+		 */
+		private int evict() {
+			while (_referenced[_hand]) {
+				_referenced[_hand] = false;
+				_hand = (_hand + 1) % _words.length;
+			}
+			int entry = _hand;
+			_hand = (_hand + 1) % _words.length;
+
+			int hole = _hashes[entry] & _mask;
+			while (_buckets[hole] != entry + 1) {
+				hole = (hole + 1) & _mask;
+			}
+			for (int bucket = (hole + 1) & _mask; _buckets[bucket] != 0; bucket = (bucket + 1) & _mask) {
+				int home = _hashes[_buckets[bucket] - 1] & _mask;
+				// The entry may fill the hole if the hole is on its probe
+				// sequence, from its home bucket to where it is
+				if (((bucket - home) & _mask) >= ((bucket - hole) & _mask)) {
+					_buckets[hole] = _buckets[bucket];
+					hole = bucket;
+				}
+			}
+			_buckets[hole] = 0;
+			return entry;
+		}
+
+		private static boolean equals(String s, char[] word, int offset, int length) {
+			if (s.length() != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (s.charAt(i) != word[offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
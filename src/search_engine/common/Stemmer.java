@@ -35,6 +35,7 @@ package search_engine.common;
  */
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * Stemmer, implementing the Porter Stemming Algorithm <br/>
@@ -69,10 +70,7 @@ public class Stemmer implements IStemmer {
 
 	public void add(char ch) {
 		if (i == b.length) {
-			char[] new_b = new char[i + INC];
-			for (int c = 0; c < i; c++)
-				new_b[c] = b[c];
-			b = new_b;
+			b = Arrays.copyOf(b, i + INC);
 		}
 		b[i++] = ch;
 	}
@@ -83,14 +81,19 @@ public class Stemmer implements IStemmer {
 	 */
 
 	public void add(char[] w, int wLen) {
+		add(w, 0, wLen);
+	}
+
+	/**
+	 * Adds wLen characters of w from offset to the word being stemmed.
+	 */
+
+	public void add(char[] w, int offset, int wLen) {
 		if (i + wLen >= b.length) {
-			char[] new_b = new char[i + wLen + INC];
-			for (int c = 0; c < i; c++)
-				new_b[c] = b[c];
-			b = new_b;
+			b = Arrays.copyOf(b, i + wLen + INC);
 		}
-		for (int c = 0; c < wLen; c++)
-			b[i++] = w[c];
+		System.arraycopy(w, offset, b, i, wLen);
+		i += wLen;
 	}
 
 	/**
@@ -577,11 +580,42 @@ public class Stemmer implements IStemmer {
 	 * @author ngtrhieu0011
 	 */
 	public String stem(String word) {
-		add(word.toCharArray(), word.length());
+		int length = word.length();
+		if (i + length >= b.length) {
+			b = Arrays.copyOf(b, i + length + INC);
+		}
+		word.getChars(0, length, b, i);
+		i += length;
+		stem();
+		return toString();
+	}
+
+	/**
+	 * Custom public method. <br/>
+	 * Stem a slice of a char[] and return the stemmed word as String <br/>
+	 * 
+	 * @author ngtrhieu0011
+	 */
+	public String stem(char[] word, int offset, int length) {
+		add(word, offset, length);
 		stem();
 		return toString();
 	}
 
+	/**
+	 * Custom public method. <br/>
+	 * Stem a slice of a char[] into a buffer, without creating any object
+	 * once the internal buffer is as long as the longest word <br/>
+	 * 
+	 * @author ngtrhieu0011
+	 */
+	public int stem(char[] word, int offset, int length, char[] stem) {
+		add(word, offset, length);
+		stem();
+		System.arraycopy(b, 0, stem, 0, i_end);
+		return i_end;
+	}
+
 	/**
 	 * Test program for demonstrating the Stemmer. It reads text from a a list
 	 * of files, stems each word, and writes the result to standard output. Note
@@ -1,10 +1,14 @@
 package search_engine.common;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class provides filter service for stop words. <br/>
@@ -14,6 +18,9 @@ import java.util.ArrayList;
  * <b>Note:</b><br/>
  * 1. Require Stemmer when instantiate to be consistent <br/>
  * 2. Need to be explicitly initialise by trigger initialize() method <br/>
+ * 3. A stop word file is read once per process: its stop words are kept in
+ * an immutable hash set shared by every filter of the file, so initialize()
+ * does no IO after the first time and isStopword() is a hash lookup <br/>
  * <u>For example:</u><br/>
  * 
  * <pre>
@@ -28,9 +35,12 @@ import java.util.ArrayList;
 public class StopwordFilter {
 	private final String DEFAULT_STOPWORD_FILE = "stopwords.txt";
 
+	// Stop words of each file, by absolute path
+	private static final ConcurrentHashMap<String, Set<String>> STOPWORD_SETS = new ConcurrentHashMap<String, Set<String>>();
+
 	private String _stopwordFile;
 	private IStemmer _stemmer;
-	private ArrayList<String> _stopwordList;
+	private Set<String> _stopwordSet;
 
 	/**
 	 * Default Constructor <br/>
@@ -43,7 +53,7 @@ public class StopwordFilter {
 	public StopwordFilter(IStemmer stemmer) {
 		_stemmer = stemmer;
 		_stopwordFile = DEFAULT_STOPWORD_FILE;
-		_stopwordList = new ArrayList<String>();
+		_stopwordSet = Collections.emptySet();
 	}
 
 	/**
@@ -60,7 +70,7 @@ public class StopwordFilter {
 	public StopwordFilter(IStemmer stemmer, String stopwordFile) {
 		_stemmer = stemmer;
 		_stopwordFile = stopwordFile;
-		_stopwordList = new ArrayList<String>();
+		_stopwordSet = Collections.emptySet();
 	}
 
 	/**
@@ -71,30 +81,40 @@ public class StopwordFilter {
 	 *             when cannot fetch the stop word list
 	 */
 	public void initialize() throws IOException {
-		fetchStopwordList();
-		stemStopwordList();
+		String key = new File(_stopwordFile).getAbsolutePath();
+		Set<String> stopwordSet = STOPWORD_SETS.get(key);
+		if (stopwordSet == null) {
+			stopwordSet = Collections.unmodifiableSet(fetchStopwordList());
+			Set<String> previous = STOPWORD_SETS.putIfAbsent(key, stopwordSet);
+			if (previous != null) {
+				stopwordSet = previous;
+			}
+		}
+		_stopwordSet = stopwordSet;
 	}
 
 	/**
-	 * Fetch the stop word list from file <br/>
+	 * Fetch the stop words from file <br/>
 	 * The file can either be the default file or a custom file provided by
 	 * developers <br/>
 	 * 
+	 * @return the stop words
 	 * @throws IOException
 	 *             when the file cannot be opened, or IO errors occur
 	 */
-	private synchronized void fetchStopwordList() throws IOException {
+	private Set<String> fetchStopwordList() throws IOException {
 		// Initialise the Stream readers
 		FileInputStream fis = new FileInputStream(_stopwordFile);
 		InputStreamReader isr = new InputStreamReader(fis);
 		BufferedReader br = new BufferedReader(isr);
 
-		// Fetch data from file into local stopwordList
+		// Fetch data from file into a set
+		Set<String> stopwords = new HashSet<String>();
 		String nextLine = null;
 		do {
 			nextLine = br.readLine();
 			if (nextLine != null) {
-				_stopwordList.add(nextLine);
+				stopwords.add(nextLine);
 			}
 		} while (nextLine != null);
 
@@ -102,20 +122,14 @@ public class StopwordFilter {
 		br.close();
 		isr.close();
 		fis.close();
-	}
 
-	/**
-	 * Stem the stop word list using stemmer provided to ensure consistency
-	 * between Filter and Indexer <br/>
-	 */
-	private void stemStopwordList() {
-		for (String word : _stopwordList) {
-			word = _stemmer.stem(word);
-		}
+		return stopwords;
 	}
 
 	/**
-	 * Check whether the provided word is in the stop word list
+	 * Check whether the provided word is in the stop word list <br/>
+	 * The word is stemmed, and its stem is looked up among the stop words as
+	 * they are in the file <br/>
 	 * 
 	 * @param word
 	 *            to check whether it is a stop word
@@ -126,9 +140,6 @@ public class StopwordFilter {
 		// Ensure that the word is properly stemmed
 		word = _stemmer.stem(word);
 
-		boolean isStopword = _stopwordList.contains(word);
-
-		return isStopword;
-
+		return _stopwordSet.contains(word);
 	}
 }
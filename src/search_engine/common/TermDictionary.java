@@ -0,0 +1,212 @@
+package search_engine.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * This class reads the sorted binary term dictionary written by
+ * TermDictionaryWriter <br/>
+ * The file is memory-mapped: nothing but the header is read when the
+ * TermDictionary is opened. A lookup binary searches the first terms of the
+ * blocks, which are read in place through the block index, then decodes at
+ * most one block of front-coded terms. Only the pages touched by the search
+ * become resident. <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	TermDictionary dictionary = new TermDictionary(file);
+ * 	TermIterator term = dictionary.lookup(&quot;exampl&quot;);
+ * 	if (term != null) {
+ * 		use(term.vocabularyId(), term.df());
+ * 	}
+ * 	TermIterator terms = dictionary.prefix(&quot;ex&quot;);
+ * 	while (terms.next()) {
+ * 		use(terms.term());
+ * 	}
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class TermDictionary {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final MappedByteBuffer _buffer;
+	private final int _noTerms;
+	private final int _blockSize;
+	private final int _noBlocks;
+	private final int _blockIndexOffset;
+	private final int _headerSize;
+	private final int _noDocuments;
+	private final boolean _hasStoredIdf;
+
+	/**
+	 * Public Constructor <br/>
+	 * Map the binary term dictionary and check its header <br/>
+	 *
+	 * @param file
+	 *            the binary term dictionary
+	 * @throws IOException
+	 *             when the file cannot be opened or is not a term dictionary
+	 */
+	public TermDictionary(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+
+		// Version 1 files have no idf, version 2 files store the idf of every term
+		int version = _buffer.limit() >= TermDictionaryWriter.V1_HEADER_SIZE ? _buffer.get(4) : 0;
+		_headerSize = version == 1 ? TermDictionaryWriter.V1_HEADER_SIZE : TermDictionaryWriter.HEADER_SIZE;
+		if (_buffer.limit() < _headerSize || _buffer.getInt(0) != TermDictionaryWriter.MAGIC || version < 1
+				|| version > TermDictionaryWriter.VERSION) {
+			throw new IOException("Not a term dictionary (version " + TermDictionaryWriter.VERSION + "): " + file);
+		}
+		_noTerms = _buffer.getInt(5);
+		_blockSize = _buffer.getInt(9);
+		_noBlocks = _buffer.getInt(13);
+		_noDocuments = version == 1 ? -1 : _buffer.getInt(17);
+		_hasStoredIdf = version == TermDictionaryWriter.V2_VERSION;
+		_blockIndexOffset = _buffer.limit() - _noBlocks * 4;
+	}
+
+	/**
+	 * Number of terms in the dictionary
+	 *
+	 * @return number of terms
+	 */
+	public int size() {
+		return _noTerms;
+	}
+
+	/**
+	 * Number of documents of the index when the dictionary was written, which
+	 * the idf of the terms is computed from
+	 *
+	 * @return number of documents, -1 if the dictionary has no idf
+	 */
+	public int noDocuments() {
+		return _noDocuments;
+	}
+
+	/**
+	 * Look up a term <br/>
+	 *
+	 * @param term
+	 *            the stemmed word
+	 * @return a TermIterator positioned on the term, null if the term is not in
+	 *         the dictionary
+	 */
+	public TermIterator lookup(String term) {
+		byte[] key = term.getBytes(UTF8);
+		TermIterator iterator = seekCeil(key);
+		if (iterator.next() && iterator.compareTo(key) == 0) {
+			return iterator;
+		}
+		return null;
+	}
+
+	/**
+	 * Iterate over every term, in term order <br/>
+	 *
+	 * @return a TermIterator before the first term
+	 */
+	public TermIterator iterator() {
+		return new TermIterator(view(_headerSize), 0, _noTerms, null, _noDocuments, _hasStoredIdf);
+	}
+
+	/**
+	 * Iterate over the terms starting with a prefix, in term order <br/>
+	 *
+	 * @param prefix
+	 * @return a TermIterator before the first term with the prefix
+	 */
+	public TermIterator prefix(String prefix) {
+		byte[] key = prefix.getBytes(UTF8);
+		TermIterator iterator = seekCeil(key);
+		iterator.setPrefix(key);
+		return iterator;
+	}
+
+	/**
+	 * Return a TermIterator such that its next term is the first term greater
+	 * than or equal to the key <br/>
+	 *
+	 * @param key
+	 *            UTF-8 bytes of the term
+	 * @return the TermIterator
+	 */
+	private TermIterator seekCeil(byte[] key) {
+		// Find the last block whose first term is <= key
+		int low = 0;
+		int high = _noBlocks - 1;
+		int block = 0;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (compareFirstTerm(mid, key) <= 0) {
+				block = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		int firstTerm = block * _blockSize;
+		int offset = _noBlocks == 0 ? _headerSize : blockOffset(block);
+		TermIterator iterator = new TermIterator(view(offset), firstTerm, _noTerms, null, _noDocuments,
+				_hasStoredIdf);
+
+		// Skip the terms of the block smaller than the key
+		while (iterator.next()) {
+			if (iterator.compareTo(key) >= 0) {
+				iterator.pushBack();
+				break;
+			}
+		}
+		return iterator;
+	}
+
+	/**
+	 * Compare the first term of a block with a key, in place
+	 *
+	 * @param block
+	 * @param key
+	 * @return negative, zero or positive as the first term is smaller, equal
+	 *         or greater than the key
+	 */
+	private int compareFirstTerm(int block, byte[] key) {
+		ByteBuffer view = view(blockOffset(block));
+		VByte.read(view); // shared prefix, always 0
+		int length = VByte.read(view);
+		int common = Math.min(length, key.length);
+		for (int i = 0; i < common; i++) {
+			int compare = (view.get() & 0xFF) - (key[i] & 0xFF);
+			if (compare != 0) {
+				return compare;
+			}
+		}
+		return length - key.length;
+	}
+
+	private int blockOffset(int block) {
+		return _buffer.getInt(_blockIndexOffset + block * 4);
+	}
+
+	private ByteBuffer view(int offset) {
+		ByteBuffer view = _buffer.duplicate();
+		view.limit(_blockIndexOffset);
+		view.position(offset);
+		return view;
+	}
+}
@@ -0,0 +1,258 @@
+package search_engine.common;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class writes the sorted binary term dictionary read by TermDictionary
+ * <br/>
+ * <br/>
+ * The file starts with a header: <br/>
+ *
+ * <pre>
+ * int MAGIC, byte VERSION, int noTerms, int blockSize, int noBlocks, int noDocuments
+ * </pre>
+ *
+ * followed by the terms, sorted by their UTF-8 bytes and grouped into blocks of
+ * blockSize terms. Each term is front-coded against the previous term of its
+ * block: <br/>
+ *
+ * <pre>
+ * VByte(shared prefix length) VByte(suffix length) suffix VByte(vocabularyId) VByte(df)
+ * </pre>
+ *
+ * The idf of a term, {@code log(1 + noDocuments / df)}, noDocuments being the
+ * number of documents of the index when the dictionary is written, is not
+ * stored: the reader computes it from the df and the header, which keeps the
+ * dictionary as small as its front-coded terms. Version 2 files follow each
+ * term with its idf as a float. Version 1 files have no noDocuments. <br/>
+ * The first term of a block shares no prefix, so each block can be decoded on
+ * its own. The file ends with the block index: the int offset of every block.
+ * <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class TermDictionaryWriter {
+	public static final int MAGIC = 0x44494354; // "DICT"
+	public static final int VERSION = 3;
+	public static final int V2_VERSION = 2;
+	public static final int HEADER_SIZE = 21;
+	public static final int V1_HEADER_SIZE = 17;
+	public static final int DEFAULT_BLOCK_SIZE = 32;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String DELIMITOR = " ";
+
+	/**
+	 * Static Service <br/>
+	 * Make sure an index has a binary term dictionary <br/>
+	 * If the binary dictionary does not exist but the text dictionary does,
+	 * the binary dictionary is built from it. It is written to a temporary
+	 * file and then moved over the binary dictionary, so it is never read
+	 * half-written <br/>
+	 *
+	 * @param textFile
+	 *            the text dictionary, one {@code word df} per line, the line
+	 *            number being the vocabularyId
+	 * @param binaryFile
+	 *            the binary term dictionary
+	 * @param noDocuments
+	 *            number of documents of the index, deleted documents included
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void upgrade(File textFile, File binaryFile, int noDocuments) throws IOException {
+		if (!binaryFile.exists() && textFile.exists()) {
+			File temporary = Segments.temporaryFile(binaryFile);
+			try {
+				fromText(textFile, temporary, noDocuments);
+				Segments.sync(temporary);
+				Segments.install(temporary, binaryFile);
+			} finally {
+				temporary.delete();
+			}
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Build the binary term dictionary from a text dictionary
+	 *
+	 * @param textFile
+	 * @param binaryFile
+	 * @param noDocuments
+	 *            number of documents of the index, deleted documents included
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void fromText(File textFile, File binaryFile, int noDocuments) throws IOException {
+		// Initialise the Stream readers
+		FileInputStream fis = new FileInputStream(textFile);
+		InputStreamReader isr = new InputStreamReader(fis);
+		BufferedReader br = new BufferedReader(isr);
+
+		ArrayList<String> words = new ArrayList<String>();
+		int[] dfs = new int[1024];
+
+		String nextLine = null;
+		while ((nextLine = br.readLine()) != null) {
+			String[] tokens = nextLine.split(DELIMITOR);
+			if (words.size() == dfs.length) {
+				dfs = Arrays.copyOf(dfs, dfs.length * 2);
+			}
+			try {
+				dfs[words.size()] = Integer.parseInt(tokens[1]);
+			} catch (RuntimeException e) {
+				// Keep the line as a vocabularyId, even if it cannot be parsed
+				dfs[words.size()] = 0;
+			}
+			words.add(tokens[0]);
+		}
+
+		// Close stream readers
+		br.close();
+		isr.close();
+		fis.close();
+
+		write(binaryFile, words, dfs, noDocuments, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Write a binary term dictionary <br/>
+	 *
+	 * @param file
+	 *            the binary term dictionary
+	 * @param words
+	 *            the words, the vocabularyId of a word being its index
+	 * @param dfs
+	 *            the df of each word
+	 * @param noDocuments
+	 *            number of documents of the index, deleted documents included
+	 * @param blockSize
+	 *            number of terms per block
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public static void write(File file, List<String> words, int[] dfs, int noDocuments, int blockSize)
+			throws IOException {
+		final int noTerms = words.size();
+		final byte[][] terms = new byte[noTerms][];
+		Integer[] order = new Integer[noTerms];
+		for (int i = 0; i < noTerms; i++) {
+			terms[i] = words.get(i).getBytes(UTF8);
+			order[i] = i;
+		}
+
+		// Sort the vocabularyIds by the bytes of their term
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer id1, Integer id2) {
+				return compareBytes(terms[id1], terms[id2]);
+			}
+		});
+
+		int noBlocks = (noTerms + blockSize - 1) / blockSize;
+		int[] blockOffsets = new int[noBlocks];
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] previous = null;
+		for (int i = 0; i < noTerms; i++) {
+			byte[] term = terms[order[i]];
+			int prefix = 0;
+			if (i % blockSize == 0) {
+				blockOffsets[i / blockSize] = HEADER_SIZE + body.size();
+			} else {
+				prefix = sharedPrefix(previous, term);
+			}
+
+			VByte.write(body, prefix);
+			VByte.write(body, term.length - prefix);
+			body.write(term, prefix, term.length - prefix);
+			VByte.write(body, order[i]);
+			VByte.write(body, dfs[order[i]]);
+			previous = term;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(noTerms);
+			out.writeInt(blockSize);
+			out.writeInt(noBlocks);
+			out.writeInt(noDocuments);
+			body.writeTo(out);
+			for (int blockOffset : blockOffsets) {
+				out.writeInt(blockOffset);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the inverse document frequency of a term
+	 *
+	 * @param noDocuments
+	 *            number of documents of the index
+	 * @param df
+	 *            number of documents containing the term
+	 * @return the idf, 0 for a term in no document
+	 */
+	public static double idf(int noDocuments, int df) {
+		if (df <= 0) {
+			return 0;
+		}
+		return Math.log(1 + (double) noDocuments / df);
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Compare two byte strings as unsigned bytes, which is the order of the
+	 * terms in the file
+	 *
+	 * @param b1
+	 * @param b2
+	 * @return negative, zero or positive as b1 is smaller, equal or greater
+	 */
+	public static int compareBytes(byte[] b1, byte[] b2) {
+		int length = Math.min(b1.length, b2.length);
+		for (int i = 0; i < length; i++) {
+			int compare = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+			if (compare != 0) {
+				return compare;
+			}
+		}
+		return b1.length - b2.length;
+	}
+
+	/**
+	 * Length of the prefix shared by two byte strings
+	 *
+	 * @param b1
+	 * @param b2
+	 * @return number of shared bytes
+	 */
+	private static int sharedPrefix(byte[] b1, byte[] b2) {
+		int length = Math.min(b1.length, b2.length);
+		int i = 0;
+		while (i < length && b1[i] == b2[i]) {
+			i++;
+		}
+		return i;
+	}
+}
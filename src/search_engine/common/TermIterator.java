@@ -0,0 +1,185 @@
+package search_engine.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * This class iterates over the terms of a TermDictionary, in term order <br/>
+ * The front-coded terms are decoded into a reusable byte buffer: a String is
+ * only created when term() is called. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class TermIterator {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer _buffer;
+	private final int _noTerms;
+	private byte[] _prefix;
+
+	private int _nextTerm;
+	private byte[] _term = new byte[32];
+	private int _termLength = 0;
+	private int _vocabularyId = -1;
+	private int _df = 0;
+	private final int _noDocuments;
+	private final boolean _hasStoredIdf;
+	private float _idf = Float.NaN;
+	private boolean _isPushedBack = false;
+
+	/**
+	 * Package Constructor <br/>
+	 *
+	 * @param buffer
+	 *            view positioned at the start of a block
+	 * @param firstTerm
+	 *            index, in term order, of the first term of the block
+	 * @param noTerms
+	 *            number of terms in the dictionary
+	 * @param prefix
+	 *            stop at the first term without this prefix, null for no
+	 *            prefix
+	 * @param noDocuments
+	 *            number of documents the idf is computed from, -1 for no idf
+	 * @param hasStoredIdf
+	 *            true if each term is followed by its idf, as in version 2
+	 *            files
+	 */
+	TermIterator(ByteBuffer buffer, int firstTerm, int noTerms, byte[] prefix, int noDocuments,
+			boolean hasStoredIdf) {
+		_buffer = buffer;
+		_nextTerm = firstTerm;
+		_noTerms = noTerms;
+		_prefix = prefix;
+		_noDocuments = noDocuments;
+		_hasStoredIdf = hasStoredIdf;
+	}
+
+	/**
+	 * Move to the next term
+	 *
+	 * @return true if there is a next term, false at the end of the dictionary
+	 *         or of the prefix
+	 */
+	public boolean next() {
+		if (_isPushedBack) {
+			_isPushedBack = false;
+			return hasPrefix();
+		}
+		if (_nextTerm >= _noTerms) {
+			return false;
+		}
+
+		int shared = VByte.read(_buffer);
+		int suffix = VByte.read(_buffer);
+		if (shared + suffix > _term.length) {
+			byte[] term = new byte[Math.max(shared + suffix, _term.length * 2)];
+			System.arraycopy(_term, 0, term, 0, shared);
+			_term = term;
+		}
+		_buffer.get(_term, shared, suffix);
+		_termLength = shared + suffix;
+		_vocabularyId = VByte.read(_buffer);
+		_df = VByte.read(_buffer);
+		if (_hasStoredIdf) {
+			_idf = _buffer.getFloat();
+		}
+		_nextTerm++;
+
+		return hasPrefix();
+	}
+
+	/**
+	 * Getter for the current term
+	 *
+	 * @return term
+	 */
+	public String term() {
+		return new String(_term, 0, _termLength, UTF8);
+	}
+
+	/**
+	 * Getter for the vocabularyId of the current term
+	 *
+	 * @return vocabularyId
+	 */
+	public int vocabularyId() {
+		return _vocabularyId;
+	}
+
+	/**
+	 * Getter for the document frequency (df) of the current term
+	 *
+	 * @return df
+	 */
+	public int df() {
+		return _df;
+	}
+
+	/**
+	 * Getter for the inverse document frequency (idf) of the current term, as
+	 * of the number of documents when the dictionary was written (see
+	 * TermDictionaryWriter)
+	 *
+	 * @return idf, NaN if the dictionary has no idf
+	 */
+	public float idf() {
+		if (_hasStoredIdf || _noDocuments < 0) {
+			return _idf;
+		}
+		return (float) TermDictionaryWriter.idf(_noDocuments, _df);
+	}
+
+	/**
+	 * Compare the current term with a key, as unsigned bytes
+	 *
+	 * @param key
+	 *            UTF-8 bytes
+	 * @return negative, zero or positive as the current term is smaller, equal
+	 *         or greater than the key
+	 */
+	int compareTo(byte[] key) {
+		int common = Math.min(_termLength, key.length);
+		for (int i = 0; i < common; i++) {
+			int compare = (_term[i] & 0xFF) - (key[i] & 0xFF);
+			if (compare != 0) {
+				return compare;
+			}
+		}
+		return _termLength - key.length;
+	}
+
+	/**
+	 * Make the next call to next() stay on the current term
+	 */
+	void pushBack() {
+		_isPushedBack = true;
+	}
+
+	/**
+	 * Stop at the first term without the prefix
+	 *
+	 * @param prefix
+	 *            UTF-8 bytes
+	 */
+	void setPrefix(byte[] prefix) {
+		_prefix = prefix;
+	}
+
+	private boolean hasPrefix() {
+		if (_prefix == null) {
+			return true;
+		}
+		if (_termLength < _prefix.length) {
+			_nextTerm = _noTerms;
+			return false;
+		}
+		for (int i = 0; i < _prefix.length; i++) {
+			if (_term[i] != _prefix[i]) {
+				_nextTerm = _noTerms;
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,164 @@
+package search_engine.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class holds the deleted documents of an index, as a bitset over the
+ * docIds <br/>
+ * A deleted document keeps its docId and its postings until the index is
+ * compacted: the searcher checks the bitset to skip it, which costs one bit
+ * test per posting. <br/>
+ * <br/>
+ * The file is written as: <br/>
+ *
+ * <pre>
+ * int MAGIC, byte VERSION, int noDeleted, int noWords, long[noWords] words
+ * </pre>
+ *
+ * where bit (docId % 64) of word (docId / 64) is set for a deleted docId.
+ * <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class Tombstones {
+	public static final int MAGIC = 0x44454C53; // "DELS"
+	public static final int VERSION = 1;
+
+	private long[] _words;
+	private int _noDeleted;
+
+	/**
+	 * Public Constructor <br/>
+	 * Create an empty set of deleted documents <br/>
+	 */
+	public Tombstones() {
+		_words = new long[0];
+		_noDeleted = 0;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Read the deleted documents from file <br/>
+	 *
+	 * @param file
+	 *            the tombstones file
+	 * @return the deleted documents, empty if the file does not exist
+	 * @throws IOException
+	 *             when the file cannot be read, or is not a tombstones file
+	 */
+	public static Tombstones read(File file) throws IOException {
+		Tombstones tombstones = new Tombstones();
+		if (!file.exists()) {
+			return tombstones;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			int magic = in.readInt();
+			int version = in.readByte();
+			if (magic != MAGIC || version != VERSION) {
+				throw new IOException("Not a tombstones file (version " + VERSION + "): " + file);
+			}
+			tombstones._noDeleted = in.readInt();
+			tombstones._words = new long[in.readInt()];
+			for (int i = 0; i < tombstones._words.length; i++) {
+				tombstones._words[i] = in.readLong();
+			}
+		} finally {
+			in.close();
+		}
+		return tombstones;
+	}
+
+	/**
+	 * Write the deleted documents to file, and force the file to disk <br/>
+	 *
+	 * @param file
+	 *            the tombstones file
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void write(File file) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file, false);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(_noDeleted);
+			out.writeInt(_words.length);
+			for (long word : _words) {
+				out.writeLong(word);
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Check whether a document is deleted
+	 *
+	 * @param docId
+	 * @return true if the document is deleted
+	 */
+	public boolean isDeleted(int docId) {
+		int word = docId >>> 6;
+		return word < _words.length && (_words[word] & (1L << docId)) != 0;
+	}
+
+	/**
+	 * Get one word of the bitset, for the bit operations of RoaringBitmap
+	 *
+	 * @param index
+	 *            of the word, which holds the docIds from 64 * index
+	 * @return the word, 0 past the last word
+	 */
+	long word(int index) {
+		return index < _words.length ? _words[index] : 0;
+	}
+
+	/**
+	 * Mark a document as deleted
+	 *
+	 * @param docId
+	 * @return false if the document was deleted already
+	 */
+	public boolean delete(int docId) {
+		int word = docId >>> 6;
+		if (word >= _words.length) {
+			_words = Arrays.copyOf(_words, Math.max(word + 1, _words.length * 2));
+		}
+		if ((_words[word] & (1L << docId)) != 0) {
+			return false;
+		}
+		_words[word] |= 1L << docId;
+		_noDeleted++;
+		return true;
+	}
+
+	/**
+	 * Get the number of deleted documents
+	 *
+	 * @return number of deleted documents
+	 */
+	public int size() {
+		return _noDeleted;
+	}
+
+	/**
+	 * Forget every deleted document, once they are dropped from the index
+	 */
+	public void clear() {
+		_words = new long[0];
+		_noDeleted = 0;
+	}
+}
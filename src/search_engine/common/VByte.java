@@ -0,0 +1,125 @@
+package search_engine.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-byte (VByte) encoding of non-negative integers <br/>
+ * Each byte stores 7 bits of the number, least significant group first. The
+ * high bit of a byte is set when more bytes follow. Small numbers, such as the
+ * gaps between sorted docIds and most term frequencies, take a single byte.
+ * <br/>
+ *
+ * @author ngtrhieu0011
+ */
+public class VByte {
+	private static final int PAYLOAD_MASK = 0x7F;
+	private static final int CONTINUATION_BIT = 0x80;
+
+	/**
+	 * Static Service <br/>
+	 * Write a number to a stream <br/>
+	 *
+	 * @param out
+	 *            the stream to be written to
+	 * @param value
+	 *            non-negative number
+	 * @return number of bytes written
+	 * @throws IOException
+	 *             when the stream cannot be written
+	 */
+	public static int write(OutputStream out, int value) throws IOException {
+		int noBytes = 1;
+		while ((value & ~PAYLOAD_MASK) != 0) {
+			out.write((value & PAYLOAD_MASK) | CONTINUATION_BIT);
+			value >>>= 7;
+			noBytes++;
+		}
+		out.write(value);
+		return noBytes;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Write a number into a byte array <br/>
+	 *
+	 * @param buffer
+	 *            the array to be written to, which must have room for 5 bytes
+	 * @param offset
+	 *            where to start writing
+	 * @param value
+	 *            non-negative number
+	 * @return the offset after the last byte written
+	 */
+	public static int write(byte[] buffer, int offset, int value) {
+		while ((value & ~PAYLOAD_MASK) != 0) {
+			buffer[offset++] = (byte) ((value & PAYLOAD_MASK) | CONTINUATION_BIT);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Number of bytes needed to encode a number
+	 *
+	 * @param value
+	 *            non-negative number
+	 * @return number of bytes
+	 */
+	public static int size(int value) {
+		int noBytes = 1;
+		while ((value & ~PAYLOAD_MASK) != 0) {
+			value >>>= 7;
+			noBytes++;
+		}
+		return noBytes;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Read a number from a byte array <br/>
+	 * The caller keeps track of the position by calling size() on the result,
+	 * or use a PostingsReader which does it without allocation <br/>
+	 *
+	 * @param buffer
+	 *            the array to be read from
+	 * @param offset
+	 *            where the encoded number starts
+	 * @return the decoded number
+	 */
+	public static int read(byte[] buffer, int offset) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer[offset++];
+			value |= (b & PAYLOAD_MASK) << shift;
+			shift += 7;
+		} while ((b & CONTINUATION_BIT) != 0);
+		return value;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Read a number at the position of a buffer, and move the position past it
+	 * <br/>
+	 *
+	 * @param buffer
+	 *            the buffer to be read from
+	 * @return the decoded number
+	 */
+	public static int read(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & PAYLOAD_MASK) << shift;
+			shift += 7;
+		} while ((b & CONTINUATION_BIT) != 0);
+		return value;
+	}
+}
@@ -0,0 +1,40 @@
+package search_engine.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The VByte postings codec: the VByte gap and tf of each posting, one after
+ * the other <br/>
+ * It is the format of the postings of version 3 postings files, so its
+ * blocks are written without their length (see PostingsWriter) <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class VByteCodec extends PostingsCodec {
+	@Override
+	public int id() {
+		return VBYTE_ID;
+	}
+
+	@Override
+	public String name() {
+		return "VByte";
+	}
+
+	@Override
+	public int encode(int[] gaps, int[] tfs, int count, byte[] out, int offset) {
+		for (int i = 0; i < count; i++) {
+			offset = VByte.write(out, offset, gaps[i]);
+			offset = VByte.write(out, offset, tfs[i]);
+		}
+		return offset;
+	}
+
+	@Override
+	public void decode(ByteBuffer in, int count, int[] gaps, int[] tfs) {
+		for (int i = 0; i < count; i++) {
+			gaps[i] = VByte.read(in);
+			tfs[i] = VByte.read(in);
+		}
+	}
+}
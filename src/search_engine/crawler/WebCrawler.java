@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.TimerTask;
 
+import search_engine.indexer.SegmentedIndex;
+
 /**
  * This is the Web Crawler used mostly to test the responsiveness of
  * neighbouring domains It will take the starting set of domains, then crawl
@@ -22,6 +24,7 @@ import java.util.TimerTask;
 public class WebCrawler extends TimerTask {
 	private static String reportFileName;
 	private static ArrayList<String> crawledLinks;
+	private static SegmentedIndex index;
 
 	/**
 	 * Check the links whether it was visited by other domains If not visited
@@ -43,6 +46,34 @@ public class WebCrawler extends TimerTask {
 		}
 	}
 
+	/**
+	 * Get the index the crawled pages are added to <br/>
+	 * The index is opened on first use, and closed when the program exits so
+	 * the last pages crawled are flushed <br/>
+	 * 
+	 * @return the index
+	 * @throws IOException
+	 *             when the index cannot be opened
+	 */
+	protected static synchronized SegmentedIndex GetIndex() throws IOException {
+		if (index == null) {
+			final SegmentedIndex newIndex = new SegmentedIndex();
+			newIndex.start();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						newIndex.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			index = newIndex;
+		}
+		return index;
+	}
+
 	/**
 	 * Write the report to the output file
 	 * 
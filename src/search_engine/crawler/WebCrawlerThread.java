@@ -22,8 +22,6 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
-import search_engine.indexer.Indexer;
-
 /**
  * This is a single web crawler thread that will crawl a page for content to
  * index and send more crawlers in if possible (if the next page is unvisited
@@ -305,6 +303,8 @@ public class WebCrawlerThread extends WebCrawler {
 
 	/**
 	 * Index the document <br/>
+	 * The document is added to the segmented index shared by every crawler,
+	 * so indexing a page does not rewrite the index <br/>
 	 * 
 	 * @param docName
 	 *            the name of the document <br/>
@@ -312,9 +312,8 @@ public class WebCrawlerThread extends WebCrawler {
 	 *            the content of the document <br/>
 	 */
 	private void indexDocument(String docName, String docContent) {
-		Indexer indexer = new Indexer(docName, docContent);
 		try {
-			indexer.start();
+			WebCrawler.GetIndex().addDocument(docName, docContent);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
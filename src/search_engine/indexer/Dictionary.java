@@ -2,6 +2,7 @@ package search_engine.indexer;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -9,6 +10,11 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 
+import search_engine.common.IndexDelta;
+import search_engine.common.Segments;
+import search_engine.common.Shards;
+import search_engine.common.TermDictionaryWriter;
+
 /**
  * <b> Singleton class </b><br/>
  * <br/>
@@ -16,6 +22,13 @@ import java.util.ArrayList;
  * {@code <vocabulary,df>} where df is <b>document frequency</b>: number of
  * documents this word has appeared. <br/>
  * <br/>
+ * The Vocabulary are kept in a concurrent Lexicon, so looking up a word never
+ * blocks and Indexers only synchronise when they add new words. The Lexicon
+ * keeps the words off the heap (see TermArena) <br/>
+ * Alongside the text dictionary, a sorted binary term dictionary is written
+ * for the searcher (see TermDictionaryWriter), with the idf of every word
+ * computed from the number of documents of the DocumentList <br/>
+ * <br/>
  * <b>Note: The Dictionary needs to be close () when done to save all the
  * changes into files</b> <br/>
  * 
@@ -23,15 +36,39 @@ import java.util.ArrayList;
  */
 
 class Dictionary {
-	private final String DICTONARY_FILENAME = "dictionary.txt";
+	private static final String DICTONARY_FILENAME = "dictionary.txt";
+	private static final String TERM_DICTIONARY_FILENAME = "dictionary.bin";
+	private static final String TEMPORARY_PREFIX = "tmp.";
 
 	// Singleton dictionary
-	private static ArrayList<Vocabulary> _dictionary = new ArrayList<Vocabulary>();
+	private static final Lexicon _dictionary = new Lexicon();
+	private static final Object _lock = new Object();
 	private static int _no_instances = 0;
 
+	private final String _prefix;
+	private final IndexDelta _delta;
 	private boolean _isInitialized = false;
 
 	public Dictionary() throws IOException {
+		this("", new IndexDelta());
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 * Fetch the dictionary from the files of a checkpoint of the index and the
+	 * changes of the following generations, if the dictionary does not exist
+	 * <br/>
+	 * 
+	 * @param prefix
+	 *            of the files of the checkpoint (see IndexCommit)
+	 * @param delta
+	 *            the changes of the generations after the checkpoint
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	Dictionary(String prefix, IndexDelta delta) throws IOException {
+		_prefix = prefix;
+		_delta = delta;
 		start();
 	}
 
@@ -43,7 +80,7 @@ class Dictionary {
 	 *             when the file cannot be opened
 	 */
 	public void start() throws IOException {
-		synchronized (_dictionary) {
+		synchronized (_lock) {
 			_no_instances++;
 			if (_no_instances == 1) {
 				fetchDictionary();
@@ -54,21 +91,75 @@ class Dictionary {
 
 	/**
 	 * Close the Dictionary <br/>
+	 * The shards of the index, which would miss the changes, are dropped
+	 * before the files are replaced (see Shards) <br/>
 	 * 
 	 * @throws IOException
 	 *             when the file cannot be opened
 	 * 
 	 */
 	public void close() throws IOException {
-		synchronized (_dictionary) {
+		synchronized (_lock) {
 			_no_instances--;
 			if (_no_instances == 0) {
-				writeToFile();
+				writeToFile(TEMPORARY_PREFIX);
+				Shards.invalidate();
+				install(TEMPORARY_PREFIX);
 			}
 			_isInitialized = false;
 		}
 	}
 
+	/**
+	 * Release the Dictionary without saving it <br/>
+	 * This is used by SegmentedIndex, whose commits have already written every
+	 * change to the files of their generations (see flush(String)), so the
+	 * dictionary files of the Indexer are left as they are <br/>
+	 */
+	void release() {
+		synchronized (_lock) {
+			_no_instances--;
+			_isInitialized = false;
+		}
+	}
+
+	/**
+	 * Save the Dictionary, without closing it, to files named after the
+	 * dictionary files with a prefix <br/>
+	 * The files are forced to disk. This is used by SegmentedIndex, which keeps
+	 * the Dictionary open while documents keep being indexed, to write each
+	 * generation of the index <br/>
+	 * 
+	 * @param prefix
+	 *            of the files to be written
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	void flush(String prefix) throws IOException {
+		synchronized (_lock) {
+			if (_isInitialized) {
+				writeToFile(prefix);
+			}
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Move the files written by flush() or close() over the dictionary files
+	 * <br/>
+	 * Each file is replaced atomically, and the files already moved are
+	 * skipped, so an install interrupted by a crash can be done again <br/>
+	 * 
+	 * @param prefix
+	 *            of the files written
+	 * @throws IOException
+	 *             when the files cannot be moved
+	 */
+	static void install(String prefix) throws IOException {
+		Segments.install(new File(prefix + DICTONARY_FILENAME), new File(DICTONARY_FILENAME));
+		Segments.install(new File(prefix + TERM_DICTIONARY_FILENAME), new File(TERM_DICTIONARY_FILENAME));
+	}
+
 	/**
 	 * Get Vocabulary Id of a word <br/>
 	 * The word should be stemmed properly <br/>
@@ -81,21 +172,14 @@ class Dictionary {
 	 */
 	public int getVocabularyId(String word) {
 		if (_isInitialized) {
-			Vocabulary target = new Vocabulary(word);
-			synchronized (_dictionary) {
-				for (int i = 0; i < _dictionary.size(); i++) {
-					Vocabulary vocabulary = _dictionary.get(i);
-					if (vocabulary.compareTo(target) == 0) {
-						return i;
-					}
-				}
-			}
+			return _dictionary.getId(word);
 		}
 		return -1;
 	}
 
 	/**
 	 * Return a Vocabulary according to the vocabularyId <br/>
+	 * The Vocabulary is a copy: use increaseDocFreq() to change the df <br/>
 	 * 
 	 * @param vocabularyId
 	 * @return Vocabulary if found, null if not found or the Dictionary hasn't
@@ -103,11 +187,7 @@ class Dictionary {
 	 */
 	public Vocabulary getVocabulary(int vocabularyId) {
 		if (_isInitialized) {
-			synchronized (_dictionary) {
-				if (vocabularyId < _dictionary.size()) {
-					return _dictionary.get(vocabularyId);
-				}
-			}
+			return _dictionary.get(vocabularyId);
 		}
 		return null;
 	}
@@ -122,32 +202,7 @@ class Dictionary {
 	 */
 	public int checkAndAddWord(String token) {
 		if (_isInitialized) {
-			// Create a new temporary vocabulary
-			Vocabulary newVocabulary = new Vocabulary(token, 0);
-
-			int vocabularyId = -1;
-
-			// Find the similar vocabulary in the Dictionary
-			// If found the increase the df of that word and return its index
-			synchronized (_dictionary) {
-				for (Vocabulary vocabulary : _dictionary) {
-					if (vocabulary.compareTo(newVocabulary) == 0) {
-						vocabularyId = _dictionary.indexOf(vocabulary);
-						break;
-					}
-				}
-
-				// Cannot be found: add newVocaburary into the dictionary and
-				// return
-				// its index
-				if (vocabularyId == -1) {
-					_dictionary.add(newVocabulary);
-					vocabularyId = _dictionary.indexOf(newVocabulary);
-				}
-			}
-
-			return vocabularyId;
-
+			return _dictionary.getOrAdd(token);
 		} else {
 			return -1;
 		}
@@ -161,12 +216,11 @@ class Dictionary {
 	 */
 	private synchronized void fetchDictionary() throws IOException {
 		// Initialise the Stream readers
-		FileInputStream fis = new FileInputStream(DICTONARY_FILENAME);
+		FileInputStream fis = new FileInputStream(_prefix + DICTONARY_FILENAME);
 		InputStreamReader isr = new InputStreamReader(fis);
 		BufferedReader br = new BufferedReader(isr);
 
 		// Empty the dictionary
-		// TODO should not initialise the dictionary (same as documentList's problem)
 		_dictionary.clear();
 
 		// Fetch data from file into local dictionary
@@ -183,29 +237,72 @@ class Dictionary {
 		br.close();
 		isr.close();
 		fis.close();
+
+		applyDelta();
 	}
 
 	/**
-	 * Update the local Dictionary to file
+	 * Apply the changes of the generations after the checkpoint to the
+	 * dictionary fetched from the checkpoint: the new words are appended, and
+	 * the df of the other words is set <br/>
 	 * 
 	 * @throws IOException
+	 *             when the changes do not match the dictionary
+	 */
+	private void applyDelta() throws IOException {
+		for (String word : _delta.getWords()) {
+			int vocabularyId = _delta.getVocabularyId(word);
+			int df = _delta.getDf(word);
+			if (vocabularyId == _dictionary.size()) {
+				_dictionary.add(new Vocabulary(word, df));
+			} else if (vocabularyId < _dictionary.size() && word.equals(_dictionary.get(vocabularyId).word())) {
+				_dictionary.increaseDocFreq(vocabularyId, df - _dictionary.df(vocabularyId));
+			} else {
+				throw new IOException("The dictionary delta does not match the dictionary: " + word);
+			}
+		}
+	}
+
+	/**
+	 * Write the local Dictionary to files named after the dictionary files
+	 * with a prefix <br/>
+	 * The dictionary files are then replaced with install(), so they are never
+	 * left half-written <br/>
+	 * 
+	 * @param prefix
+	 *            of the files to be written
+	 * @throws IOException
 	 *             when the file cannot be openned
 	 */
-	private synchronized void writeToFile() throws IOException {
+	private synchronized void writeToFile(String prefix) throws IOException {
 		// Initialise the Stream writers
-		FileOutputStream fos = new FileOutputStream(DICTONARY_FILENAME, false);
+		FileOutputStream fos = new FileOutputStream(prefix + DICTONARY_FILENAME, false);
 		OutputStreamWriter osw = new OutputStreamWriter(fos);
 		BufferedWriter bw = new BufferedWriter(osw);
 
-		// Write each vocabulary to each line of the file.
-		for (Vocabulary vocabulary : _dictionary) {
+		// Write each vocabulary to each line of the file, in vocabularyId order.
+		int noVocabularies = _dictionary.size();
+		ArrayList<String> words = new ArrayList<String>(noVocabularies);
+		int[] dfs = new int[noVocabularies];
+		for (int i = 0; i < noVocabularies; i++) {
+			Vocabulary vocabulary = _dictionary.get(i);
 			bw.write(vocabulary.toString() + "\n");
+			words.add(vocabulary.word());
+			dfs[i] = vocabulary.df();
 		}
 
 		// Close stream writers
+		bw.flush();
+		fos.getFD().sync();
 		bw.close();
 		osw.close();
 		fos.close();
+
+		// Write the sorted term dictionary
+		File termDictionaryFile = new File(prefix + TERM_DICTIONARY_FILENAME);
+		TermDictionaryWriter.write(termDictionaryFile, words, dfs, DocumentList.noDocuments(),
+				TermDictionaryWriter.DEFAULT_BLOCK_SIZE);
+		Segments.sync(termDictionaryFile);
 	}
 
 	/**
@@ -215,13 +312,48 @@ class Dictionary {
 	 *            of the document
 	 */
 	public void increaseDocFreq(int docId) {
-		synchronized (_dictionary) {
-			Vocabulary vocabulary = getVocabulary(docId);
-	
-			if (vocabulary != null) {
-				vocabulary.increaseDocFreq();
-			}
+		increaseDocFreq(docId, 1);
+	}
+
+	/**
+	 * Get the number of vocabularies
+	 * 
+	 * @return number of vocabularies, 0 if the Dictionary hasn't
+	 *         initialised/has been closed
+	 */
+	public int size() {
+		if (_isInitialized) {
+			return _dictionary.size();
+		}
+		return 0;
+	}
+
+	/**
+	 * Set the df of every vocabulary, once the postings of the deleted
+	 * documents have been dropped <br/>
+	 * 
+	 * @param dfs
+	 *            the df of each vocabularyId. The vocabularies past the end of
+	 *            the array get a df of 0
+	 */
+	void resetDocFreqs(int[] dfs) {
+		int noVocabularies = size();
+		for (int i = 0; i < noVocabularies; i++) {
+			increaseDocFreq(i, (i < dfs.length ? dfs[i] : 0) - _dictionary.df(i));
 		}
+	}
 
+	/**
+	 * Increase the df of a vocabulary by some amount <br/>
+	 * This is used to register many documents at once <br/>
+	 * 
+	 * @param vocabularyId
+	 * @param amount
+	 *            number of new documents containing the vocabulary
+	 */
+	public void increaseDocFreq(int vocabularyId, int amount) {
+		if (_isInitialized) {
+			_dictionary.increaseDocFreq(vocabularyId, amount);
+		}
 	}
 }
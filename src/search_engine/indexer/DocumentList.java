@@ -2,12 +2,20 @@ package search_engine.indexer;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import search_engine.common.DocumentTableWriter;
+import search_engine.common.IndexDelta;
+import search_engine.common.Segments;
+import search_engine.common.Shards;
+import search_engine.common.Tombstones;
 
 /**
  * <b>Singleton class </b><br/>
@@ -16,6 +24,13 @@ import java.util.LinkedList;
  * A DocumentList is a list of documentName, each is then assigned a docId upon
  * adding <br/>
  * The docId is simply the index of the documentName in the list <br/>
+ * The names are kept in an array indexed by docId, and a hash map from name
+ * to docId, so both lookups take constant time <br/>
+ * The list is saved both as text, one name per line, and as a binary
+ * document table (see DocumentTableWriter) the searcher maps <br/>
+ * A deleted document keeps its docId, and is marked in the Tombstones of the
+ * list until the list is compacted. A document can be added again once it
+ * has been deleted, with a new docId <br/>
  * <br/>
  * <b>Note: The DocumentList needs to be close () when done to save all the
  * changes into files</b><br/>
@@ -25,15 +40,42 @@ import java.util.LinkedList;
  */
 
 class DocumentList {
-	private final String DOCUMENT_FILENAME = "documents.txt";
+	private static final String DOCUMENT_FILENAME = "documents.txt";
+	private static final String DOCUMENT_TABLE_FILENAME = "documents.bin";
+	private static final String DELETED_FILENAME = "deleted.bin";
+	private static final String TEMPORARY_PREFIX = "tmp.";
 
 	// Singleton
-	private static LinkedList<String> _documentList = new LinkedList<String>();
+	private static ArrayList<String> _documentList = new ArrayList<String>();
+	private static HashMap<String, Integer> _docIds = new HashMap<String, Integer>();
+	private static Tombstones _deleted = new Tombstones();
+	private static final Object _lock = new Object();
 	private static int _no_instances = 0;
 
+	private final String _prefix;
+	private final IndexDelta _delta;
 	private boolean _isInitialzed = false;
 
 	public DocumentList() throws IOException {
+		this("", new IndexDelta());
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 * Fetch the document list from the files of a checkpoint of the index and
+	 * the changes of the following generations, if the document list does not
+	 * exist <br/>
+	 * 
+	 * @param prefix
+	 *            of the files of the checkpoint (see IndexCommit)
+	 * @param delta
+	 *            the changes of the generations after the checkpoint
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	DocumentList(String prefix, IndexDelta delta) throws IOException {
+		_prefix = prefix;
+		_delta = delta;
 		start();
 	}
 
@@ -45,7 +87,7 @@ class DocumentList {
 	 *             when the file cannot be opened
 	 */
 	public void start() throws IOException {
-		synchronized (_documentList) {
+		synchronized (_lock) {
 			_no_instances++;
 			if (_no_instances == 1) {
 				fetchDocumentList();
@@ -56,21 +98,75 @@ class DocumentList {
 
 	/**
 	 * Close the DocumentList <br/>
+	 * The shards of the index, which would miss the changes, are dropped
+	 * before the files are replaced (see Shards) <br/>
 	 * 
 	 * @throws IOException
 	 *             when the file cannot be opened
 	 * 
 	 */
 	public void close() throws IOException {
-		synchronized (_documentList) {
+		synchronized (_lock) {
 			_no_instances--;
 			if (_no_instances == 0) {
-				writeToFile();
+				writeToFile(TEMPORARY_PREFIX);
+				Shards.invalidate();
+				install(TEMPORARY_PREFIX);
 			}
 			_isInitialzed = false;
 		}
 	}
 
+	/**
+	 * Release the DocumentList without saving it <br/>
+	 * This is used by SegmentedIndex, whose commits have already written every
+	 * change to the files of their generations (see flush(String)), so the
+	 * document files of the Indexer are left as they are <br/>
+	 */
+	void release() {
+		synchronized (_lock) {
+			_no_instances--;
+			_isInitialzed = false;
+		}
+	}
+
+	/**
+	 * Save the DocumentList, without closing it, to files named after the
+	 * document file and the tombstones file with a prefix <br/>
+	 * The files are forced to disk. This is used by SegmentedIndex, which keeps
+	 * the DocumentList open while documents keep being indexed, to write each
+	 * generation of the index <br/>
+	 * 
+	 * @param prefix
+	 *            of the files to be written
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	void flush(String prefix) throws IOException {
+		synchronized (_lock) {
+			if (_isInitialzed) {
+				writeToFile(prefix);
+			}
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Move the files written by flush() or close() over the document file, the
+	 * document table and the tombstones file, if they have not been moved yet
+	 * <br/>
+	 * 
+	 * @param prefix
+	 *            of the file written
+	 * @throws IOException
+	 *             when the file cannot be moved
+	 */
+	static void install(String prefix) throws IOException {
+		Segments.install(new File(prefix + DELETED_FILENAME), new File(DELETED_FILENAME));
+		Segments.install(new File(prefix + DOCUMENT_TABLE_FILENAME), new File(DOCUMENT_TABLE_FILENAME));
+		Segments.install(new File(prefix + DOCUMENT_FILENAME), new File(DOCUMENT_FILENAME));
+	}
+
 	/**
 	 * Add a document into the documentList and return its docId <br/>
 	 * If the document has been already added, it will not be added again <br/>
@@ -81,9 +177,10 @@ class DocumentList {
 	 */
 	public int addDocument(String docName) {
 		if (_isInitialzed) {
-			synchronized (_documentList) {
+			synchronized (_lock) {
 				int docId = getDocId(docName);
 				if (docId == -1) {
+					_docIds.put(docName, _documentList.size());
 					_documentList.add(docName);
 					return _documentList.size() - 1;
 				}
@@ -93,7 +190,8 @@ class DocumentList {
 	}
 
 	/**
-	 * Return the docId of a document based on its name
+	 * Return the docId of a document based on its name <br/>
+	 * Only the documents which are not deleted are found <br/>
 	 * 
 	 * @param docName
 	 * @return docId of the document, or -1 is the document is not found, or the
@@ -101,14 +199,136 @@ class DocumentList {
 	 */
 	public int getDocId(String docName) {
 		if (_isInitialzed) {
-			synchronized (_documentList) {
-				return _documentList.indexOf(docName);
+			synchronized (_lock) {
+				// A document added again after being deleted maps to its last
+				// docId
+				Integer docId = _docIds.get(docName);
+				if (docId == null || _deleted.isDeleted(docId)) {
+					return -1;
+				}
+				return docId;
 			}
 		} else {
 			return -1;
 		}
 	}
 
+	/**
+	 * Delete a document <br/>
+	 * The document keeps its docId, and is skipped by the searcher until the
+	 * list is compacted <br/>
+	 * 
+	 * @param docName
+	 * @return docId of the deleted document, -1 if the document is not found
+	 *         or the DocumentList hasn't been initialised/has been closed
+	 */
+	public int deleteDocument(String docName) {
+		if (_isInitialzed) {
+			synchronized (_lock) {
+				int docId = getDocId(docName);
+				if (docId != -1) {
+					_deleted.delete(docId);
+				}
+				return docId;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Delete a document by its docId <br/>
+	 * 
+	 * @param docId
+	 * @return false if the document is not found or was deleted already
+	 */
+	public boolean deleteDocument(int docId) {
+		if (_isInitialzed) {
+			synchronized (_lock) {
+				return docId >= 0 && docId < _documentList.size() && _deleted.delete(docId);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether a document has been deleted
+	 * 
+	 * @param docId
+	 * @return true if the document is deleted
+	 */
+	public boolean isDeleted(int docId) {
+		synchronized (_lock) {
+			return _deleted.isDeleted(docId);
+		}
+	}
+
+	/**
+	 * Get the number of documents, deleted documents included
+	 * 
+	 * @return number of documents
+	 */
+	public int size() {
+		synchronized (_lock) {
+			return _documentList.size();
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Get the number of documents, deleted documents included, whether the
+	 * DocumentList is open or not. The Dictionary computes the idf of its
+	 * terms from it <br/>
+	 * 
+	 * @return number of documents
+	 */
+	static int noDocuments() {
+		synchronized (_lock) {
+			return _documentList.size();
+		}
+	}
+
+	/**
+	 * Get the number of deleted documents
+	 * 
+	 * @return number of deleted documents
+	 */
+	public int getNoDeleted() {
+		synchronized (_lock) {
+			return _deleted.size();
+		}
+	}
+
+	/**
+	 * Drop the deleted documents from the list <br/>
+	 * The other documents are renumbered in order, and the map from the old
+	 * docIds to the new ones is returned so the postings can be renumbered
+	 * as well <br/>
+	 * 
+	 * @return the new docId of every old docId, -1 for a deleted document
+	 */
+	int[] compact() {
+		synchronized (_lock) {
+			int[] docIdMap = new int[_documentList.size()];
+			ArrayList<String> documents = new ArrayList<String>();
+			for (int docId = 0; docId < _documentList.size(); docId++) {
+				if (_deleted.isDeleted(docId)) {
+					docIdMap[docId] = -1;
+				} else {
+					docIdMap[docId] = documents.size();
+					documents.add(_documentList.get(docId));
+				}
+			}
+
+			_documentList = documents;
+			_docIds.clear();
+			for (int docId = 0; docId < documents.size(); docId++) {
+				_docIds.put(documents.get(docId), docId);
+			}
+			_deleted.clear();
+			return docIdMap;
+		}
+	}
+
 	/**
 	 * Return the docName of a document based on its docId
 	 * 
@@ -117,16 +337,13 @@ class DocumentList {
 	 */
 	public String getDocName(int docId) {
 		if (_isInitialzed) {
-			try {
-				synchronized (_documentList) {
+			synchronized (_lock) {
+				if (docId >= 0 && docId < _documentList.size()) {
 					return _documentList.get(docId);
 				}
-			} catch (Exception e) {
-				return null;
 			}
-		} else {
-			return null;
 		}
+		return null;
 	}
 
 	/**
@@ -137,19 +354,20 @@ class DocumentList {
 	 */
 	private void fetchDocumentList() throws IOException {
 		// Initialise the Stream readers
-		FileInputStream fis = new FileInputStream(DOCUMENT_FILENAME);
+		FileInputStream fis = new FileInputStream(_prefix + DOCUMENT_FILENAME);
 		InputStreamReader isr = new InputStreamReader(fis);
 		BufferedReader br = new BufferedReader(isr);
 
 		// Clear the documentList
-		// TODO: should not initialise the documentList as it is being used as a synchronisation lock
 		_documentList.clear();
+		_docIds.clear();
 
 		// Fetch data from file into local dictionary
 		String nextLine = null;
 		do {
 			nextLine = br.readLine();
 			if (nextLine != null) {
+				_docIds.put(nextLine, _documentList.size());
 				_documentList.add(nextLine);
 			}
 		} while (nextLine != null);
@@ -158,17 +376,36 @@ class DocumentList {
 		br.close();
 		isr.close();
 		fis.close();
+
+		_deleted = Tombstones.read(new File(_prefix + DELETED_FILENAME));
+
+		// Apply the changes of the generations after the checkpoint
+		for (String docName : _delta.getDocNames()) {
+			_docIds.put(docName, _documentList.size());
+			_documentList.add(docName);
+		}
+		for (int docId : _delta.getDeletedDocIds()) {
+			if (docId >= _documentList.size()) {
+				throw new IOException("The document delta does not match the document list: " + docId);
+			}
+			_deleted.delete(docId);
+		}
 	}
 
 	/**
-	 * Update the local Document List to file
+	 * Write the local Document List to files named after the document file and
+	 * the document table with a prefix <br/>
+	 * The files are then replaced with install(), so they are never left
+	 * half-written <br/>
 	 * 
+	 * @param prefix
+	 *            of the file to be written
 	 * @throws IOException
 	 *             when the file cannot be opened
 	 */
-	private void writeToFile() throws IOException {
+	private void writeToFile(String prefix) throws IOException {
 		// Initialise the Stream writers
-		FileOutputStream fos = new FileOutputStream(DOCUMENT_FILENAME, false);
+		FileOutputStream fos = new FileOutputStream(prefix + DOCUMENT_FILENAME, false);
 		OutputStreamWriter osw = new OutputStreamWriter(fos);
 		BufferedWriter bw = new BufferedWriter(osw);
 
@@ -178,8 +415,16 @@ class DocumentList {
 		}
 
 		// Close stream writers
+		bw.flush();
+		fos.getFD().sync();
 		bw.close();
 		osw.close();
 		fos.close();
+
+		DocumentTableWriter.write(new File(prefix + DOCUMENT_TABLE_FILENAME), _documentList);
+
+		// The tombstones file is written even if empty, so a reader can tell
+		// it from a file deleted with its generation
+		_deleted.write(new File(prefix + DELETED_FILENAME));
 	}
 }
@@ -0,0 +1,169 @@
+package search_engine.indexer;
+
+import java.io.IOException;
+
+import search_engine.common.PostingsCodec;
+
+/**
+ * This class provides the bulk build mode of the Indexer <br/>
+ * Where every Indexer.start() reads, merges and rewrites the whole index for a
+ * single document, IndexBuilder keeps the DocumentList and Dictionary open and
+ * collects the postings of many documents in memory. The index files are then
+ * written only once, when commit() is called. <br/>
+ * The postings are accumulated by a SpimiInverter: when they exceed the memory
+ * budget they are spilled to a temporary run, and all runs are merged into the
+ * posting file on commit(), so the corpus does not need to fit in memory. <br/>
+ * An impact-ordered IndexBuilder also writes the postings sorted by impact on
+ * commit() (see ImpactWriter), which the searcher uses to answer the queries
+ * without positional constraints by score-at-a-time <br/>
+ * The postings files are encoded with the PostingsCodec given to the
+ * constructor. Without a codec, the codec of the posting file is kept, VByte
+ * for a new index <br/>
+ * <br/>
+ * <b>Note:</b> <br/>
+ * 1. Nothing is written to the index files until commit() is called <br/>
+ * 2. IndexBuilder is not thread-safe: add the documents from a single thread
+ * <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	IndexBuilder builder = new IndexBuilder();
+ * 	builder.start();
+ * 	builder.addDocument(docName1, document1);
+ * 	builder.addDocument(docName2, document2);
+ * 	builder.commit();
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class IndexBuilder {
+	private final long _memoryBudget;
+	private final boolean _isImpactOrdered;
+	private final PostingsCodec _codec;
+
+	private DocumentList _documentList;
+	private Dictionary _dictionary;
+	private SpimiInverter _inverter;
+
+	private boolean _isStarted = false;
+
+	/**
+	 * Default Constructor <br/>
+	 * Use the default memory budget for the in-memory postings <br/>
+	 */
+	public IndexBuilder() {
+		this(SpimiInverter.DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 * 
+	 * @param memoryBudget
+	 *            the number of bytes the in-memory postings may use before
+	 *            being spilled to a temporary run
+	 */
+	public IndexBuilder(long memoryBudget) {
+		this(memoryBudget, false);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 * 
+	 * @param memoryBudget
+	 *            the number of bytes the in-memory postings may use before
+	 *            being spilled to a temporary run
+	 * @param isImpactOrdered
+	 *            whether the postings are also written in impact order
+	 */
+	public IndexBuilder(long memoryBudget, boolean isImpactOrdered) {
+		this(memoryBudget, isImpactOrdered, null);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 * 
+	 * @param memoryBudget
+	 *            the number of bytes the in-memory postings may use before
+	 *            being spilled to a temporary run
+	 * @param isImpactOrdered
+	 *            whether the postings are also written in impact order
+	 * @param codec
+	 *            the codec the postings files are encoded with, null for the
+	 *            codec of the posting file
+	 */
+	public IndexBuilder(long memoryBudget, boolean isImpactOrdered, PostingsCodec codec) {
+		_memoryBudget = memoryBudget;
+		_isImpactOrdered = isImpactOrdered;
+		_codec = codec;
+	}
+
+	/**
+	 * Start method <br/>
+	 * Open the DocumentList and Dictionary and prepare an empty SpimiInverter
+	 * <br/>
+	 *
+	 * @throws IOException
+	 *             when cannot open the database
+	 */
+	public void start() throws IOException {
+		_inverter = new SpimiInverter(_memoryBudget, null, _codec);
+		_dictionary = new Dictionary();
+		_documentList = new DocumentList();
+		_isStarted = true;
+	}
+
+	/**
+	 * Index a document into memory <br/>
+	 *
+	 * @param docName
+	 *            specifies the name of the document. In the search engine, this
+	 *            should be the link to the website.<br/>
+	 * @param document
+	 *            the content of the document <br/>
+	 * @return docId of the document, -1 if the document has been indexed before
+	 *         or the IndexBuilder hasn't been started/has been committed
+	 * @throws IOException
+	 *             when the postings cannot be spilled
+	 */
+	public int addDocument(String docName, String document) throws IOException {
+		if (!_isStarted) {
+			return -1;
+		}
+
+		Indexer indexer = new Indexer(docName, document);
+		int docId = indexer.indexInto(_documentList, _dictionary, _inverter.getPostingList());
+		if (docId != -1) {
+			_inverter.addDocument(indexer.getNoDistinctTokens(), indexer.getNoPositions());
+		}
+		return docId;
+	}
+
+	/**
+	 * Commit method <br/>
+	 * Write all the documents added since start() to the index files <br/>
+	 * The IndexBuilder need to be started again before adding more documents
+	 * <br/>
+	 *
+	 * @throws IOException
+	 *             when cannot write to the database
+	 */
+	public void commit() throws IOException {
+		if (!_isStarted) {
+			return;
+		}
+		_isStarted = false;
+
+		_documentList.close();
+		_dictionary.close();
+		_inverter.finish();
+		_inverter = null;
+
+		if (_isImpactOrdered) {
+			PostingList.writeImpacts(DocumentList.noDocuments());
+		}
+	}
+}
@@ -1,10 +1,15 @@
 package search_engine.indexer;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import opennlp.tools.tokenize.WhitespaceTokenizer;
-import search_engine.common.Stemmer;
+import search_engine.common.Analyzer;
+import search_engine.common.CachingStemmer;
+import search_engine.common.IStemmer;
+import search_engine.common.PostingsCodec;
 import search_engine.common.StopwordFilter;
 
 /**
@@ -55,17 +60,35 @@ public class Indexer {
 	private Dictionary _dictionary;
 	private PostingList _localPosting;
 
-	protected class TokenWithId {
-		public int id;
-		public String token;
+	/**
+	 * The codec the posting file is written with, null to keep the codec of
+	 * the posting file <br/>
+	 */
+	private final PostingsCodec _codec;
 
-		TokenWithId(int id, String token) {
-			this.id = id;
-			this.token = token;
-		}
-	}
+	/**
+	 * The PartialIndex the document is indexed into by a
+	 * ParallelIndexBuilder worker, null otherwise <br/>
+	 */
+	private PartialIndex _partialIndex;
+
+	/**
+	 * The vocabularyId of every distinct token met in this document, so the
+	 * Dictionary is only consulted once per distinct token <br/>
+	 */
+	private HashMap<String, Integer> localTokenList = new HashMap<String, Integer>();
+
+	/**
+	 * The positions of every distinct token of this document, in the order the
+	 * tokens are met, once the document has been analysed <br/>
+	 */
+	private LinkedHashMap<String, Positions> _tokenPositions;
 
-	private ArrayList<TokenWithId> localTokenList = new ArrayList<TokenWithId>();
+	/**
+	 * The number of tokens indexed from this document, i.e: the number of
+	 * positions added to the PostingList <br/>
+	 */
+	private int _noPositions = 0;
 
 	/**
 	 * Recommended Constructor <br/>
@@ -80,9 +103,28 @@ public class Indexer {
 	 *            document. <br/>
 	 */
 	public Indexer(String docName, String document) {
+		this(docName, document, null);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 * Pass the document to the Indexer, and the codec the posting file is
+	 * written with <br/>
+	 * 
+	 * @param docName
+	 *            specifies the name of the document. In the search engine, this
+	 *            should be the link to the website.<br/>
+	 * @param document
+	 *            the content of the document <br/>
+	 * @param codec
+	 *            the codec the posting file is written with, null to keep the
+	 *            codec of the posting file <br/>
+	 */
+	public Indexer(String docName, String document, PostingsCodec codec) {
 		// Save the references into local fields
 		_docName = docName;
 		_indexDocument = document;
+		_codec = codec;
 	}
 
 	/**
@@ -95,7 +137,7 @@ public class Indexer {
 	 */
 	public void start() throws IOException {
 		// Initialise localPosting, dictionary and documentList
-		_localPosting = new PostingList();
+		_localPosting = new PostingList(_codec);
 		_dictionary = new Dictionary();
 		_documentList = new DocumentList();
 
@@ -108,53 +150,174 @@ public class Indexer {
 		_localPosting.writeToFile();
 	}
 
+	/**
+	 * Index the document into a DocumentList, Dictionary and PostingList owned
+	 * by the caller <br/>
+	 * Nothing is written to file: the caller is responsible for closing the
+	 * DocumentList and Dictionary and writing the PostingList <br/>
+	 * This is used by IndexBuilder to index many documents before flushing
+	 * once <br/>
+	 * 
+	 * @param documentList
+	 * @param dictionary
+	 * @param postingList
+	 * @return docId of the indexed document, -1 if the document has been
+	 *         indexed before
+	 */
+	int indexInto(DocumentList documentList, Dictionary dictionary, PostingList postingList) {
+		_documentList = documentList;
+		_dictionary = dictionary;
+		_localPosting = postingList;
+
+		return indexDocument();
+	}
+
+	/**
+	 * Index the document, whose docId has already been assigned, into a
+	 * PartialIndex <br/>
+	 * The words get the local vocabularyIds of the PartialIndex, and no df is
+	 * counted: the PartialIndex is merged into the Dictionary and PostingList
+	 * later, by the ParallelIndexBuilder <br/>
+	 * 
+	 * @param docId
+	 *            of the document
+	 * @param partialIndex
+	 * @return docId of the indexed document, -1 if the document has not been
+	 *         indexed
+	 */
+	int indexInto(int docId, PartialIndex partialIndex) {
+		_partialIndex = partialIndex;
+		_localPosting = partialIndex.getPostingList();
+
+		return invertDocument(docId) ? docId : -1;
+	}
+
+	/**
+	 * Tokenize, stem and filter the document into the positions of its
+	 * distinct tokens, without indexing it <br/>
+	 * Nothing shared is read or written, so documents can be analysed
+	 * concurrently before they are indexed one at a time, e.g: by
+	 * SegmentedIndex. A document not analysed yet is analysed when it is
+	 * indexed <br/>
+	 * 
+	 * @return false if the document cannot be analysed
+	 */
+	boolean analyze() {
+		if (_tokenPositions != null) {
+			return true;
+		}
+
+		// Initialise the analyzer, stemmer and filter
+		IStemmer stemmer = new CachingStemmer();
+		Analyzer analyzer = new Analyzer(stemmer);
+		StopwordFilter filter = new StopwordFilter(stemmer);
+
+		// Try initialise the Filter
+		try {
+			filter.initialize();
+		} catch (IOException e) {
+			System.out.println("IO error when initialize the Filter");
+			e.printStackTrace();
+			return false;
+		}
+
+		// Tokenize, lowercase, remove all non-alphabet character and stem
+		// The position of a token is its index among all the tokens, so
+		// the gaps left by stop-words are kept
+		LinkedHashMap<String, Positions> tokenPositions = new LinkedHashMap<String, Positions>();
+		analyzer.reset(_indexDocument);
+		while (analyzer.next()) {
+			String token = analyzer.term();
+			// Filter stop-word
+			if (!filter.isStopword(token)) {
+				Positions positions = tokenPositions.get(token);
+				if (positions == null) {
+					positions = new Positions();
+					tokenPositions.put(token, positions);
+				}
+				positions.add(analyzer.position());
+			}
+		}
+		_tokenPositions = tokenPositions;
+		return true;
+	}
+
+	/**
+	 * Get the number of distinct tokens indexed from the document, which is
+	 * also the number of tuples the document added to the PostingList <br/>
+	 * 
+	 * @return number of distinct tokens
+	 */
+	int getNoDistinctTokens() {
+		return localTokenList.size();
+	}
+
+	/**
+	 * Get the number of tokens indexed from the document, which is also the
+	 * number of positions the document added to the PostingList <br/>
+	 * 
+	 * @return number of tokens
+	 */
+	int getNoPositions() {
+		return _noPositions;
+	}
+
 	/**
 	 * index the _indexDocument into _documentList, _dictionary and _postings
+	 * 
+	 * @return docId of the indexed document, -1 if the document has not been
+	 *         indexed
 	 */
-	private void indexDocument() {
+	private int indexDocument() {
 		// Adding new document into _documentList and get its docId
 		int docId = _documentList.addDocument(_docName);
 
 		// Proceed if docId != -1, i.e: the document has not been indexed before
 		// Otherwise don't index
 		if (docId != -1) {
-			// Initialise the tokenizer, stemmer and filter
-			WhitespaceTokenizer tokenizer = WhitespaceTokenizer.INSTANCE;
-			Stemmer stemmer = new Stemmer();
-			StopwordFilter filter = new StopwordFilter(stemmer);
-
-			// Try initialise the Filter
-			try {
-				filter.initialize();
-			} catch (IOException e) {
-				System.out.println("IO error when initialize the Filter");
-				e.printStackTrace();
-				return;
+			if (!invertDocument(docId)) {
+				return -1;
 			}
+		}
 
-			// Tokenize
-			String[] tokens = tokenizer.tokenize(_indexDocument);
-
-			for (String token : tokens) {
-				// Lowercase and remove all non-alphabet character
-				token = token.replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
-				// Stem
-				token = stemmer.stem(token);
-				// Filter stop-word
-				if (!filter.isStopword(token)) {
-					int vocabularyId = findVocabularyIdInLocalList(token);
-					if (vocabularyId < 0) {
-						vocabularyId = _dictionary.checkAndAddWord(token);
-						TokenWithId newVocabulary = new TokenWithId(vocabularyId, token);
-						localTokenList.add(newVocabulary);
-					}
-					Posting posting = _localPosting.addAndGetPosting(vocabularyId);
-					posting.addDocId(docId);
-				}
+		return docId;
+	}
+
+	/**
+	 * Add the tokens of the _indexDocument, analysed first if it is not yet,
+	 * to _localPosting under the given docId <br/>
+	 * 
+	 * @param docId
+	 *            of the document
+	 * @return false if the document cannot be indexed
+	 */
+	private boolean invertDocument(int docId) {
+		if (!analyze()) {
+			return false;
+		}
+
+		// The tokens get their vocabularyIds in the order they are met
+		for (Map.Entry<String, Positions> entry : _tokenPositions.entrySet()) {
+			String token = entry.getKey();
+			int vocabularyId = findVocabularyIdInLocalList(token);
+			if (vocabularyId < 0) {
+				vocabularyId = _partialIndex != null ? _partialIndex.getOrAdd(token) : _dictionary
+						.checkAndAddWord(token);
+				localTokenList.put(token, vocabularyId);
+			}
+			Posting posting = _localPosting.addAndGetPosting(vocabularyId);
+			Positions positions = entry.getValue();
+			for (int i = 0; i < positions.size; i++) {
+				posting.addDocId(docId, positions.positions[i]);
 			}
+			_noPositions += positions.size;
+		}
 
+		// The df of a PartialIndex is counted when it is merged
+		if (_partialIndex == null) {
 			pushLocalTokenList();
 		}
+		return true;
 	}
 
 	/**
@@ -168,20 +331,34 @@ public class Indexer {
 	 *         returned
 	 */
 	private int findVocabularyIdInLocalList(String token) {
-		for (TokenWithId v : localTokenList) {
-			if (v.token.compareTo(token) == 0) {
-				return v.id;
-			}
+		Integer vocabularyId = localTokenList.get(token);
+		if (vocabularyId == null) {
+			return -1;
 		}
-		return -1;
+		return vocabularyId;
 	}
 
 	/**
 	 * Update the local token list onto the dictionary <br/>
 	 */
 	private void pushLocalTokenList() {
-		for (TokenWithId v : localTokenList) {
-			_dictionary.increaseDocFreq(v.id);
+		for (int vocabularyId : localTokenList.values()) {
+			_dictionary.increaseDocFreq(vocabularyId);
+		}
+	}
+
+	/**
+	 * The positions of a token in the document, in increasing order <br/>
+	 */
+	private static class Positions {
+		private int[] positions = new int[4];
+		private int size = 0;
+
+		private void add(int position) {
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			positions[size++] = position;
 		}
 	}
 }
@@ -0,0 +1,171 @@
+package search_engine.indexer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class provides the concurrent storage behind the Dictionary <br/>
+ * The Lexicon maps every stemmed word to a dense vocabularyId and every
+ * vocabularyId back to its word and df <br/>
+ * The words are kept off the heap in a TermArena, where a word is found
+ * through an open-addressing hash table, and the dfs in pages of atomic int
+ * arrays, so a large dictionary holds no object per word and costs the garbage
+ * collector next to nothing <br/>
+ * <br/>
+ * <b>Note:</b> <br/>
+ * 1. Lookups (both directions) are lock-free: see TermArena <br/>
+ * 2. New words are appended under the lock of the Lexicon. The Indexers only
+ * take it when they meet a word they have not seen, which soon becomes rare
+ * <br/>
+ * 3. vocabularyIds are assigned in insertion order and never change, which
+ * keeps the line number of a word in the dictionary file stable <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class Lexicon {
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int NO_PAGES = 1 << 16;
+
+	private final TermArena _words;
+	private final AtomicReferenceArray<AtomicIntegerArray> _dfs;
+
+	/**
+	 * Public Constructor <br/>
+	 * Create an empty Lexicon <br/>
+	 */
+	public Lexicon() {
+		_words = new TermArena();
+		_dfs = new AtomicReferenceArray<AtomicIntegerArray>(NO_PAGES);
+	}
+
+	/**
+	 * Get the vocabularyId of a word without locking <br/>
+	 *
+	 * @param word
+	 *            the stemmed word
+	 * @return the vocabularyId, -1 if the word is not in the Lexicon
+	 */
+	public int getId(String word) {
+		return _words.find(word);
+	}
+
+	/**
+	 * Get a copy of the Vocabulary with the given vocabularyId without locking
+	 * <br/>
+	 * Changing its df does not change the Lexicon: see increaseDocFreq() <br/>
+	 *
+	 * @param vocabularyId
+	 * @return the Vocabulary, null if no such vocabularyId
+	 */
+	public Vocabulary get(int vocabularyId) {
+		String word = _words.get(vocabularyId);
+		if (word == null) {
+			return null;
+		}
+		return new Vocabulary(word, df(vocabularyId));
+	}
+
+	/**
+	 * Get the df of the word with the given vocabularyId without locking <br/>
+	 *
+	 * @param vocabularyId
+	 * @return the df, 0 if no such vocabularyId
+	 */
+	public int df(int vocabularyId) {
+		if (vocabularyId < 0 || vocabularyId >= _words.size()) {
+			return 0;
+		}
+		return _dfs.get(vocabularyId >>> PAGE_BITS).get(vocabularyId & PAGE_MASK);
+	}
+
+	/**
+	 * Increase the df of a word by some amount without locking <br/>
+	 *
+	 * @param vocabularyId
+	 * @param amount
+	 */
+	public void increaseDocFreq(int vocabularyId, int amount) {
+		if (vocabularyId < 0 || vocabularyId >= _words.size()) {
+			return;
+		}
+		_dfs.get(vocabularyId >>> PAGE_BITS).addAndGet(vocabularyId & PAGE_MASK, amount);
+	}
+
+	/**
+	 * Return the vocabularyId of the word, adding a new word with df = 0 if the
+	 * word is not in the Lexicon yet <br/>
+	 *
+	 * @param word
+	 *            the stemmed word
+	 * @return the vocabularyId of the word
+	 */
+	public int getOrAdd(String word) {
+		int id = _words.find(word);
+		if (id >= 0) {
+			return id;
+		}
+
+		synchronized (this) {
+			// Another Indexer may have added the word while we were waiting
+			id = _words.find(word);
+			if (id >= 0) {
+				return id;
+			}
+			return append(word, 0);
+		}
+	}
+
+	/**
+	 * Append a Vocabulary read from file <br/>
+	 * The Vocabulary will get the next vocabularyId, whether or not the word is
+	 * already known <br/>
+	 *
+	 * @param vocabulary
+	 * @return the vocabularyId of the appended Vocabulary
+	 */
+	public synchronized int add(Vocabulary vocabulary) {
+		return append(vocabulary.word(), vocabulary.df());
+	}
+
+	/**
+	 * Number of Vocabulary in the Lexicon
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return _words.size();
+	}
+
+	/**
+	 * Empty the Lexicon <br/>
+	 * <b>Note:</b> this is not atomic, and must only be called when no other
+	 * thread is using the Lexicon <br/>
+	 */
+	public synchronized void clear() {
+		_words.clear();
+		for (int i = 0; i < NO_PAGES; i++) {
+			_dfs.set(i, null);
+		}
+	}
+
+	/**
+	 * Set the df of the next vocabularyId, then append the word, which
+	 * publishes the vocabularyId <br/>
+	 * The caller must hold the lock of the Lexicon <br/>
+	 *
+	 * @param word
+	 * @param df
+	 * @return the vocabularyId given to the word
+	 */
+	private int append(String word, int df) {
+		int vocabularyId = _words.size();
+		int pageIndex = vocabularyId >>> PAGE_BITS;
+		if (_dfs.get(pageIndex) == null) {
+			_dfs.set(pageIndex, new AtomicIntegerArray(PAGE_SIZE));
+		}
+		_dfs.get(pageIndex).set(vocabularyId & PAGE_MASK, df);
+		return _words.add(word);
+	}
+}
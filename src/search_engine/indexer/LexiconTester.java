@@ -0,0 +1,184 @@
+package search_engine.indexer;
+
+import static org.junit.Assert.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * System test the concurrent storage of the Dictionary: the Lexicon and its
+ * TermArena <br/>
+ * Every thread adds the same words, in its own order, so that most words are
+ * added by several threads at once. The tests are in the package of the
+ * Indexer, whose storage classes are not public
+ *
+ * @author ngtrhieu0011
+ *
+ */
+public class LexiconTester {
+	private static final int NO_THREADS = 8;
+	private static final int NO_WORDS = 5000;
+	private static final String DICTIONARY_FILE = "dictionary.txt";
+
+	/**
+	 * Get the words added by the threads, some of them not ASCII
+	 *
+	 * @return the words, every one different
+	 */
+	private static String[] words() {
+		String[] words = new String[NO_WORDS];
+		for (int i = 0; i < NO_WORDS; i++) {
+			words[i] = (i % 5 == 0 ? "caf\u00e9" : "word") + i;
+		}
+		return words;
+	}
+
+	/**
+	 * Number of times a thread adds a word: from 0 to 2, so the df of a word
+	 * depends on the threads
+	 *
+	 * @param thread
+	 * @param word
+	 * @return number of adds
+	 */
+	private static int noAdds(int thread, int word) {
+		return (thread + word) % 3;
+	}
+
+	/**
+	 * Run a task on every thread, released at the same time
+	 *
+	 * @param task
+	 *            run with the number of the thread
+	 * @throws InterruptedException
+	 *             when the test is interrupted
+	 */
+	private static void runThreads(final ThreadTask task) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final Throwable[] failures = new Throwable[NO_THREADS];
+		Thread[] threads = new Thread[NO_THREADS];
+		for (int t = 0; t < NO_THREADS; t++) {
+			final int thread = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						task.run(thread);
+					} catch (Throwable e) {
+						failures[thread] = e;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (Throwable failure : failures) {
+			if (failure != null) {
+				throw new AssertionError(failure);
+			}
+		}
+	}
+
+	private interface ThreadTask {
+		void run(int thread) throws Exception;
+	}
+
+	@Test
+	public void concurrentCheckAndAddWord() {
+		System.out.println("\n\nTesting concurrent adds to the Dictionary");
+		final String[] words = words();
+		final int[][] ids = new int[NO_THREADS][NO_WORDS];
+
+		try {
+			new FileOutputStream(DICTIONARY_FILE, false).close();
+			final Dictionary dictionary = new Dictionary();
+			try {
+				runThreads(new ThreadTask() {
+					@Override
+					public void run(int thread) {
+						// Every thread goes through the words from a different start
+						for (int n = 0; n < NO_WORDS; n++) {
+							int i = (n + thread * NO_WORDS / NO_THREADS) % NO_WORDS;
+							ids[thread][i] = -1;
+							for (int add = 0; add < noAdds(thread, i); add++) {
+								int vocabularyId = dictionary.checkAndAddWord(words[i]);
+								assertEquals(vocabularyId, dictionary.getVocabularyId(words[i]));
+								dictionary.increaseDocFreq(vocabularyId, 1);
+								ids[thread][i] = vocabularyId;
+							}
+						}
+					}
+				});
+
+				// Every word has a single vocabularyId, and counts every add
+				HashSet<Integer> distinctIds = new HashSet<Integer>();
+				for (int i = 0; i < NO_WORDS; i++) {
+					int vocabularyId = dictionary.getVocabularyId(words[i]);
+					int df = 0;
+					for (int thread = 0; thread < NO_THREADS; thread++) {
+						if (noAdds(thread, i) > 0) {
+							assertEquals(vocabularyId, ids[thread][i]);
+						}
+						df += noAdds(thread, i);
+					}
+					assertTrue(vocabularyId >= 0);
+					assertTrue(distinctIds.add(vocabularyId));
+					assertEquals(words[i], dictionary.getVocabulary(vocabularyId).word());
+					assertEquals(df, dictionary.getVocabulary(vocabularyId).df());
+				}
+				assertEquals(NO_WORDS, dictionary.size());
+			} finally {
+				dictionary.release();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void concurrentFindOrAdd() {
+		System.out.println("\n\nTesting concurrent adds to the TermArena");
+		final String[] words = words();
+		final int[][] ids = new int[NO_THREADS][NO_WORDS];
+		final TermArena arena = new TermArena();
+
+		try {
+			runThreads(new ThreadTask() {
+				@Override
+				public void run(int thread) {
+					for (int n = 0; n < NO_WORDS; n++) {
+						int i = (n + thread * NO_WORDS / NO_THREADS) % NO_WORDS;
+						ids[thread][i] = arena.findOrAdd(words[i]);
+						// A word found once is found from then on, by every thread
+						assertEquals(ids[thread][i], arena.find(words[i]));
+						assertEquals(words[i], arena.get(ids[thread][i]));
+					}
+				}
+			});
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			fail();
+		}
+
+		HashSet<Integer> distinctIds = new HashSet<Integer>();
+		for (int i = 0; i < NO_WORDS; i++) {
+			for (int thread = 1; thread < NO_THREADS; thread++) {
+				assertEquals(ids[0][i], ids[thread][i]);
+			}
+			assertTrue(distinctIds.add(ids[0][i]));
+		}
+		assertEquals(NO_WORDS, arena.size());
+	}
+}
@@ -0,0 +1,96 @@
+package search_engine.indexer;
+
+/**
+ * This class decides which segments of a SegmentedIndex are merged <br/>
+ * The policy is log-size tiered: a segment belongs to the tier
+ * {@code floor(log_mergeFactor(size / minSegmentSize))}, and mergeFactor
+ * adjacent segments of the same tier are merged into one segment of the next
+ * tier. <br/>
+ * Every document is thus rewritten once per tier, i.e: a logarithmic number
+ * of times in the size of the index, and the number of live segments stays
+ * below mergeFactor per tier. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class MergePolicy {
+	public static final int DEFAULT_MERGE_FACTOR = 10;
+	public static final long DEFAULT_MIN_SEGMENT_SIZE = 1 << 16;
+
+	private final int _mergeFactor;
+	private final long _minSegmentSize;
+
+	/**
+	 * Default Constructor <br/>
+	 */
+	public MergePolicy() {
+		this(DEFAULT_MERGE_FACTOR, DEFAULT_MIN_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 *
+	 * @param mergeFactor
+	 *            number of segments merged at once, and size ratio between
+	 *            two tiers
+	 * @param minSegmentSize
+	 *            number of bytes under which every segment is in the lowest
+	 *            tier
+	 */
+	public MergePolicy(int mergeFactor, long minSegmentSize) {
+		_mergeFactor = Math.max(mergeFactor, 2);
+		_minSegmentSize = Math.max(minSegmentSize, 1);
+	}
+
+	/**
+	 * Find the next segments to merge <br/>
+	 * The oldest run of mergeFactor adjacent segments of the same tier is
+	 * chosen. Only adjacent segments are merged, so the docIds of a segment
+	 * stay older than the docIds of the segments after it <br/>
+	 *
+	 * @param sizes
+	 *            the size of each live segment, oldest first. A negative size
+	 *            marks a segment that is already being merged
+	 * @return index of the first segment to merge, -1 if there is nothing to
+	 *         merge
+	 */
+	public int findMerge(long[] sizes) {
+		int start = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			if (sizes[i] < 0) {
+				start = i + 1;
+				continue;
+			}
+			if (tier(sizes[i]) != tier(sizes[start])) {
+				start = i;
+			}
+			if (i - start + 1 == _mergeFactor) {
+				return start;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Getter for the number of segments merged at once
+	 *
+	 * @return mergeFactor
+	 */
+	public int getMergeFactor() {
+		return _mergeFactor;
+	}
+
+	/**
+	 * Get the tier of a segment
+	 *
+	 * @param size
+	 *            of the segment
+	 * @return the tier, 0 being the smallest segments
+	 */
+	private int tier(long size) {
+		int tier = 0;
+		for (long limit = _minSegmentSize * _mergeFactor; size >= limit && limit > 0; limit *= _mergeFactor) {
+			tier++;
+		}
+		return tier;
+	}
+}
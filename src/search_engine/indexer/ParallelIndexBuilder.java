@@ -0,0 +1,244 @@
+package search_engine.indexer;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import search_engine.common.PostingsCodec;
+
+/**
+ * This class provides the parallel bulk build mode of the Indexer <br/>
+ * The caller is the reader stage: it reads the documents and adds them one by
+ * one, in order, and each document gets its docId right away. The documents
+ * are grouped into batches (PartialIndex) which are inverted by a pool of
+ * worker threads, each batch into a partial index of its own. <br/>
+ * The partial indexes are merged in docId order into the Dictionary and the
+ * in-memory postings of a SpimiInverter, as soon as they are ready, so the
+ * merge overlaps with the inversion of the next batches. The index files are
+ * written on commit(), as with IndexBuilder. <br/>
+ * The index written is byte-identical to the one built by indexing the same
+ * documents one by one, in the same order. <br/>
+ * The postings files are encoded with the PostingsCodec given to the
+ * constructor, as with IndexBuilder <br/>
+ * <br/>
+ * <b>Note:</b> <br/>
+ * 1. Nothing is written to the index files until commit() is called <br/>
+ * 2. Add the documents from a single thread <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	ParallelIndexBuilder builder = new ParallelIndexBuilder(noThreads);
+ * 	builder.start();
+ * 	builder.addDocument(docName1, document1);
+ * 	builder.addDocument(docName2, document2);
+ * 	builder.commit();
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class ParallelIndexBuilder {
+	public static final int DEFAULT_BATCH_SIZE = 16;
+
+	// Number of batches per worker that may wait to be merged before the
+	// reader stage blocks, which bounds the memory held by finished batches
+	private static final int MAX_PENDING_PER_THREAD = 4;
+
+	private final int _noThreads;
+	private final long _memoryBudget;
+	private final int _batchSize;
+	private final PostingsCodec _codec;
+
+	private DocumentList _documentList;
+	private Dictionary _dictionary;
+	private SpimiInverter _inverter;
+	private ExecutorService _executor;
+	private LinkedList<Future<PartialIndex>> _pendingBatches;
+	private PartialIndex _batch;
+
+	private boolean _isStarted = false;
+
+	/**
+	 * Default Constructor <br/>
+	 * Use one worker per available processor <br/>
+	 */
+	public ParallelIndexBuilder() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 *
+	 * @param noThreads
+	 *            number of worker threads
+	 */
+	public ParallelIndexBuilder(int noThreads) {
+		this(noThreads, SpimiInverter.DEFAULT_MEMORY_BUDGET, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 *
+	 * @param noThreads
+	 *            number of worker threads
+	 * @param memoryBudget
+	 *            the number of bytes the merged in-memory postings may use
+	 *            before being spilled to a temporary run
+	 * @param batchSize
+	 *            number of documents inverted together by a worker
+	 */
+	public ParallelIndexBuilder(int noThreads, long memoryBudget, int batchSize) {
+		this(noThreads, memoryBudget, batchSize, null);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 *
+	 * @param noThreads
+	 *            number of worker threads
+	 * @param memoryBudget
+	 *            the number of bytes the merged in-memory postings may use
+	 *            before being spilled to a temporary run
+	 * @param batchSize
+	 *            number of documents inverted together by a worker
+	 * @param codec
+	 *            the codec the postings files are encoded with, null for the
+	 *            codec of the posting file
+	 */
+	public ParallelIndexBuilder(int noThreads, long memoryBudget, int batchSize, PostingsCodec codec) {
+		_noThreads = Math.max(noThreads, 1);
+		_memoryBudget = memoryBudget;
+		_batchSize = Math.max(batchSize, 1);
+		_codec = codec;
+	}
+
+	/**
+	 * Start method <br/>
+	 * Open the DocumentList and Dictionary and start the workers <br/>
+	 *
+	 * @throws IOException
+	 *             when cannot open the database
+	 */
+	public void start() throws IOException {
+		_inverter = new SpimiInverter(_memoryBudget, null, _codec);
+		_dictionary = new Dictionary();
+		_documentList = new DocumentList();
+		_executor = Executors.newFixedThreadPool(_noThreads);
+		_pendingBatches = new LinkedList<Future<PartialIndex>>();
+		_batch = new PartialIndex(_batchSize);
+		_isStarted = true;
+	}
+
+	/**
+	 * Add a document to be indexed <br/>
+	 *
+	 * @param docName
+	 *            specifies the name of the document. In the search engine, this
+	 *            should be the link to the website.<br/>
+	 * @param document
+	 *            the content of the document <br/>
+	 * @return docId of the document, -1 if the document has been indexed before
+	 *         or the ParallelIndexBuilder hasn't been started/has been
+	 *         committed
+	 * @throws IOException
+	 *             when a batch cannot be inverted or the postings cannot be
+	 *             spilled
+	 */
+	public int addDocument(String docName, String document) throws IOException {
+		if (!_isStarted) {
+			return -1;
+		}
+
+		int docId = _documentList.addDocument(docName);
+		if (docId != -1) {
+			_batch.add(docId, document);
+			if (_batch.isFull()) {
+				submitBatch();
+			}
+		}
+		return docId;
+	}
+
+	/**
+	 * Commit method <br/>
+	 * Wait for the workers, merge the remaining batches and write all the
+	 * documents added since start() to the index files <br/>
+	 * The ParallelIndexBuilder need to be started again before adding more
+	 * documents <br/>
+	 *
+	 * @throws IOException
+	 *             when cannot write to the database
+	 */
+	public void commit() throws IOException {
+		if (!_isStarted) {
+			return;
+		}
+		_isStarted = false;
+
+		try {
+			if (!_batch.isEmpty()) {
+				submitBatch();
+			}
+			while (!_pendingBatches.isEmpty()) {
+				mergeNextBatch();
+			}
+		} finally {
+			_executor.shutdownNow();
+			_executor = null;
+			_batch = null;
+			_pendingBatches = null;
+		}
+
+		_documentList.close();
+		_dictionary.close();
+		_inverter.finish();
+		_inverter = null;
+	}
+
+	/**
+	 * Hand the current batch to the workers and start a new one <br/>
+	 * The batches already inverted are merged, and the reader stage waits if
+	 * too many batches are pending <br/>
+	 *
+	 * @throws IOException
+	 *             when a batch cannot be merged
+	 */
+	private void submitBatch() throws IOException {
+		_pendingBatches.add(_executor.submit(_batch));
+		_batch = new PartialIndex(_batchSize);
+
+		while (!_pendingBatches.isEmpty()
+				&& (_pendingBatches.getFirst().isDone() || _pendingBatches.size() > MAX_PENDING_PER_THREAD
+						* _noThreads)) {
+			mergeNextBatch();
+		}
+	}
+
+	/**
+	 * Wait for the oldest pending batch and merge it into the Dictionary and
+	 * the SpimiInverter <br/>
+	 *
+	 * @throws IOException
+	 *             when the batch failed or the postings cannot be spilled
+	 */
+	private void mergeNextBatch() throws IOException {
+		PartialIndex partialIndex;
+		try {
+			partialIndex = _pendingBatches.removeFirst().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a batch", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Cannot invert a batch", e.getCause());
+		}
+
+		partialIndex.mergeInto(_dictionary, _inverter.getPostingList());
+		_inverter.addDocument(partialIndex.getNoTuples(), partialIndex.getNoPositions());
+	}
+}
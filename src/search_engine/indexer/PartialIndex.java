@@ -0,0 +1,169 @@
+package search_engine.indexer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+/**
+ * This class provides the unit of work of the ParallelIndexBuilder: a batch of
+ * documents with consecutive docIds, and the partial index built from them
+ * <br/>
+ * A worker thread inverts the batch into a PostingList of its own, under local
+ * vocabularyIds given in order of first occurrence in the batch. Nothing is
+ * shared with the other workers, so no lock is taken while inverting. <br/>
+ * The batches are then merged into the Dictionary and the index in docId
+ * order: words new to the Dictionary get their vocabularyIds in order of first
+ * occurrence, exactly as when the documents are indexed one by one <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class PartialIndex implements Callable<PartialIndex> {
+	private final int[] _docIds;
+	private String[] _documents;
+	private int _noDocuments;
+
+	private final HashMap<String, Integer> _ids;
+	private final ArrayList<String> _words;
+	private final PostingList _postingList;
+	private int _noTuples;
+	private int _noPositions;
+
+	/**
+	 * Public Constructor <br/>
+	 * Create an empty batch <br/>
+	 *
+	 * @param capacity
+	 *            maximum number of documents in the batch
+	 */
+	public PartialIndex(int capacity) {
+		_docIds = new int[capacity];
+		_documents = new String[capacity];
+		_noDocuments = 0;
+		_ids = new HashMap<String, Integer>();
+		_words = new ArrayList<String>();
+		_postingList = new PostingList();
+	}
+
+	/**
+	 * Add a document to the batch <br/>
+	 * Documents must be added in increasing docId order <br/>
+	 *
+	 * @param docId
+	 *            the docId already assigned to the document
+	 * @param document
+	 *            the content of the document
+	 */
+	public void add(int docId, String document) {
+		_docIds[_noDocuments] = docId;
+		_documents[_noDocuments] = document;
+		_noDocuments++;
+	}
+
+	/**
+	 * Check whether the batch is empty
+	 *
+	 * @return true if no document has been added
+	 */
+	public boolean isEmpty() {
+		return _noDocuments == 0;
+	}
+
+	/**
+	 * Check whether the batch is full
+	 *
+	 * @return true if no more document can be added
+	 */
+	public boolean isFull() {
+		return _noDocuments == _docIds.length;
+	}
+
+	/**
+	 * Invert every document of the batch <br/>
+	 * This is run by a worker thread <br/>
+	 *
+	 * @return this PartialIndex
+	 */
+	@Override
+	public PartialIndex call() {
+		for (int i = 0; i < _noDocuments; i++) {
+			// A document without content is listed but has no postings
+			String document = _documents[i] == null ? "" : _documents[i];
+			Indexer indexer = new Indexer(null, document);
+			if (indexer.indexInto(_docIds[i], this) != -1) {
+				_noTuples += indexer.getNoDistinctTokens();
+				_noPositions += indexer.getNoPositions();
+			}
+		}
+
+		// The contents are not needed anymore
+		_documents = null;
+		return this;
+	}
+
+	/**
+	 * Return the local vocabularyId of a word, giving it the next one if the
+	 * word has not been met in the batch yet <br/>
+	 *
+	 * @param word
+	 *            the stemmed word
+	 * @return local vocabularyId
+	 */
+	public int getOrAdd(String word) {
+		Integer id = _ids.get(word);
+		if (id == null) {
+			id = _words.size();
+			_ids.put(word, id);
+			_words.add(word);
+		}
+		return id;
+	}
+
+	/**
+	 * Get the PostingList the documents are inverted into, under local
+	 * vocabularyIds
+	 *
+	 * @return the PostingList
+	 */
+	public PostingList getPostingList() {
+		return _postingList;
+	}
+
+	/**
+	 * Get the number of tuples in the partial index
+	 *
+	 * @return number of tuples
+	 */
+	public int getNoTuples() {
+		return _noTuples;
+	}
+
+	/**
+	 * Get the number of positions in the partial index
+	 *
+	 * @return number of positions
+	 */
+	public int getNoPositions() {
+		return _noPositions;
+	}
+
+	/**
+	 * Merge the partial index into the Dictionary and a PostingList <br/>
+	 * Every batch holding smaller docIds must have been merged before <br/>
+	 *
+	 * @param dictionary
+	 * @param postingList
+	 *            the PostingList indexed under the vocabularyIds of the
+	 *            Dictionary
+	 */
+	public void mergeInto(Dictionary dictionary, PostingList postingList) {
+		for (int localId = 0; localId < _words.size(); localId++) {
+			Posting posting = _postingList.getPosting(localId);
+			int vocabularyId = dictionary.checkAndAddWord(_words.get(localId));
+			dictionary.increaseDocFreq(vocabularyId, posting.size());
+
+			// The docIds of the batch follow those already in the PostingList,
+			// so the merge is an append
+			postingList.addAndGetPosting(vocabularyId).mergeWith(posting);
+		}
+	}
+}
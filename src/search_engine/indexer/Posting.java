@@ -1,77 +1,196 @@
 package search_engine.indexer;
 
-import java.util.ArrayList;
+import java.io.IOException;
+
+import search_engine.common.PostingsReader;
+import search_engine.common.PostingsWriter;
 
 /**
  * Posting provides a local posting, which will contains a list of document ID
  * in which a word appear <br/>
+ * Each entry of the list is a tuple {@code <docId, tf>} in which tf is term
+ * frequency: number of appearance of the word in the document. The tuples are
+ * stored in two parallel growable int arrays sorted by docId, so a Posting
+ * costs two objects however long it is. <br/>
+ * A positional Posting also records the position of every occurrence of the
+ * word in a third array: the tf positions of each tuple, in tuple order. A
+ * Posting read from an index without positions has none. <br/>
  * This class supports <b>Comparable</b>, which used to sort Posting based on
  * the vocabularyId the Posting has <br/>
- * 
+ *
  * @author ngtrhieu0011
- * 
+ *
  */
 class Posting implements Comparable<Posting> {
+	private static final int INITIAL_CAPACITY = 4;
 	private final String DELIMITOR = " ";
+	private final String TUPLE_DELIMITOR = ",";
 
 	private int _vocabularyId;
-	private ArrayList<PostTuple> _posting;
+	private int[] _docIds;
+	private int[] _tfs;
+	private int _size;
+	private int[] _positions;
+	private int _noPositions;
 
 	/**
 	 * Public Constructor <br/>
-	 * Construct an empty Posting with a vocabularyId <br/>
-	 * 
+	 * Construct an empty positional Posting with a vocabularyId <br/>
+	 *
 	 * @param vocabularyId
 	 */
 	public Posting(int vocabularyId) {
-		_vocabularyId = vocabularyId;
-		_posting = new ArrayList<PostTuple>();
+		this(vocabularyId, INITIAL_CAPACITY, true);
 	}
 
 	/**
-	 * Protected Constructor <br/>
-	 * This is called by the Posting List to translate the Posting stored as
-	 * String in file to an actual Posting object <br/>
-	 * 
+	 * Public Constructor <br/>
+	 * Construct an empty Posting with a vocabularyId and room for a number of
+	 * tuples <br/>
+	 *
 	 * @param vocabularyId
-	 *            the vocabularyId of the Posting. This is denoted as the line
-	 *            number in the file
-	 * @param postingString
-	 *            the raw string from the file
+	 * @param capacity
+	 *            number of tuples the Posting can hold before growing
+	 * @param hasPositions
+	 *            whether the Posting records positions
 	 */
-	protected Posting(int vocabularyId, String postingString) {
-		// Initialise the new empty Posting and assign the vocabularyId
+	public Posting(int vocabularyId, int capacity, boolean hasPositions) {
 		_vocabularyId = vocabularyId;
-		_posting = new ArrayList<PostTuple>();
+		_docIds = new int[Math.max(capacity, 1)];
+		_tfs = new int[Math.max(capacity, 1)];
+		_size = 0;
+		if (hasPositions) {
+			_positions = new int[Math.max(capacity, 1)];
+		}
+		_noPositions = 0;
+	}
 
-		// Translate the postingString
-		String[] tokens = postingString.split(DELIMITOR);
-		for (String token : tokens) {
-			PostTuple newTuple = new PostTuple(token);
-			_posting.add(newTuple);
+	/**
+	 * Static Helper - Constructor <br/>
+	 * Read the postings of the current term of a PostingsReader into a new
+	 * Posting <br/>
+	 *
+	 * @param reader
+	 *            positioned on a term
+	 * @return the Posting of the term
+	 * @throws IOException
+	 *             when the postings cannot be read
+	 */
+	protected static Posting read(PostingsReader reader) throws IOException {
+		Posting posting = new Posting(reader.vocabularyId(), reader.df(), reader.hasPositions());
+		while (reader.nextPosting()) {
+			posting.insert(posting._size, reader.docId(), reader.tf());
+			for (int i = 0; i < reader.tf() && posting._positions != null; i++) {
+				posting.insertPosition(posting._noPositions, reader.nextPosition());
+			}
 		}
+		return posting;
 	}
 
 	/**
-	 * Get a PostTuple based on its index
-	 * 
+	 * Write this Posting as the next term of a PostingsWriter <br/>
+	 * The positions are written if the writer has a positions file <br/>
+	 *
+	 * @param writer
+	 * @throws IOException
+	 *             when the postings cannot be written, or the writer expects
+	 *             positions this Posting does not have
+	 */
+	protected void write(PostingsWriter writer) throws IOException {
+		if (writer.hasPositions() && _positions == null) {
+			throw new IOException("Posting " + _vocabularyId + " has no positions");
+		}
+
+		writer.startTerm(_vocabularyId, _size);
+		int position = 0;
+		for (int i = 0; i < _size; i++) {
+			writer.addPosting(_docIds[i], _tfs[i]);
+			if (writer.hasPositions()) {
+				for (int j = 0; j < _tfs[i]; j++) {
+					writer.addPosition(_positions[position++]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the tuples of deleted documents and renumber the other ones <br/>
+	 * The map keeps the order of the docIds, so the tuples stay sorted <br/>
+	 *
+	 * @param docIdMap
+	 *            the new docId of every docId, -1 for a deleted document
+	 */
+	protected void remap(int[] docIdMap) {
+		int size = 0;
+		int noPositions = 0;
+		int position = 0;
+		for (int i = 0; i < _size; i++) {
+			int tf = _tfs[i];
+			int docId = _docIds[i] < docIdMap.length ? docIdMap[_docIds[i]] : -1;
+			if (docId >= 0) {
+				_docIds[size] = docId;
+				_tfs[size] = tf;
+				if (_positions != null) {
+					System.arraycopy(_positions, position, _positions, noPositions, tf);
+					noPositions += tf;
+				}
+				size++;
+			}
+			position += tf;
+		}
+		_size = size;
+		_noPositions = noPositions;
+	}
+
+	/**
+	 * Get the docId of a tuple based on its index
+	 *
 	 * @param index
-	 *            of the Tuple
-	 * 
-	 * @return the PostTuple with the specified index. PostTuple.NULL_TUPLE if IndexOutOfBound exception is thrown
+	 *            of the tuple
+	 * @return the docId, -1 if the index is out of bound
 	 */
-	public PostTuple getTupleAtIndex(int index) {
-		if (index < _posting.size()) {
-			return _posting.get(index);
-		} else {
-			return PostTuple.NULL_TUPLE;
+	public int getDocIdAt(int index) {
+		if (index < _size) {
+			return _docIds[index];
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the tf of a tuple based on its index
+	 *
+	 * @param index
+	 *            of the tuple
+	 * @return the tf, 0 if the index is out of bound
+	 */
+	public int getTfAt(int index) {
+		if (index < _size) {
+			return _tfs[index];
 		}
+		return 0;
+	}
+
+	/**
+	 * Check whether this posting records positions
+	 *
+	 * @return true if the posting has positions
+	 */
+	public boolean hasPositions() {
+		return _positions != null;
+	}
 
+	/**
+	 * Get the number of tuples in this posting
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return _size;
 	}
 
 	/**
 	 * Get the vocabulary id of this posting
-	 * 
+	 *
 	 * @return vocabularyId
 	 */
 	public int getVocabularyId() {
@@ -80,80 +199,123 @@ class Posting implements Comparable<Posting> {
 
 	/**
 	 * Check whether a docId is already inside this posting <br/>
-	 * 
+	 *
 	 * @param docId
 	 * @return true if the docId is found inside the posting <br/>
 	 *         false if the docId is not found <br/>
 	 */
 	public boolean isContainDocId(int docId) {
-		return _posting.contains(new Integer(docId));
+		return search(docId) >= 0;
 	}
 
 	/**
-	 * Add a docId into the posting <br/>
-	 * 
+	 * Add an occurrence of the word into the posting <br/>
+	 * If the docId is already in the posting, its tf is increased by 1 <br/>
+	 * The positions of a document must be added in increasing order <br/>
+	 *
 	 * @param docId
+	 * @param position
+	 *            index of the token in the document
 	 */
-	public void addDocId(int docId) {
-		// Assume that the posting list is always sorted
-
-		if (_posting.size() == 0) {
-			_posting.add(new PostTuple(docId));
+	public void addDocId(int docId, int position) {
+		int index = search(docId);
+		if (index >= 0) {
+			insertPosition(positionsEnd(index), position);
+			_tfs[index]++;
 		} else {
-			// If the last item is smaller than docId: append the docId to the
-			// list
-			PostTuple lastTuple = _posting.get(_posting.size() - 1);
-			if (lastTuple.getDocId() < docId) {
-				_posting.add(new PostTuple(docId));
-			} else if (lastTuple.getDocId() == docId) {
-				lastTuple.increaseTf();
-			} else {
-				// Scan the posting list and find the place to insert
-				for (int i = 0; i < _posting.size() - 1; i++) {
-					PostTuple preTuple = _posting.get(i);
-					PostTuple nextTuple = _posting.get(i + 1);
-					if (preTuple.getDocId() == docId) {
-						preTuple.increaseTf();
-						return; // already exist, quit
-					}
-					if (preTuple.getDocId() < docId
-							&& docId < nextTuple.getDocId()) {
-						_posting.add(i, new PostTuple(docId)); // insert and
-																// quit
-						return;
-					}
-				}
-			}
+			index = -index - 1;
+			insertPosition(positionsEnd(index - 1), position);
+			insert(index, docId, 1);
 		}
 	}
 
 	/**
-	 * Add a tuple into the posting <br/>
-	 * If there is another posting with the same vocabularyId, the duplicate
-	 * posting will be replaced <br/>
-	 * 
-	 * @param tuple
-	 *            to be added
-	 * 
+	 * Merge another Posting into this one <br/>
+	 * The tfs of a docId found in both Postings are added up, and their
+	 * positions merged. If either Posting has no positions, the result has
+	 * none <br/>
+	 * The merge works in place, from the end of the arrays, so no tuple is
+	 * allocated and the arrays grow at most once <br/>
+	 *
+	 * @param other
+	 *            Posting with the same vocabularyId
 	 */
-	public void add(PostTuple tuple) {
-		if (_posting.size() == 0) {
-			_posting.add(tuple);
-		} else {
-			for (PostTuple t : _posting) {
-				if (t.compareTo(tuple) == 0) {
-					int index = _posting.indexOf(t);
-					_posting.remove(index);
-					_posting.add(index, tuple);
-					return;
+	public void mergeWith(Posting other) {
+		if (other._positions == null) {
+			_positions = null;
+			_noPositions = 0;
+		}
+		if (other._size == 0) {
+			return;
+		}
+		boolean hasPositions = _positions != null;
+		ensureCapacity(_size + other._size);
+		if (hasPositions) {
+			ensurePositionsCapacity(_noPositions + other._noPositions);
+		}
+
+		// Runs are merged in docId order: append without comparing
+		if (_size == 0 || _docIds[_size - 1] < other._docIds[0]) {
+			System.arraycopy(other._docIds, 0, _docIds, _size, other._size);
+			System.arraycopy(other._tfs, 0, _tfs, _size, other._size);
+			_size += other._size;
+			if (hasPositions) {
+				System.arraycopy(other._positions, 0, _positions, _noPositions, other._noPositions);
+				_noPositions += other._noPositions;
+			}
+			return;
+		}
+
+		int i = _size - 1;
+		int j = other._size - 1;
+		int k = _size + other._size - 1;
+		// Positions are never shared, so they end up without gap
+		int pi = _noPositions;
+		int pj = other._noPositions;
+		int pk = _noPositions + other._noPositions;
+		while (j >= 0) {
+			if (i >= 0 && _docIds[i] > other._docIds[j]) {
+				int tf = _tfs[i];
+				if (hasPositions) {
+					pi -= tf;
+					pk -= tf;
+					System.arraycopy(_positions, pi, _positions, pk, tf);
+				}
+				_docIds[k] = _docIds[i--];
+				_tfs[k--] = tf;
+			} else if (i >= 0 && _docIds[i] == other._docIds[j]) {
+				int tf = _tfs[i];
+				int otherTf = other._tfs[j];
+				if (hasPositions) {
+					mergePositions(pi, tf, other._positions, pj, otherTf, pk);
+					pi -= tf;
+					pj -= otherTf;
+					pk -= tf + otherTf;
 				}
-				if (t.compareTo(tuple) > 0) {
-					int index = _posting.indexOf(t);
-					_posting.add(index, tuple);
-					return;
+				_docIds[k] = _docIds[i--];
+				_tfs[k--] = tf + otherTf;
+				j--;
+			} else {
+				int tf = other._tfs[j];
+				if (hasPositions) {
+					pj -= tf;
+					pk -= tf;
+					System.arraycopy(other._positions, pj, _positions, pk, tf);
 				}
+				_docIds[k] = other._docIds[j--];
+				_tfs[k--] = tf;
 			}
-			_posting.add(tuple);
+		}
+
+		// Shared docIds leave a gap at the front: close it
+		int start = k + 1 - (i + 1);
+		if (start > 0) {
+			System.arraycopy(_docIds, start, _docIds, 0, _size + other._size - start);
+			System.arraycopy(_tfs, start, _tfs, 0, _size + other._size - start);
+		}
+		_size = _size + other._size - start;
+		if (hasPositions) {
+			_noPositions += other._noPositions;
 		}
 	}
 
@@ -165,26 +327,25 @@ class Posting implements Comparable<Posting> {
 	}
 
 	/**
-	 * Translate the current Posting into String that can be stored into file <br/>
+	 * Translate the current Posting into String <br/>
+	 * This is the format of the legacy text postings file <br/>
 	 */
 	public String toString() {
-		// Empty postingString
-		String postingString = "";
+		StringBuilder postingString = new StringBuilder();
 
-		for (PostTuple tuple : _posting) {
-			postingString += tuple.toString() + DELIMITOR;
+		for (int i = 0; i < _size; i++) {
+			postingString.append(_docIds[i]).append(TUPLE_DELIMITOR).append(_tfs[i]).append(DELIMITOR);
 		}
 
-		postingString.trim();
-
-		return postingString;
+		return postingString.toString();
 	}
 
 	/**
 	 * Static Service <br/>
 	 * Merge two Postings together <br/>
 	 * The input Postings need to have the same vocabularyId <br/>
-	 * 
+	 * p1 is merged in place and returned <br/>
+	 *
 	 * @param p1
 	 *            Posting 1
 	 * @param p2
@@ -193,35 +354,159 @@ class Posting implements Comparable<Posting> {
 	 */
 	protected static Posting merge(Posting p1, Posting p2) {
 		if (p1.getVocabularyId() == p2.getVocabularyId()) {
-			Posting mergedPosting = new Posting(p1.getVocabularyId());
-			int p1_index = 0, p2_index = 0;
-			PostTuple tuple1 = p1.getTupleAtIndex(p1_index);
-			PostTuple tuple2 = p2.getTupleAtIndex(p2_index);
-			p1_index++;
-			p2_index++;
-
-			while (tuple1.compareTo(PostTuple.NULL_TUPLE) != 0 || tuple2.compareTo(PostTuple.NULL_TUPLE) != 0) {
-				if (tuple1.compareTo(tuple2) > 0) {
-					mergedPosting.add(tuple2);
-					tuple2 = p2.getTupleAtIndex(p2_index);
-					p2_index++;
-				} else if (tuple1.compareTo(tuple2) < 0) {
-					mergedPosting.add(tuple1);
-					tuple1 = p1.getTupleAtIndex(p1_index);
-					p1_index++;
-				} else if (tuple1.compareTo(tuple2) == 0) {
-					PostTuple mergedTuple = PostTuple.merge(tuple1, tuple2);
-					mergedPosting.add(mergedTuple);
-					tuple1 = p1.getTupleAtIndex(p1_index);
-					p1_index++;
-					tuple2 = p2.getTupleAtIndex(p2_index);
-					p2_index++;
-				}
-			}
-
-			return mergedPosting;
+			p1.mergeWith(p2);
+			return p1;
 		} else {
 			return null;
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Binary search the docIds <br/>
+	 * Documents are usually indexed in increasing docId order, so the last
+	 * tuple is checked first <br/>
+	 *
+	 * @param docId
+	 * @return index of the docId if found, otherwise (-(insertion point) - 1)
+	 */
+	private int search(int docId) {
+		int low = 0;
+		int high = _size - 1;
+
+		if (high < 0 || _docIds[high] < docId) {
+			return -(high + 1) - 1;
+		}
+		if (_docIds[high] == docId) {
+			return high;
+		}
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = _docIds[mid];
+			if (midId < docId) {
+				low = mid + 1;
+			} else if (midId > docId) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Insert a tuple at an index, shifting the following tuples
+	 *
+	 * @param index
+	 * @param docId
+	 * @param tf
+	 */
+	private void insert(int index, int docId, int tf) {
+		ensureCapacity(_size + 1);
+		if (index < _size) {
+			System.arraycopy(_docIds, index, _docIds, index + 1, _size - index);
+			System.arraycopy(_tfs, index, _tfs, index + 1, _size - index);
+		}
+		_docIds[index] = docId;
+		_tfs[index] = tf;
+		_size++;
+	}
+
+	/**
+	 * Get the number of positions held by the tuples up to an index
+	 *
+	 * @param index
+	 *            of the last tuple counted, -1 for none
+	 * @return offset of the end of the positions of the tuple
+	 */
+	private int positionsEnd(int index) {
+		if (index == _size - 1) {
+			return _noPositions;
+		}
+		int end = 0;
+		for (int i = 0; i <= index; i++) {
+			end += _tfs[i];
+		}
+		return end;
+	}
+
+	/**
+	 * Insert a position at an offset, shifting the following positions <br/>
+	 * Nothing is done if the Posting has no positions <br/>
+	 *
+	 * @param offset
+	 * @param position
+	 */
+	private void insertPosition(int offset, int position) {
+		if (_positions == null) {
+			return;
+		}
+		ensurePositionsCapacity(_noPositions + 1);
+		if (offset < _noPositions) {
+			System.arraycopy(_positions, offset, _positions, offset + 1, _noPositions - offset);
+		}
+		_positions[offset] = position;
+		_noPositions++;
+	}
+
+	/**
+	 * Merge, from the end, the positions of a document found in both this
+	 * Posting and another one <br/>
+	 * The positions of this Posting end at thisEnd, the other positions at
+	 * otherEnd, and the merged positions are written to end at mergedEnd,
+	 * which is never before thisEnd <br/>
+	 *
+	 * @param thisEnd
+	 * @param thisCount
+	 * @param otherPositions
+	 * @param otherEnd
+	 * @param otherCount
+	 * @param mergedEnd
+	 */
+	private void mergePositions(int thisEnd, int thisCount, int[] otherPositions, int otherEnd, int otherCount,
+			int mergedEnd) {
+		int a = thisEnd - 1;
+		int b = otherEnd - 1;
+		int w = mergedEnd - 1;
+		int thisStart = thisEnd - thisCount;
+		int otherStart = otherEnd - otherCount;
+		while (b >= otherStart) {
+			if (a >= thisStart && _positions[a] > otherPositions[b]) {
+				_positions[w--] = _positions[a--];
+			} else {
+				_positions[w--] = otherPositions[b--];
+			}
+		}
+	}
+
+	/**
+	 * Grow the positions array to hold at least a number of positions
+	 *
+	 * @param capacity
+	 */
+	private void ensurePositionsCapacity(int capacity) {
+		if (capacity > _positions.length) {
+			int newCapacity = Math.max(capacity, _positions.length + (_positions.length >> 1) + 1);
+			int[] positions = new int[newCapacity];
+			System.arraycopy(_positions, 0, positions, 0, _noPositions);
+			_positions = positions;
+		}
+	}
+
+	/**
+	 * Grow the arrays to hold at least a number of tuples
+	 *
+	 * @param capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > _docIds.length) {
+			int newCapacity = Math.max(capacity, _docIds.length + (_docIds.length >> 1) + 1);
+			int[] docIds = new int[newCapacity];
+			int[] tfs = new int[newCapacity];
+			System.arraycopy(_docIds, 0, docIds, 0, _size);
+			System.arraycopy(_tfs, 0, tfs, 0, _size);
+			_docIds = docIds;
+			_tfs = tfs;
+		}
+	}
+}
@@ -1,31 +1,81 @@
 package search_engine.indexer;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import search_engine.common.ImpactWriter;
+import search_engine.common.Norms;
+import search_engine.common.NormsWriter;
+import search_engine.common.PostingsCodec;
+import search_engine.common.PostingsConverter;
+import search_engine.common.PostingsReader;
+import search_engine.common.PostingsWriter;
+import search_engine.common.Segments;
+import search_engine.common.Shards;
+import search_engine.common.TermDictionaryWriter;
 
 /**
  * This class provides implementation of a PostingList and services related to
  * PostingList</br> The core data structure is a List of Posting <br/>
+ * The PostingList is stored in the binary postings format of PostingsWriter.
+ * An index that only has the legacy text postings file is converted on first
+ * read <br/>
+ * The positions of the postings are stored in a positions file. An index
+ * converted from the legacy text format has no positions, and keeps having
+ * none when documents are added to it: rebuild it to make it positional <br/>
+ * The norms of the documents are written beside the postings (see
+ * NormsWriter) <br/>
+ * The postings file can also be written again in impact order (see
+ * ImpactWriter), for the searcher to process the highest scores first <br/>
+ * A PostingList can also be written to, and merged into, segments of a
+ * SegmentedIndex <br/>
+ * The postings files are written with the PostingsCodec given to the
+ * PostingList, or given to mergeToFile(). Without a codec, the codec of the
+ * posting file is kept, VByte for a new index. A merge of segments keeps the
+ * codec of its oldest input. Each file records its codec, so files written
+ * with different codecs are all read <br/>
  * 
  * @author ngtrhieu0011
  */
 class PostingList {
-	private final static String POSTING_LIST_FILE = "postings.txt";
+	private final static String POSTING_LIST_FILE = "postings.bin";
+	private final static String TERM_TABLE_FILE = "postings.idx";
+	private final static String TEXT_POSTING_LIST_FILE = "postings.txt";
+	private final static String POSITIONS_FILE = "positions.bin";
+	private final static String NORMS_FILE = "postings.nrm";
+	private final static String IMPACT_FILE = "impacts.bin";
+	private final static String IMPACT_TABLE_FILE = "impacts.idx";
+	private final static String TEMPORARY_PREFIX = "tmp.";
 	private static Object fileLock = new Object();
 	private ArrayList<Posting> _postingList;
+	private final PostingsCodec _codec;
 
 	/**
 	 * Public Constructor <br/>
-	 * Create a local empty PostingList <br/>
+	 * Create a local empty PostingList, written with the codec of the posting
+	 * file <br/>
 	 */
 	public PostingList() {
+		this(null);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 * Create a local empty PostingList <br/>
+	 * 
+	 * @param codec
+	 *            the codec the PostingList is written with, null for the codec
+	 *            of the posting file
+	 */
+	public PostingList(PostingsCodec codec) {
 		_postingList = new ArrayList<Posting>();
+		_codec = codec;
 	}
 
 	/**
@@ -40,8 +90,9 @@ class PostingList {
 	 */
 	public void writeToFile() throws IOException {
 		synchronized (fileLock) {
-			// Get postingList from file
-			PostingList postingListOnFile = readFromFile();
+			// Get postingList from file, which is written back with its codec
+			// unless this postingList has one
+			PostingList postingListOnFile = readFromFile(_codec);
 
 			// Merge with the current postingList
 			postingListOnFile.mergeWith(this);
@@ -51,6 +102,250 @@ class PostingList {
 		}
 	}
 
+	/**
+	 * Write this postingList to a sorted run file <br/>
+	 * The run has the same binary format as the posting file, and its
+	 * positions are written to PostingRun.positionsFile(runFile) <br/>
+	 * 
+	 * @param runFile
+	 *            to be written
+	 * 
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public void writeRun(File runFile) throws IOException {
+		write(runFile, null, PostingRun.positionsFile(runFile), null, codec(), false);
+	}
+
+	/**
+	 * Merge sorted run files into the posting file <br/>
+	 * The posting file and the runs are merged with a streaming k-way merge:
+	 * only the head Posting of each run is held in memory, whatever the size
+	 * of the index <br/>
+	 * The merged postings are written to a temporary file which then replaces
+	 * the posting file <br/>
+	 * 
+	 * @param runFiles
+	 *            the runs, in the order they were spilled
+	 * @param codec
+	 *            the codec the posting file is written with, null for the
+	 *            codec of the posting file
+	 * 
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void mergeToFile(List<File> runFiles, PostingsCodec codec) throws IOException {
+		synchronized (fileLock) {
+			File postingFile = new File(POSTING_LIST_FILE);
+			File termTableFile = new File(TERM_TABLE_FILE);
+			File mergedFile = new File(POSTING_LIST_FILE + ".merge");
+			File mergedTermTableFile = new File(TERM_TABLE_FILE + ".merge");
+			File positionsFile = new File(POSITIONS_FILE);
+			File mergedPositionsFile = new File(POSITIONS_FILE + ".merge");
+			File mergedNormsFile = new File(NORMS_FILE + ".merge");
+			PostingsConverter.upgrade(new File(TEXT_POSTING_LIST_FILE), postingFile, termTableFile, positionsFile);
+			boolean isPositional = positionsFile.exists() || !hasTerms(postingFile);
+			if (codec == null) {
+				codec = codecOf(postingFile);
+			}
+
+			ArrayList<PostingRun> runs = new ArrayList<PostingRun>(runFiles.size() + 1);
+			if (postingFile.exists()) {
+				runs.add(new PostingRun(postingFile, isPositional && hasTerms(postingFile) ? positionsFile : null, 0));
+			}
+			for (int i = 0; i < runFiles.size(); i++) {
+				File runFile = runFiles.get(i);
+				runs.add(new PostingRun(runFile, isPositional ? PostingRun.positionsFile(runFile) : null, i + 1));
+			}
+
+			PostingsWriter writer = new PostingsWriter(mergedFile, mergedTermTableFile,
+					isPositional ? mergedPositionsFile : null, mergedNormsFile, codec);
+			merge(runs, writer, null, null);
+			writer.close();
+
+			// The shards of the index would miss the merged postings
+			Shards.invalidate();
+			Files.move(mergedFile.toPath(), postingFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(mergedTermTableFile.toPath(), termTableFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(mergedNormsFile.toPath(), new File(NORMS_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (isPositional) {
+				Files.move(mergedPositionsFile.toPath(), positionsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	/**
+	 * Write this postingList to a new segment <br/>
+	 * A segment has the format of the posting file: a binary postings file,
+	 * its term table and its positions file. The term table of a segment is
+	 * sparse, so it only has the terms of the documents of the segment. It is
+	 * written with the codec of the PostingList, VByte if it has none <br/>
+	 * 
+	 * @param segment
+	 *            name of the segment, see Segments
+	 * 
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public void writeSegment(String segment) throws IOException {
+		write(Segments.postingsFile(segment), Segments.termTableFile(segment), Segments.positionsFile(segment),
+				Segments.normsFile(segment), codec(), true);
+	}
+
+	/**
+	 * Merge segments into a new segment <br/>
+	 * The segments are merged with the streaming k-way merge of mergeToFile(),
+	 * and written with the codec of the oldest segment. Nothing is deleted: the
+	 * caller replaces the merged segments with the new one <br/>
+	 * 
+	 * @param segments
+	 *            names of the segments to merge, oldest first
+	 * @param mergedSegment
+	 *            name of the segment to be written
+	 * 
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void mergeSegments(List<String> segments, String mergedSegment) throws IOException {
+		mergeSegments(null, segments, mergedSegment, null, null);
+	}
+
+	/**
+	 * Compact the index into a new segment <br/>
+	 * The posting file, if it is part of the index, and the segments are
+	 * merged, the postings of the deleted documents are dropped and the other
+	 * docIds are renumbered. The compacted segment is written with the codec
+	 * of the oldest of them. Nothing is deleted: once the compacted segment is
+	 * committed, the caller deletes the posting file with deleteBase() <br/>
+	 * 
+	 * @param segments
+	 *            names of the live segments, oldest first
+	 * @param compactedSegment
+	 *            name of the segment to be written
+	 * @param docIdMap
+	 *            the new docId of every docId, -1 for a deleted document
+	 * @param dfs
+	 *            filled with the new df of every vocabularyId
+	 * @param includeBase
+	 *            true if the posting file is part of the index
+	 * 
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public static void compactSegments(List<String> segments, String compactedSegment, int[] docIdMap, int[] dfs,
+			boolean includeBase) throws IOException {
+		synchronized (fileLock) {
+			File postingFile = new File(POSTING_LIST_FILE);
+			if (includeBase) {
+				PostingsConverter.upgrade(new File(TEXT_POSTING_LIST_FILE), postingFile, new File(TERM_TABLE_FILE),
+						new File(POSITIONS_FILE));
+			}
+			if (!includeBase || !postingFile.exists()) {
+				postingFile = null;
+			}
+			mergeSegments(postingFile, segments, compactedSegment, docIdMap, dfs);
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Write the postings of the posting file again, sorted by impact <br/>
+	 * The score of every posting is computed from the df of its term and the
+	 * norm of its document, and quantized between the lowest and the highest
+	 * score of the file, so the file is read twice: once for the range of the
+	 * scores, once to write the impacts of each Posting <br/>
+	 * 
+	 * @param noDocuments
+	 *            number of documents of the index, which the idf of the terms
+	 *            is computed from
+	 * 
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	static void writeImpacts(int noDocuments) throws IOException {
+		synchronized (fileLock) {
+			File postingFile = new File(POSTING_LIST_FILE);
+			PostingsConverter.upgrade(new File(TEXT_POSTING_LIST_FILE), postingFile, new File(TERM_TABLE_FILE),
+					new File(POSITIONS_FILE));
+			if (!postingFile.exists()) {
+				return;
+			}
+			File normsFile = new File(NORMS_FILE);
+			if (!normsFile.exists()) {
+				writeNorms(postingFile, normsFile);
+			}
+			Norms norms = new Norms(normsFile);
+
+			// The range of the scores
+			float minScore = Float.MAX_VALUE;
+			float maxScore = 0;
+			PostingsReader reader = new PostingsReader(postingFile);
+			try {
+				while (reader.nextTerm()) {
+					double idf = TermDictionaryWriter.idf(noDocuments, reader.df());
+					while (reader.nextPosting()) {
+						float score = (float) score(idf, reader.tf(), norms.get(reader.docId()));
+						if (score > 0) {
+							minScore = Math.min(minScore, score);
+							maxScore = Math.max(maxScore, score);
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			minScore = Math.min(minScore, maxScore);
+
+			File temporaryFile = new File(TEMPORARY_PREFIX + IMPACT_FILE);
+			File temporaryTableFile = new File(TEMPORARY_PREFIX + IMPACT_TABLE_FILE);
+			ImpactWriter writer = new ImpactWriter(temporaryFile, temporaryTableFile, noDocuments,
+					postingFile.length(), minScore, maxScore);
+			reader = new PostingsReader(postingFile);
+			try {
+				int[] docIds = new int[0];
+				int[] impacts = new int[0];
+				while (reader.nextTerm()) {
+					Posting posting = Posting.read(reader);
+					int df = posting.size();
+					if (docIds.length < df) {
+						docIds = new int[Math.max(df, docIds.length * 2)];
+						impacts = new int[docIds.length];
+					}
+					double idf = TermDictionaryWriter.idf(noDocuments, df);
+					for (int i = 0; i < df; i++) {
+						docIds[i] = posting.getDocIdAt(i);
+						impacts[i] = ImpactWriter.quantize(score(idf, posting.getTfAt(i), norms.get(docIds[i])),
+								minScore, maxScore);
+					}
+					writer.addTerm(posting.getVocabularyId(), docIds, impacts, df);
+				}
+			} finally {
+				reader.close();
+				writer.close();
+			}
+
+			Segments.install(temporaryTableFile, new File(IMPACT_TABLE_FILE));
+			Segments.install(temporaryFile, new File(IMPACT_FILE));
+		}
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Delete the posting file, once its postings have been compacted into a
+	 * segment <br/>
+	 */
+	static void deleteBase() {
+		synchronized (fileLock) {
+			new File(TEXT_POSTING_LIST_FILE).delete();
+			new File(POSTING_LIST_FILE).delete();
+			new File(TERM_TABLE_FILE).delete();
+			new File(POSITIONS_FILE).delete();
+			new File(NORMS_FILE).delete();
+			new File(IMPACT_FILE).delete();
+			new File(IMPACT_TABLE_FILE).delete();
+		}
+	}
+
 	/**
 	 * Create a new empty Posting and insert into the list <br/>
 	 * Return the created Posting <br/>
@@ -62,25 +357,13 @@ class PostingList {
 	 *         vocabularyId, return that instead
 	 */
 	public Posting addAndGetPosting(int vocabularyId) {
-		Posting newPosting = new Posting(vocabularyId);
-
-		if (_postingList.isEmpty()) {
-			_postingList.add(newPosting);
-			return newPosting;
-		} else {
-			for (Posting posting : _postingList) {
-				if (posting.compareTo(newPosting) == 0) {
-					return posting;
-				}
-				if (posting.compareTo(newPosting) > 0) {
-					int index = _postingList.indexOf(posting);
-					_postingList.add(index, newPosting);
-					return newPosting;
-				}
-			}
+		int index = search(vocabularyId);
+		if (index >= 0) {
+			return _postingList.get(index);
 		}
 
-		_postingList.add(newPosting);
+		Posting newPosting = new Posting(vocabularyId);
+		_postingList.add(-index - 1, newPosting);
 		return newPosting;
 	}
 
@@ -92,10 +375,9 @@ class PostingList {
 	 *         posting
 	 */
 	public Posting getPosting(int vocabularyId) {
-		for (Posting posting : _postingList) {
-			if (posting.getVocabularyId() == vocabularyId) {
-				return posting;
-			}
+		int index = search(vocabularyId);
+		if (index >= 0) {
+			return _postingList.get(index);
 		}
 		return null;
 	}
@@ -117,6 +399,15 @@ class PostingList {
 		}
 	}
 
+	/**
+	 * Get the number of Postings in the list
+	 * 
+	 * @return number of Postings
+	 */
+	public int size() {
+		return _postingList.size();
+	}
+
 	/**
 	 * Merge its own postingList with another postingList <br/>
 	 * 
@@ -155,67 +446,303 @@ class PostingList {
 	 * 
 	 */
 	private void add(Posting posting) throws IllegalArgumentException {
-		if (_postingList.size() > 0) {
-			for (Posting p : _postingList) {
-				if (p.compareTo(posting) == 0) {
-					int index = _postingList.indexOf(p);
-					_postingList.remove(index);
-					_postingList.add(index, posting);
-					return;
+		int index = search(posting.getVocabularyId());
+		if (index >= 0) {
+			_postingList.set(index, posting);
+		} else {
+			_postingList.add(-index - 1, posting);
+		}
+	}
+
+	/**
+	 * Binary search the postingList, which is always sorted by vocabularyId
+	 * <br/>
+	 * New vocabularyIds are usually the largest so far, so the last Posting is
+	 * checked first <br/>
+	 * 
+	 * @param vocabularyId
+	 * @return index of the Posting with the vocabularyId if found, otherwise
+	 *         (-(insertion point) - 1)
+	 */
+	private int search(int vocabularyId) {
+		int low = 0;
+		int high = _postingList.size() - 1;
+
+		if (high < 0 || _postingList.get(high).getVocabularyId() < vocabularyId) {
+			return -(high + 1) - 1;
+		}
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = _postingList.get(mid).getVocabularyId();
+			if (midId < vocabularyId) {
+				low = mid + 1;
+			} else if (midId > vocabularyId) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Get the codec this PostingList is written with
+	 * 
+	 * @return the codec given to the PostingList, VByte if none
+	 */
+	private PostingsCodec codec() {
+		return _codec != null ? _codec : PostingsCodec.VBYTE;
+	}
+
+	/**
+	 * Static Service <br/>
+	 * Get the codec the posting file is written with <br/>
+	 * 
+	 * @return the codec of the posting file, VByte if it does not exist
+	 * @throws IOException
+	 *             when the file is not a postings file
+	 */
+	static PostingsCodec baseCodec() throws IOException {
+		synchronized (fileLock) {
+			return codecOf(new File(POSTING_LIST_FILE));
+		}
+	}
+
+	/**
+	 * Get the codec a postings file is written with <br/>
+	 * 
+	 * @param postingFile
+	 * @return the codec recorded in the file, VByte if the file does not
+	 *         exist or is empty
+	 * @throws IOException
+	 *             when the file is not a postings file
+	 */
+	static PostingsCodec codecOf(File postingFile) throws IOException {
+		if (!postingFile.exists() || postingFile.length() == 0) {
+			return PostingsCodec.VBYTE;
+		}
+		PostingsReader reader = new PostingsReader(postingFile);
+		try {
+			return reader.codec();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Check whether a postings file holds any term
+	 * 
+	 * @param postingFile
+	 * @return true if the file has at least one term
+	 */
+	private static boolean hasTerms(File postingFile) {
+		// A term takes at least 4 bytes, and a header at most CODEC_HEADER_SIZE
+		return postingFile.length() > PostingsWriter.CODEC_HEADER_SIZE;
+	}
+
+	/**
+	 * Write the norms of a postings file written without them, e.g: converted
+	 * from the legacy text format
+	 * 
+	 * @param postingFile
+	 * @param normsFile
+	 *            to be written
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	private static void writeNorms(File postingFile, File normsFile) throws IOException {
+		NormsWriter norms = new NormsWriter(normsFile);
+		PostingsReader reader = new PostingsReader(postingFile);
+		try {
+			while (reader.nextTerm()) {
+				while (reader.nextPosting()) {
+					norms.add(reader.docId(), reader.tf());
 				}
-				if (p.compareTo(posting) > 0) {
-					int index = _postingList.indexOf(p);
-					_postingList.add(index, posting);
-					return;
+			}
+		} finally {
+			reader.close();
+		}
+		norms.close();
+	}
+
+	/**
+	 * The score of a posting: its weight in the normalised document vector,
+	 * times the idf of its term
+	 * 
+	 * @param idf
+	 * @param tf
+	 * @param norm
+	 *            of the document
+	 * @return the score, 0 for a document without norm
+	 */
+	private static double score(double idf, int tf, float norm) {
+		return norm > 0 ? idf * NormsWriter.weight(tf) / norm : 0;
+	}
+
+	/**
+	 * Merge the posting file and segments into a new segment <br/>
+	 * The new segment has positions if every input has positions <br/>
+	 * 
+	 * @param postingFile
+	 *            the posting file, null to merge the segments only
+	 * @param segments
+	 *            names of the segments to merge, oldest first
+	 * @param mergedSegment
+	 *            name of the segment to be written
+	 * @param docIdMap
+	 *            the new docId of every docId, -1 for a deleted document. null
+	 *            to keep the docIds
+	 * @param dfs
+	 *            filled with the df of every vocabularyId written, may be null
+	 * 
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	private static void mergeSegments(File postingFile, List<String> segments, String mergedSegment,
+			int[] docIdMap, int[] dfs) throws IOException {
+		File positionsFile = new File(POSITIONS_FILE);
+		boolean isPositional = postingFile == null || !hasTerms(postingFile) || positionsFile.exists();
+		for (String segment : segments) {
+			isPositional &= Segments.positionsFile(segment).exists();
+		}
+
+		// The merged segment keeps the codec of its oldest input
+		PostingsCodec codec = codecOf(postingFile != null ? postingFile : Segments.postingsFile(segments.get(0)));
+
+		ArrayList<PostingRun> runs = new ArrayList<PostingRun>(segments.size() + 1);
+		PostingsWriter writer = null;
+		try {
+			if (postingFile != null) {
+				runs.add(new PostingRun(postingFile, isPositional && hasTerms(postingFile) ? positionsFile : null, 0));
+			}
+			for (int i = 0; i < segments.size(); i++) {
+				String segment = segments.get(i);
+				runs.add(new PostingRun(Segments.postingsFile(segment), isPositional ? Segments
+						.positionsFile(segment) : null, i + 1));
+			}
+			writer = new PostingsWriter(Segments.postingsFile(mergedSegment), Segments.termTableFile(mergedSegment),
+					isPositional ? Segments.positionsFile(mergedSegment) : null, Segments.normsFile(mergedSegment),
+					codec, true);
+			merge(runs, writer, docIdMap, dfs);
+		} finally {
+			if (writer != null) {
+				writer.close();
+			}
+			for (PostingRun run : runs) {
+				run.close();
+			}
+		}
+	}
+
+	/**
+	 * Streaming k-way merge of sorted runs <br/>
+	 * The Postings with the same vocabularyId are merged in the order of their
+	 * runs and written once <br/>
+	 * 
+	 * @param runs
+	 *            to be merged
+	 * @param writer
+	 *            the merged Postings are written to
+	 * @param docIdMap
+	 *            the new docId of every docId, -1 for a deleted document. null
+	 *            to keep the docIds
+	 * @param dfs
+	 *            filled with the df of every vocabularyId written, may be null
+	 * @throws IOException
+	 *             when the files cannot be read or written
+	 */
+	private static void merge(List<PostingRun> runs, PostingsWriter writer, int[] docIdMap, int[] dfs)
+			throws IOException {
+		// Order the runs by the vocabularyId of their head, then by the
+		// order they were created
+		PriorityQueue<PostingRun> queue = new PriorityQueue<PostingRun>(runs.size() + 1,
+				new Comparator<PostingRun>() {
+					@Override
+					public int compare(PostingRun r1, PostingRun r2) {
+						int compare = r1.head().compareTo(r2.head());
+						if (compare == 0) {
+							compare = r1.order() - r2.order();
+						}
+						return compare;
+					}
+				});
+
+		for (PostingRun run : runs) {
+			addRun(queue, run);
+		}
+
+		while (!queue.isEmpty()) {
+			PostingRun run = queue.poll();
+			Posting merged = run.head();
+			run.advance();
+			addRun(queue, run);
+
+			// Merge the same vocabularyId from the other runs
+			while (!queue.isEmpty() && queue.peek().head().compareTo(merged) == 0) {
+				run = queue.poll();
+				merged = Posting.merge(merged, run.head());
+				run.advance();
+				addRun(queue, run);
+			}
+
+			if (docIdMap != null) {
+				merged.remap(docIdMap);
+				if (merged.size() == 0) {
+					continue;
 				}
 			}
-			_postingList.add(posting);
-		} else {
-			_postingList.add(posting);
+			if (dfs != null && merged.getVocabularyId() < dfs.length) {
+				dfs[merged.getVocabularyId()] = merged.size();
+			}
+			merged.write(writer);
+		}
+	}
+
+	/**
+	 * Put a run back into the merge queue, unless it is exhausted
+	 * 
+	 * @param queue
+	 * @param run
+	 */
+	private static void addRun(PriorityQueue<PostingRun> queue, PostingRun run) {
+		if (run.head() != null) {
+			queue.add(run);
 		}
 	}
 
 	/**
 	 * Return a PostingList that on the File <br/>
 	 * 
+	 * @param codec
+	 *            the codec the PostingList is to be written with, null for the
+	 *            codec of the file
 	 * @return PostingList that on the file
 	 * 
 	 * @throws IOException
 	 *             when the file cannot be opened
 	 */
-	private static PostingList readFromFile() throws IOException {
+	private static PostingList readFromFile(PostingsCodec codec) throws IOException {
 		synchronized (fileLock) {
-			// Initialise the Stream readers
-			FileInputStream fis = new FileInputStream(POSTING_LIST_FILE);
-			InputStreamReader isr = new InputStreamReader(fis);
-			BufferedReader br = new BufferedReader(isr);
+			File postingFile = new File(POSTING_LIST_FILE);
+			File positionsFile = new File(POSITIONS_FILE);
+			PostingsConverter.upgrade(new File(TEXT_POSTING_LIST_FILE), postingFile, new File(TERM_TABLE_FILE),
+					positionsFile);
 
 			// Initialise an empty PostingList
-			PostingList postingList = new PostingList();
-
-			// Fetch data from file into local dictionary
-			String nextLine = null;
-			int i = 0;
-			do {
-				nextLine = br.readLine();
-				if (nextLine != null) {
-					Posting newPosting = new Posting(i, nextLine);
-					if (newPosting != null) {
-						try {
-							postingList.add(newPosting);
-						} catch (IllegalArgumentException e) {
-							e.printStackTrace();
-						}
-					}
-				}
-
-				i++;
-			} while (nextLine != null);
+			PostingList postingList = new PostingList(codec != null ? codec : codecOf(postingFile));
 
-			// Close stream readers
-			br.close();
-			isr.close();
-			fis.close();
+			// Fetch data from file into local postingList
+			// Without positions file, the Postings read have no positions
+			PostingsReader reader = new PostingsReader(postingFile, positionsFile.exists()
+					&& hasTerms(postingFile) ? positionsFile : null);
+			try {
+				while (reader.nextTerm()) {
+					postingList.add(Posting.read(reader));
+				}
+			} finally {
+				reader.close();
+			}
 
 			return postingList;
 		}
@@ -223,6 +750,7 @@ class PostingList {
 
 	/**
 	 * Erase the file and Write this postingList to file <br/>
+	 * The positions are written only if every Posting has positions <br/>
 	 * 
 	 * @param postingList
 	 *            to be written to file
@@ -232,22 +760,67 @@ class PostingList {
 	 */
 	private void writeToFile(PostingList postingList) throws IOException {
 		synchronized (fileLock) {
-			// Initialise the Stream writers
-			FileOutputStream fos = new FileOutputStream(POSTING_LIST_FILE, false);
-			OutputStreamWriter osw = new OutputStreamWriter(fos);
-			BufferedWriter bw = new BufferedWriter(osw);
+			File positionsFile = new File(POSITIONS_FILE);
+			boolean isPositional = true;
+			for (Posting posting : postingList._postingList) {
+				isPositional &= posting.hasPositions();
+			}
 
-			// Write each vocabulary to each line of the file.
+			// Write beside the files and move them over, so a crash never
+			// leaves a half-written posting file
+			File temporaryFile = new File(TEMPORARY_PREFIX + POSTING_LIST_FILE);
+			File temporaryTermTableFile = new File(TEMPORARY_PREFIX + TERM_TABLE_FILE);
+			File temporaryPositionsFile = new File(TEMPORARY_PREFIX + POSITIONS_FILE);
+			File temporaryNormsFile = new File(TEMPORARY_PREFIX + NORMS_FILE);
+			postingList.write(temporaryFile, temporaryTermTableFile, isPositional ? temporaryPositionsFile : null,
+					temporaryNormsFile, postingList.codec(), false);
+			Segments.sync(temporaryFile);
+			Segments.sync(temporaryTermTableFile);
+			Segments.sync(temporaryPositionsFile);
 
-			for (int i = 0; postingList.getPostingAtIndex(i) != null; i++) {
-				Posting posting = postingList.getPostingAtIndex(i);
-				bw.write(posting.toString() + "\n");
+			// The shards of the index would miss the postings written
+			Shards.invalidate();
+			Segments.install(temporaryFile, new File(POSTING_LIST_FILE));
+			Segments.install(temporaryTermTableFile, new File(TERM_TABLE_FILE));
+			Segments.install(temporaryNormsFile, new File(NORMS_FILE));
+			if (isPositional) {
+				Segments.install(temporaryPositionsFile, positionsFile);
+			} else {
+				positionsFile.delete();
 			}
+		}
+	}
 
-			// Close stream writers_isInitialzed
-			bw.close();
-			osw.close();
-			fos.close();
+	/**
+	 * Write every Posting of this postingList, in vocabularyId order, to a
+	 * binary postings file <br/>
+	 * 
+	 * @param file
+	 *            to be written
+	 * @param termTableFile
+	 *            the term table to be written, null for no term table
+	 * @param positionsFile
+	 *            the positions file to be written, null for no positions
+	 * @param normsFile
+	 *            the norms file to be written, null for no norms
+	 * @param codec
+	 *            the codec the postings are encoded with
+	 * @param isSparseTable
+	 *            true to write a sparse term table, see PostingsWriter
+	 * 
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	private void write(File file, File termTableFile, File positionsFile, File normsFile, PostingsCodec codec,
+			boolean isSparseTable) throws IOException {
+		PostingsWriter writer = new PostingsWriter(file, termTableFile, positionsFile, normsFile, codec,
+				isSparseTable);
+		try {
+			for (Posting posting : _postingList) {
+				posting.write(writer);
+			}
+		} finally {
+			writer.close();
 		}
 	}
 }
@@ -0,0 +1,103 @@
+package search_engine.indexer;
+
+import java.io.File;
+import java.io.IOException;
+
+import search_engine.common.PostingsReader;
+
+/**
+ * This class provides a sequential reader over a sorted run of Postings <br/>
+ * A run is either the posting file or a run spilled by the SpimiInverter. Both
+ * have the binary format of PostingsWriter. A spilled run always has a
+ * positions file, named after the run by positionsFile() <br/>
+ * Only the Posting at the head of the run is kept in memory <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class PostingRun {
+	private static final String POSITIONS_SUFFIX = ".pos";
+
+	private final int _order;
+	private PostingsReader _reader;
+	private Posting _head;
+
+	/**
+	 * Open a run and read its first Posting <br/>
+	 *
+	 * @param file
+	 *            the run file
+	 * @param positionsFile
+	 *            the positions of the run, null if the run has no positions
+	 * @param order
+	 *            position of the run among all runs. Runs with smaller order
+	 *            hold smaller docIds
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public PostingRun(File file, File positionsFile, int order) throws IOException {
+		_order = order;
+		_reader = new PostingsReader(file, positionsFile);
+		advance();
+	}
+
+	/**
+	 * Static Helper <br/>
+	 * Get the positions file of a spilled run
+	 *
+	 * @param runFile
+	 * @return the positions file
+	 */
+	public static File positionsFile(File runFile) {
+		return new File(runFile.getPath() + POSITIONS_SUFFIX);
+	}
+
+	/**
+	 * Get the Posting at the head of the run
+	 *
+	 * @return the head Posting, null if the run is exhausted
+	 */
+	public Posting head() {
+		return _head;
+	}
+
+	/**
+	 * Get the order of the run
+	 *
+	 * @return order
+	 */
+	public int order() {
+		return _order;
+	}
+
+	/**
+	 * Move to the next Posting of the run <br/>
+	 * The run is closed once it is exhausted <br/>
+	 *
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public void advance() throws IOException {
+		_head = null;
+		if (_reader == null) {
+			return;
+		}
+
+		if (_reader.nextTerm()) {
+			_head = Posting.read(_reader);
+		} else {
+			close();
+		}
+	}
+
+	/**
+	 * Close the run
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (_reader != null) {
+			_reader.close();
+			_reader = null;
+		}
+	}
+}
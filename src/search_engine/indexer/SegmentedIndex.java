@@ -0,0 +1,779 @@
+package search_engine.indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import search_engine.common.IndexCommit;
+import search_engine.common.IndexDelta;
+import search_engine.common.IndexUpgrader;
+import search_engine.common.PostingsCodec;
+import search_engine.common.Segments;
+
+/**
+ * This class provides the incremental mode of the Indexer, to index documents
+ * continuously, e.g: while crawling <br/>
+ * The index is made of immutable segments (see Segments). New documents are
+ * indexed into a small in-memory PostingList which is flushed into a new
+ * segment every maxBufferedDocuments documents, so adding a document never
+ * rewrites the postings already on disk. <br/>
+ * A background thread merges the small segments into bigger ones, as chosen
+ * by the MergePolicy, and the searcher reads every live segment. <br/>
+ * <br/>
+ * A document is acknowledged once it is in the write-ahead log, and the log
+ * is emptied on every flush. The manifest is the commit point of the index
+ * (see IndexCommit): a flush writes the segment and a new generation of the
+ * Dictionary and DocumentList files, forces them to disk, then replaces the
+ * manifest to name them. A generation only has the changes of its flush (see
+ * IndexDelta), so a flush writes files as large as the buffered documents, not
+ * as the index. The whole Dictionary and DocumentList are written again as a
+ * checkpoint once the changes since the last checkpoint add up to
+ * CHECKPOINT_RATIO of them, which bounds both the cost of the checkpoints over
+ * the flushes and the changes a reader applies. The files of a generation are
+ * never modified, so a
+ * searcher that reads the manifest once sees one version of the index
+ * without any lock, and the indexer never waits for the searchers. On start,
+ * the files that no commit names are deleted, and the documents left in the
+ * log are indexed again. <br/>
+ * <br/>
+ * A deleted document keeps its postings, and is skipped by the searcher, until
+ * the index is compacted: every posting is then merged into one segment
+ * without the deleted documents, and the documents are renumbered. The
+ * compaction is done by flush() once more than MAX_DELETED_RATIO of the
+ * documents are deleted. <br/>
+ * <br/>
+ * The flushed segments are written with the PostingsCodec given to the
+ * constructor. Without a codec, they keep the codec of the newest segment, or
+ * of the posting file of the Indexer, so a SegmentedIndex started again keeps
+ * writing with the codec of the index. The merges and the compaction keep the
+ * codec of their oldest input. <br/>
+ * <br/>
+ * <b>Note:</b> <br/>
+ * 1. The documents added are searchable once they are flushed <br/>
+ * 2. The SegmentedIndex needs to be close() when done to flush the last
+ * documents and stop the merges. The close writes nothing but the last
+ * flush: the files of the Indexer are not written again <br/>
+ * <br/>
+ * <u>For example: </u><br/>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	SegmentedIndex index = new SegmentedIndex();
+ * 	index.start();
+ * 	index.addDocument(docName1, document1);
+ * 	index.addDocument(docName2, document2);
+ * 	index.updateDocument(docName1, newDocument1);
+ * 	index.deleteDocument(docName2);
+ * 	index.close();
+ * }
+ * </pre>
+ *
+ * @author ngtrhieu0011
+ */
+public class SegmentedIndex {
+	public static final int DEFAULT_MAX_BUFFERED_DOCUMENTS = 64;
+	public static final double MAX_DELETED_RATIO = 0.25;
+	public static final double CHECKPOINT_RATIO = 0.5;
+
+	private static final String LOG_FILE = "segments.wal";
+
+	private final int _maxBufferedDocuments;
+	private final MergePolicy _mergePolicy;
+	private final PostingsCodec _codec;
+	private PostingsCodec _bufferCodec;
+
+	private DocumentList _documentList;
+	private Dictionary _dictionary;
+	private PostingList _buffer;
+	private int _noBufferedDocuments = 0;
+	private final ArrayList<Integer> _bufferedDeletes = new ArrayList<Integer>();
+	private WriteAheadLog _log;
+
+	// What the last generation has written, so the next one only writes the
+	// changes made since then
+	private int _noFlushedTerms = 0;
+	private int _noFlushedDocuments = 0;
+	private int _noDeltaChanges = 0;
+
+	/**
+	 * The live segments, oldest first, as in the manifest <br/>
+	 * The list is also the lock of the segments, of the commits and of the
+	 * merge thread <br/>
+	 */
+	private final ArrayList<String> _segments = new ArrayList<String>();
+	private int _generation = 0;
+	private int _checkpoint = 0;
+	private boolean _hasBase = true;
+	private final HashSet<String> _mergingSegments = new HashSet<String>();
+	private int _nextSegmentNumber = 0;
+	private Thread _mergeThread;
+	private IOException _mergeException;
+	private boolean _isClosing = false;
+	private boolean _isCompacting = false;
+
+	private boolean _isStarted = false;
+
+	/**
+	 * Default Constructor <br/>
+	 */
+	public SegmentedIndex() {
+		this(DEFAULT_MAX_BUFFERED_DOCUMENTS, MergePolicy.DEFAULT_MERGE_FACTOR);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 *
+	 * @param maxBufferedDocuments
+	 *            number of documents indexed in memory before they are
+	 *            flushed into a new segment
+	 * @param mergeFactor
+	 *            number of segments of the same size merged at once
+	 */
+	public SegmentedIndex(int maxBufferedDocuments, int mergeFactor) {
+		this(maxBufferedDocuments, mergeFactor, null);
+	}
+
+	/**
+	 * Secondary Constructor <br/>
+	 *
+	 * @param maxBufferedDocuments
+	 *            number of documents indexed in memory before they are
+	 *            flushed into a new segment
+	 * @param mergeFactor
+	 *            number of segments of the same size merged at once
+	 * @param codec
+	 *            the codec the flushed segments are written with, null for
+	 *            the codec of the index
+	 */
+	public SegmentedIndex(int maxBufferedDocuments, int mergeFactor, PostingsCodec codec) {
+		_maxBufferedDocuments = Math.max(maxBufferedDocuments, 1);
+		_mergePolicy = new MergePolicy(mergeFactor, MergePolicy.DEFAULT_MIN_SEGMENT_SIZE);
+		_codec = codec;
+	}
+
+	/**
+	 * Start method <br/>
+	 * Recover the index, open the DocumentList and Dictionary, load the live
+	 * segments and start the merge thread <br/>
+	 * The files of segments which are not live are left over by a flush or a
+	 * merge that did not complete, and are deleted. The documents left in the
+	 * write-ahead log are indexed again <br/>
+	 *
+	 * @throws IOException
+	 *             when cannot open the database
+	 */
+	public synchronized void start() throws IOException {
+		if (_isStarted) {
+			return;
+		}
+
+		IndexCommit commit = IndexCommit.read();
+		synchronized (_segments) {
+			_segments.clear();
+			_segments.addAll(commit.getSegments());
+			_generation = commit.getGeneration();
+			_checkpoint = commit.getCheckpoint();
+			_hasBase = commit.hasBase();
+			// Delete what a crash left over: the files of a commit that did
+			// not complete, and the files a completed commit replaced
+			Segments.deleteUnreferenced(_segments);
+			IndexCommit.deleteOtherGenerations(_checkpoint, _generation);
+			if (!_hasBase) {
+				PostingList.deleteBase();
+			}
+			for (String segment : _segments) {
+				_nextSegmentNumber = Math.max(_nextSegmentNumber, Segments.number(segment) + 1);
+			}
+			_mergeException = null;
+			_isClosing = false;
+		}
+		// The searcher only reads the binary files of the Indexer, which an
+		// index written before they were introduced does not have
+		if (_checkpoint == 0) {
+			IndexUpgrader.upgrade();
+		}
+		_bufferCodec = _codec != null ? _codec : codecOfIndex();
+
+		IndexDelta delta = IndexDelta.read(commit);
+		_dictionary = new Dictionary(commit.getPrefix(), delta);
+		_documentList = new DocumentList(commit.getPrefix(), delta);
+		_buffer = new PostingList(_bufferCodec);
+		_noBufferedDocuments = 0;
+		_bufferedDeletes.clear();
+		_noFlushedTerms = _dictionary.size();
+		_noFlushedDocuments = _documentList.size();
+		_noDeltaChanges = delta.size();
+
+		_log = new WriteAheadLog(new File(LOG_FILE));
+		for (WriteAheadLog.Record record : _log.recover()) {
+			// The operations saved before the log was emptied are skipped:
+			// the docIds are given in order, so an added document is known
+			// already if its docId is
+			if (record.type == WriteAheadLog.DELETE) {
+				if (_documentList.deleteDocument(record.docId)) {
+					_bufferedDeletes.add(record.docId);
+				}
+			} else if (record.docId >= _documentList.size()) {
+				int docId = indexDocument(new Indexer(record.docName, record.document));
+				if (docId != record.docId) {
+					throw new IOException("The write-ahead log does not match the index: " + record.docName);
+				}
+			}
+		}
+
+		_mergeThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				mergeSegments();
+			}
+		}, "segmentMerger");
+		_mergeThread.setDaemon(true);
+		_mergeThread.start();
+		_isStarted = true;
+
+		if (_noBufferedDocuments >= _maxBufferedDocuments) {
+			flush();
+		}
+	}
+
+	/**
+	 * Add a document to the index <br/>
+	 * The document is flushed into a new segment once maxBufferedDocuments
+	 * documents are buffered <br/>
+	 * The method returns once the document is in the write-ahead log. The
+	 * document is analysed before the lock of the index is taken, which is
+	 * only held to give the docId, buffer the postings and append to the log.
+	 * The log is forced to disk outside of the lock, so the threads adding
+	 * documents at the same time share the writes to the log <br/>
+	 *
+	 * @param docName
+	 *            specifies the name of the document. In the search engine, this
+	 *            should be the link to the website.<br/>
+	 * @param document
+	 *            the content of the document <br/>
+	 * @return docId of the document, -1 if the document has been indexed before
+	 *         or the SegmentedIndex hasn't been started/has been closed
+	 * @throws IOException
+	 *             when the log or the segment cannot be written, or a merge
+	 *             failed
+	 */
+	public int addDocument(String docName, String document) throws IOException {
+		Indexer indexer = new Indexer(docName, document);
+		if (!indexer.analyze()) {
+			return -1;
+		}
+
+		int docId;
+		long sequence;
+		WriteAheadLog log;
+		synchronized (this) {
+			if (!_isStarted) {
+				return -1;
+			}
+
+			docId = indexDocument(indexer);
+			if (docId == -1) {
+				return -1;
+			}
+			log = _log;
+			sequence = log.append(WriteAheadLog.ADD, docId, docName, document);
+			if (_noBufferedDocuments >= _maxBufferedDocuments) {
+				flush();
+			}
+		}
+
+		log.sync(sequence);
+		return docId;
+	}
+
+	/**
+	 * Delete a document from the index <br/>
+	 * The method returns once the deletion is in the write-ahead log <br/>
+	 *
+	 * @param docName
+	 *            the name of the document
+	 * @return docId of the deleted document, -1 if the document is not in the
+	 *         index or the SegmentedIndex hasn't been started/has been closed
+	 * @throws IOException
+	 *             when the log cannot be written
+	 */
+	public int deleteDocument(String docName) throws IOException {
+		int docId;
+		long sequence;
+		WriteAheadLog log;
+		synchronized (this) {
+			if (!_isStarted) {
+				return -1;
+			}
+
+			docId = _documentList.deleteDocument(docName);
+			if (docId == -1) {
+				return -1;
+			}
+			_bufferedDeletes.add(docId);
+			log = _log;
+			sequence = log.append(WriteAheadLog.DELETE, docId, docName, null);
+		}
+
+		log.sync(sequence);
+		return docId;
+	}
+
+	/**
+	 * Replace a document of the index, e.g: a page crawled again <br/>
+	 * The old document is deleted and the new one is added with a new docId.
+	 * A document which is not in the index is simply added <br/>
+	 *
+	 * @param docName
+	 *            the name of the document
+	 * @param document
+	 *            the new content of the document
+	 * @return docId of the new document, -1 if the SegmentedIndex hasn't been
+	 *         started/has been closed
+	 * @throws IOException
+	 *             when the log or the segment cannot be written, or a merge
+	 *             failed
+	 */
+	public int updateDocument(String docName, String document) throws IOException {
+		Indexer indexer = new Indexer(docName, document);
+		if (!indexer.analyze()) {
+			return -1;
+		}
+
+		int docId;
+		long sequence;
+		WriteAheadLog log;
+		synchronized (this) {
+			if (!_isStarted) {
+				return -1;
+			}
+			log = _log;
+
+			int deletedDocId = _documentList.deleteDocument(docName);
+			if (deletedDocId != -1) {
+				_bufferedDeletes.add(deletedDocId);
+				log.append(WriteAheadLog.DELETE, deletedDocId, docName, null);
+			}
+			docId = indexDocument(indexer);
+			if (docId == -1) {
+				return -1;
+			}
+			sequence = log.append(WriteAheadLog.ADD, docId, docName, document);
+			if (_noBufferedDocuments >= _maxBufferedDocuments) {
+				flush();
+			}
+		}
+
+		log.sync(sequence);
+		return docId;
+	}
+
+	/**
+	 * Flush the buffered documents into a new segment <br/>
+	 * The segment files and a new generation of the Dictionary and the
+	 * DocumentList, their changes or a checkpoint, are written and forced to
+	 * disk before they are committed
+	 * together, so the searcher never sees a segment whose terms or documents
+	 * are unknown. The write-ahead log is emptied afterwards <br/>
+	 * The index is then compacted if too many documents are deleted <br/>
+	 *
+	 * @throws IOException
+	 *             when the segment cannot be written, or a merge failed
+	 */
+	public synchronized void flush() throws IOException {
+		if (!_isStarted) {
+			return;
+		}
+		checkMergeException();
+		if (flushBuffer() && _documentList.getNoDeleted() > MAX_DELETED_RATIO * _documentList.size()) {
+			compactSegments();
+		}
+	}
+
+	/**
+	 * Compact the index: drop the postings of the deleted documents and
+	 * renumber the documents <br/>
+	 * The buffered documents are flushed first, and the merges are held until
+	 * the compaction is done <br/>
+	 *
+	 * @throws IOException
+	 *             when the index cannot be written, or a merge failed
+	 */
+	public synchronized void compact() throws IOException {
+		if (!_isStarted) {
+			return;
+		}
+		checkMergeException();
+		flushBuffer();
+		compactSegments();
+	}
+
+	/**
+	 * Write the buffered documents to a new segment, and commit them with the
+	 * buffered deletions in a new generation <br/>
+	 *
+	 * @return false if there was nothing to write
+	 * @throws IOException
+	 *             when the segment cannot be written
+	 */
+	private boolean flushBuffer() throws IOException {
+		if (_noBufferedDocuments == 0 && _bufferedDeletes.isEmpty()) {
+			return false;
+		}
+
+		// Only deletions: the new generation has no new segment
+		String segment = null;
+		if (_noBufferedDocuments > 0) {
+			synchronized (_segments) {
+				segment = Segments.name(_nextSegmentNumber++);
+			}
+			_buffer.writeSegment(segment);
+			Segments.sync(segment);
+		}
+		int generation = _generation + 1;
+		IndexDelta delta = createDelta();
+		boolean isCheckpoint = _noDeltaChanges + delta.size() > CHECKPOINT_RATIO
+				* (_dictionary.size() + _documentList.size());
+		if (isCheckpoint) {
+			_dictionary.flush(IndexCommit.prefix(generation));
+			_documentList.flush(IndexCommit.prefix(generation));
+		} else {
+			delta.write(IndexCommit.prefix(generation));
+		}
+
+		synchronized (_segments) {
+			if (segment != null) {
+				_segments.add(segment);
+			}
+			_generation = generation;
+			if (isCheckpoint) {
+				_checkpoint = generation;
+			}
+			commit();
+			_segments.notifyAll();
+		}
+		_log.reset();
+		IndexCommit.deleteOtherGenerations(_checkpoint, generation);
+
+		_buffer = new PostingList(_bufferCodec);
+		_noBufferedDocuments = 0;
+		_bufferedDeletes.clear();
+		_noFlushedTerms = _dictionary.size();
+		_noFlushedDocuments = _documentList.size();
+		_noDeltaChanges = isCheckpoint ? 0 : _noDeltaChanges + delta.size();
+		return true;
+	}
+
+	/**
+	 * Collect the changes made since the last generation: the words of the
+	 * buffered documents with their df, the documents added and the documents
+	 * deleted
+	 *
+	 * @return the changes
+	 */
+	private IndexDelta createDelta() {
+		IndexDelta delta = new IndexDelta();
+		for (int i = 0; i < _buffer.size(); i++) {
+			int vocabularyId = _buffer.getPostingAtIndex(i).getVocabularyId();
+			Vocabulary vocabulary = _dictionary.getVocabulary(vocabularyId);
+			delta.setTerm(vocabularyId, vocabulary.word(), vocabulary.df());
+		}
+		// The words added since the last generation are kept, postings or not
+		for (int vocabularyId = _noFlushedTerms; vocabularyId < _dictionary.size(); vocabularyId++) {
+			Vocabulary vocabulary = _dictionary.getVocabulary(vocabularyId);
+			delta.setTerm(vocabularyId, vocabulary.word(), vocabulary.df());
+		}
+		for (int docId = _noFlushedDocuments; docId < _documentList.size(); docId++) {
+			delta.addDocument(_documentList.getDocName(docId));
+		}
+		for (int docId : _bufferedDeletes) {
+			delta.deleteDocument(docId);
+		}
+		return delta;
+	}
+
+	/**
+	 * Merge every posting of the index into one segment, without the deleted
+	 * documents <br/>
+	 * The buffer must be empty, so the write-ahead log is empty as well and
+	 * never refers to the old docIds. A failed compaction is reported by the
+	 * following calls, as a failed merge: the index then needs to be started
+	 * again <br/>
+	 *
+	 * @throws IOException
+	 *             when the index cannot be written
+	 */
+	private void compactSegments() throws IOException {
+		List<String> segments;
+		String compactedSegment;
+		boolean includeBase;
+		synchronized (_segments) {
+			_isCompacting = true;
+			while (!_mergingSegments.isEmpty()) {
+				try {
+					_segments.wait();
+				} catch (InterruptedException e) {
+					_isCompacting = false;
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the merges", e);
+				}
+			}
+			segments = new ArrayList<String>(_segments);
+			compactedSegment = Segments.name(_nextSegmentNumber++);
+			includeBase = _hasBase;
+		}
+
+		int generation = _generation + 1;
+		try {
+			int[] docIdMap = _documentList.compact();
+			int[] dfs = new int[_dictionary.size()];
+			PostingList.compactSegments(segments, compactedSegment, docIdMap, dfs, includeBase);
+			Segments.sync(compactedSegment);
+			_dictionary.resetDocFreqs(dfs);
+			_dictionary.flush(IndexCommit.prefix(generation));
+			_documentList.flush(IndexCommit.prefix(generation));
+
+			synchronized (_segments) {
+				_segments.clear();
+				_segments.add(compactedSegment);
+				_generation = generation;
+				_checkpoint = generation;
+				_hasBase = false;
+				commit();
+			}
+			_noFlushedDocuments = _documentList.size();
+			_noDeltaChanges = 0;
+		} catch (IOException e) {
+			synchronized (_segments) {
+				_mergeException = e;
+			}
+			throw e;
+		} finally {
+			synchronized (_segments) {
+				_isCompacting = false;
+				_segments.notifyAll();
+			}
+		}
+
+		IndexCommit.deleteOtherGenerations(generation);
+		if (includeBase) {
+			PostingList.deleteBase();
+		}
+		for (String segment : segments) {
+			Segments.delete(segment);
+		}
+	}
+
+	/**
+	 * Wait until the merge thread has done every merge chosen by the
+	 * MergePolicy <br/>
+	 *
+	 * @throws IOException
+	 *             when a merge failed
+	 */
+	public void waitForMerges() throws IOException {
+		synchronized (_segments) {
+			while (_mergeException == null && _mergeThread != null && _mergeThread.isAlive()
+					&& (!_mergingSegments.isEmpty() || findMerge() != null)) {
+				try {
+					_segments.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the merges", e);
+				}
+			}
+		}
+		checkMergeException();
+	}
+
+	/**
+	 * Close the SegmentedIndex <br/>
+	 * The buffered documents are flushed and the merge thread is stopped once
+	 * its current merge is done <br/>
+	 *
+	 * @throws IOException
+	 *             when cannot write to the database, or a merge failed
+	 */
+	public synchronized void close() throws IOException {
+		if (!_isStarted) {
+			return;
+		}
+
+		try {
+			flush();
+		} finally {
+			_isStarted = false;
+			synchronized (_segments) {
+				_isClosing = true;
+				_segments.notifyAll();
+			}
+			try {
+				_mergeThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			_mergeThread = null;
+			_buffer = null;
+
+			_log.close();
+			_log = null;
+			// Every change is in the committed generations
+			_documentList.release();
+			_dictionary.release();
+		}
+		checkMergeException();
+	}
+
+	/**
+	 * Get the number of live segments
+	 *
+	 * @return number of segments
+	 */
+	public int getNoSegments() {
+		synchronized (_segments) {
+			return _segments.size();
+		}
+	}
+
+	/**
+	 * Index a document into the buffered PostingList
+	 *
+	 * @param indexer
+	 *            the Indexer of the document, analysed or not
+	 * @return docId of the document, -1 if the document has been indexed
+	 *         before
+	 */
+	private int indexDocument(Indexer indexer) {
+		int docId = indexer.indexInto(_documentList, _dictionary, _buffer);
+		if (docId != -1) {
+			_noBufferedDocuments++;
+		}
+		return docId;
+	}
+
+	/**
+	 * Replace the manifest with the live segments and the current generation
+	 * <br/>
+	 * Must be called while holding the lock of the segments <br/>
+	 *
+	 * @throws IOException
+	 *             when the manifest cannot be written
+	 */
+	private void commit() throws IOException {
+		new IndexCommit(_generation, _checkpoint, _hasBase, _segments).write();
+	}
+
+	/**
+	 * Get the codec the index is written with: the codec of the newest
+	 * segment, or of the posting file of the Indexer <br/>
+	 * Must be called while no merge is running <br/>
+	 *
+	 * @return the codec, VByte for an empty index
+	 * @throws IOException
+	 *             when the postings files cannot be read
+	 */
+	private PostingsCodec codecOfIndex() throws IOException {
+		if (!_segments.isEmpty()) {
+			return PostingList.codecOf(Segments.postingsFile(_segments.get(_segments.size() - 1)));
+		}
+		return _hasBase ? PostingList.baseCodec() : PostingsCodec.VBYTE;
+	}
+
+	/**
+	 * Body of the merge thread <br/>
+	 * Wait for the MergePolicy to choose segments, merge them into a new
+	 * segment and replace them with it in the manifest. The merged segments
+	 * are deleted afterwards: a searcher that has already opened them keeps
+	 * reading them <br/>
+	 * The thread stops when the SegmentedIndex is closed, or a merge fails
+	 */
+	private void mergeSegments() {
+		while (true) {
+			List<String> merge = null;
+			String mergedSegment;
+			synchronized (_segments) {
+				while (!_isClosing && (merge = findMerge()) == null) {
+					try {
+						_segments.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (_isClosing) {
+					return;
+				}
+				_mergingSegments.addAll(merge);
+				mergedSegment = Segments.name(_nextSegmentNumber++);
+			}
+
+			try {
+				PostingList.mergeSegments(merge, mergedSegment);
+				Segments.sync(mergedSegment);
+
+				synchronized (_segments) {
+					int index = _segments.indexOf(merge.get(0));
+					_segments.removeAll(merge);
+					_segments.add(index, mergedSegment);
+					_mergingSegments.removeAll(merge);
+					commit();
+					_segments.notifyAll();
+				}
+			} catch (IOException e) {
+				synchronized (_segments) {
+					_mergeException = e;
+					_mergingSegments.removeAll(merge);
+					if (!_segments.contains(mergedSegment)) {
+						Segments.delete(mergedSegment);
+					}
+					_segments.notifyAll();
+				}
+				return;
+			}
+
+			for (String segment : merge) {
+				Segments.delete(segment);
+			}
+		}
+	}
+
+	/**
+	 * Ask the MergePolicy for the next segments to merge <br/>
+	 * Must be called while holding the lock of the segments <br/>
+	 *
+	 * @return the segments to merge, oldest first, null if there is nothing to
+	 *         merge
+	 */
+	private List<String> findMerge() {
+		if (_isCompacting) {
+			return null;
+		}
+		long[] sizes = new long[_segments.size()];
+		for (int i = 0; i < sizes.length; i++) {
+			String segment = _segments.get(i);
+			sizes[i] = _mergingSegments.contains(segment) ? -1 : Segments.size(segment);
+		}
+
+		int start = _mergePolicy.findMerge(sizes);
+		if (start < 0) {
+			return null;
+		}
+		return new ArrayList<String>(_segments.subList(start, start + _mergePolicy.getMergeFactor()));
+	}
+
+	/**
+	 * Rethrow the failure of the merge thread, if any
+	 *
+	 * @throws IOException
+	 *             the failure of the last merge
+	 */
+	private void checkMergeException() throws IOException {
+		synchronized (_segments) {
+			if (_mergeException != null) {
+				throw new IOException("Cannot merge segments", _mergeException);
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package search_engine.indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import search_engine.common.PostingsCodec;
+
+/**
+ * This class provides the single-pass in-memory indexing (SPIMI) engine used
+ * by the IndexBuilder <br/>
+ * Postings are accumulated in an in-memory PostingList until the estimated
+ * memory usage reaches the memory budget. The PostingList is then spilled as a
+ * sorted run into a temporary file and a new empty PostingList is started. <br/>
+ * When finishing, the posting file and every run are combined with a streaming
+ * k-way merge, so the merge runs in bounded memory regardless of the size of
+ * the corpus. The posting file is written with the codec given to the
+ * SpimiInverter, the runs are temporary and always written with VByte <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class SpimiInverter {
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	// Rough heap cost of a Posting (object, three arrays and references), of
+	// a tuple (two ints) and of a position (one int), plus the spare capacity
+	// of the growable arrays
+	private static final int POSTING_BYTES = 112;
+	private static final int TUPLE_BYTES = 12;
+	private static final int POSITION_BYTES = 6;
+
+	private static final String RUN_PREFIX = "spimi";
+	private static final String RUN_SUFFIX = ".run";
+
+	private final long _memoryBudget;
+	private final File _runDirectory;
+	private final PostingsCodec _codec;
+
+	private PostingList _postingList;
+	private long _noTuples;
+	private long _noPositions;
+	private ArrayList<File> _runFiles;
+
+	/**
+	 * Public Constructor <br/>
+	 * The runs are spilled into the default temporary-file directory <br/>
+	 *
+	 * @param memoryBudget
+	 *            the number of bytes the in-memory postings may use before
+	 *            being spilled
+	 */
+	public SpimiInverter(long memoryBudget) {
+		this(memoryBudget, null);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 *
+	 * @param memoryBudget
+	 *            the number of bytes the in-memory postings may use before
+	 *            being spilled
+	 * @param runDirectory
+	 *            the directory to spill the runs into, null for the default
+	 *            temporary-file directory
+	 */
+	public SpimiInverter(long memoryBudget, File runDirectory) {
+		this(memoryBudget, runDirectory, null);
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 *
+	 * @param memoryBudget
+	 *            the number of bytes the in-memory postings may use before
+	 *            being spilled
+	 * @param runDirectory
+	 *            the directory to spill the runs into, null for the default
+	 *            temporary-file directory
+	 * @param codec
+	 *            the codec the posting file is written with, null for the
+	 *            codec of the posting file
+	 */
+	public SpimiInverter(long memoryBudget, File runDirectory, PostingsCodec codec) {
+		_memoryBudget = memoryBudget;
+		_runDirectory = runDirectory;
+		_codec = codec;
+		_postingList = new PostingList();
+		_noTuples = 0;
+		_noPositions = 0;
+		_runFiles = new ArrayList<File>();
+	}
+
+	/**
+	 * Get the in-memory PostingList the next document should be indexed into
+	 *
+	 * @return the current PostingList
+	 */
+	public PostingList getPostingList() {
+		return _postingList;
+	}
+
+	/**
+	 * Account for a document just indexed into the current PostingList and
+	 * spill the PostingList if the memory budget is exceeded <br/>
+	 *
+	 * @param noDistinctTokens
+	 *            number of distinct tokens in the document, i.e: the number of
+	 *            tuples the document added
+	 * @param noPositions
+	 *            number of tokens indexed from the document, i.e: the number
+	 *            of positions the document added
+	 * @throws IOException
+	 *             when the run cannot be written
+	 */
+	public void addDocument(int noDistinctTokens, int noPositions) throws IOException {
+		_noTuples += noDistinctTokens;
+		_noPositions += noPositions;
+		if (estimateMemoryUsage() >= _memoryBudget) {
+			spill();
+		}
+	}
+
+	/**
+	 * Estimate the heap used by the current PostingList
+	 *
+	 * @return estimated number of bytes
+	 */
+	public long estimateMemoryUsage() {
+		return (long) _postingList.size() * POSTING_BYTES + _noTuples * TUPLE_BYTES + _noPositions * POSITION_BYTES;
+	}
+
+	/**
+	 * Get the number of runs spilled so far
+	 *
+	 * @return number of runs
+	 */
+	public int getNoRuns() {
+		return _runFiles.size();
+	}
+
+	/**
+	 * Spill the current PostingList as a sorted run and start a new empty
+	 * PostingList <br/>
+	 *
+	 * @throws IOException
+	 *             when the run cannot be written
+	 */
+	public void spill() throws IOException {
+		if (_postingList.size() == 0) {
+			return;
+		}
+
+		File runFile = File.createTempFile(RUN_PREFIX, RUN_SUFFIX, _runDirectory);
+		runFile.deleteOnExit();
+		PostingRun.positionsFile(runFile).deleteOnExit();
+		_postingList.writeRun(runFile);
+		_runFiles.add(runFile);
+
+		_postingList = new PostingList();
+		_noTuples = 0;
+		_noPositions = 0;
+	}
+
+	/**
+	 * Spill the remaining postings and merge every run into the posting file
+	 * <br/>
+	 * The runs are deleted afterwards <br/>
+	 *
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	public void finish() throws IOException {
+		spill();
+
+		try {
+			PostingList.mergeToFile(_runFiles, _codec);
+		} finally {
+			for (File runFile : _runFiles) {
+				runFile.delete();
+				PostingRun.positionsFile(runFile).delete();
+			}
+			_runFiles.clear();
+		}
+	}
+}
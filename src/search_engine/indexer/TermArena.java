@@ -0,0 +1,327 @@
+package search_engine.indexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class stores the words of the Lexicon off the Java heap <br/>
+ * The UTF-8 bytes of the words are appended one after the other to chunks of
+ * direct memory, and a word is addressed by an int offset: the index of its
+ * chunk and its position in the chunk. Each word is given the next termId,
+ * and its offset, length and hash are kept in pages of int arrays, so a word
+ * costs a few ints on the heap and its bytes off the heap, instead of a String
+ * and its char[]. <br/>
+ * The termIds of the words are found through an open-addressing hash table of
+ * termIds with linear probing, which is doubled when half full. <br/>
+ * <br/>
+ * <b>Note:</b> <br/>
+ * 1. Lookups are lock-free. A word, its offset and its hash are written before
+ * its termId is put in the table, and the table is read through volatile
+ * reads, so a termId found is always complete. A lookup running while the
+ * table is doubled may miss a word added meanwhile, so an add checks again
+ * under the lock <br/>
+ * 2. Adds are serialised on the TermArena. The chunks and pages are never
+ * moved, so a reader never sees them half copied <br/>
+ * 3. A word appended twice keeps its first termId in the table <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class TermArena {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int CHUNK_BITS = 20;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int NO_CHUNKS = 1 << (31 - CHUNK_BITS);
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int NO_PAGES = 1 << 16;
+	private static final int INITIAL_TABLE_SIZE = 1 << 12;
+
+	private final AtomicReferenceArray<ByteBuffer> _chunks;
+	private final AtomicReferenceArray<int[]> _offsets;
+	private final AtomicReferenceArray<int[]> _lengths;
+	private final AtomicReferenceArray<int[]> _hashes;
+	// termId + 1 of each bucket, 0 for an empty bucket
+	private volatile AtomicIntegerArray _table;
+	private volatile int _size;
+
+	// Where the next word is written, only used under the lock
+	private int _chunk;
+	private int _position;
+	private long _noBytes;
+
+	/**
+	 * Public Constructor <br/>
+	 * Create an empty TermArena <br/>
+	 */
+	public TermArena() {
+		_chunks = new AtomicReferenceArray<ByteBuffer>(NO_CHUNKS);
+		_offsets = new AtomicReferenceArray<int[]>(NO_PAGES);
+		_lengths = new AtomicReferenceArray<int[]>(NO_PAGES);
+		_hashes = new AtomicReferenceArray<int[]>(NO_PAGES);
+		clear();
+	}
+
+	/**
+	 * Find the termId of a word without locking <br/>
+	 *
+	 * @param word
+	 * @return the termId, -1 if the word is not in the TermArena
+	 */
+	public int find(String word) {
+		int hash = spread(word.hashCode());
+		AtomicIntegerArray table = _table;
+		int mask = table.length() - 1;
+		for (int bucket = hash & mask;; bucket = (bucket + 1) & mask) {
+			int termId = table.get(bucket) - 1;
+			if (termId < 0) {
+				return -1;
+			}
+			if (page(_hashes, termId)[termId & PAGE_MASK] == hash && equals(termId, word)) {
+				return termId;
+			}
+		}
+	}
+
+	/**
+	 * Return the termId of a word, appending the word if it is not in the
+	 * TermArena yet <br/>
+	 *
+	 * @param word
+	 * @return the termId of the word
+	 */
+	public synchronized int findOrAdd(String word) {
+		// Another thread may have added the word since it was looked up
+		int termId = find(word);
+		if (termId >= 0) {
+			return termId;
+		}
+		return add(word);
+	}
+
+	/**
+	 * Append a word <br/>
+	 * The word gets the next termId, whether or not it is already known <br/>
+	 *
+	 * @param word
+	 * @return the termId of the appended word
+	 */
+	public synchronized int add(String word) {
+		boolean isKnown = find(word) >= 0;
+		int termId = _size;
+		int hash = spread(word.hashCode());
+		byte[] bytes = isAscii(word) ? null : word.getBytes(UTF8);
+		int length = bytes == null ? word.length() : bytes.length;
+
+		int offset = allocate(length);
+		ByteBuffer chunk = _chunks.get(offset >>> CHUNK_BITS);
+		int position = offset & CHUNK_MASK;
+		for (int i = 0; i < length; i++) {
+			chunk.put(position + i, bytes == null ? (byte) word.charAt(i) : bytes[i]);
+		}
+		pageOf(_offsets, termId)[termId & PAGE_MASK] = offset;
+		pageOf(_lengths, termId)[termId & PAGE_MASK] = length;
+		pageOf(_hashes, termId)[termId & PAGE_MASK] = hash;
+		_size = termId + 1;
+
+		if (!isKnown) {
+			if (2 * _size > _table.length()) {
+				grow();
+			}
+			insert(_table, termId, hash);
+		}
+		return termId;
+	}
+
+	/**
+	 * Get the word with the given termId without locking <br/>
+	 *
+	 * @param termId
+	 * @return the word, null if no such termId
+	 */
+	public String get(int termId) {
+		if (termId < 0 || termId >= _size) {
+			return null;
+		}
+		int offset = page(_offsets, termId)[termId & PAGE_MASK];
+		int length = page(_lengths, termId)[termId & PAGE_MASK];
+		ByteBuffer chunk = _chunks.get(offset >>> CHUNK_BITS);
+		int position = offset & CHUNK_MASK;
+
+		byte[] bytes = new byte[length];
+		boolean isAscii = true;
+		for (int i = 0; i < length; i++) {
+			bytes[i] = chunk.get(position + i);
+			isAscii &= bytes[i] >= 0;
+		}
+		if (isAscii) {
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) bytes[i];
+			}
+			return new String(chars);
+		}
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Number of words in the TermArena
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Number of bytes taken by the words off the heap
+	 *
+	 * @return the bytes of the words, without the unused end of the chunks
+	 */
+	public synchronized long noBytes() {
+		return _noBytes;
+	}
+
+	/**
+	 * Empty the TermArena <br/>
+	 * The direct memory of the chunks is given back once they are garbage
+	 * collected <br/>
+	 * <b>Note:</b> this must only be called when no other thread is using the
+	 * TermArena <br/>
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < NO_CHUNKS && _chunks.get(i) != null; i++) {
+			_chunks.set(i, null);
+		}
+		for (int i = 0; i < NO_PAGES && _offsets.get(i) != null; i++) {
+			_offsets.set(i, null);
+			_lengths.set(i, null);
+			_hashes.set(i, null);
+		}
+		_table = new AtomicIntegerArray(INITIAL_TABLE_SIZE);
+		_size = 0;
+		_chunk = -1;
+		_position = CHUNK_SIZE;
+		_noBytes = 0;
+	}
+
+	/**
+	 * Reserve room for a word in the current chunk, starting a new chunk if it
+	 * does not fit <br/>
+	 * A word longer than a chunk gets a chunk of its own <br/>
+	 *
+	 * @param length
+	 *            in bytes
+	 * @return the offset of the word
+	 */
+	private int allocate(int length) {
+		if (_chunk < 0 || _position + length > CHUNK_SIZE) {
+			_chunk++;
+			if (_chunk == NO_CHUNKS) {
+				throw new IllegalStateException("TermArena is full");
+			}
+			_chunks.set(_chunk, ByteBuffer.allocateDirect(Math.max(length, CHUNK_SIZE)));
+			_position = 0;
+		}
+		int offset = (_chunk << CHUNK_BITS) | _position;
+		_position += length;
+		_noBytes += length;
+		return offset;
+	}
+
+	/**
+	 * Double the hash table, and publish it once every termId is in it
+	 */
+	private void grow() {
+		AtomicIntegerArray table = _table;
+		AtomicIntegerArray grown = new AtomicIntegerArray(table.length() * 2);
+		for (int bucket = 0; bucket < table.length(); bucket++) {
+			int termId = table.get(bucket) - 1;
+			if (termId >= 0) {
+				insert(grown, termId, page(_hashes, termId)[termId & PAGE_MASK]);
+			}
+		}
+		_table = grown;
+	}
+
+	private static void insert(AtomicIntegerArray table, int termId, int hash) {
+		int mask = table.length() - 1;
+		int bucket = hash & mask;
+		while (table.get(bucket) != 0) {
+			bucket = (bucket + 1) & mask;
+		}
+		table.set(bucket, termId + 1);
+	}
+
+	/**
+	 * Compare the word of a termId with a word, without decoding it
+	 */
+	private boolean equals(int termId, String word) {
+		int offset = page(_offsets, termId)[termId & PAGE_MASK];
+		int length = page(_lengths, termId)[termId & PAGE_MASK];
+		ByteBuffer chunk = _chunks.get(offset >>> CHUNK_BITS);
+		int position = offset & CHUNK_MASK;
+
+		if (!isAscii(word)) {
+			byte[] bytes = word.getBytes(UTF8);
+			if (bytes.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (chunk.get(position + i) != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (word.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (chunk.get(position + i) != (byte) word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAscii(String word) {
+		for (int i = 0; i < word.length(); i++) {
+			if (word.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int[] page(AtomicReferenceArray<int[]> pages, int termId) {
+		return pages.get(termId >>> PAGE_BITS);
+	}
+
+	/**
+	 * Return the page holding the termId, allocating it if needed. The caller
+	 * must hold the lock
+	 */
+	private static int[] pageOf(AtomicReferenceArray<int[]> pages, int termId) {
+		int pageIndex = termId >>> PAGE_BITS;
+		if (pageIndex == NO_PAGES) {
+			throw new IllegalStateException("TermArena is full");
+		}
+		int[] page = pages.get(pageIndex);
+		if (page == null) {
+			page = new int[PAGE_SIZE];
+			pages.set(pageIndex, page);
+		}
+		return page;
+	}
+
+	/**
+	 * Mix the high bits of the hash into the low ones, which choose the bucket
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -49,7 +49,20 @@ class ThreadIndexer extends TimerTask {
 		return docId++;
 	}
 	
+	/**
+	 * Index every crawled document in bulk: the documents are read here and
+	 * inverted by one worker per processor, and the index files are only
+	 * written once, after the last document <br/>
+	 */
 	public static void main (String[] args) {
+		ParallelIndexBuilder builder = new ParallelIndexBuilder();
+		try {
+			builder.start();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
 		for (int i=0; i<1600; i++) {
 			try {
 				File file = new File (String.format (CRAWLED_FOLDER, i));
@@ -63,8 +76,7 @@ class ThreadIndexer extends TimerTask {
 					String docContent = br.readLine();
 					
 					System.out.println ("Indexing document id: " + i);
-					Indexer indexer = new Indexer (docName, docContent);
-					indexer.start();
+					builder.addDocument(docName, docContent);
 		
 					// Close stream readers
 					br.close();
@@ -74,5 +86,11 @@ class ThreadIndexer extends TimerTask {
 			} catch (Exception e) {
 			}
 		}
+
+		try {
+			builder.commit();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
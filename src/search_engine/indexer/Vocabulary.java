@@ -1,5 +1,7 @@
 package search_engine.indexer;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * The private implementation of Vocabulary in Dictionary which basically a
  * implementation of {@code <word, df>} where <b>word</b> is the stemmed token
@@ -13,7 +15,7 @@ class Vocabulary implements Comparable<Vocabulary> {
 	private final String DELIMITOR = " ";
 	
 	private String _word;
-	private int _df;
+	private final AtomicInteger _df;
 	
 	/**
 	 * Static Helper - Constructor <br/>
@@ -48,7 +50,7 @@ class Vocabulary implements Comparable<Vocabulary> {
 	 */
 	public Vocabulary(String word) {
 		_word = word;
-		_df = 1;
+		_df = new AtomicInteger(1);
 	}
 
 	/**
@@ -59,7 +61,7 @@ class Vocabulary implements Comparable<Vocabulary> {
 	 */
 	public Vocabulary(String word, int df) {
 		_word = word;
-		_df = df;
+		_df = new AtomicInteger(df);
 	}
 
 	/**
@@ -77,7 +79,7 @@ class Vocabulary implements Comparable<Vocabulary> {
 	 * @return df
 	 */
 	public int df() {
-		return _df;
+		return _df.get();
 	}
 
 	/**
@@ -92,7 +94,7 @@ class Vocabulary implements Comparable<Vocabulary> {
 	 * This is called when you register new document <br/>
 	 */
 	public void increaseDocFreq() {
-		_df++;
+		_df.incrementAndGet();
 	}
 	
 	/**
@@ -102,13 +104,13 @@ class Vocabulary implements Comparable<Vocabulary> {
 	 * @param amount
 	 */
 	public void increaseDocFreq(int amount) {
-		_df+=amount;
+		_df.addAndGet(amount);
 	}
 	
 /**
  * Translate the current Vocabulary into String that can be stored into file <br/>
  */
 	public String toString () {
-		return _word + DELIMITOR + _df;
+		return _word + DELIMITOR + _df.get();
 	}
 }
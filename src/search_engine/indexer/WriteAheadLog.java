@@ -0,0 +1,373 @@
+package search_engine.indexer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class provides the write-ahead log of a SegmentedIndex <br/>
+ * Every document added to or deleted from the index is appended to the log
+ * before it is acknowledged, and the log is emptied once the documents are
+ * flushed into a segment. On start, the operations left in the log are done
+ * again, so a crash loses none of the operations acknowledged. <br/>
+ * <br/>
+ * The log starts with a header {@code int MAGIC, byte VERSION}, followed by
+ * one record per operation: <br/>
+ *
+ * <pre>
+ * int length, int crc, byte type, int docId, int nameLength, name, int documentLength, document
+ * </pre>
+ *
+ * where length and crc are the length and the CRC-32 of the rest of the
+ * record, and the strings are in UTF-8. A deletion has an empty document. A record torn by a crash fails its
+ * check and is cut off, with every record after it. <br/>
+ * <br/>
+ * The records are written by group commit: append() only queues the record in
+ * memory, and sync() writes and forces every queued record at once. The
+ * threads calling sync() while a batch is being forced wait for it, then one
+ * of them forces everything queued meanwhile, so concurrent threads share one
+ * sequential write and one fsync per batch. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class WriteAheadLog {
+	public static final int MAGIC = 0x57414C47; // "WALG"
+	public static final int VERSION = 2;
+	public static final int HEADER_SIZE = 5;
+	public static final byte ADD = 0;
+	public static final byte DELETE = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File _file;
+	private RandomAccessFile _raf;
+	private FileChannel _channel;
+
+	private final Object _lock = new Object();
+	private final ByteArrayOutputStream _queue = new ByteArrayOutputStream();
+	private final CRC32 _crc = new CRC32();
+	private long _noAppended = 0;
+	private long _noSynced = 0;
+	private boolean _isSyncing = false;
+	private IOException _failure;
+
+	/**
+	 * This class holds an operation read back from the log <br/>
+	 */
+	static class Record {
+		public final byte type;
+		public final int docId;
+		public final String docName;
+		public final String document;
+
+		Record(byte type, int docId, String docName, String document) {
+			this.type = type;
+			this.docId = docId;
+			this.docName = docName;
+			this.document = document;
+		}
+	}
+
+	/**
+	 * Public Constructor <br/>
+	 * Open the log, creating it if it does not exist <br/>
+	 * recover() needs to be called before appending to the log <br/>
+	 *
+	 * @param file
+	 *            the log file
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public WriteAheadLog(File file) throws IOException {
+		_file = file;
+		_raf = new RandomAccessFile(file, "rw");
+		_channel = _raf.getChannel();
+	}
+
+	/**
+	 * Read the records of the log <br/>
+	 * The log is cut after the last complete record, and the next records are
+	 * appended from there <br/>
+	 *
+	 * @return the records, in the order they were appended
+	 * @throws IOException
+	 *             when the file cannot be read, or is not a log
+	 */
+	public List<Record> recover() throws IOException {
+		ArrayList<Record> records = new ArrayList<Record>();
+		synchronized (_lock) {
+			long size = _channel.size();
+			if (size < HEADER_SIZE) {
+				writeHeader();
+				return records;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(header, 0);
+			if (header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+				throw new IOException("Not a write-ahead log (version " + VERSION + "): " + _file);
+			}
+
+			long end = HEADER_SIZE;
+			ByteBuffer prefix = ByteBuffer.allocate(8);
+			while (end + 8 <= size) {
+				prefix.clear();
+				readFully(prefix, end);
+				int length = prefix.getInt(0);
+				int crc = prefix.getInt(4);
+				if (length < 13 || end + 8 + length > size) {
+					break;
+				}
+
+				ByteBuffer body = ByteBuffer.allocate(length);
+				readFully(body, end + 8);
+				_crc.reset();
+				_crc.update(body.array(), 0, length);
+				if ((int) _crc.getValue() != crc) {
+					break;
+				}
+
+				Record record = decode(body);
+				if (record == null) {
+					break;
+				}
+				records.add(record);
+				end += 8 + length;
+			}
+
+			// Cut the torn tail off
+			_channel.truncate(end);
+			_channel.position(end);
+		}
+		return records;
+	}
+
+	/**
+	 * Queue an operation to be written to the log <br/>
+	 * The operation is durable once sync() has been called with the sequence
+	 * number returned <br/>
+	 *
+	 * @param type
+	 *            ADD or DELETE
+	 * @param docId
+	 *            of the document added or deleted
+	 * @param docName
+	 * @param document
+	 *            the content of the document added, null for a deletion
+	 * @return the sequence number of the record
+	 */
+	public long append(byte type, int docId, String docName, String document) {
+		byte[] name = docName.getBytes(UTF8);
+		byte[] content = (document == null ? "" : document).getBytes(UTF8);
+
+		ByteBuffer body = ByteBuffer.allocate(13 + name.length + content.length);
+		body.put(type);
+		body.putInt(docId);
+		body.putInt(name.length);
+		body.put(name);
+		body.putInt(content.length);
+		body.put(content);
+
+		synchronized (_lock) {
+			_crc.reset();
+			_crc.update(body.array(), 0, body.capacity());
+			try {
+				DataOutputStream out = new DataOutputStream(_queue);
+				out.writeInt(body.capacity());
+				out.writeInt((int) _crc.getValue());
+				out.write(body.array());
+			} catch (IOException e) {
+				// Never thrown when writing to memory
+			}
+			return ++_noAppended;
+		}
+	}
+
+	/**
+	 * Make a record durable <br/>
+	 * If no other thread is writing the log, every record queued is written
+	 * and forced to disk. Otherwise, wait for that thread: the record is
+	 * either in its batch or in the next one <br/>
+	 *
+	 * @param sequence
+	 *            the sequence number returned by append()
+	 * @throws IOException
+	 *             when the log cannot be written
+	 */
+	public void sync(long sequence) throws IOException {
+		byte[] batch;
+		long noBatched;
+		synchronized (_lock) {
+			while (true) {
+				if (_noSynced >= sequence) {
+					return;
+				}
+				if (_failure != null) {
+					throw new IOException("Cannot write the write-ahead log", _failure);
+				}
+				if (!_isSyncing) {
+					break;
+				}
+				try {
+					_lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the write-ahead log", e);
+				}
+			}
+
+			if (_channel == null) {
+				throw new IOException("The write-ahead log is closed: " + _file);
+			}
+
+			// Lead the next batch: take every record queued so far
+			_isSyncing = true;
+			batch = _queue.toByteArray();
+			_queue.reset();
+			noBatched = _noAppended;
+		}
+
+		IOException failure = null;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(batch);
+			while (buffer.hasRemaining()) {
+				_channel.write(buffer);
+			}
+			_channel.force(false);
+		} catch (IOException e) {
+			failure = e;
+		}
+
+		synchronized (_lock) {
+			_isSyncing = false;
+			if (failure == null) {
+				_noSynced = noBatched;
+			} else {
+				_failure = failure;
+			}
+			_lock.notifyAll();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Empty the log, once every record appended has been made durable
+	 * elsewhere <br/>
+	 * The threads waiting in sync() for these records return <br/>
+	 *
+	 * @throws IOException
+	 *             when the log cannot be written
+	 */
+	public void reset() throws IOException {
+		synchronized (_lock) {
+			while (_isSyncing) {
+				try {
+					_lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the write-ahead log", e);
+				}
+			}
+
+			_queue.reset();
+			_channel.truncate(HEADER_SIZE);
+			_channel.position(HEADER_SIZE);
+			_channel.force(false);
+			_noSynced = _noAppended;
+			_lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Close the log <br/>
+	 * The records queued but not synced are not written <br/>
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized (_lock) {
+			if (_raf != null) {
+				_raf.close();
+				_raf = null;
+				_channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Write the header of an empty log
+	 *
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.put((byte) VERSION);
+		header.flip();
+
+		_channel.truncate(0);
+		while (header.hasRemaining()) {
+			_channel.write(header, header.position());
+		}
+		_channel.force(false);
+		_channel.position(HEADER_SIZE);
+	}
+
+	/**
+	 * Decode the body of a record
+	 *
+	 * @param body
+	 *            the body, checked against its CRC
+	 * @return the record, null if the lengths do not match the body
+	 */
+	private static Record decode(ByteBuffer body) {
+		body.rewind();
+		byte type = body.get();
+		if (type != ADD && type != DELETE) {
+			return null;
+		}
+		int docId = body.getInt();
+		int nameLength = body.getInt();
+		if (nameLength < 0 || nameLength > body.remaining() - 4) {
+			return null;
+		}
+		String docName = new String(body.array(), body.position(), nameLength, UTF8);
+		body.position(body.position() + nameLength);
+		int documentLength = body.getInt();
+		if (documentLength != body.remaining()) {
+			return null;
+		}
+		String document = new String(body.array(), body.position(), documentLength, UTF8);
+		return new Record(type, docId, docName, document);
+	}
+
+	/**
+	 * Fill a buffer from the log
+	 *
+	 * @param buffer
+	 *            to be filled
+	 * @param position
+	 *            in the file to read from
+	 * @throws IOException
+	 *             when the file ends before the buffer is full
+	 */
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int noBytes = _channel.read(buffer, position + buffer.position());
+			if (noBytes < 0) {
+				throw new IOException("Unexpected end of write-ahead log");
+			}
+		}
+	}
+}
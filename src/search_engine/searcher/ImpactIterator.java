@@ -0,0 +1,85 @@
+package search_engine.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class iterates over the impact-ordered postings of one term <br/>
+ * The postings come segment by segment, by decreasing impact, and the docIds
+ * of a segment by increasing docId. They are decoded straight from a view of
+ * the mapped impact-ordered postings file (see ImpactWriter). <br/>
+ * nextSegment() moves to the next segment, skipping what is left of the
+ * current one, and nextDocId() reads the docIds of the current segment. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class ImpactIterator {
+    private final ByteBuffer buffer;
+    private final int df;
+    private int noSegmentsLeft;
+    private int impact = 0;
+    private int noDocIdsLeft = 0;
+    private int docId = 0;
+
+    /**
+     * Create an iterator over a view of the impact-ordered postings of a term
+     *
+     * @param buffer view positioned on the record of the term
+     * @param df number of postings of the term
+     */
+    ImpactIterator(ByteBuffer buffer, int df) {
+        this.buffer = buffer;
+        this.df = df;
+        this.noSegmentsLeft = PostingsIterator.readVByte(buffer);
+    }
+
+    /**
+     * Move to the next impact segment
+     *
+     * @return false if there is no segment left
+     */
+    public boolean nextSegment() {
+        while (noDocIdsLeft > 0) {
+            nextDocId();
+        }
+        if (noSegmentsLeft == 0) {
+            impact = 0;
+            return false;
+        }
+        impact = PostingsIterator.readVByte(buffer);
+        noDocIdsLeft = PostingsIterator.readVByte(buffer);
+        noSegmentsLeft--;
+        docId = 0;
+        return true;
+    }
+
+    /**
+     * Move to the next docId of the current segment
+     *
+     * @return false if the segment has no docId left
+     */
+    public boolean nextDocId() {
+        if (noDocIdsLeft == 0) {
+            return false;
+        }
+        docId += PostingsIterator.readVByte(buffer);
+        noDocIdsLeft--;
+        return true;
+    }
+
+    /**
+     * Get the impact of the current segment
+     *
+     * @return the impact, 0 before the first segment and once every segment has been read
+     */
+    public int impact() {
+        return impact;
+    }
+
+    public int docId() {
+        return docId;
+    }
+
+    public int df() {
+        return df;
+    }
+}
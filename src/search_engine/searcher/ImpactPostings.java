@@ -0,0 +1,158 @@
+package search_engine.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import search_engine.common.ImpactWriter;
+
+/**
+ * This class gives random access to the impact-ordered postings of any term <br/>
+ * The impact-ordered postings file and its term table are memory-mapped, as the
+ * postings of MappedPostings. The file is only written for the postings file of
+ * the Indexer (see IndexBuilder), and is not used once that postings file has
+ * changed since, e.g: documents have been added without writing the impacts again. <br/>
+ * score() gives the score an impact stands for, from the range of scores the
+ * impacts were quantized from, and lowerScore() and upperScore() bound the scores
+ * an impact may have been quantized from. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class ImpactPostings {
+    private static final String IMPACT_FILE = "impacts.bin";
+    private static final String IMPACT_TABLE_FILE = "impacts.idx";
+    private static final String POSTING_FILE = "postings.bin";
+    // slack on the bounds of an impact, so they hold for the scores computed with the float idfs
+    private static final double BOUND_SLACK = 1e-6;
+
+    private final MappedByteBuffer impacts;
+    private final MappedByteBuffer termTable;
+    private final int noTerms;
+    private final int noDocuments;
+    private final long sourceLength;
+    private final double[] scores = new double[ImpactWriter.MAX_IMPACT + 1];
+    private final double[] lowerScores = new double[ImpactWriter.MAX_IMPACT + 1];
+    private final double[] upperScores = new double[ImpactWriter.MAX_IMPACT + 1];
+
+    /**
+     * Map an impact-ordered postings file and its term table
+     *
+     * @param impactFile the impact-ordered postings file
+     * @param termTableFile its term table
+     * @throws IOException when the files cannot be opened, or are not impact-ordered postings
+     */
+    public ImpactPostings(File impactFile, File termTableFile) throws IOException {
+        impacts = map(impactFile);
+        termTable = map(termTableFile);
+
+        if (impacts.limit() < ImpactWriter.HEADER_SIZE || impacts.getInt(0) != ImpactWriter.MAGIC
+                || impacts.get(4) != ImpactWriter.VERSION) {
+            throw new IOException("Not an impact-ordered postings file (version " + ImpactWriter.VERSION + "): "
+                    + impactFile);
+        }
+        if (termTable.limit() < ImpactWriter.TABLE_HEADER_SIZE || termTable.getInt(0) != ImpactWriter.TABLE_MAGIC
+                || termTable.get(4) != ImpactWriter.VERSION) {
+            throw new IOException("Not an impact term table (version " + ImpactWriter.VERSION + "): "
+                    + termTableFile);
+        }
+        noTerms = (termTable.limit() - ImpactWriter.TABLE_HEADER_SIZE) / ImpactWriter.TABLE_ENTRY_SIZE;
+        noDocuments = impacts.getInt(5);
+        sourceLength = impacts.getLong(9);
+
+        float minScore = impacts.getFloat(17);
+        float maxScore = impacts.getFloat(21);
+        for (int impact = 1; impact <= ImpactWriter.MAX_IMPACT; impact++) {
+            scores[impact] = ImpactWriter.dequantize(impact, minScore, maxScore);
+            lowerScores[impact] = ImpactWriter.lowerBound(impact, minScore, maxScore) * (1 - BOUND_SLACK);
+            upperScores[impact] = ImpactWriter.upperBound(impact, minScore, maxScore) * (1 + BOUND_SLACK);
+        }
+    }
+
+    /**
+     * Map the impact-ordered postings of the index in the working directory, if
+     * they were written from its current postings file
+     *
+     * @param noDocuments number of documents of the index
+     * @return the impact-ordered postings, null if the index has none or they are out of date
+     * @throws IOException when the files cannot be opened
+     */
+    public static ImpactPostings open(int noDocuments) throws IOException {
+        File impactFile = new File(IMPACT_FILE);
+        File termTableFile = new File(IMPACT_TABLE_FILE);
+        if (!impactFile.exists() || !termTableFile.exists()) {
+            return null;
+        }
+        ImpactPostings postings = new ImpactPostings(impactFile, termTableFile);
+        if (postings.noDocuments != noDocuments || postings.sourceLength != new File(POSTING_FILE).length()) {
+            return null;
+        }
+        return postings;
+    }
+
+    /**
+     * Get the impact-ordered postings of a term
+     *
+     * @param vocabularyId of the term
+     * @return an iterator over the postings, null if the term has no postings
+     */
+    public ImpactIterator postings(int vocabularyId) {
+        if (vocabularyId < 0 || vocabularyId >= noTerms) {
+            return null;
+        }
+        int entry = ImpactWriter.TABLE_HEADER_SIZE + vocabularyId * ImpactWriter.TABLE_ENTRY_SIZE;
+        long offset = termTable.getLong(entry);
+        int length = termTable.getInt(entry + 8);
+        int df = termTable.getInt(entry + 12);
+        if (offset < 0) {
+            return null;
+        }
+
+        ByteBuffer view = impacts.duplicate();
+        view.limit((int) offset + length);
+        view.position((int) offset);
+        return new ImpactIterator(view, df);
+    }
+
+    /**
+     * Get the score an impact stands for
+     *
+     * @param impact from 1 to MAX_IMPACT
+     * @return the score of a posting with this impact
+     */
+    public double score(int impact) {
+        return scores[impact];
+    }
+
+    /**
+     * Get the lowest score of a posting with an impact
+     *
+     * @param impact from 1 to MAX_IMPACT
+     * @return a lower bound of the score the impact was quantized from
+     */
+    public double lowerScore(int impact) {
+        return lowerScores[impact];
+    }
+
+    /**
+     * Get the highest score of a posting with an impact
+     *
+     * @param impact from 1 to MAX_IMPACT
+     * @return an upper bound of the score the impact was quantized from
+     */
+    public double upperScore(int impact) {
+        return upperScores[impact];
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+}
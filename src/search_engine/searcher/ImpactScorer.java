@@ -0,0 +1,289 @@
+package search_engine.searcher;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import search_engine.common.RoaringBitmap;
+
+/**
+ * This class finds the documents that may be among the K best of a query from the impact-ordered
+ * postings, score at a time <br/>
+ * The impact segments of every query term are read by decreasing contribution to the score: the
+ * highest score of the impact of the segment times the weight of the term in the query. An impact
+ * only bounds the exact score of a posting, so each docId of a segment adds the lowest and the
+ * highest score of the impact to the bounds of its document. <br/>
+ * A document must hold every term of the query, as in TopKScorer. Once a document has been seen in
+ * the segments of every term its bounds are final, and the K best lower bounds give a threshold the
+ * K best documents score at least. The search stops as soon as no other document can reach the
+ * threshold: neither an unseen document, which may gain the contributions of the current segments
+ * of every term, nor a document seen for some terms only, which may gain those of the other terms.
+ * <br/>
+ * The candidates are the documents seen for every term whose highest score reaches the threshold.
+ * They hold the K best documents, which are then found by scoring the candidates exactly with
+ * TopKScorer, so the impacts give the same documents, in the same order, as the postings. <br/>
+ * The bounds are accumulated in arrays kept by each thread, of the size of the largest collection
+ * it has scored, and only the documents seen by a query are reset after it, so a query costs the
+ * postings it reads and not the size of the collection. The documents seen for some terms only
+ * are kept in a list, and dropped from it once they cannot reach the threshold: their highest
+ * score never grows, and the threshold never falls, so they never can again. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class ImpactScorer {
+    /** Largest number of query terms, one bit per term records the terms seen for a document */
+    public static final int MAX_TERMS = 32;
+
+    /** The accumulators of each thread, all zero between two queries */
+    private static final ThreadLocal<Accumulators> ACCUMULATORS = new ThreadLocal<Accumulators>() {
+        @Override
+        protected Accumulators initialValue() {
+            return new Accumulators();
+        }
+    };
+
+    private final ImpactIterator[] iterators;
+    private final double[] queryWeights;
+    private final ImpactPostings impacts;
+    private final int noDocuments;
+
+    private double[] lowerScores;
+    private double[] upperScores;
+    private int[] seenTerms;
+    private int[] touched;
+    private int noTouched;
+    // the documents seen for some terms only, which may still reach the threshold
+    private int[] partial;
+    private int noPartial;
+    // highest contribution of the current segment of each term, 0 once the term has no segment left
+    private final double[] contributions;
+    private final boolean[] hasSegments;
+    private int allTerms;
+
+    // the K best lower bounds of the documents seen for every term, lowest first
+    private PriorityQueue<Double> bestLowerScores;
+
+    /**
+     * Create a scorer over the impact-ordered postings of the query terms
+     *
+     * @param iterators the postings of each term, at most MAX_TERMS. A null iterator matches no document
+     * @param queryWeights the weight of each term in the query, in the same order
+     * @param impacts the impact-ordered postings the iterators read, which bound the score of an impact
+     * @param noDocuments number of documents in the collection, the larger docIds are not scored
+     */
+    ImpactScorer(ImpactIterator[] iterators, double[] queryWeights, ImpactPostings impacts, int noDocuments) {
+        assert iterators.length <= MAX_TERMS;
+        this.iterators = iterators;
+        this.queryWeights = queryWeights;
+        this.impacts = impacts;
+        this.noDocuments = noDocuments;
+        this.contributions = new double[iterators.length];
+        this.hasSegments = new boolean[iterators.length];
+    }
+
+    /**
+     * Find the documents that may be among the best documents
+     *
+     * @param k number of documents wanted
+     * @return a set of documents holding every term, which holds the k best documents
+     */
+    public RoaringBitmap candidates(int k) {
+        boolean isEmpty = iterators.length == 0 || k <= 0;
+        for (ImpactIterator iterator : iterators) {
+            isEmpty |= iterator == null;
+        }
+        if (isEmpty) {
+            return new RoaringBitmap();
+        }
+        Accumulators accumulators = ACCUMULATORS.get();
+        accumulators.ensureCapacity(noDocuments);
+        lowerScores = accumulators.lowerScores;
+        upperScores = accumulators.upperScores;
+        seenTerms = accumulators.seenTerms;
+        touched = new int[16];
+        noTouched = 0;
+        partial = new int[16];
+        noPartial = 0;
+        try {
+            return findCandidates(k);
+        } finally {
+            // only the documents seen are reset for the next query
+            for (int i = 0; i < noTouched; i++) {
+                int docId = touched[i];
+                lowerScores[docId] = 0;
+                upperScores[docId] = 0;
+                seenTerms[docId] = 0;
+            }
+        }
+    }
+
+    /**
+     * Read the impact segments until the K best documents are among the documents seen for every
+     * term
+     */
+    private RoaringBitmap findCandidates(int k) {
+        allTerms = iterators.length == MAX_TERMS ? -1 : (1 << iterators.length) - 1;
+        bestLowerScores = new PriorityQueue<Double>(k);
+
+        for (int i = 0; i < iterators.length; i++) {
+            nextSegment(i);
+        }
+
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < iterators.length; i++) {
+                if (hasSegments[i] && (best < 0 || contributions[i] > contributions[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0 || isTopKnown(k)) {
+                break;
+            }
+
+            ImpactIterator iterator = iterators[best];
+            double lowerScore = impacts.lowerScore(iterator.impact()) * queryWeights[best];
+            double upperScore = contributions[best];
+            int termBit = 1 << best;
+            while (iterator.nextDocId()) {
+                int docId = iterator.docId();
+                if (docId >= noDocuments) {
+                    continue;
+                }
+                if (seenTerms[docId] == 0) {
+                    touch(docId);
+                    if (termBit != allTerms) {
+                        partial = append(partial, noPartial++, docId);
+                    }
+                }
+                seenTerms[docId] |= termBit;
+                lowerScores[docId] += lowerScore;
+                upperScores[docId] += upperScore;
+                if (seenTerms[docId] == allTerms) {
+                    offer(k, lowerScores[docId]);
+                }
+            }
+            nextSegment(best);
+        }
+
+        // Every document below the threshold is below the K best documents
+        double threshold = bestLowerScores.size() == k ? bestLowerScores.peek() : Double.NEGATIVE_INFINITY;
+        int[] docIds = new int[noTouched];
+        int noCandidates = 0;
+        for (int i = 0; i < noTouched; i++) {
+            int docId = touched[i];
+            if (seenTerms[docId] == allTerms && upperScores[docId] >= threshold) {
+                docIds[noCandidates++] = docId;
+            }
+        }
+        Arrays.sort(docIds, 0, noCandidates);
+        return RoaringBitmap.of(docIds, noCandidates);
+    }
+
+    /**
+     * Check that no document but the ones seen for every term can reach the K best lower bounds
+     */
+    private boolean isTopKnown(int k) {
+        if (bestLowerScores.size() < k) {
+            return false;
+        }
+        double threshold = bestLowerScores.peek();
+
+        // an unseen document may hold every term while a term has segments left
+        double remaining = 0;
+        boolean isExhausted = false;
+        for (int i = 0; i < iterators.length; i++) {
+            remaining += contributions[i];
+            isExhausted |= !hasSegments[i];
+        }
+        if (!isExhausted && remaining >= threshold) {
+            return false;
+        }
+
+        // the documents which cannot reach the threshold any more are dropped for good
+        boolean isKnown = true;
+        int noKept = 0;
+        for (int i = 0; i < noPartial; i++) {
+            int docId = partial[i];
+            if (seenTerms[docId] == allTerms || upperScores[docId] + remaining < threshold
+                    || !canReach(docId, threshold)) {
+                continue;
+            }
+            partial[noKept++] = docId;
+            isKnown = false;
+        }
+        noPartial = noKept;
+        return isKnown;
+    }
+
+    /**
+     * Check whether a document seen for some terms may still reach a score: it must be in the
+     * segments left of every term it has not been seen for
+     */
+    private boolean canReach(int docId, double threshold) {
+        double upperScore = upperScores[docId];
+        int seen = seenTerms[docId];
+        for (int i = 0; i < iterators.length; i++) {
+            if ((seen & (1 << i)) == 0) {
+                if (!hasSegments[i]) {
+                    return false;
+                }
+                upperScore += contributions[i];
+            }
+        }
+        return upperScore >= threshold;
+    }
+
+    /**
+     * Move a term to its next segment and compute the highest contribution of the segment
+     */
+    private void nextSegment(int term) {
+        ImpactIterator iterator = iterators[term];
+        hasSegments[term] = iterator.nextSegment();
+        contributions[term] = hasSegments[term] ? impacts.upperScore(iterator.impact()) * queryWeights[term] : 0;
+    }
+
+    private void touch(int docId) {
+        touched = append(touched, noTouched++, docId);
+    }
+
+    /**
+     * Set an entry of an array, grown if it is too small
+     *
+     * @return the array, or the grown array
+     */
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /**
+     * Keep the lower bound of a document seen for every term if it is one of the K best
+     */
+    private void offer(int k, double lowerScore) {
+        if (bestLowerScores.size() < k) {
+            bestLowerScores.add(lowerScore);
+        } else if (lowerScore > bestLowerScores.peek()) {
+            bestLowerScores.poll();
+            bestLowerScores.add(lowerScore);
+        }
+    }
+
+    /**
+     * The bounds and the terms seen of every document, for the queries of one thread
+     */
+    private static class Accumulators {
+        private double[] lowerScores = new double[0];
+        private double[] upperScores = new double[0];
+        private int[] seenTerms = new int[0];
+
+        private void ensureCapacity(int noDocuments) {
+            if (seenTerms.length < noDocuments) {
+                lowerScores = new double[noDocuments];
+                upperScores = new double[noDocuments];
+                seenTerms = new int[noDocuments];
+            }
+        }
+    }
+}
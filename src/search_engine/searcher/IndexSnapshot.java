@@ -0,0 +1,264 @@
+package search_engine.searcher;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import search_engine.common.DocumentTable;
+import search_engine.common.IndexCommit;
+import search_engine.common.IndexDelta;
+import search_engine.common.Segments;
+import search_engine.common.Shards;
+import search_engine.common.TermDictionary;
+import search_engine.common.TermDictionaryWriter;
+import search_engine.common.TermIterator;
+import search_engine.common.Tombstones;
+
+/**
+ * This class pins one commit of the index for the time of a query <br/>
+ * The dictionary, the document table, the deleted documents and the postings are all opened
+ * from the files named by a single read of the manifest (see IndexCommit), so they always belong
+ * to the same version of the index. The files of a commit are never modified, and stay readable
+ * once mapped even if the indexer deletes them, so no lock is taken on either side. <br/>
+ * The indexer may delete the files of a commit between the manifest being read and the files
+ * being opened: the manifest is then read again. <br/>
+ * The dictionary, document table and deleted documents are read from the checkpoint of the commit,
+ * and the changes of the generations after it (see IndexDelta) are applied in memory: a term
+ * changed since the checkpoint is looked up in the changes first, and its idf is computed from its
+ * df and the number of documents, as the indexer would have stored it. <br/>
+ * The impact-ordered postings are part of the snapshot when the commit is only made of the postings
+ * file they were written from. <br/>
+ * A commit that lists shards (see Shards) is searched on its shards only: each shard is opened as a
+ * snapshot of its own, without impacts, and the files the index was split from are not read. <br/>
+ * The last snapshot opened is kept, and given to the next queries as long as the manifest names the
+ * same files, so the changes since the checkpoint, or the shards, are not read again by every query.
+ * The files of generation 0 are replaced in place by the Indexer, so they are opened again by every
+ * query, unless the commit has shards: the Indexer drops them from the manifest before it writes. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class IndexSnapshot {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final String DICTIONARY_FILE = "dictionary.bin";
+    private static final String TEXT_DICTIONARY_FILE = "dictionary.txt";
+    private static final String DOCUMENT_FILE = "documents.bin";
+    private static final String TEXT_DOCUMENT_FILE = "documents.txt";
+    private static final String DELETED_FILE = "deleted.bin";
+
+    private static IndexSnapshot last;
+
+    private final IndexCommit commit;
+    private final long manifestModified;
+    private final TermDictionary dictionary;
+    private final IndexDelta delta;
+    private final DocumentTable documents;
+    private final SegmentedPostings postings;
+    private final ImpactPostings impacts;
+    private final ShardedIndex shards;
+
+    private IndexSnapshot(IndexCommit commit, long manifestModified) throws IOException {
+        this.commit = commit;
+        this.manifestModified = manifestModified;
+        if (commit.getShards().size() > 0) {
+            delta = new IndexDelta();
+            documents = null;
+            dictionary = null;
+            postings = null;
+            impacts = null;
+            shards = new ShardedIndex(commit.getShards());
+            return;
+        }
+        shards = null;
+        delta = IndexDelta.read(commit);
+        if (commit.getCheckpoint() == 0) {
+            // An index written by the Indexer may only have the text files, which the searcher does
+            // not convert: it never writes the index
+            checkUpgraded(DOCUMENT_FILE, TEXT_DOCUMENT_FILE);
+            checkUpgraded(DICTIONARY_FILE, TEXT_DICTIONARY_FILE);
+        }
+        documents = new DocumentTable(commit.file(DOCUMENT_FILE)).append(delta.getDocNames());
+        dictionary = new TermDictionary(commit.file(DICTIONARY_FILE));
+
+        // Every checkpoint has a tombstones file, so a missing one has been deleted
+        File deletedFile = commit.file(DELETED_FILE);
+        if (commit.getCheckpoint() > 0 && !deletedFile.exists()) {
+            throw new FileNotFoundException(deletedFile.getPath());
+        }
+        Tombstones deleted = Tombstones.read(deletedFile);
+        for (int docId : delta.getDeletedDocIds()) {
+            deleted.delete(docId);
+        }
+        postings = new SegmentedPostings(commit, deleted);
+
+        // The impact-ordered postings are only written for the postings file of the Indexer
+        boolean isBaseOnly = commit.hasBase() && commit.getSegments().isEmpty() && deleted.size() == 0;
+        impacts = isBaseOnly ? ImpactPostings.open(documents.size()) : null;
+    }
+
+    private IndexSnapshot(String shard) throws IOException {
+        commit = null;
+        manifestModified = 0;
+        delta = new IndexDelta();
+        documents = new DocumentTable(Shards.documentFile(shard));
+        dictionary = new TermDictionary(Shards.dictionaryFile(shard));
+        postings = new SegmentedPostings(new MappedPostings(Shards.postingsFile(shard), Shards.termTableFile(shard),
+                Shards.positionsFile(shard), Shards.normsFile(shard), null));
+        impacts = null;
+        shards = null;
+    }
+
+    /**
+     * Make sure the index has a binary file, and not only the text file it is built from
+     *
+     * @throws IOException when the index is to be upgraded (see IndexUpgrader)
+     */
+    private static void checkUpgraded(String binaryFile, String textFile) throws IOException {
+        if (!new File(binaryFile).exists() && new File(textFile).exists()) {
+            throw new IOException("The index is to be upgraded first (see IndexUpgrader): " + binaryFile
+                    + " is missing");
+        }
+    }
+
+    /**
+     * Open the last commit of the index in the working directory
+     *
+     * @return the snapshot of the index
+     * @throws IOException when the files cannot be opened
+     */
+    public static IndexSnapshot open() throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            // the manifest is checked before it is read, so a snapshot is never kept with the time of
+            // a later manifest
+            long manifestModified = new File(Segments.MANIFEST_FILE).lastModified();
+            IndexCommit commit = IndexCommit.read();
+            synchronized (IndexSnapshot.class) {
+                boolean isImmutable = commit.getGeneration() > 0 || commit.getShards().size() > 0;
+                if (last != null && isImmutable && last.manifestModified == manifestModified
+                        && last.commit.equals(commit)) {
+                    return last;
+                }
+            }
+            try {
+                IndexSnapshot snapshot = new IndexSnapshot(commit, manifestModified);
+                synchronized (IndexSnapshot.class) {
+                    last = snapshot;
+                }
+                return snapshot;
+            } catch (FileNotFoundException e) {
+                // the commit has been replaced since the manifest was read
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Open a commit of the index in the working directory, apart from the last snapshot kept
+     *
+     * @param commit the commit, e.g: the last one without its shards
+     * @return the snapshot of the commit
+     * @throws IOException when the files cannot be opened
+     */
+    static IndexSnapshot open(IndexCommit commit) throws IOException {
+        return new IndexSnapshot(commit, 0);
+    }
+
+    /**
+     * Open a shard of the index in the working directory
+     *
+     * @param shard the name of the shard
+     * @return the snapshot of the shard, whose docIds are counted from the first docId of the shard
+     * @throws IOException when the files cannot be opened
+     */
+    public static IndexSnapshot openShard(String shard) throws IOException {
+        return new IndexSnapshot(shard);
+    }
+
+    /**
+     * Get the vocabularyId of a term
+     *
+     * @param term the stemmed word
+     * @return the vocabularyId, -1 if the term is not in the vocabulary of the commit
+     */
+    public int vocabularyId(String term) {
+        int vocabularyId = delta.getVocabularyId(term);
+        if (vocabularyId >= 0) {
+            return vocabularyId;
+        }
+        TermIterator found = dictionary.lookup(term);
+        return found == null ? -1 : found.vocabularyId();
+    }
+
+    /**
+     * Get the df of a term
+     *
+     * @param term the stemmed word
+     * @return the number of documents with the term, 0 if the term is not in the vocabulary
+     */
+    public int df(String term) {
+        int df = delta.getDf(term);
+        if (df >= 0) {
+            return df;
+        }
+        TermIterator found = dictionary.lookup(term);
+        return found == null ? 0 : found.df();
+    }
+
+    /**
+     * Get the idf of a term <br/>
+     * The idf stored in the dictionary is used if nothing changed since the checkpoint. Otherwise, or
+     * in a dictionary written before the idf was stored, it is computed from the df of the term and
+     * the number of documents, rounded to a float once the documents have changed, as a dictionary
+     * stores it
+     *
+     * @param term the stemmed word
+     * @return the idf of the term
+     */
+    public double idf(String term) {
+        if (delta.isEmpty()) {
+            TermIterator found = dictionary.lookup(term);
+            int df = found == null ? 0 : found.df();
+            double idf = found == null ? Double.NaN : found.idf();
+            return Double.isNaN(idf) ? TermDictionaryWriter.idf(documents.size(), df) : idf;
+        }
+        return (float) TermDictionaryWriter.idf(documents.size(), df(term));
+    }
+
+    /**
+     * Getter for the shards
+     *
+     * @return the shards of the commit, null if the index is not split. The other getters give
+     *         nothing for a split index
+     */
+    public ShardedIndex shards() {
+        return shards;
+    }
+
+    /**
+     * Getter for the document table
+     *
+     * @return the document table of the commit
+     */
+    public DocumentTable documents() {
+        return documents;
+    }
+
+    /**
+     * Getter for the postings
+     *
+     * @return the postings of the commit, without the deleted documents
+     */
+    public SegmentedPostings postings() {
+        return postings;
+    }
+
+    /**
+     * Getter for the impact-ordered postings
+     *
+     * @return the impact-ordered postings of the commit, null if the commit has none
+     */
+    public ImpactPostings impacts() {
+        return impacts;
+    }
+}
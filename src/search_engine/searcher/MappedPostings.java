@@ -0,0 +1,283 @@
+package search_engine.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import search_engine.common.Norms;
+import search_engine.common.NormsWriter;
+import search_engine.common.PostingsCodec;
+import search_engine.common.PostingsWriter;
+import search_engine.common.RoaringBitmap;
+
+/**
+ * This class gives random access to the postings of any term <br/>
+ * Both the postings file and its term table are memory-mapped. Looking up a
+ * term reads its fixed-size entry {@code <offset, length, df>} in the term
+ * table and returns an iterator over a view of the postings file at that
+ * offset, so the postings are neither scanned from the start of the file nor
+ * copied. <br/>
+ * The positions file, if the index has one, is mapped as well and the term
+ * table gives the offset of the positions of each term. <br/>
+ * The norms of the documents are mapped from the norms file. A postings file
+ * written without norms, e.g: converted from the legacy text format, has its
+ * norms computed from its postings when it is opened. <br/>
+ * The postings are decoded with the PostingsCodec recorded in the postings file. <br/>
+ * The term table of a version 5 postings file tells the terms whose docIds are held in a
+ * RoaringBitmap, which bitmap() reads without the rest of the postings. <br/>
+ * The sparse term table of a segment only has the terms of the segment, and is binary searched. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class MappedPostings {
+    private static final String POSTING_FILE = "postings.bin";
+    private static final String TERM_TABLE_FILE = "postings.idx";
+    private static final String TEXT_POSTING_FILE = "postings.txt";
+    private static final String POSITIONS_FILE = "positions.bin";
+    private static final String NORMS_FILE = "postings.nrm";
+
+    private final MappedByteBuffer postings;
+    private final MappedByteBuffer termTable;
+    private final MappedByteBuffer positions;
+    private final int noTerms;
+    private final int tableEntrySize;
+    private final boolean isSparseTable;
+    private final int version;
+    private final PostingsCodec codec;
+    private final Norms norms;
+
+    /**
+     * Map the postings file and term table of the index in the working
+     * directory <br/>
+     * An index with only the legacy text postings file is to be upgraded first (see IndexUpgrader)
+     *
+     * @throws IOException when the files cannot be opened
+     */
+    public MappedPostings() throws IOException {
+        this(new File(POSTING_FILE), new File(TERM_TABLE_FILE), new File(POSITIONS_FILE), new File(NORMS_FILE),
+                new File(TEXT_POSTING_FILE));
+    }
+
+    /**
+     * Check whether the working directory has a postings file, binary or legacy text
+     *
+     * @return true if the default constructor can map the postings
+     */
+    public static boolean exists() {
+        return new File(POSTING_FILE).exists() || new File(TEXT_POSTING_FILE).exists();
+    }
+
+    /**
+     * Map a postings file, its term table, its positions file and its norms file
+     *
+     * @param postingFile the binary postings file
+     * @param termTableFile its term table
+     * @param positionsFile its positions file, which may not exist
+     * @param normsFile its norms file, which may not exist
+     * @param textPostingFile the legacy text postings file, which is not converted: the index is to be
+     *        upgraded first if the binary file does not exist (see IndexUpgrader). null for a segment,
+     *        which is always written in the current format
+     * @throws IOException when the files cannot be opened
+     */
+    public MappedPostings(File postingFile, File termTableFile, File positionsFile, File normsFile,
+            File textPostingFile) throws IOException {
+        if (textPostingFile != null && !postingFile.exists() && textPostingFile.exists()) {
+            throw new IOException("The index is to be upgraded first (see IndexUpgrader): " + postingFile
+                    + " is missing");
+        }
+        postings = map(postingFile);
+        termTable = map(termTableFile);
+        positions = positionsFile.exists() ? map(positionsFile) : null;
+
+        int tableVersion = termTable.limit() >= PostingsWriter.TABLE_HEADER_SIZE ? termTable.get(4)
+                : PostingsWriter.TABLE_VERSION;
+        if (termTable.limit() >= PostingsWriter.TABLE_HEADER_SIZE
+                && (termTable.getInt(0) != PostingsWriter.TABLE_MAGIC || tableVersion < 2
+                        || tableVersion > PostingsWriter.SPARSE_TABLE_VERSION)) {
+            throw new IOException("Not a term table (version " + PostingsWriter.TABLE_VERSION + "): "
+                    + termTableFile);
+        }
+        // the entries of a version 2 term table have no bitmap flag
+        tableEntrySize = tableVersion == 2 ? PostingsWriter.TABLE_ENTRY_SIZE - 1
+                : tableVersion == PostingsWriter.SPARSE_TABLE_VERSION ? PostingsWriter.SPARSE_TABLE_ENTRY_SIZE
+                        : PostingsWriter.TABLE_ENTRY_SIZE;
+        isSparseTable = tableVersion == PostingsWriter.SPARSE_TABLE_VERSION;
+        noTerms = Math.max(0, (termTable.limit() - PostingsWriter.TABLE_HEADER_SIZE) / tableEntrySize);
+        // version 1 postings files have no skip data, version 2 skip data has no block maxTf
+        version = postings.limit() >= PostingsWriter.HEADER_SIZE ? postings.get(4) : PostingsWriter.VERSION;
+        // since version 4, postings files record the codec of their postings
+        codec = version >= 4 ? PostingsCodec.forId(postings.get(5)) : PostingsCodec.VBYTE;
+        if (codec == null) {
+            throw new IOException("Unknown postings codec: " + postingFile);
+        }
+        norms = normsFile.exists() ? new Norms(normsFile) : computeNorms();
+    }
+
+    /**
+     * Get the postings of a term
+     *
+     * @param vocabularyId of the term
+     * @return an iterator over the postings, null if the term has no postings
+     */
+    public PostingsIterator postings(int vocabularyId) {
+        int entry = entry(vocabularyId);
+        if (entry < 0) {
+            return null;
+        }
+        long offset = termTable.getLong(entry);
+        int length = termTable.getInt(entry + 8);
+        int df = termTable.getInt(entry + 12);
+        long positionsOffset = termTable.getLong(entry + 16);
+        if (offset < 0) {
+            return null;
+        }
+        boolean isBitmap = isBitmap(entry);
+
+        ByteBuffer view = postings.duplicate();
+        view.limit((int) offset + length);
+        view.position((int) offset);
+
+        ByteBuffer positionsView = null;
+        if (positions != null && positionsOffset >= 0) {
+            positionsView = positions.duplicate();
+            positionsView.position((int) positionsOffset);
+        }
+        ByteBuffer skipsView = null;
+        if (version >= 2 && df > PostingsWriter.SKIP_INTERVAL) {
+            skipsView = postings.duplicate();
+            skipsView.position((int) offset + length);
+        }
+        return new PostingsIterator(view, df, positionsView, skipsView, version >= 3, norms, codec, isBitmap);
+    }
+
+    /**
+     * Get the docIds of a term, if they are held in a bitmap
+     *
+     * @param vocabularyId of the term
+     * @return the docIds, null if the term has no postings or they are not held in a bitmap
+     */
+    public RoaringBitmap bitmap(int vocabularyId) {
+        int entry = entry(vocabularyId);
+        if (entry < 0) {
+            return null;
+        }
+        long offset = termTable.getLong(entry);
+        if (offset < 0 || !isBitmap(entry)) {
+            return null;
+        }
+        ByteBuffer view = postings.duplicate();
+        view.position((int) offset);
+        PostingsIterator.readVByte(view);
+        return RoaringBitmap.read(view);
+    }
+
+    /**
+     * Check whether a term has postings
+     *
+     * @param vocabularyId of the term
+     * @return true if postings() finds postings for the term
+     */
+    public boolean hasPostings(int vocabularyId) {
+        int entry = entry(vocabularyId);
+        return entry >= 0 && termTable.getLong(entry) >= 0;
+    }
+
+    private boolean isBitmap(int entry) {
+        return tableEntrySize != PostingsWriter.TABLE_ENTRY_SIZE - 1 && termTable.get(entry + 24) != 0;
+    }
+
+    /**
+     * Find the entry of a term in the term table
+     *
+     * @param vocabularyId of the term
+     * @return the offset of the entry, after the vocabularyId of a sparse entry. -1 if the table has no
+     *         entry for the term
+     */
+    private int entry(int vocabularyId) {
+        if (vocabularyId < 0) {
+            return -1;
+        }
+        if (!isSparseTable) {
+            return vocabularyId < noTerms ? PostingsWriter.TABLE_HEADER_SIZE + vocabularyId * tableEntrySize : -1;
+        }
+        int low = 0;
+        int high = noTerms - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = PostingsWriter.TABLE_HEADER_SIZE + mid * tableEntrySize;
+            int midVocabularyId = termTable.getInt(entry);
+            if (midVocabularyId < vocabularyId) {
+                low = mid + 1;
+            } else if (midVocabularyId > vocabularyId) {
+                high = mid - 1;
+            } else {
+                return entry + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the vocabularyId of an entry of the term table
+     *
+     * @param index of the entry
+     * @return the vocabularyId
+     */
+    private int vocabularyIdAt(int index) {
+        return isSparseTable ? termTable.getInt(PostingsWriter.TABLE_HEADER_SIZE + index * tableEntrySize) : index;
+    }
+
+    /**
+     * Check whether the index has positions
+     *
+     * @return true if phrases and proximity can be evaluated from the index
+     */
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    /**
+     * Number of entries in the term table
+     *
+     * @return number of terms
+     */
+    public int noTerms() {
+        return noTerms;
+    }
+
+    /**
+     * Compute the norms of the documents from every posting, see NormsWriter
+     */
+    private Norms computeNorms() {
+        double[] squares = new double[0];
+        for (int index = 0; index < noTerms; index++) {
+            PostingsIterator iterator = postings(vocabularyIdAt(index));
+            while (iterator != null && iterator.next()) {
+                if (iterator.docId() >= squares.length) {
+                    squares = Arrays.copyOf(squares, Math.max(iterator.docId() + 1, squares.length * 2));
+                }
+                double weight = NormsWriter.weight(iterator.tf());
+                squares[iterator.docId()] += weight * weight;
+            }
+        }
+        float[] norms = new float[squares.length];
+        for (int docId = 0; docId < squares.length; docId++) {
+            norms[docId] = (float) Math.sqrt(squares[docId]);
+        }
+        return new Norms(norms);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+}
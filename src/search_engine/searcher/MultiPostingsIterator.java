@@ -0,0 +1,152 @@
+package search_engine.searcher;
+
+import search_engine.common.Tombstones;
+
+/**
+ * This class iterates over the postings of one term spread over several segments <br/>
+ * The postings of each segment are sorted by docId, and are merged on the fly: next() moves to
+ * the smallest docId among the segments, so the caller sees a single sorted list of postings.
+ * <br/>
+ * The postings of deleted documents are skipped. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class MultiPostingsIterator extends PostingsIterator {
+    private final PostingsIterator[] iterators;
+    private final Tombstones deleted;
+    private final boolean[] isExhausted;
+    private boolean isStarted = false;
+    private int current = -1;
+
+    /**
+     * Create an iterator over the postings of a term in several segments
+     *
+     * @param iterators the postings of the term in each segment, none of them started
+     * @param deleted the deleted documents
+     */
+    MultiPostingsIterator(PostingsIterator[] iterators, Tombstones deleted) {
+        super(sumDf(iterators));
+        this.iterators = iterators;
+        this.deleted = deleted;
+        this.isExhausted = new boolean[iterators.length];
+    }
+
+    @Override
+    public boolean next() {
+        while (nextPosting()) {
+            if (!deleted.isDeleted(docId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean advance(int target) {
+        if (isStarted && (current < 0 || iterators[current].docId() >= target)) {
+            return current >= 0;
+        }
+        for (int i = 0; i < iterators.length; i++) {
+            if (!isStarted || !isExhausted[i]) {
+                isExhausted[i] = !iterators[i].advance(target);
+            }
+        }
+        isStarted = true;
+
+        current = -1;
+        for (int i = 0; i < iterators.length; i++) {
+            if (!isExhausted[i] && (current < 0 || iterators[i].docId() < iterators[current].docId())) {
+                current = i;
+            }
+        }
+        if (current < 0) {
+            return false;
+        }
+        return !deleted.isDeleted(docId()) || next();
+    }
+
+    private boolean nextPosting() {
+        if (!isStarted) {
+            for (int i = 0; i < iterators.length; i++) {
+                isExhausted[i] = !iterators[i].next();
+            }
+            isStarted = true;
+        } else if (current >= 0) {
+            isExhausted[current] = !iterators[current].next();
+        }
+
+        current = -1;
+        for (int i = 0; i < iterators.length; i++) {
+            if (!isExhausted[i] && (current < 0 || iterators[i].docId() < iterators[current].docId())) {
+                current = i;
+            }
+        }
+        return current >= 0;
+    }
+
+    @Override
+    public int nextPosition() {
+        return current >= 0 ? iterators[current].nextPosition() : -1;
+    }
+
+    @Override
+    public boolean hasPositions() {
+        for (PostingsIterator iterator : iterators) {
+            if (!iterator.hasPositions()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int docId() {
+        return current >= 0 ? iterators[current].docId() : 0;
+    }
+
+    @Override
+    public int tf() {
+        return current >= 0 ? iterators[current].tf() : 0;
+    }
+
+    @Override
+    public float norm() {
+        return current >= 0 ? iterators[current].norm() : 0;
+    }
+
+    /**
+     * Get the last docId up to which every segment stays in the block of its current posting
+     */
+    @Override
+    public int blockEnd() {
+        int end = Integer.MAX_VALUE;
+        for (int i = 0; i < iterators.length; i++) {
+            if (!isExhausted[i]) {
+                end = Math.min(end, iterators[i].blockEnd());
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Get the largest tf of the blocks of the current postings of the segments
+     */
+    @Override
+    public int blockMaxTf() {
+        int maxTf = 0;
+        for (int i = 0; i < iterators.length; i++) {
+            if (!isExhausted[i]) {
+                maxTf = Math.max(maxTf, iterators[i].blockMaxTf());
+            }
+        }
+        return maxTf;
+    }
+
+    private static int sumDf(PostingsIterator[] iterators) {
+        int df = 0;
+        for (PostingsIterator iterator : iterators) {
+            df += iterator.df();
+        }
+        return df;
+    }
+}
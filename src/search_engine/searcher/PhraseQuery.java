@@ -0,0 +1,179 @@
+package search_engine.searcher;
+
+import java.util.List;
+
+
+/**
+ * This class is a positional constraint of a query: either an exact phrase
+ * ({@code "new york"}) or two terms within a number of positions of each
+ * other ({@code apple NEAR/5 orange}) <br/>
+ * The documents matching the constraint are found from the index only: the
+ * postings of the terms are intersected by docId, each list leapfrogging to
+ * the largest docId with advance(), and the positions of the documents found
+ * in every postings are compared. <br/>
+ * On an index without positions, only the docId intersection is done, so the
+ * constraint matches the documents containing every term. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class PhraseQuery {
+    private final String[] terms;
+    private final int[] offsets;
+    private final int distance;
+
+    private PhraseQuery(String[] terms, int[] offsets, int distance) {
+        this.terms = terms;
+        this.offsets = offsets;
+        this.distance = distance;
+    }
+
+    /**
+     * Create an exact phrase
+     *
+     * @param terms the stemmed terms of the phrase
+     * @param positions the position of each term in the query, which keeps the gaps of the stop-words
+     * @return the phrase
+     */
+    public static PhraseQuery phrase(List<String> terms, List<Integer> positions) {
+        String[] phraseTerms = terms.toArray(new String[terms.size()]);
+        int[] offsets = new int[positions.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = positions.get(i) - positions.get(0);
+        }
+        return new PhraseQuery(phraseTerms, offsets, -1);
+    }
+
+    /**
+     * Create a proximity constraint: both terms at most distance positions apart, in any order
+     *
+     * @param term1 stemmed term
+     * @param term2 stemmed term
+     * @param distance maximum number of positions between the terms
+     * @return the constraint
+     */
+    public static PhraseQuery near(String term1, String term2, int distance) {
+        return new PhraseQuery(new String[] { term1, term2 }, null, distance);
+    }
+
+    public boolean isPhrase() {
+        return distance < 0;
+    }
+
+    /**
+     * Find the documents matching the constraint
+     *
+     * @param snapshot the commit of the index
+     * @return for each docId, whether the document matches
+     */
+    public boolean[] match(IndexSnapshot snapshot) {
+        int noDocuments = snapshot.documents().size();
+        boolean[] matches = new boolean[noDocuments];
+
+        PostingsIterator[] iterators = new PostingsIterator[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            int vocabularyId = snapshot.vocabularyId(terms[i]);
+            iterators[i] = vocabularyId < 0 ? null : snapshot.postings().postings(vocabularyId);
+            if (iterators[i] == null || !iterators[i].next()) {
+                return matches;
+            }
+        }
+
+        int[][] positions = new int[terms.length][];
+        while (true) {
+            // Move every iterator to the largest docId among them
+            int docId = 0;
+            for (PostingsIterator iterator : iterators) {
+                docId = Math.max(docId, iterator.docId());
+            }
+            boolean isAligned = true;
+            for (PostingsIterator iterator : iterators) {
+                if (!iterator.advance(docId)) {
+                    return matches;
+                }
+                isAligned &= iterator.docId() == docId;
+            }
+            if (!isAligned) {
+                continue;
+            }
+
+            if (docId < noDocuments) {
+                if (iterators[0].hasPositions()) {
+                    for (int i = 0; i < iterators.length; i++) {
+                        positions[i] = readPositions(iterators[i], positions[i]);
+                    }
+                    matches[docId] = isPhrase() ? matchPhrase(positions) : matchNear(positions[0], positions[1]);
+                } else {
+                    matches[docId] = true;
+                }
+            }
+
+            for (PostingsIterator iterator : iterators) {
+                if (!iterator.next()) {
+                    return matches;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether every term appears at its offset from some position of the first term
+     */
+    private boolean matchPhrase(int[][] positions) {
+        int[] cursors = new int[positions.length];
+        int[] first = positions[0];
+        for (int p = 1; p <= first[0]; p++) {
+            boolean isFound = true;
+            for (int i = 1; i < positions.length && isFound; i++) {
+                // positions are sorted, and so are the starts tried: the cursors only move forward
+                int target = first[p] + offsets[i];
+                int[] termPositions = positions[i];
+                while (cursors[i] < termPositions[0] && termPositions[cursors[i] + 1] < target) {
+                    cursors[i]++;
+                }
+                isFound = cursors[i] < termPositions[0] && termPositions[cursors[i] + 1] == target;
+            }
+            if (isFound) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether two sorted lists of positions have positions at most distance apart
+     */
+    private boolean matchNear(int[] positions1, int[] positions2) {
+        int i = 1;
+        int j = 1;
+        while (i <= positions1[0] && j <= positions2[0]) {
+            if (Math.abs(positions1[i] - positions2[j]) <= distance) {
+                return true;
+            }
+            if (positions1[i] < positions2[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the positions of the current posting of an iterator
+     *
+     * @param iterator positioned on a posting
+     * @param buffer array to reuse, may be null
+     * @return array holding the number of positions followed by the positions
+     */
+    private static int[] readPositions(PostingsIterator iterator, int[] buffer) {
+        int tf = iterator.tf();
+        if (buffer == null || buffer.length < tf + 1) {
+            buffer = new int[Math.max(tf + 1, 16)];
+        }
+        buffer[0] = tf;
+        for (int i = 1; i <= tf; i++) {
+            buffer[i] = iterator.nextPosition();
+        }
+        return buffer;
+    }
+}
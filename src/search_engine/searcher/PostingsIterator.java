@@ -0,0 +1,341 @@
+package search_engine.searcher;
+
+import java.nio.ByteBuffer;
+
+import search_engine.common.Norms;
+import search_engine.common.PostingsCodec;
+import search_engine.common.PostingsWriter;
+import search_engine.common.RoaringBitmap;
+
+/**
+ * This class iterates over the postings of one term <br/>
+ * The postings are decoded straight from a read-only view of the mapped
+ * postings file, one {@code <docId, tf>} at a time, without copying them and
+ * without creating objects per posting. <br/>
+ * If the index has positions, the tf positions of the current posting are
+ * decoded from a view of the mapped positions file with nextPosition(). <br/>
+ * advance() moves to the first posting at or after a docId. With the skip data
+ * of the term, it jumps SKIP_INTERVAL postings at a time without decoding them,
+ * so intersecting a rare term with a common one reads few postings of the
+ * common term. <br/>
+ * norm() gives the norm of the document of the current posting, from the norms of the postings file. <br/>
+ * The skip data also bounds the tf of each block of SKIP_INTERVAL postings:
+ * blockEnd() and blockMaxTf() describe the block of the current posting, so a
+ * top-k search can jump over the blocks that cannot hold a better document.
+ * <br/>
+ * If the postings are encoded with another PostingsCodec than VByte, a block is
+ * decoded as a whole into two arrays of the iterator the first time one of its
+ * postings is read, and a block jumped over is not decoded at all. <br/>
+ * The docIds of a bitmap term are read from its RoaringBitmap, which bitmap() gives to intersect
+ * it with other terms a word at a time, and only its tfs are decoded from the blocks. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class PostingsIterator {
+    private final ByteBuffer buffer;
+    private final int df;
+    private int noPostingsLeft;
+    private int docId = 0;
+    private int tf = 0;
+
+    private final ByteBuffer positions;
+    private final Norms norms;
+    private int noPositionsLeft = 0;
+    private int position = 0;
+
+    private final int postingsStart;
+    private final int positionsStart;
+    // block i holds the postings [i * SKIP_INTERVAL, (i + 1) * SKIP_INTERVAL)
+    private final int noBlocks;
+    private int[] blockLastDocIds;
+    private int[] blockOffsets;
+    private int[] blockPositionsOffsets;
+    private int[] blockMaxTfs;
+    private int nextBlock = 1;
+
+    // the decoded postings of the current block, if the codec is not VByte
+    private final PostingsCodec codec;
+    private int[] blockGaps;
+    private int[] blockTfs;
+    private int blockIndex = 0;
+    private int blockSize = 0;
+    // the docIds of a bitmap term, null for any other
+    private final RoaringBitmap bitmap;
+
+    /**
+     * Create an iterator that does not read a view itself, e.g: MultiPostingsIterator
+     *
+     * @param df number of postings of the term
+     */
+    protected PostingsIterator(int df) {
+        this(null, df, null, null, false, null, null, false);
+    }
+
+    /**
+     * Create an iterator over a view of the postings of a term
+     *
+     * @param buffer view positioned on the first posting of the term
+     * @param df number of postings of the term
+     */
+    PostingsIterator(ByteBuffer buffer, int df) {
+        this(buffer, df, null, null, false, null, null, false);
+    }
+
+    /**
+     * Create an iterator over a view of the postings of a term and its positions
+     *
+     * @param buffer view positioned on the first posting of the term
+     * @param df number of postings of the term
+     * @param positions view positioned on the positions of the first posting, null without positions
+     * @param skips view positioned on the skip data of the term, null without skip data
+     * @param hasBlockMaxTfs true if the skip data holds the largest tf of each block (version 3)
+     * @param norms the norms of the documents of the postings file, null without norms
+     * @param codec the codec of the postings, null for VByte
+     * @param isBitmap true if the docIds of the term are held in a bitmap, at the position of the view
+     */
+    PostingsIterator(ByteBuffer buffer, int df, ByteBuffer positions, ByteBuffer skips, boolean hasBlockMaxTfs,
+            Norms norms, PostingsCodec codec, boolean isBitmap) {
+        this.buffer = buffer;
+        this.df = df;
+        this.noPostingsLeft = df;
+        this.positions = positions;
+        this.norms = norms;
+        this.postingsStart = buffer != null ? buffer.position() : 0;
+        this.positionsStart = positions != null ? positions.position() : 0;
+        this.noBlocks = skips != null ? (df - 1) / PostingsWriter.SKIP_INTERVAL + 1 : 1;
+        if (skips != null) {
+            readSkips(skips, hasBlockMaxTfs);
+        }
+        this.codec = codec != PostingsCodec.VBYTE ? codec : null;
+        if (isBitmap) {
+            readVByte(buffer);
+            bitmap = RoaringBitmap.read(buffer);
+        } else {
+            bitmap = null;
+        }
+        if (this.codec != null) {
+            blockGaps = new int[PostingsWriter.SKIP_INTERVAL];
+        }
+        if (this.codec != null || bitmap != null) {
+            blockTfs = new int[PostingsWriter.SKIP_INTERVAL];
+        }
+    }
+
+    /**
+     * Move to the next posting
+     *
+     * @return true if there is a next posting, false at the end of the list
+     */
+    public boolean next() {
+        if (noPostingsLeft == 0) {
+            return false;
+        }
+        // skip the positions of the previous posting that have not been read
+        while (noPositionsLeft > 0) {
+            nextPosition();
+        }
+
+        if (bitmap != null) {
+            if (blockIndex == blockSize) {
+                readTfBlock();
+            }
+            docId = bitmap.nextValue(noPostingsLeft == df ? 0 : docId + 1);
+            tf = blockTfs[blockIndex];
+            blockIndex++;
+        } else if (codec == null) {
+            docId += readVByte(buffer);
+            tf = readVByte(buffer);
+        } else {
+            if (blockIndex == blockSize) {
+                readBlock();
+            }
+            docId += blockGaps[blockIndex];
+            tf = blockTfs[blockIndex];
+            blockIndex++;
+        }
+        noPostingsLeft--;
+        position = 0;
+        noPositionsLeft = positions != null ? tf : 0;
+        return true;
+    }
+
+    /**
+     * Move to the first posting whose docId is at least target <br/>
+     * The current posting is kept if its docId is at least target already
+     *
+     * @param target docId
+     * @return true if there is such a posting, false at the end of the list
+     */
+    public boolean advance(int target) {
+        if (noPostingsLeft < df && docId >= target) {
+            return true;
+        }
+        skipTo(target);
+        while (next()) {
+            if (docId >= target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the next position of the current posting, in increasing order
+     *
+     * @return the position, -1 if every position of the posting has been read or there are no positions
+     */
+    public int nextPosition() {
+        if (noPositionsLeft == 0) {
+            return -1;
+        }
+        position += readVByte(positions);
+        noPositionsLeft--;
+        return position;
+    }
+
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    public int docId() {
+        return docId;
+    }
+
+    public int tf() {
+        return tf;
+    }
+
+    public int df() {
+        return df;
+    }
+
+    /**
+     * Get the docIds of the term, if they are held in a bitmap
+     *
+     * @return the docIds, null if the term is not a bitmap term
+     */
+    public RoaringBitmap bitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Get the norm of the document of the current posting
+     *
+     * @return the norm, 0 without norms
+     */
+    public float norm() {
+        return norms != null ? norms.get(docId) : 0;
+    }
+
+    /**
+     * Get the last docId of the block of the current posting, or of the first block before next() is called
+     *
+     * @return the docId, Integer.MAX_VALUE if the block is the last one or the term has no skip data
+     */
+    public int blockEnd() {
+        return noBlocks > 1 ? blockLastDocIds[currentBlock()] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the largest tf of the block of the current posting, or of the first block before next() is called
+     *
+     * @return the tf, Integer.MAX_VALUE if the skip data does not bound it
+     */
+    public int blockMaxTf() {
+        return blockMaxTfs != null ? blockMaxTfs[currentBlock()] : Integer.MAX_VALUE;
+    }
+
+    private int currentBlock() {
+        int noRead = df - noPostingsLeft;
+        return noRead > 0 ? (noRead - 1) / PostingsWriter.SKIP_INTERVAL : 0;
+    }
+
+    /**
+     * Decode the skip data of the term, which is one entry per block after the first
+     */
+    private void readSkips(ByteBuffer skips, boolean hasBlockMaxTfs) {
+        blockLastDocIds = new int[noBlocks];
+        blockOffsets = new int[noBlocks];
+        blockPositionsOffsets = new int[noBlocks];
+        if (hasBlockMaxTfs) {
+            blockMaxTfs = new int[noBlocks];
+            blockMaxTfs[0] = readVByte(skips);
+        }
+        int lastDocId = 0;
+        int offset = 0;
+        int positionsOffset = 0;
+        for (int i = 1; i < noBlocks; i++) {
+            lastDocId += readVByte(skips);
+            offset += readVByte(skips);
+            positionsOffset += readVByte(skips);
+            blockLastDocIds[i - 1] = lastDocId;
+            blockOffsets[i] = offset;
+            blockPositionsOffsets[i] = positionsOffset;
+            if (hasBlockMaxTfs) {
+                blockMaxTfs[i] = readVByte(skips);
+            }
+        }
+        blockLastDocIds[noBlocks - 1] = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Jump to the last block whose postings before it are all below target, if it is ahead of the current posting
+     */
+    private void skipTo(int target) {
+        // the last posting before a block is the last one that may be skipped
+        int block = -1;
+        while (nextBlock < noBlocks && blockLastDocIds[nextBlock - 1] < target) {
+            block = nextBlock++;
+        }
+        if (block > 0 && block * PostingsWriter.SKIP_INTERVAL >= df - noPostingsLeft) {
+            buffer.position(postingsStart + blockOffsets[block]);
+            if (positions != null) {
+                positions.position(positionsStart + blockPositionsOffsets[block]);
+            }
+            docId = blockLastDocIds[block - 1];
+            noPostingsLeft = df - block * PostingsWriter.SKIP_INTERVAL;
+            noPositionsLeft = 0;
+            blockIndex = 0;
+            blockSize = 0;
+        }
+    }
+
+    /**
+     * Decode the block at the position of the view, which starts with its length
+     */
+    private void readBlock() {
+        int length = readVByte(buffer);
+        int end = buffer.position() + length;
+        blockSize = Math.min(noPostingsLeft, PostingsWriter.SKIP_INTERVAL);
+        codec.decode(buffer, blockSize, blockGaps, blockTfs);
+        buffer.position(end);
+        blockIndex = 0;
+    }
+
+    /**
+     * Decode the tfs of the block of a bitmap term at the position of the view, which starts with its length
+     */
+    private void readTfBlock() {
+        int length = readVByte(buffer);
+        int end = buffer.position() + length;
+        blockSize = Math.min(noPostingsLeft, PostingsWriter.SKIP_INTERVAL);
+        PostingsCodec.decodeTfs(buffer, blockSize, blockTfs);
+        buffer.position(end);
+        blockIndex = 0;
+    }
+
+    /**
+     * Decode the VByte at the position of a view, see VByte
+     */
+    static int readVByte(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -1,15 +1,15 @@
 package search_engine.searcher;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import opennlp.tools.tokenize.WhitespaceTokenizer;
-
+import search_engine.common.Analyzer;
+import search_engine.common.CachingStemmer;
+import search_engine.common.DocumentTable;
 import search_engine.common.IStemmer;
-import search_engine.common.Stemmer;
+import search_engine.common.RoaringBitmap;
 import search_engine.common.StopwordFilter;
 
 /**
@@ -20,6 +20,18 @@ import search_engine.common.StopwordFilter;
  */
 class Relevant {
 
+    /** Number of documents returned */
+    private static final int K = 10;
+
+    /** Proximity operator between two query terms, i.e: apple NEAR/5 orange */
+    private static final Pattern NEAR = Pattern.compile("NEAR/(\\d+)");
+
+    /** The commit of the index read by the current query */
+    private IndexSnapshot snapshot;
+
+    /** Whether the documents to score are first found from the impact-ordered postings */
+    private boolean isScoreAtATime = false;
+
     /**
      * Construction to create the Relevant class, nothing need to be done here
      */
@@ -27,6 +39,17 @@ class Relevant {
 
     }
 
+    /**
+     * Find the documents that may be among the K best score at a time from the impact-ordered
+     * postings, if the index has them, before scoring them from the postings (see ImpactScorer).
+     * The documents found are the same either way
+     *
+     * @param isScoreAtATime true to read the impact-ordered postings
+     */
+    public void setScoreAtATime(boolean isScoreAtATime) {
+        this.isScoreAtATime = isScoreAtATime;
+    }
+
     /**
      * Function to determine the K most relevant documents based on input query <br/>
      * PRE CONDITION: Vector consisting of query token that is tokenized,
@@ -38,28 +61,84 @@ class Relevant {
      * @throws java.io.IOException
      */
     public ArrayList<String> getRelevant(String queryFromUser) throws IOException {
-        String[] temp;
+        // Every file of the index is read from the same commit
+        return getRelevant(queryFromUser, IndexSnapshot.open());
+    }
+
+    /**
+     * Function to determine the K most relevant documents of a commit of the index, searched on
+     * its shards if it has any
+     *
+     * @param queryFromUser
+     * @param snapshot the commit of the index to search
+     * @return the K most relevant documents
+     * @throws java.io.IOException
+     */
+    ArrayList<String> getRelevant(String queryFromUser, IndexSnapshot snapshot) throws IOException {
+        this.snapshot = snapshot;
         ArrayList<String> query = new ArrayList<String>();
         //TODO: Tokenize, stem, stopword filter to get the query from queryFromUser
-        WhitespaceTokenizer tokenizer = WhitespaceTokenizer.INSTANCE;
-        IStemmer stemmer = new Stemmer();
+        IStemmer stemmer = new CachingStemmer();
+        Analyzer analyzer = new Analyzer(stemmer);
         StopwordFilter filter = new StopwordFilter(stemmer, "stopwords.txt");
         filter.initialize();
 
         
-        /**Tokenize, stem and remove stop word from query
+        /**Tokenize, stem and remove stop word from query, as in the Indexer
+         * Quoted phrases and NEAR/k operators become positional constraints,
+         * the position of a token being counted as in the Indexer
          */
-        temp = tokenizer.tokenize(queryFromUser);
+        analyzer.reset(queryFromUser);
+
+        ArrayList<PhraseQuery> constraints = new ArrayList<PhraseQuery>();
+        ArrayList<String> phraseTerms = null;
+        ArrayList<Integer> phrasePositions = null;
+        String previousTerm = null;
+        int nearDistance = -1;
+        int position = 0;
+
+        while (analyzer.next()) {
+            String token = analyzer.token();
+            Matcher near = NEAR.matcher(token);
+            if (phraseTerms == null && near.matches()) {
+                nearDistance = Integer.parseInt(near.group(1));
+                continue;
+            }
+            boolean opensPhrase = phraseTerms == null && token.startsWith("\"");
+            if (opensPhrase) {
+                phraseTerms = new ArrayList<String>();
+                phrasePositions = new ArrayList<Integer>();
+            }
+            boolean closesPhrase = phraseTerms != null && token.endsWith("\"")
+                    && !(opensPhrase && token.length() == 1);
+
+            String term = analyzer.term();
+            if(!filter.isStopword(term)){
+                query.add(term);
+                if (phraseTerms != null) {
+                    phraseTerms.add(term);
+                    phrasePositions.add(position);
+                }
+                if (nearDistance >= 0 && previousTerm != null) {
+                    constraints.add(PhraseQuery.near(previousTerm, term, nearDistance));
+                }
+                nearDistance = -1;
+                previousTerm = term;
+            }
+            position++;
 
-        for(int i = 0; i < temp.length; i++){
-            temp[i] = temp[i].replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
-            temp[i] = stemmer.stem(temp[i]);
-            if(!filter.isStopword(temp[i])){
-                query.add(temp[i]);
+            if (closesPhrase) {
+                if (!phraseTerms.isEmpty()) {
+                    constraints.add(PhraseQuery.phrase(phraseTerms, phrasePositions));
+                }
+                phraseTerms = null;
             }
         }
+        // A phrase left open ends with the query
+        if (phraseTerms != null && !phraseTerms.isEmpty()) {
+            constraints.add(PhraseQuery.phrase(phraseTerms, phrasePositions));
+        }
 
-        int count = 0;
         ArrayList<String> list = new ArrayList<String>();
         for (String s : query) {
             if (!list.contains(s)) {
@@ -67,58 +146,71 @@ class Relevant {
             }
         }
 
-        ArrayList<String> document = createDoc();
+        // An index split into shards is searched on every shard in parallel
+        if (snapshot.shards() != null) {
+            return getRelevant(snapshot.shards(), list, query, constraints);
+        }
+        DocumentTable document = createDoc();
         ArrayList<Object> queryId =  createQuery(list);
+        Collections.sort(queryId, new CustomComparatorObject());
+        double[] queryVector = createQueryCounts(queryId, query);
 
-        /**Record frequency for each word in query
-         */
-        double[] queryVector = new double [queryId.size()];
-        for (int i = 0; i < queryId.size(); i++) {
-            for (int j = 0; j < query.size(); j++) {
-                if (queryId.get(i).getName().equals(query.get(j))) {
-                    count++;
-                }
-            }
-            queryVector[i] = count;
-            count = 0;
+        // The impact-ordered postings narrow down the documents to score
+        RoaringBitmap candidates = null;
+        if (isScoreAtATime && snapshot.impacts() != null && constraints.isEmpty()
+                && queryId.size() <= ImpactScorer.MAX_TERMS) {
+            candidates = createImpactScorer(queryId, queryVector, document).candidates(K);
         }
 
-        queryVector = createQueryVector(queryVector,document,queryId);
+        // Only the K best documents are kept, the others are not ranked
+        queryVector = createQueryVector(queryVector,queryId);
+        TopKScorer scorer = createScorer(queryId, queryVector, document);
+        if (candidates != null) {
+            scorer.restrictCandidates(candidates);
+        }
+        applyConstraints(scorer, constraints, document);
+        ArrayList<FinalScore> finalScore = scorer.search(K);
 
-        Collections.sort(queryId, new CustomComparatorObject());
+        ArrayList<String> relevantDoc = createRelevant(finalScore,document);
 
-        double[][] scores = createScores(queryId,document);
+        return relevantDoc;
+    }
 
-        ArrayList<FinalScore> finalScore = createFinal(document, queryId,queryVector, scores);
-        Collections.sort(finalScore, new CustomComparatorFinalScore());
+    /**Determine the K most relevant documents over the shards of the index
+      *The query vector is the same for every shard, see ShardedIndex
+      */
+    private ArrayList<String> getRelevant(ShardedIndex shards, ArrayList<String> list, ArrayList<String> query,
+            ArrayList<PhraseQuery> constraints) throws IOException {
+        ArrayList<Object> queryId = createQuery(list, shards);
+        Collections.sort(queryId, new CustomComparatorObject());
+        double[] queryVector = createQueryVector(createQueryCounts(queryId, query), queryId);
 
-        ArrayList<String> relevantDoc = createRelevant(finalScore,document);
+        ArrayList<FinalScore> finalScore = shards.search(queryId, queryVector, constraints, K);
 
+        ArrayList<String> relevantDoc = new ArrayList<String>();
+        for (int i = 0; i < K && i < finalScore.size() && finalScore.get(i).getScore() > 0; i++){
+            relevantDoc.add(shards.getDocName(finalScore.get(i).getId()));
+        }
         return relevantDoc;
     }
 
-    /**Calculate the angle between two vectors
-      *Used to calculate the score for each document
-      *based on query
+    /**Record frequency for each word in query
       */
-    public double getAngle(double[] q, double[] d) {
-        double cosAngle,mag1 = 0.0,mag2 = 0.0,scalar = 0;
-        for (int i = 0; i < q.length; i++) {
-            scalar += q[i]*d[i];
-            if (q[i] == 0 || d[i] == 0) {
-                return 0;
+    public double[] createQueryCounts(ArrayList<Object> queryId, ArrayList<String> query){
+        int count = 0;
+        double[] queryVector = new double [queryId.size()];
+        for (int i = 0; i < queryId.size(); i++) {
+            for (int j = 0; j < query.size(); j++) {
+                if (queryId.get(i).getName().equals(query.get(j))) {
+                    count++;
+                }
             }
-            mag1 += Math.pow(q[i], 2);
-            mag2 += Math.pow(d[i], 2);
+            queryVector[i] = count;
+            count = 0;
         }
-        mag1 = Math.sqrt(mag1);
-        mag2 = Math.sqrt(mag2);
-
-        cosAngle = (scalar)/(mag1*mag2);
-        return cosAngle;
+        return queryVector;
     }
 
-    
     /**Returns the tuple given a id
       */
     public Tuple getTuple(int id, ArrayList<Tuple> t){
@@ -138,164 +230,129 @@ class Relevant {
         }
     }
 
-    /**Custom sort function for FinalScore, sort based on score
-     */
-    public class CustomComparatorFinalScore implements Comparator<FinalScore> {
-        @Override
-        public int compare(FinalScore f1, FinalScore f2) {
-            if (f1.getScore() < f2.getScore()){
-                return 1;
-            }else if(f1.getScore() == f2.getScore()){
-                return 0;
-            }else{
-                return -1;
-            }
-        }
-    }
-
-    /*Get df and vocabularyID for each query token using DICTIONARYLIST text file
-	    if word not in the dictionary, ignore it. */
+    /*Get idf and vocabularyID for each query token using the sorted term dictionary
+	    if word not in the dictionary, ignore it. The idf is computed at index time,
+	    except in a dictionary written before it was stored, see IndexSnapshot */
     public ArrayList<Object> createQuery(ArrayList<String> list)throws IOException{
-        String tempQuery;
-        int vocabularyId,df;
         ArrayList<Object> queryId = new ArrayList<Object>();
 
         for (int i = 0; i < list.size(); i++) {
-            vocabularyId = 0;
-
-            // Initialise the Stream readers
-            FileInputStream fis = new FileInputStream("dictionary.txt");
-            InputStreamReader isr = new InputStreamReader(fis);
-            BufferedReader br = new BufferedReader(isr);
-
-            String line;
-            do {
-                line = br.readLine();
-
-                if (line != null) {
-                    String[] tokens = line.split(" ");
-                    tempQuery = tokens[0].toLowerCase();
-                    df = Integer.parseInt(tokens[1]);
-
-                    list.set(i, list.get(i).toLowerCase());
-
-                    if (tempQuery.compareTo(list.get(i)) == 0) {
-                        Object q = new Object (tempQuery, vocabularyId, df);
-                        queryId.add(q);
-                        break;
-                    }
-                    vocabularyId ++;
-                }
-            } while (line != null);
+            list.set(i, list.get(i).toLowerCase());
 
-            br.close();
-            isr.close();
-            fis.close();
+            int vocabularyId = snapshot.vocabularyId(list.get(i));
+            if (vocabularyId >= 0) {
+                queryId.add(new Object(list.get(i), vocabularyId, snapshot.idf(list.get(i))));
+            }
         }
         return queryId;
     }
 
-    // Read the Document List file and store into document
-    public ArrayList<String> createDoc()throws IOException{
-        ArrayList<String> document = new ArrayList<String>();
+    /*Get idf and vocabularyID for each query token from the shards of the index. Every shard
+	    has the vocabularyIds of the index, and the idf is computed over every shard */
+    public ArrayList<Object> createQuery(ArrayList<String> list, ShardedIndex shards){
+        ArrayList<Object> queryId = new ArrayList<Object>();
 
-        FileInputStream fis = new FileInputStream("documents.txt");
-        InputStreamReader isr = new InputStreamReader(fis);
-        BufferedReader br = new BufferedReader(isr);
+        for (int i = 0; i < list.size(); i++) {
+            list.set(i, list.get(i).toLowerCase());
 
-        String line;
-        do {
-            line = br.readLine();
-            if (line != null) {
-                document.add(line);
+            int vocabularyId = shards.vocabularyId(list.get(i));
+            if (vocabularyId >= 0) {
+                queryId.add(new Object(list.get(i), vocabularyId, shards.idf(list.get(i))));
             }
-        } while (line != null);
+        }
+        return queryId;
+    }
 
-        br.close();
-        isr.close();
-        fis.close();
-        return document;
+    // Get the Document Table, only the names of the top documents are read from it
+    public DocumentTable createDoc()throws IOException{
+        return snapshot.documents();
     }
 
 
 
-    /**Creates the query vector
+    /**Creates the query vector, weighting each token by its idf
       */
-    public double[] createQueryVector(double[] queryVector,ArrayList<String> document, ArrayList<Object> queryId)throws IOException{
+    public double[] createQueryVector(double[] queryVector, ArrayList<Object> queryId){
         for (int i = 0; i < queryVector.length; i++){
-            queryVector[i] = (1+Math.log10(queryVector[i]))*(document.size()/queryId.get(i).getScore());
+            queryVector[i] = (1+Math.log10(queryVector[i]))*queryId.get(i).getScore();
         }
         return queryVector;
     }
 
-    // For each document, calculate the relevant score
-    public double[][] createScores(ArrayList<Object> queryId,ArrayList<String> document)throws IOException{
-        double[][] scores = new double[document.size()][queryId.size()];
-        FileInputStream fis = new FileInputStream("postings.txt");
-        InputStreamReader isr = new InputStreamReader(fis);
-        BufferedReader br = new BufferedReader(isr);
-        int lineNumber = -1;
+    // Get the postings of each query token, in the order of the query vector
+    public TopKScorer createScorer(ArrayList<Object> queryId, double[] queryVector, DocumentTable document)
+            throws IOException {
+        return createScorer(snapshot, queryId, queryVector);
+    }
 
-        // record down the tf for all the document
-        for (int i=0; i<queryId.size(); i++) {
-            Object token = queryId.get(i);
-            String line;
-            do {
-                line = br.readLine();
-                lineNumber ++;
-
-                if (line !=null){
-                    if (token.getId() == lineNumber) {
-                        break;
-                    }
-                }
-            } while (line!=null);
-            assert (line != null);
+    // Get the postings of each query token in a snapshot, e.g: a shard of the index
+    static TopKScorer createScorer(IndexSnapshot snapshot, ArrayList<Object> queryId, double[] queryVector) {
+        PostingsIterator[] iterators = new PostingsIterator[queryId.size()];
+        SegmentedPostings postings = snapshot.postings();
 
-            ArrayList<Tuple> postingList = new ArrayList<Tuple>();
-            String[] post = line.split(" ");
+        // the term table gives the postings of each token without scanning the file,
+        // a shard may have no postings of a token, and then no document to score
+        for (int i=0; i<queryId.size(); i++) {
+            iterators[i] = postings.postings(queryId.get(i).getId());
+        }
+        TopKScorer scorer = new TopKScorer(iterators, queryVector, snapshot.documents().size());
 
-            for (int j = 0; j < post.length; j++){
-                String[] idNscore = post[j].split(",");
-                Tuple t = new Tuple(Integer.parseInt(idNscore[0]),Integer.parseInt(idNscore[1]));
-                postingList.add(t);
-            }
-            for (int _docId=0; _docId<document.size(); _docId++) {
-                if(getTuple(_docId,postingList) != null){
-                    scores[_docId][i] = (1+Math.log10(getTuple(_docId,postingList).getScore()))*(Math.log(1+document.size()/queryId.get(i).getScore()));
-                }else{
-                    scores[ _docId][i] = 0;
-                }
+        // the dense tokens held in bitmaps are intersected a word at a time
+        RoaringBitmap candidates = null;
+        int noBitmaps = 0;
+        for (int i=0; i<queryId.size(); i++) {
+            RoaringBitmap bitmap = postings.bitmap(queryId.get(i).getId());
+            if (bitmap != null) {
+                candidates = candidates == null ? bitmap : candidates.and(bitmap);
+                noBitmaps++;
             }
         }
-        br.close();
-        isr.close();
-        fis.close();
-        return scores;
+        if (noBitmaps > 1) {
+            scorer.setCandidates(candidates);
+        }
+        return scorer;
     }
 
-    /**Creates the FnialScore vector
+    /**Get the impact-ordered postings of each query token, in the order of the query vector
+      *The idf is part of the impacts, so a token only weighs 1 + log(frequency in the query):
+      *the scores are the cosines times the norm of the query vector, which ranks the same
       */
-    public ArrayList<FinalScore> createFinal(ArrayList<String> document,ArrayList<Object> queryId,double[] queryVector, double[][] scores){
-        ArrayList<FinalScore> finalScore = new ArrayList<FinalScore>();
-        for (int i=0; i<document.size(); i++) {
-            double[] documentVector = scores[i];
-            if(queryId.size() == 1){
-                finalScore.add(new FinalScore(scores[i][0],i));
-            }else{
-                finalScore.add(new FinalScore (getAngle(documentVector, queryVector), i));
-            }
+    public ImpactScorer createImpactScorer(ArrayList<Object> queryId, double[] queryVector, DocumentTable document) {
+        ImpactIterator[] iterators = new ImpactIterator[queryId.size()];
+        double[] queryWeights = new double[queryId.size()];
+        ImpactPostings impacts = snapshot.impacts();
+
+        for (int i=0; i<queryId.size(); i++) {
+            iterators[i] = impacts.postings(queryId.get(i).getId());
+            queryWeights[i] = 1+Math.log10(queryVector[i]);
+        }
+        return new ImpactScorer(iterators, queryWeights, impacts, document.size());
+    }
+
+    /**Only score the documents that match every positional constraint
+      *The matches are evaluated from the positions in the index
+      */
+    public void applyConstraints(TopKScorer scorer, ArrayList<PhraseQuery> constraints,
+            DocumentTable document) throws IOException {
+        applyConstraints(snapshot, scorer, constraints);
+    }
+
+    // Evaluate the positional constraints in a snapshot, e.g: a shard of the index
+    static void applyConstraints(IndexSnapshot snapshot, TopKScorer scorer, ArrayList<PhraseQuery> constraints) {
+        if (constraints.isEmpty()) {
+            return;
+        }
+        for (PhraseQuery constraint : constraints) {
+            scorer.addConstraint(constraint.match(snapshot));
         }
-        return finalScore;
     }
 
     /**Creates the vector with all the relevant documents
       */
-    public ArrayList<String> createRelevant(ArrayList<FinalScore> finalScore, ArrayList<String> document){
-        int K = 10;
+    public ArrayList<String> createRelevant(ArrayList<FinalScore> finalScore, DocumentTable document){
         ArrayList<String> relevantDoc = new ArrayList<String>();
-        for (int i = 0; i < K && finalScore.get(i).getScore() > 0; i++){
-            relevantDoc.add(document.get(finalScore.get(i).getId()));
+        for (int i = 0; i < K && i < finalScore.size() && finalScore.get(i).getScore() > 0; i++){
+            relevantDoc.add(document.getDocName(finalScore.get(i).getId()));
         }
         return relevantDoc;
     }
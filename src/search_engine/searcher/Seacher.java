@@ -4,13 +4,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 
 public class Seacher {
+    /** Option to find the documents from the impact-ordered postings, see Relevant */
+    private static final String SCORE_AT_A_TIME = "--score-at-a-time";
+
     public static void main (String[] args) {
+        Relevant rel = new Relevant ();
         String query = "";
         for (int i=0; i<args.length; i++) {
+            if (i == 0 && args[i].equals(SCORE_AT_A_TIME)) {
+                rel.setScoreAtATime(true);
+                continue;
+            }
             query += args[i] + " ";
         }
 
-        Relevant rel = new Relevant ();
         ArrayList<String> results = new ArrayList<String>();
         try {
 
@@ -0,0 +1,419 @@
+package search_engine.searcher;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import search_engine.common.IndexCommit;
+import search_engine.common.NormsWriter;
+import search_engine.common.PostingsCodec;
+import search_engine.common.PostingsWriter;
+import search_engine.common.ShardWriter;
+import search_engine.common.Norms;
+import search_engine.common.Segments;
+import search_engine.common.Shards;
+import search_engine.common.TermDictionary;
+import search_engine.indexer.IndexBuilder;
+import search_engine.indexer.Indexer;
+import search_engine.indexer.SegmentedIndex;
+
+/**
+ * System test the Searcher <br/>
+ * The index is written by the Indexer in the working directory, then searched as Relevant
+ * searches it. The tests are in the package of the searcher, whose classes are not public
+ *
+ * @author ngtrhieu0011
+ */
+public class SearcherTester {
+    private static final double DELTA = 1e-5;
+    private static final long MEMORY_BUDGET = 64L * 1024 * 1024;
+    private static final String TEMPORARY_PREFIX = "tmp.";
+    private static final String[] TEXT_FILES = { "documents.txt", "dictionary.txt", "postings.txt" };
+    private static final String[] INDEX_FILES = { "postings.bin", "positions.bin", "dictionary.bin",
+            "documents.bin", "deleted.bin", "postings.idx", "postings.nrm", "impacts.bin", "impacts.idx",
+            Segments.MANIFEST_FILE, "segments.wal" };
+
+    /**
+     * Initialize the text files of the Indexer to be empty, and delete every other file of the
+     * index, so that a test does not see the generations, segments or shards of the previous test
+     *
+     * @throws IOException when the files cannot be opened
+     */
+    private void initializeFiles() throws IOException {
+        for (String fileName : TEXT_FILES) {
+            new FileOutputStream(fileName, false).close();
+        }
+        for (String fileName : INDEX_FILES) {
+            new File(fileName).delete();
+        }
+        Segments.deleteUnreferenced(new ArrayList<String>());
+        Shards.deleteUnreferenced(Shards.none());
+        IndexCommit.deleteOtherGenerations(0);
+        File[] files = new File(".").listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(TEMPORARY_PREFIX)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Index the 2 documents of the test case 2 of the Indexer (see IndexerTester)
+     *
+     * @throws IOException when the index cannot be written
+     */
+    private void indexTwoSimpleDocuments() throws IOException {
+        new Indexer("www.dummy.com", "This is a simple text of my example! Yes this is an example").start();
+        new Indexer("www.anotherdummy.com", "Another simple text file Yes this is yes").start();
+    }
+
+    /**
+     * Index documents made of a few words, each in a random number of copies, so that the postings
+     * of the words span several blocks of skip data. Documents are often the same, and then score
+     * the same
+     *
+     * @param noDocuments
+     * @param codec the codec of the blocks of postings, null for VByte postings without blocks
+     * @throws IOException when the index cannot be written
+     */
+    private void indexRandomDocuments(int noDocuments, PostingsCodec codec) throws IOException {
+        Random random = new Random(42);
+        IndexBuilder builder = new IndexBuilder(MEMORY_BUDGET, false, codec);
+        builder.start();
+        for (int docId = 0; docId < noDocuments; docId++) {
+            StringBuilder document = new StringBuilder();
+            // a few documents are much better than the others, the blocks without them are pruned
+            appendWord(document, "alpha", docId % 97 == 0 ? 6 : 1 + random.nextInt(2));
+            appendWord(document, "bravo", docId % 3 == 0 ? 0 : 1 + random.nextInt(3));
+            appendWord(document, "tango", docId % 7 == 0 ? 1 + random.nextInt(2) : 0);
+            appendWord(document, "zulu", random.nextInt(3));
+            // too sparse to be held in a bitmap
+            appendWord(document, "kilo", docId % 17 == 0 ? 1 + random.nextInt(2) : 0);
+            builder.addDocument("www.document" + docId + ".com", document.toString());
+        }
+        builder.commit();
+    }
+
+    private static void appendWord(StringBuilder document, String word, int noCopies) {
+        for (int i = 0; i < noCopies; i++) {
+            document.append(word).append(' ');
+        }
+    }
+
+    /**
+     * Score every document holding every term of a query, reading the whole postings of the terms
+     *
+     * @param snapshot the index
+     * @param terms the distinct terms of the query, each once in the query
+     * @return every document found, best first, ties by increasing docId
+     */
+    private ArrayList<FinalScore> searchExhaustively(IndexSnapshot snapshot, String[] terms) {
+        double[] queryVector = new double[terms.length];
+        double squares = 0;
+        for (int i = 0; i < terms.length; i++) {
+            queryVector[i] = snapshot.idf(terms[i]);
+            squares += queryVector[i] * queryVector[i];
+        }
+        double queryNorm = Math.sqrt(squares);
+
+        HashMap<Integer, double[]> scalars = new HashMap<Integer, double[]>();
+        HashMap<Integer, Float> norms = new HashMap<Integer, Float>();
+        for (int i = 0; i < terms.length; i++) {
+            PostingsIterator iterator = snapshot.postings().postings(snapshot.vocabularyId(terms[i]));
+            while (iterator.next()) {
+                double[] scalar = scalars.get(iterator.docId());
+                if (scalar == null) {
+                    scalar = new double[] { 0, 0 };
+                    scalars.put(iterator.docId(), scalar);
+                    norms.put(iterator.docId(), iterator.norm());
+                }
+                scalar[0] += queryVector[i] * NormsWriter.weight(iterator.tf());
+                scalar[1]++;
+            }
+        }
+
+        ArrayList<FinalScore> scores = new ArrayList<FinalScore>();
+        for (Map.Entry<Integer, double[]> entry : scalars.entrySet()) {
+            if (entry.getValue()[1] == terms.length) {
+                float norm = norms.get(entry.getKey());
+                scores.add(new FinalScore(entry.getValue()[0] / (norm * queryNorm), entry.getKey()));
+            }
+        }
+        Collections.sort(scores, new Comparator<FinalScore>() {
+            @Override
+            public int compare(FinalScore f1, FinalScore f2) {
+                if (f1.getScore() != f2.getScore()) {
+                    return f1.getScore() > f2.getScore() ? -1 : 1;
+                }
+                return f1.getId() - f2.getId();
+            }
+        });
+        return scores;
+    }
+
+    /**
+     * Score the documents holding every term of a query, as Relevant scores them
+     *
+     * @param snapshot the index
+     * @param terms the distinct terms of the query, each once in the query
+     * @return the documents found, best first
+     */
+    private ArrayList<FinalScore> search(IndexSnapshot snapshot, String[] terms, int k) {
+        ArrayList<Object> queryId = new ArrayList<Object>();
+        for (String term : terms) {
+            queryId.add(new Object(term, snapshot.vocabularyId(term), snapshot.idf(term)));
+        }
+        double[] queryVector = new double[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            queryVector[i] = queryId.get(i).getScore();
+        }
+        return Relevant.createScorer(snapshot, queryId, queryVector).search(k);
+    }
+
+    @Test
+    public void rankTwoSimpleDocuments() {
+        System.out.println("\n\nTesting the ranking of the test case 2 of the Indexer");
+        try {
+            initializeFiles();
+            indexTwoSimpleDocuments();
+
+            // www.dummy.com: thi 2, simpl 1, text 1, exampl 2, ye 1
+            // www.anotherdummy.com: thi 1, simpl 1, text 1, ye 2, anoth 1, file 1
+            // a term weighs 1 + log10(tf) in a document, whose norm is the length of its weights
+            double weight2 = 1 + Math.log10(2);
+            double norm0 = Math.sqrt(2 * weight2 * weight2 + 3);
+            double norm1 = Math.sqrt(weight2 * weight2 + 5);
+            Norms norms = new Norms(new File("postings.nrm"));
+            assertEquals(norm0, norms.get(0), DELTA);
+            assertEquals(norm1, norms.get(1), DELTA);
+
+            // the idf is ln(1 + N / df), with N = 2 documents
+            TermDictionary dictionary = new TermDictionary(new File("dictionary.bin"));
+            assertEquals(2, dictionary.noDocuments());
+            assertEquals(Math.log(2), dictionary.lookup("ye").idf(), DELTA);
+            assertEquals(Math.log(2), dictionary.lookup("thi").idf(), DELTA);
+            assertEquals(Math.log(3), dictionary.lookup("exampl").idf(), DELTA);
+
+            // "yes": the query vector has a single term, so the score is the weight of the term
+            // over the norm of the document, and the document with 2 "yes" ranks first
+            IndexSnapshot snapshot = IndexSnapshot.open();
+            ArrayList<FinalScore> scores = search(snapshot, new String[] { "ye" }, 10);
+            assertEquals(2, scores.size());
+            assertEquals(1, scores.get(0).getId());
+            assertEquals(weight2 / norm1, scores.get(0).getScore(), DELTA);
+            assertEquals(0, scores.get(1).getId());
+            assertEquals(1 / norm0, scores.get(1).getScore(), DELTA);
+
+            // "yes this": both terms have the idf ln(2), which the query norm cancels
+            double queryNorm = Math.sqrt(2);
+            scores = search(snapshot, new String[] { "thi", "ye" }, 10);
+            assertEquals(2, scores.size());
+            assertEquals(0, scores.get(0).getId());
+            assertEquals((weight2 + 1) / (norm0 * queryNorm), scores.get(0).getScore(), DELTA);
+            assertEquals(1, scores.get(1).getId());
+            assertEquals((1 + weight2) / (norm1 * queryNorm), scores.get(1).getScore(), DELTA);
+
+            // "simple example": the idf of "exampl" weighs in, and only www.dummy.com has it
+            double scalar = Math.log(2) + weight2 * Math.log(3);
+            queryNorm = Math.sqrt(Math.log(2) * Math.log(2) + Math.log(3) * Math.log(3));
+            scores = search(snapshot, new String[] { "simpl", "exampl" }, 10);
+            assertEquals(1, scores.size());
+            assertEquals(0, scores.get(0).getId());
+            assertEquals(scalar / (norm0 * queryNorm), scores.get(0).getScore(), DELTA);
+
+            // Relevant ranks the documents the same
+            assertEquals(Arrays.asList("www.anotherdummy.com", "www.dummy.com"), new Relevant().getRelevant("yes"));
+            assertEquals(Arrays.asList("www.dummy.com", "www.anotherdummy.com"),
+                    new Relevant().getRelevant("yes this"));
+
+            initializeFiles();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void pruneBlocksOfPostings() {
+        System.out.println("\n\nTesting the block-max pruning of the top K documents");
+        try {
+            initializeFiles();
+            indexRandomDocuments(8 * PostingsWriter.SKIP_INTERVAL, null);
+
+            IndexSnapshot snapshot = IndexSnapshot.open();
+            PostingsIterator alpha = snapshot.postings().postings(snapshot.vocabularyId("alpha"));
+            assertTrue(alpha.blockEnd() < Integer.MAX_VALUE);
+
+            String[][] queries = { { "alpha" }, { "alpha", "bravo" }, { "bravo", "tango" },
+                    { "alpha", "bravo", "tango", "zulu" } };
+            for (String[] terms : queries) {
+                ArrayList<FinalScore> expected = searchExhaustively(snapshot, terms);
+                assertTrue(expected.size() > 0);
+                // K cuts through ties, and is larger than the number of documents found
+                int[] ks = { 1, 5, 10, 100, expected.size(), expected.size() + 10 };
+                for (int k : ks) {
+                    ArrayList<FinalScore> found = search(snapshot, terms, k);
+                    assertEquals(Math.min(k, expected.size()), found.size());
+                    for (int i = 0; i < found.size(); i++) {
+                        assertEquals(expected.get(i).getId(), found.get(i).getId());
+                        assertEquals(expected.get(i).getScore(), found.get(i).getScore(), DELTA);
+                    }
+                }
+            }
+
+            initializeFiles();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void advancePostings() {
+        System.out.println("\n\nTesting the advance of the postings over the skip data");
+        ArrayList<PostingsCodec> codecs = new ArrayList<PostingsCodec>();
+        codecs.add(null);
+        codecs.addAll(Arrays.asList(PostingsCodec.codecs()));
+        try {
+            for (PostingsCodec codec : codecs) {
+                initializeFiles();
+                indexRandomDocuments(20 * PostingsWriter.SKIP_INTERVAL, codec);
+
+                // "alpha" is in every document, "bravo" in 2 of 3, "tango" in 1 of 7 and "kilo" in
+                // 1 of 17: the postings of "alpha" are a bitmap, those of "kilo" are not
+                IndexSnapshot snapshot = IndexSnapshot.open();
+                assertNotNull(snapshot.postings().postings(snapshot.vocabularyId("alpha")).bitmap());
+                assertNull(snapshot.postings().postings(snapshot.vocabularyId("kilo")).bitmap());
+                String[] terms = { "alpha", "bravo", "tango", "kilo" };
+                for (String term : terms) {
+                    int vocabularyId = snapshot.vocabularyId(term);
+                    PostingsIterator iterator = snapshot.postings().postings(vocabularyId);
+                    int df = iterator.df();
+                    assertTrue(df > PostingsWriter.SKIP_INTERVAL);
+                    int[] docIds = new int[df];
+                    int[] tfs = new int[df];
+                    for (int i = 0; i < df; i++) {
+                        assertTrue(iterator.next());
+                        docIds[i] = iterator.docId();
+                        tfs[i] = iterator.tf();
+                    }
+                    assertFalse(iterator.next());
+
+                    // Onto the first posting of the second block, then past the boundaries of the
+                    // next blocks, to the docId after a posting of the last one
+                    iterator = snapshot.postings().postings(vocabularyId);
+                    int first = PostingsWriter.SKIP_INTERVAL;
+                    assertTrue(iterator.advance(docIds[first]));
+                    assertEquals(docIds[first], iterator.docId());
+                    assertEquals(tfs[first], iterator.tf());
+                    int between = (df - 1) / PostingsWriter.SKIP_INTERVAL * PostingsWriter.SKIP_INTERVAL + 5;
+                    assertTrue(iterator.advance(docIds[between - 1] + 1));
+                    assertEquals(docIds[between], iterator.docId());
+                    assertEquals(tfs[between], iterator.tf());
+                    // the current posting is kept, and the next one follows it
+                    assertTrue(iterator.advance(docIds[between - 1]));
+                    assertEquals(docIds[between], iterator.docId());
+                    assertTrue(iterator.next());
+                    assertEquals(docIds[between + 1], iterator.docId());
+                    assertEquals(tfs[between + 1], iterator.tf());
+
+                    // Onto the last posting, which ends the list
+                    assertTrue(iterator.advance(docIds[df - 1]));
+                    assertEquals(docIds[df - 1], iterator.docId());
+                    assertEquals(tfs[df - 1], iterator.tf());
+                    assertFalse(iterator.next());
+
+                    // Past the end, from the first block and from the last posting
+                    iterator = snapshot.postings().postings(vocabularyId);
+                    assertFalse(iterator.advance(docIds[df - 1] + 1));
+                    iterator = snapshot.postings().postings(vocabularyId);
+                    assertTrue(iterator.advance(docIds[df - 1]));
+                    assertFalse(iterator.advance(Integer.MAX_VALUE));
+                }
+            }
+
+            initializeFiles();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void searchShardedIndex() {
+        System.out.println("\n\nTesting the search of the shards of the index");
+        try {
+            initializeFiles();
+            indexRandomDocuments(8 * PostingsWriter.SKIP_INTERVAL, null);
+
+            String[] queries = { "alpha", "alpha bravo", "bravo tango", "zulu zulu alpha", "tango alpha bravo zulu",
+                    "\"alpha bravo\"", "alpha NEAR/1 zulu", "yankee" };
+            ArrayList<ArrayList<String>> expected = new ArrayList<ArrayList<String>>();
+            IndexSnapshot snapshot = IndexSnapshot.open();
+            assertNull(snapshot.shards());
+            for (String query : queries) {
+                expected.add(new Relevant().getRelevant(query, snapshot));
+            }
+            assertEquals(10, expected.get(0).size());
+            assertEquals(0, expected.get(expected.size() - 1).size());
+
+            // The documents are found in the same order whatever the number of shards
+            int[] noShards = { 1, 2, 3, 7 };
+            for (int n : noShards) {
+                assertEquals(n, ShardWriter.split(n).size());
+                snapshot = IndexSnapshot.open();
+                assertNotNull(snapshot.shards());
+                for (int i = 0; i < queries.length; i++) {
+                    assertEquals(expected.get(i), new Relevant().getRelevant(queries[i], snapshot));
+                }
+            }
+
+            initializeFiles();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void dropShardsOnFlush() {
+        System.out.println("\n\nTesting that a flush of the segmented index drops the shards");
+        try {
+            initializeFiles();
+            indexRandomDocuments(4 * PostingsWriter.SKIP_INTERVAL, null);
+            ShardWriter.split(2);
+            assertNotNull(IndexSnapshot.open().shards());
+
+            // The shards miss the new document, so the flush drops them from the manifest
+            SegmentedIndex index = new SegmentedIndex();
+            index.start();
+            int docId = index.addDocument("www.yankee.com", "alpha yankee");
+            assertEquals(4 * PostingsWriter.SKIP_INTERVAL, docId);
+            index.flush();
+            assertEquals(0, IndexCommit.read().getShards().size());
+
+            IndexSnapshot snapshot = IndexSnapshot.open();
+            assertNull(snapshot.shards());
+            assertEquals(Arrays.asList("www.yankee.com"), new Relevant().getRelevant("yankee", snapshot));
+            index.close();
+
+            initializeFiles();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+    }
+}
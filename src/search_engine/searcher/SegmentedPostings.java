@@ -0,0 +1,128 @@
+package search_engine.searcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import search_engine.common.IndexCommit;
+import search_engine.common.RoaringBitmap;
+import search_engine.common.Segments;
+import search_engine.common.Tombstones;
+
+/**
+ * This class gives random access to the postings of any term over every part of the index <br/>
+ * The index is the postings file written by the Indexer, if it is part of the commit, and the live
+ * segments of the commit. Each part is memory-mapped by a MappedPostings, and the postings of a
+ * term are merged by docId across the parts that have the term. <br/>
+ * The postings of the deleted documents are skipped, so they are never scored nor matched. <br/>
+ * The docIds of a term held in a bitmap by every part are united a word at a time, see bitmap(). <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class SegmentedPostings {
+    private final MappedPostings[] parts;
+    private final Tombstones deleted;
+
+    /**
+     * Map the postings file and the live segments of a commit of the index in the working directory
+     *
+     * @param commit the commit point of the index
+     * @param deleted the deleted documents of the commit
+     * @throws IOException when the files cannot be opened, e.g: a segment has been merged away
+     *         since the commit was read
+     */
+    public SegmentedPostings(IndexCommit commit, Tombstones deleted) throws IOException {
+        List<String> segments = commit.getSegments();
+        ArrayList<MappedPostings> parts = new ArrayList<MappedPostings>(segments.size() + 1);
+        if (commit.hasBase() && (segments.isEmpty() || MappedPostings.exists())) {
+            parts.add(new MappedPostings());
+        }
+        for (String segment : segments) {
+            parts.add(new MappedPostings(Segments.postingsFile(segment), Segments.termTableFile(segment),
+                    Segments.positionsFile(segment), Segments.normsFile(segment), null));
+        }
+        this.parts = parts.toArray(new MappedPostings[parts.size()]);
+        this.deleted = deleted;
+    }
+
+    /**
+     * Give access to the postings of an index made of one part without deleted documents, e.g: a shard
+     *
+     * @param part the postings of the index
+     */
+    public SegmentedPostings(MappedPostings part) {
+        this.parts = new MappedPostings[] { part };
+        this.deleted = new Tombstones();
+    }
+
+    /**
+     * Get the postings of a term
+     *
+     * @param vocabularyId of the term
+     * @return an iterator over the postings, in docId order, null if the term has no postings
+     */
+    public PostingsIterator postings(int vocabularyId) {
+        PostingsIterator[] iterators = new PostingsIterator[parts.length];
+        int noIterators = 0;
+        for (MappedPostings part : parts) {
+            PostingsIterator iterator = part.postings(vocabularyId);
+            if (iterator != null) {
+                iterators[noIterators++] = iterator;
+            }
+        }
+
+        if (noIterators == 0) {
+            return null;
+        } else if (noIterators == 1 && deleted.size() == 0) {
+            return iterators[0];
+        }
+        PostingsIterator[] found = new PostingsIterator[noIterators];
+        System.arraycopy(iterators, 0, found, 0, noIterators);
+        return new MultiPostingsIterator(found, deleted);
+    }
+
+    /**
+     * Get the docIds of a term, if every part with postings of the term holds them in a bitmap
+     *
+     * @param vocabularyId of the term
+     * @return the docIds of the term that are not deleted, null if the term has no postings or a part
+     *         holds them as a list
+     */
+    public RoaringBitmap bitmap(int vocabularyId) {
+        RoaringBitmap docIds = null;
+        for (MappedPostings part : parts) {
+            RoaringBitmap bitmap = part.bitmap(vocabularyId);
+            if (bitmap == null) {
+                if (part.hasPostings(vocabularyId)) {
+                    return null;
+                }
+                continue;
+            }
+            docIds = docIds == null ? bitmap : docIds.or(bitmap);
+        }
+        return docIds != null ? docIds.andNot(deleted) : null;
+    }
+
+    /**
+     * Check whether every part of the index has positions
+     *
+     * @return true if phrases and proximity can be evaluated from the index
+     */
+    public boolean hasPositions() {
+        for (MappedPostings part : parts) {
+            if (!part.hasPositions()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of mapped parts: the postings file and the live segments
+     *
+     * @return number of parts
+     */
+    public int noParts() {
+        return parts.length;
+    }
+}
@@ -0,0 +1,173 @@
+package search_engine.searcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import search_engine.common.Shards;
+import search_engine.common.TermDictionaryWriter;
+
+/**
+ * This class searches an index split into shards (see Shards), every shard on a thread of its own <br/>
+ * Each shard is opened as an IndexSnapshot and scored by a TopKScorer of its own, with the same query
+ * vector: the idf of the query terms is computed from their df and the number of documents summed over
+ * the shards, so a document scores the same in its shard as in the whole index. The norms of the
+ * documents do not depend on the other documents, and are the same in both. <br/>
+ * The K best documents of every shard are merged into the K best documents of the index, ranked as a
+ * TopKScorer ranks them: by decreasing score, ties by increasing docId of the index. <br/>
+ * The shards are opened once by the IndexSnapshot of the commit that lists them, and kept for the
+ * queries as long as the commit is the last one. They are searched on a pool of one thread per
+ * available processor, shared by every query. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class ShardedIndex {
+    private static ExecutorService executor;
+
+    private final Shards shards;
+    private final IndexSnapshot[] snapshots;
+    private final int noDocuments;
+
+    /**
+     * Open every shard of a commit
+     *
+     * @param shards the shards listed by the commit
+     * @throws IOException when the files of a shard cannot be opened
+     */
+    ShardedIndex(Shards shards) throws IOException {
+        this.shards = shards;
+        snapshots = new IndexSnapshot[shards.size()];
+        int noDocuments = 0;
+        for (int shard = 0; shard < snapshots.length; shard++) {
+            snapshots[shard] = IndexSnapshot.openShard(shards.getName(shard));
+            noDocuments += snapshots[shard].documents().size();
+        }
+        this.noDocuments = noDocuments;
+    }
+
+    /**
+     * Number of documents of the index, over every shard
+     *
+     * @return number of documents
+     */
+    public int noDocuments() {
+        return noDocuments;
+    }
+
+    /**
+     * Get the vocabularyId of a term, which is the same in every shard
+     *
+     * @param term
+     * @return the vocabularyId, -1 if the term is not in the vocabulary
+     */
+    public int vocabularyId(String term) {
+        if (snapshots.length == 0) {
+            return -1;
+        }
+        return snapshots[0].vocabularyId(term);
+    }
+
+    /**
+     * Get the idf of a term in the whole index <br/>
+     * The idf is rounded to a float, as a dictionary stores it
+     *
+     * @param term
+     * @return the idf computed from the df of the term summed over the shards
+     */
+    public double idf(String term) {
+        int df = 0;
+        for (IndexSnapshot snapshot : snapshots) {
+            df += snapshot.df(term);
+        }
+        return (float) TermDictionaryWriter.idf(noDocuments, df);
+    }
+
+    /**
+     * Get the name of a document
+     *
+     * @param docId the docId of the document in the index
+     * @return docName of the document, null if the docId is not in any shard
+     */
+    public String getDocName(int docId) {
+        int shard = shards.shardOf(docId);
+        if (shard < 0) {
+            return null;
+        }
+        return snapshots[shard].documents().getDocName(docId - shards.getFirstDocId(shard));
+    }
+
+    /**
+     * Find the best documents of every shard in parallel, and merge them
+     *
+     * @param queryId the query terms, in the order of the query vector
+     * @param queryVector the weight of each term in the query
+     * @param constraints the positional constraints every document must match
+     * @param k number of documents wanted
+     * @return at most k documents with a score above 0, best first, with their docId in the index
+     * @throws IOException when a shard cannot be searched
+     */
+    public ArrayList<FinalScore> search(final ArrayList<Object> queryId, final double[] queryVector,
+            final ArrayList<PhraseQuery> constraints, final int k) throws IOException {
+        ArrayList<Future<ArrayList<FinalScore>>> results = new ArrayList<Future<ArrayList<FinalScore>>>();
+        for (int shard = 0; shard < snapshots.length; shard++) {
+            final IndexSnapshot snapshot = snapshots[shard];
+            final int firstDocId = shards.getFirstDocId(shard);
+            results.add(executor().submit(new Callable<ArrayList<FinalScore>>() {
+                @Override
+                public ArrayList<FinalScore> call() {
+                    TopKScorer scorer = Relevant.createScorer(snapshot, queryId, queryVector);
+                    Relevant.applyConstraints(snapshot, scorer, constraints);
+                    ArrayList<FinalScore> top = scorer.search(k);
+                    for (int i = 0; i < top.size(); i++) {
+                        top.set(i, new FinalScore(top.get(i).getScore(), firstDocId + top.get(i).getId()));
+                    }
+                    return top;
+                }
+            }));
+        }
+
+        ArrayList<FinalScore> top = new ArrayList<FinalScore>();
+        try {
+            for (Future<ArrayList<FinalScore>> result : results) {
+                top.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching the shards", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot search a shard", e.getCause());
+        } finally {
+            for (Future<ArrayList<FinalScore>> result : results) {
+                result.cancel(true);
+            }
+        }
+
+        Collections.sort(top, Collections.reverseOrder(TopKScorer.WORST_FIRST));
+        return top.size() > k ? new ArrayList<FinalScore>(top.subList(0, k)) : top;
+    }
+
+    /**
+     * Get the pool the shards are searched on, started with the first query. Its threads do not keep
+     * the searcher alive
+     */
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable task) {
+                            Thread thread = new Thread(task, "shard-searcher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,237 @@
+package search_engine.searcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import search_engine.common.NormsWriter;
+import search_engine.common.RoaringBitmap;
+
+/**
+ * This class finds the K best documents of a query without scoring the whole collection <br/>
+ * The postings of the query terms are read document at a time, and the K best documents seen so
+ * far are kept in a min-heap: a document only enters the heap if it scores above the worst of them.
+ * <br/>
+ * The score of a document is the cosine between its vector and the query vector. A term weighs
+ * 1 + log(tf) in the document, and the document vector is normalised by the norm of the whole
+ * document, computed at index time (see NormsWriter); the query vector holds the idf computed at
+ * index time. Scoring a document thus takes one multiply-accumulate per posting and one division.
+ * <br/>
+ * A document must hold every term of the query, so the postings of the terms are intersected, the
+ * rarest term leading the others with advance(). <br/>
+ * Once the heap is full, its worst score is a threshold. The skip data gives the largest tf of each
+ * block of postings, which bounds the score of every document of the block: the blocks bounded
+ * under the threshold are jumped over without decoding them (block-max pruning). <br/>
+ * The intersection of the terms held in bitmaps may be given as candidates, computed a word at a
+ * time: the other documents are jumped over without advancing the postings to them. <br/>
+ * The documents are ranked by decreasing score, ties by increasing docId. <br/>
+ *
+ * @author ngtrhieu0011
+ */
+class TopKScorer {
+    // slack on the cosine bound, so it is never below the score computed with the float norms
+    private static final double BOUND_SLACK = 1e-6;
+
+    /** Worst document first: lowest score, then highest docId */
+    static final Comparator<FinalScore> WORST_FIRST = new Comparator<FinalScore>() {
+        @Override
+        public int compare(FinalScore f1, FinalScore f2) {
+            if (f1.getScore() != f2.getScore()) {
+                return f1.getScore() < f2.getScore() ? -1 : 1;
+            }
+            return f2.getId() - f1.getId();
+        }
+    };
+
+    private final PostingsIterator[] iterators;
+    private final double[] queryVector;
+    private final double queryNorm;
+    private final int noDocuments;
+    private final ArrayList<boolean[]> constraints = new ArrayList<boolean[]>();
+    private RoaringBitmap candidates;
+
+    /**
+     * Create a scorer over the postings of the query terms
+     *
+     * @param iterators the postings of each term. A null iterator matches no document
+     * @param queryVector the weight of each term in the query, in the same order
+     * @param noDocuments number of documents in the collection, the larger docIds are not scored
+     */
+    TopKScorer(PostingsIterator[] iterators, double[] queryVector, int noDocuments) {
+        this.iterators = iterators;
+        this.queryVector = queryVector;
+        this.noDocuments = noDocuments;
+        double squares = 0;
+        for (double weight : queryVector) {
+            squares += weight * weight;
+        }
+        this.queryNorm = Math.sqrt(squares);
+    }
+
+    /**
+     * Only score the documents that match a positional constraint
+     *
+     * @param matches whether each docId matches the constraint
+     */
+    public void addConstraint(boolean[] matches) {
+        constraints.add(matches);
+    }
+
+    /**
+     * Only score the documents of a set, e.g: the documents holding every dense term of the query
+     *
+     * @param docIds a superset of the documents holding every term
+     */
+    public void setCandidates(RoaringBitmap docIds) {
+        candidates = docIds;
+    }
+
+    /**
+     * Only score the documents of a set among the candidates, e.g: the documents that may be among
+     * the best ones (see ImpactScorer)
+     *
+     * @param docIds a superset of the best documents
+     */
+    public void restrictCandidates(RoaringBitmap docIds) {
+        candidates = candidates == null ? docIds : candidates.and(docIds);
+    }
+
+    /**
+     * Find the best documents
+     *
+     * @param k number of documents wanted
+     * @return at most k documents with a score above 0, best first
+     */
+    public ArrayList<FinalScore> search(int k) {
+        PriorityQueue<FinalScore> heap = new PriorityQueue<FinalScore>(Math.max(k, 1), WORST_FIRST);
+        boolean isEmpty = iterators.length == 0 || k <= 0;
+        for (PostingsIterator iterator : iterators) {
+            isEmpty |= iterator == null;
+        }
+        if (!isEmpty) {
+            searchConjunction(heap, k);
+        }
+
+        ArrayList<FinalScore> top = new ArrayList<FinalScore>(heap);
+        Collections.sort(top, Collections.reverseOrder(WORST_FIRST));
+        return top;
+    }
+
+    /**
+     * Score the documents holding every term, jumping over the ranges where the blocks of the terms
+     * bound the cosine under the heap
+     */
+    private void searchConjunction(PriorityQueue<FinalScore> heap, int k) {
+        // the rarest term leads the intersection
+        Integer[] order = new Integer[iterators.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return iterators[i1].df() - iterators[i2].df();
+            }
+        });
+
+        double[] upperVector = new double[iterators.length];
+        int docId = 0;
+
+        candidates:
+        while (docId < noDocuments) {
+            if (candidates != null) {
+                docId = candidates.nextValue(docId);
+                if (docId < 0) {
+                    return;
+                }
+            }
+            for (int i = 0; i < order.length; i++) {
+                PostingsIterator iterator = iterators[order[i]];
+                if (!iterator.advance(docId)) {
+                    return;
+                }
+                if (iterator.docId() > docId) {
+                    docId = iterator.docId();
+                    if (i > 0) {
+                        continue candidates;
+                    }
+                }
+            }
+            if (docId >= noDocuments) {
+                return;
+            }
+
+            if (heap.size() == k) {
+                int blockEnd = Integer.MAX_VALUE;
+                for (int i = 0; i < iterators.length; i++) {
+                    upperVector[i] = NormsWriter.weight(iterators[i].blockMaxTf());
+                    blockEnd = Math.min(blockEnd, iterators[i].blockEnd());
+                }
+                if (cosineBound(upperVector) <= heap.peek().getScore()) {
+                    if (blockEnd == Integer.MAX_VALUE) {
+                        return;
+                    }
+                    docId = blockEnd + 1;
+                    continue;
+                }
+            }
+
+            if (isMatch(docId)) {
+                offer(heap, k, new FinalScore(score(), docId));
+            }
+            docId++;
+        }
+    }
+
+    private boolean isMatch(int docId) {
+        for (boolean[] matches : constraints) {
+            if (!matches[docId]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keep a document if it is better than the worst of the heap. The documents come by increasing
+     * docId, so a document scoring the same as the worst one is not better
+     */
+    private static void offer(PriorityQueue<FinalScore> heap, int k, FinalScore document) {
+        if (!(document.getScore() > 0)) {
+            return;
+        }
+        if (heap.size() < k) {
+            heap.add(document);
+        } else if (document.getScore() > heap.peek().getScore()) {
+            heap.poll();
+            heap.add(document);
+        }
+    }
+
+    /**
+     * Score the document every iterator is on
+     */
+    private double score() {
+        double scalar = 0;
+        for (int i = 0; i < iterators.length; i++) {
+            scalar += queryVector[i] * NormsWriter.weight(iterators[i].tf());
+        }
+        // every term of a document is in the same part of the index, which has its norm
+        float norm = iterators[0].norm();
+        return norm > 0 ? scalar / (norm * queryNorm) : 0;
+    }
+
+    /**
+     * Bound the cosine of the documents whose term weights are at most the upper vector. Every weight
+     * is at least 1, and the norm of a document is at least the length of its query terms' weights
+     */
+    private double cosineBound(double[] upper) {
+        double scalar = 0;
+        for (int i = 0; i < upper.length; i++) {
+            scalar += upper[i] * queryVector[i];
+        }
+        return Math.min(1, scalar / (Math.sqrt(upper.length) * queryNorm)) * (1 + BOUND_SLACK);
+    }
+}
@@ -0,0 +1,54 @@
+package search_engine.unit_test;
+
+import java.io.File;
+import java.io.IOException;
+
+import search_engine.indexer.SegmentedIndex;
+
+/**
+ * Add documents to a SegmentedIndex, then stop the process without closing
+ * the index, as a crash would: the documents are only in the write-ahead log
+ * <br/>
+ * The index is in the working directory of the process <br/>
+ * 
+ * @author ngtrhieu0011
+ * 
+ */
+class CrashingIndexer {
+	/**
+	 * Run the CrashingIndexer in a new process, and wait for its crash
+	 * 
+	 * @param documents
+	 *            the name and content of every document, one after the other
+	 * @throws IOException
+	 *             when the process cannot be run
+	 */
+	static void run(String... documents) throws IOException {
+		String[] command = new String[documents.length + 4];
+		command[0] = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		command[1] = "-cp";
+		command[2] = System.getProperty("java.class.path");
+		command[3] = CrashingIndexer.class.getName();
+		System.arraycopy(documents, 0, command, 4, documents.length);
+
+		Process process = new ProcessBuilder(command).inheritIO().start();
+		try {
+			if (process.waitFor() != 0) {
+				throw new IOException("The CrashingIndexer failed");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the CrashingIndexer", e);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		// No document is flushed before the crash
+		SegmentedIndex index = new SegmentedIndex(100, 10);
+		index.start();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			index.addDocument(args[i], args[i + 1]);
+		}
+		Runtime.getRuntime().halt(0);
+	}
+}
@@ -3,18 +3,43 @@ package search_engine.unit_test;
 import static org.junit.Assert.*;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import search_engine.common.CachingStemmer;
+import search_engine.common.DocumentTable;
+import search_engine.common.ImpactWriter;
+import search_engine.common.IndexCommit;
+import search_engine.common.IndexDelta;
+import search_engine.common.PostingsCodec;
+import search_engine.common.PostingsConverter;
+import search_engine.common.PostingsReader;
+import search_engine.common.PostingsWriter;
+import search_engine.common.RoaringBitmap;
+import search_engine.common.Segments;
+import search_engine.common.ShardWriter;
+import search_engine.common.Shards;
+import search_engine.common.StemCache;
+import search_engine.common.Stemmer;
+import search_engine.common.TermDictionary;
+import search_engine.common.TermIterator;
+import search_engine.indexer.IndexBuilder;
 import search_engine.indexer.Indexer;
+import search_engine.indexer.ParallelIndexBuilder;
+import search_engine.indexer.SegmentedIndex;
 
 /**
  * System test the Indexer
@@ -32,17 +57,27 @@ public class IndexerTester {
 	private final String DOCUMENT_FILE = "documents.txt";
 	private final String DICTIONARY_FILE = "dictionary.txt";
 	private final String POSTING_FILE = "postings.txt";
+	private final String BINARY_POSTING_FILE = "postings.bin";
+	private final String POSITIONS_FILE = "positions.bin";
+	private final String TEMPORARY_PREFIX = "tmp.";
+	private final String[] INDEX_FILES = { BINARY_POSTING_FILE, POSITIONS_FILE, "dictionary.bin", "documents.bin",
+			"deleted.bin", "postings.idx", "postings.nrm", "impacts.bin", "impacts.idx", Segments.MANIFEST_FILE,
+			"segments.wal" };
 
 	private File documentFile = new File(DOCUMENT_FILE);
 	private File dictionaryFile = new File(DICTIONARY_FILE);
 	private File postingsFile = new File(POSTING_FILE);
+	private File binaryPostingsFile = new File(BINARY_POSTING_FILE);
+	private File positionsFile = new File(POSITIONS_FILE);
 
 	private File expectedDocumentFile;
 	private File expectedDictionaryFile;
 	private File expectedPostingsFile;
 
 	/**
-	 * Initialize the files to be empty
+	 * Initialize the files to be empty <br/>
+	 * Every other file of an index is deleted, so that a test does not see the
+	 * generations, segments or shards of the previous test
 	 * 
 	 * @throws IOException
 	 *             when the files cannot be opened
@@ -56,6 +91,34 @@ public class IndexerTester {
 		fos.close();
 		fos = new FileOutputStream(postingsFile, false);
 		fos.close();
+		for (String fileName : INDEX_FILES) {
+			new File(fileName).delete();
+		}
+		Segments.deleteUnreferenced(new ArrayList<String>());
+		Shards.deleteUnreferenced(Shards.none());
+		// Generation 0 has no files of its own, every gen_N file goes
+		IndexCommit.deleteOtherGenerations(0);
+		File[] files = new File(".").listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith(TEMPORARY_PREFIX)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decode the binary postings file into the text postings file, so it can
+	 * be compared with the expected postings <br/>
+	 * 
+	 * @return the text postings file
+	 * @throws IOException
+	 *             when the files cannot be opened
+	 */
+	private File decodePostingsFile() throws IOException {
+		PostingsConverter.toText(binaryPostingsFile, postingsFile);
+		return postingsFile;
 	}
 
 	/**
@@ -218,7 +281,7 @@ public class IndexerTester {
 
 			assertTrue(contentEquals(expectedDocumentFile, documentFile));
 			assertTrue(contentEquals(expectedDictionaryFile, dictionaryFile));
-			assertTrue(contentEquals(expectedPostingsFile, postingsFile));
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
 
 			initializeFiles();
 		} catch (IOException e) {
@@ -244,6 +307,169 @@ public class IndexerTester {
 
 			assertTrue(contentEquals(expectedDocumentFile, documentFile));
 			assertTrue(contentEquals(expectedDictionaryFile, dictionaryFile));
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void bulkIndexTwoSimpleDocuments() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			IndexBuilder builder = new IndexBuilder();
+			builder.start();
+			builder.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			builder.addDocument("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			builder.commit();
+
+			assertTrue(contentEquals(expectedDocumentFile, documentFile));
+			assertTrue(contentEquals(expectedDictionaryFile, dictionaryFile));
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void spillingBulkIndexTwoSimpleDocuments() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			// A tiny memory budget spills a run after every document
+			IndexBuilder builder = new IndexBuilder(1);
+			builder.start();
+			builder.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			builder.addDocument("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			builder.commit();
+
+			assertTrue(contentEquals(expectedDocumentFile, documentFile));
+			assertTrue(contentEquals(expectedDictionaryFile, dictionaryFile));
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void impactOrderedBulkIndexTwoSimpleDocuments() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			// The impacts are written beside the postings, which are unchanged
+			IndexBuilder builder = new IndexBuilder(1, true);
+			builder.start();
+			builder.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			builder.addDocument("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			builder.commit();
+
+			assertTrue(contentEquals(expectedDocumentFile, documentFile));
+			assertTrue(contentEquals(expectedDictionaryFile, dictionaryFile));
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
+
+			DataInputStream in = new DataInputStream(new FileInputStream("impacts.bin"));
+			try {
+				assertEquals(ImpactWriter.MAGIC, in.readInt());
+				assertEquals(ImpactWriter.VERSION, in.readByte());
+				assertEquals(2, in.readInt());
+				assertEquals(binaryPostingsFile.length(), in.readLong());
+			} finally {
+				in.close();
+			}
+			assertTrue(new File("impacts.idx").exists());
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void parallelBulkIndexTwoSimpleDocuments() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			// One document per batch, so the two documents are inverted by
+			// different workers
+			ParallelIndexBuilder builder = new ParallelIndexBuilder(2, 1, 1);
+			builder.start();
+			builder.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			builder.addDocument("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			builder.commit();
+
+			assertTrue(contentEquals(expectedDocumentFile, documentFile));
+			assertTrue(contentEquals(expectedDictionaryFile, dictionaryFile));
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void segmentedIndexTwoSimpleDocuments() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			// One document per segment, and two segments of the same size are
+			// merged into one
+			SegmentedIndex index = new SegmentedIndex(1, 2);
+			index.start();
+			index.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			index.addDocument("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			index.waitForMerges();
+			index.close();
+
+			assertEquals(1, index.getNoSegments());
+			List<String> segments = Segments.read();
+			assertEquals(1, segments.size());
+
+			// The close writes nothing but the last commit, whose checkpoint
+			// has the whole dictionary and document list
+			IndexCommit commit = IndexCommit.read();
+			assertEquals(commit.getGeneration(), commit.getCheckpoint());
+			assertTrue(contentEquals(expectedDocumentFile, commit.file(DOCUMENT_FILE)));
+			assertTrue(contentEquals(expectedDictionaryFile, commit.file(DICTIONARY_FILE)));
+			assertFalse(documentFile.exists() && documentFile.length() > 0);
+			PostingsConverter.toText(Segments.postingsFile(segments.get(0)), postingsFile);
 			assertTrue(contentEquals(expectedPostingsFile, postingsFile));
 
 			initializeFiles();
@@ -253,6 +479,551 @@ public class IndexerTester {
 		}
 	}
 
+	@Test
+	public void segmentedIndexUpdateDocument() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			// The outdated version of the second document is deleted, then
+			// dropped by the compaction: the index is as if it was never added
+			SegmentedIndex index = new SegmentedIndex(1, 2);
+			index.start();
+			index.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			index.addDocument("www.anotherdummy.com", "Another text");
+			assertEquals(2, index.updateDocument("www.anotherdummy.com", "Another simple text file Yes this is yes"));
+			assertEquals(-1, index.deleteDocument("www.nodummy.com"));
+			index.compact();
+			index.close();
+
+			assertEquals(1, index.getNoSegments());
+			List<String> segments = Segments.read();
+			assertEquals(1, segments.size());
+
+			// The close writes nothing but the last commit, whose checkpoint
+			// has the whole dictionary and document list
+			IndexCommit commit = IndexCommit.read();
+			assertEquals(commit.getGeneration(), commit.getCheckpoint());
+			assertTrue(contentEquals(expectedDocumentFile, commit.file(DOCUMENT_FILE)));
+			assertTrue(contentEquals(expectedDictionaryFile, commit.file(DICTIONARY_FILE)));
+			assertFalse(documentFile.exists() && documentFile.length() > 0);
+			PostingsConverter.toText(Segments.postingsFile(segments.get(0)), postingsFile);
+			assertTrue(contentEquals(expectedPostingsFile, postingsFile));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void segmentedIndexRestartFromDeltas() {
+		try {
+			initializeFiles();
+
+			// The first flush writes a checkpoint, the second one only the
+			// changes of its document
+			SegmentedIndex index = new SegmentedIndex(1, 100);
+			index.start();
+			index.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			index.addDocument("www.anotherdummy.com", "Another example");
+			index.close();
+
+			IndexCommit commit = IndexCommit.read();
+			assertEquals(2, commit.getGeneration());
+			assertEquals(1, commit.getCheckpoint());
+			IndexDelta delta = IndexDelta.read(commit);
+			assertEquals(Collections.singletonList("www.anotherdummy.com"), delta.getDocNames());
+			assertEquals(2, delta.getDf("exampl"));
+			assertEquals(-1, delta.getDf("simpl"));
+
+			// The index is started again from the checkpoint and the changes.
+			// Half of the documents are then deleted, so the index is
+			// compacted into a new checkpoint
+			index = new SegmentedIndex(1, 100);
+			index.start();
+			assertEquals(1, index.deleteDocument("www.anotherdummy.com"));
+			index.close();
+
+			commit = IndexCommit.read();
+			assertEquals(4, commit.getGeneration());
+			assertEquals(4, commit.getCheckpoint());
+			DocumentTable documents = new DocumentTable(commit.file("documents.bin"));
+			assertEquals(1, documents.size());
+			assertEquals("www.dummy.com", documents.getDocName(0));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void segmentedIndexRecoverFromLog() {
+		try {
+			initializeFiles();
+
+			// The document acknowledged before the crash is only in the log
+			CrashingIndexer.run("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			// More than the 5 bytes of the header of the log
+			assertTrue(new File("segments.wal").length() > 5);
+			assertEquals(0, Segments.read().size());
+
+			// It is indexed again on start, and flushed on close
+			SegmentedIndex index = new SegmentedIndex(100, 10);
+			index.start();
+			index.close();
+
+			IndexCommit commit = IndexCommit.read();
+			DocumentTable documents = new DocumentTable(commit.file("documents.bin"));
+			assertEquals(1, documents.size());
+			assertEquals("www.dummy.com", documents.getDocName(0));
+			TermIterator term = new TermDictionary(commit.file("dictionary.bin")).lookup("exampl");
+			assertEquals(1, term.df());
+
+			// "exampl" is at positions 7 and 12
+			PostingsReader reader = new PostingsReader(Segments.postingsFile(commit.getSegments().get(0)),
+					Segments.positionsFile(commit.getSegments().get(0)));
+			try {
+				while (reader.nextTerm() && reader.vocabularyId() != term.vocabularyId()) {
+				}
+				assertEquals(term.vocabularyId(), reader.vocabularyId());
+				assertTrue(reader.nextPosting());
+				assertEquals(0, reader.docId());
+				assertEquals(2, reader.tf());
+				assertEquals(7, reader.nextPosition());
+				assertEquals(12, reader.nextPosition());
+			} finally {
+				reader.close();
+			}
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void segmentedIndexDropTornLogRecord() {
+		try {
+			initializeFiles();
+
+			// The last byte of the second record is lost, so it fails its CRC
+			CrashingIndexer.run("www.dummy.com", "This is a simple text of my example! Yes this is an example",
+					"www.anotherdummy.com", "Another simple text file Yes this is yes");
+			RandomAccessFile log = new RandomAccessFile("segments.wal", "rw");
+			try {
+				log.seek(log.length() - 1);
+				int last = log.read();
+				log.seek(log.length() - 1);
+				log.write(last ^ 0xFF);
+			} finally {
+				log.close();
+			}
+
+			// Only the first document is indexed again, and the torn record is
+			// cut off the log
+			SegmentedIndex index = new SegmentedIndex(100, 10);
+			index.start();
+			assertEquals(1, index.addDocument("www.anotherdummy.com", "Another simple text file Yes this is yes"));
+			index.close();
+
+			IndexCommit commit = IndexCommit.read();
+			DocumentTable documents = new DocumentTable(commit.file("documents.bin"));
+			assertEquals(2, documents.size());
+			assertEquals("www.dummy.com", documents.getDocName(0));
+			assertEquals("www.anotherdummy.com", documents.getDocName(1));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void segmentedIndexKeepsItsCodec() {
+		try {
+			initializeFiles();
+
+			// The segments are flushed and merged with the codec of the index
+			SegmentedIndex index = new SegmentedIndex(1, 2, PostingsCodec.PFOR);
+			index.start();
+			index.addDocument("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			index.addDocument("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			index.close();
+
+			// A SegmentedIndex started again without codec keeps it
+			index = new SegmentedIndex(1, 2);
+			index.start();
+			index.addDocument("www.thirddummy.com", "Yet another example");
+			index.close();
+
+			List<String> segments = Segments.read();
+			assertFalse(segments.isEmpty());
+			for (String segment : segments) {
+				PostingsReader reader = new PostingsReader(Segments.postingsFile(segment));
+				assertEquals(PostingsCodec.PFOR, reader.codec());
+				reader.close();
+			}
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void positionalIndexTwoSimpleDocuments() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			Indexer indexer = new Indexer("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			indexer.start();
+			indexer = new Indexer("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			indexer.start();
+
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
+
+			// "thi" is at positions 0 and 9 of the first document, 5 of the
+			// second one: the stop-words keep their positions
+			PostingsReader reader = new PostingsReader(binaryPostingsFile, positionsFile);
+			try {
+				assertTrue(reader.nextTerm());
+				assertEquals(0, reader.vocabularyId());
+				assertTrue(reader.nextPosting());
+				assertEquals(0, reader.nextPosition());
+				assertEquals(9, reader.nextPosition());
+				assertEquals(-1, reader.nextPosition());
+				assertTrue(reader.nextPosting());
+				assertEquals(5, reader.nextPosition());
+				assertFalse(reader.nextPosting());
+
+				// "ye" is at position 8 of the first document, 4 and 7 of the
+				// second one
+				assertTrue(reader.nextTerm());
+				assertTrue(reader.nextTerm());
+				assertTrue(reader.nextTerm());
+				assertTrue(reader.nextTerm());
+				assertEquals(4, reader.vocabularyId());
+				assertTrue(reader.nextPosting());
+				assertEquals(8, reader.nextPosition());
+				assertTrue(reader.nextPosting());
+				assertEquals(4, reader.nextPosition());
+				assertEquals(7, reader.nextPosition());
+			} finally {
+				reader.close();
+			}
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void shardedIndexTwoSimpleDocuments() {
+		int testId = 2;
+
+		System.out.println(TESTING_CASE_NOTIFICATION + testId);
+		retrieveExpectedResult(testId);
+
+		try {
+			initializeFiles();
+
+			Indexer indexer = new Indexer("www.dummy.com", "This is a simple text of my example! Yes this is an example");
+			indexer.start();
+			indexer = new Indexer("www.anotherdummy.com", "Another simple text file Yes this is yes");
+			indexer.start();
+
+			// One document per shard, whose docIds are counted from 0
+			Shards shards = ShardWriter.split(2);
+			assertEquals(2, shards.size());
+			assertEquals(0, shards.getFirstDocId(0));
+			assertEquals(1, shards.getFirstDocId(1));
+			assertEquals(1, shards.shardOf(1));
+			assertEquals(shards, IndexCommit.read().getShards());
+
+			String shard = shards.getName(1);
+			DocumentTable documents = new DocumentTable(Shards.documentFile(shard));
+			assertEquals(1, documents.size());
+			assertEquals("www.anotherdummy.com", documents.getDocName(0));
+
+			// Every shard has the whole vocabulary, with its own dfs
+			TermDictionary dictionary = new TermDictionary(Shards.dictionaryFile(shard));
+			assertEquals(7, dictionary.size());
+			assertEquals(1, dictionary.noDocuments());
+			assertEquals(0, dictionary.lookup("exampl").df());
+			assertEquals(1, dictionary.lookup("anoth").df());
+			assertEquals(1, new TermDictionary(Shards.dictionaryFile(shards.getName(0))).lookup("exampl").df());
+
+			// "ye" is at positions 4 and 7 of the second document
+			PostingsReader reader = new PostingsReader(Shards.postingsFile(shard), Shards.positionsFile(shard));
+			try {
+				assertTrue(reader.nextTerm());
+				assertEquals(0, reader.vocabularyId());
+				assertTrue(reader.nextTerm());
+				assertTrue(reader.nextTerm());
+				assertTrue(reader.nextTerm());
+				assertEquals(4, reader.vocabularyId());
+				assertTrue(reader.nextPosting());
+				assertEquals(0, reader.docId());
+				assertEquals(2, reader.tf());
+				assertEquals(4, reader.nextPosition());
+				assertEquals(7, reader.nextPosition());
+				assertFalse(reader.nextPosting());
+			} finally {
+				reader.close();
+			}
+
+			// The shards would miss a document indexed after the split, so
+			// they are dropped, and the next split writes new shards
+			indexer = new Indexer("www.thirddummy.com", "Yet another example");
+			indexer.start();
+			assertEquals(0, IndexCommit.read().getShards().size());
+			assertFalse(Shards.documentFile(shard).exists());
+			Shards resplit = ShardWriter.split(2);
+			assertFalse(resplit.getName(1).equals(shard));
+			assertEquals(2, new DocumentTable(Shards.documentFile(resplit.getName(1))).size());
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void postingsWithSkipData() {
+		try {
+			initializeFiles();
+
+			// The skip data written after the 300 postings of the first term
+			// is passed over when reading the postings in order
+			int noPostings = 3 * PostingsWriter.SKIP_INTERVAL - 84;
+			PostingsWriter writer = new PostingsWriter(binaryPostingsFile, null, positionsFile);
+			writer.startTerm(0, noPostings);
+			for (int i = 0; i < noPostings; i++) {
+				writer.addPosting(2 * i, 1);
+				writer.addPosition(i);
+			}
+			writer.startTerm(1, 1);
+			writer.addPosting(7, 2);
+			writer.addPosition(3);
+			writer.addPosition(5);
+			writer.close();
+
+			PostingsReader reader = new PostingsReader(binaryPostingsFile, positionsFile);
+			try {
+				assertTrue(reader.nextTerm());
+				assertEquals(noPostings, reader.df());
+				for (int i = 0; i < noPostings / 2; i++) {
+					assertTrue(reader.nextPosting());
+					assertEquals(2 * i, reader.docId());
+					assertEquals(i, reader.nextPosition());
+				}
+
+				assertTrue(reader.nextTerm());
+				assertEquals(1, reader.vocabularyId());
+				assertTrue(reader.nextPosting());
+				assertEquals(7, reader.docId());
+				assertEquals(3, reader.nextPosition());
+				assertEquals(5, reader.nextPosition());
+				assertFalse(reader.nextTerm());
+			} finally {
+				reader.close();
+			}
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void postingsWithCodecs() {
+		try {
+			// Every codec reads back the blocks it writes, including the last
+			// partial block, with the positions alongside
+			int noPostings = 3 * PostingsWriter.SKIP_INTERVAL - 84;
+			for (PostingsCodec codec : PostingsCodec.codecs()) {
+				initializeFiles();
+
+				PostingsWriter writer = new PostingsWriter(binaryPostingsFile, null, positionsFile, null, codec);
+				writer.startTerm(0, noPostings);
+				for (int i = 0; i < noPostings; i++) {
+					writer.addPosting(3 * i + i % 3, 1 + i % 7);
+					for (int j = 0; j <= i % 7; j++) {
+						writer.addPosition(i + j);
+					}
+				}
+				writer.startTerm(2, 1);
+				writer.addPosting(7, 2);
+				writer.addPosition(3);
+				writer.addPosition(5);
+				writer.close();
+
+				PostingsReader reader = new PostingsReader(binaryPostingsFile, positionsFile);
+				try {
+					assertEquals(codec, reader.codec());
+					assertTrue(reader.nextTerm());
+					assertEquals(noPostings, reader.df());
+					for (int i = 0; i < noPostings; i++) {
+						assertTrue(reader.nextPosting());
+						assertEquals(3 * i + i % 3, reader.docId());
+						assertEquals(1 + i % 7, reader.tf());
+						for (int j = 0; j <= i % 7; j++) {
+							assertEquals(i + j, reader.nextPosition());
+						}
+					}
+					assertFalse(reader.nextPosting());
+
+					assertTrue(reader.nextTerm());
+					assertEquals(2, reader.vocabularyId());
+					assertTrue(reader.nextPosting());
+					assertEquals(7, reader.docId());
+					assertEquals(2, reader.tf());
+					assertEquals(3, reader.nextPosition());
+					assertEquals(5, reader.nextPosition());
+					assertFalse(reader.nextTerm());
+				} finally {
+					reader.close();
+				}
+			}
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void postingsWithBitmaps() {
+		try {
+			initializeFiles();
+
+			// The first term is in 10 documents out of 11 and is written as a
+			// bitmap, the second one is sparse, the third one is dense across
+			// two chunks of 65536 docIds
+			int noPostings = 3 * PostingsWriter.SKIP_INTERVAL - 84;
+			int[] denseDocIds = new int[noPostings];
+			int[] chunkDocIds = new int[noPostings];
+			for (int i = 0; i < noPostings; i++) {
+				denseDocIds[i] = i + i / 10;
+				chunkDocIds[i] = 65536 - 100 + 2 * i;
+			}
+			PostingsWriter writer = new PostingsWriter(binaryPostingsFile, null, positionsFile);
+			writer.startTerm(0, noPostings);
+			for (int i = 0; i < noPostings; i++) {
+				writer.addPosting(denseDocIds[i], 1 + i % 3);
+				for (int j = 0; j <= i % 3; j++) {
+					writer.addPosition(j);
+				}
+			}
+			writer.startTerm(1, 2);
+			writer.addPosting(7, 1);
+			writer.addPosition(4);
+			writer.addPosting(5000, 1);
+			writer.addPosition(2);
+			writer.startTerm(2, noPostings);
+			for (int i = 0; i < noPostings; i++) {
+				writer.addPosting(chunkDocIds[i], 1);
+				writer.addPosition(i);
+			}
+			writer.close();
+
+			// The df of the first term, after the header and its vocabularyId,
+			// is doubled plus one for a bitmap
+			DataInputStream in = new DataInputStream(new FileInputStream(binaryPostingsFile));
+			try {
+				in.skipBytes(PostingsWriter.CODEC_HEADER_SIZE + 1);
+				assertEquals(1, in.readUnsignedByte() & 1);
+			} finally {
+				in.close();
+			}
+
+			PostingsReader reader = new PostingsReader(binaryPostingsFile, positionsFile);
+			try {
+				assertTrue(reader.nextTerm());
+				assertEquals(noPostings, reader.df());
+				for (int i = 0; i < noPostings; i++) {
+					assertTrue(reader.nextPosting());
+					assertEquals(denseDocIds[i], reader.docId());
+					assertEquals(1 + i % 3, reader.tf());
+					for (int j = 0; j <= i % 3; j++) {
+						assertEquals(j, reader.nextPosition());
+					}
+				}
+				assertFalse(reader.nextPosting());
+
+				assertTrue(reader.nextTerm());
+				assertEquals(1, reader.vocabularyId());
+				assertTrue(reader.nextPosting());
+				assertEquals(7, reader.docId());
+				assertEquals(4, reader.nextPosition());
+				assertTrue(reader.nextPosting());
+				assertEquals(5000, reader.docId());
+				assertEquals(2, reader.nextPosition());
+
+				// The positions of the third term are skipped when they are not read
+				assertTrue(reader.nextTerm());
+				assertEquals(2, reader.vocabularyId());
+				for (int i = 0; i < noPostings; i++) {
+					assertTrue(reader.nextPosting());
+					assertEquals(chunkDocIds[i], reader.docId());
+				}
+				assertFalse(reader.nextTerm());
+			} finally {
+				reader.close();
+			}
+
+			// Intersect and unite the bitmaps of the dense terms with a set of
+			// every third docId, word by word
+			int[] thirdDocIds = new int[70000 / 3 + 1];
+			for (int i = 0; i < thirdDocIds.length; i++) {
+				thirdDocIds[i] = 3 * i;
+			}
+			RoaringBitmap thirds = RoaringBitmap.of(thirdDocIds, thirdDocIds.length);
+			RoaringBitmap dense = RoaringBitmap.of(denseDocIds, noPostings).or(
+					RoaringBitmap.of(chunkDocIds, noPostings));
+			RoaringBitmap both = dense.and(thirds);
+			RoaringBitmap either = dense.or(thirds);
+			int noBoth = 0;
+			for (int docId = 0; docId < 70000; docId++) {
+				boolean isDense = dense.contains(docId);
+				assertEquals(isDense && docId % 3 == 0, both.contains(docId));
+				assertEquals(isDense || docId % 3 == 0, either.contains(docId));
+				noBoth += isDense && docId % 3 == 0 ? 1 : 0;
+			}
+			assertEquals(2 * noPostings, dense.cardinality());
+			assertEquals(noBoth, both.cardinality());
+			assertEquals(2 * noPostings + thirdDocIds.length - noBoth, either.cardinality());
+			assertEquals(65536 - 100, dense.nextValue(denseDocIds[noPostings - 1] + 1));
+			assertEquals(-1, both.nextValue(chunkDocIds[noPostings - 1] + 1));
+
+			initializeFiles();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
 	@Test
 	public void indexDuplicateDocuments() {
 		int testId = 3;
@@ -270,7 +1041,7 @@ public class IndexerTester {
 
 			assertTrue(contentEquals(expectedDocumentFile, documentFile));
 			assertTrue(contentEquals(expectedDictionaryFile, dictionaryFile));
-			assertTrue(contentEquals(expectedPostingsFile, postingsFile));
+			assertTrue(contentEquals(expectedPostingsFile, decodePostingsFile()));
 
 			initializeFiles();
 		} catch (IOException e) {
@@ -406,4 +1177,92 @@ public class IndexerTester {
 			fail();
 		}
 	}
+
+	/**
+	 * Stem words on several threads at once through a StemCache <br/>
+	 * Every thread goes through the words in the same order, so they miss the
+	 * same words at the same time
+	 * 
+	 * @param cache
+	 * @param words
+	 * @param stems
+	 *            the stem of each word
+	 * @param noThreads
+	 * @return number of words that got a wrong stem
+	 */
+	private int stemConcurrently(final StemCache cache, final String[] words, final String[] stems, int noThreads) {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger noWrongStems = new AtomicInteger();
+		Thread[] threads = new Thread[noThreads];
+		for (int t = 0; t < noThreads; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					CachingStemmer cachingStemmer = new CachingStemmer(cache);
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < words.length; i++) {
+						String stem = (i + thread) % 2 == 0 ? cachingStemmer.stem(words[i]) : cachingStemmer.stem(
+								words[i].toCharArray(), 0, words[i].length());
+						if (!stems[i].equals(stem)) {
+							noWrongStems.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			fail();
+		}
+		return noWrongStems.get();
+	}
+
+	@Test
+	public void concurrentStemCache() {
+		int numOfRerun = 10; // Rerun multiple times
+		String[] suffixes = { "ing", "ed", "s", "ation", "ness" };
+		String[] words = new String[5000];
+		String[] stems = new String[words.length];
+		Stemmer stemmer = new Stemmer();
+		for (int i = 0; i < words.length; i++) {
+			// a different word for every number: the number written in letters
+			StringBuilder word = new StringBuilder();
+			for (int n = i; n > 0 || word.length() == 0; n /= 26) {
+				word.append((char) ('a' + n % 26));
+			}
+			words[i] = word.append(suffixes[i % suffixes.length]).toString();
+			stems[i] = stemmer.stem(words[i]);
+		}
+
+		System.out.println("\n\nTesting concurrent stemming through a StemCache");
+
+		for (int rerun = 0; rerun < numOfRerun; rerun++) {
+			System.out.println(TEST_RERUN + rerun);
+
+			// Every word fits in the cache, even in a single one of its
+			// segments: each word is cached once, with its own stem
+			StemCache cache = new StemCache(16 * words.length);
+			assertEquals(0, stemConcurrently(cache, words, stems, 8));
+			assertEquals(words.length, cache.size());
+			for (int i = 0; i < words.length; i++) {
+				assertEquals(stems[i], cache.get(words[i]));
+			}
+
+			// The words are evicted while other threads look them up
+			cache = new StemCache(64);
+			assertEquals(0, stemConcurrently(cache, words, stems, 8));
+			assertTrue(cache.size() <= 64);
+		}
+	}
 }